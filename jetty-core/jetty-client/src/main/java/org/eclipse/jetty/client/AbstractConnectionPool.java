@@ -22,16 +22,23 @@ import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.client.transport.HttpDestination;
+import org.eclipse.jetty.io.AbstractConnection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
 import org.eclipse.jetty.util.Attachable;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.NanoTime;
 import org.eclipse.jetty.util.Pool;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.thread.Sweeper;
@@ -46,6 +53,8 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
     private static final Logger LOG = LoggerFactory.getLogger(AbstractConnectionPool.class);
 
     private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder warmHits = new LongAdder();
+    private final LongAdder coldMisses = new LongAdder();
     private final HttpDestination destination;
     private final Pool.Factory<Connection> poolFactory;
     private Pool<Connection> pool;
@@ -53,6 +62,8 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
     private volatile long maxDurationNanos;
     private volatile int maxUsage;
     private volatile int initialMaxMultiplex;
+    private volatile int minIdleConnections;
+    private volatile boolean warmUpHandshake;
 
     protected AbstractConnectionPool(Destination destination, Pool.Factory<Connection> poolFactory, int initialMaxMultiplex)
     {
@@ -67,6 +78,7 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
         pool = poolFactory.wrap(poolFactory.newPool());
         addBean(pool);
         super.doStart();
+        warmUp();
     }
 
     @Override
@@ -91,7 +103,7 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
             if (entry == null)
                 break;
             pending.incrementAndGet();
-            Promise.Completable<Connection> future = new FutureConnection(entry);
+            Promise.Completable<Connection> future = new FutureConnection(entry, true);
             futures.add(future);
             if (LOG.isDebugEnabled())
                 LOG.debug("Pre-creating connection {}/{} at {}", futures.size(), getMaxConnectionCount(), entry);
@@ -151,6 +163,79 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
         this.maxUsage = maxUsage;
     }
 
+    /**
+     * <p>Returns the min number of idle connections that this pool keeps warm.</p>
+     * <p>When the number of idle connections falls below this value, for example
+     * because warm connections have been acquired or have been closed by the idle timeout,
+     * new connections are opened asynchronously, so that the cost of opening a
+     * connection is not paid by the next request.</p>
+     * <p>The number of idle connections is not checked on every acquisition, but only
+     * when a warm connection is used for the first time, when no idle connection is
+     * available, and when a connection is removed.</p>
+     * <p>Values {@code 0} and negative disable the warm up of connections.</p>
+     *
+     * @return the min number of idle connections kept warm
+     * @see #isWarmUpHandshake()
+     */
+    @ManagedAttribute(value = "The min number of idle connections kept warm")
+    public int getMinIdleConnections()
+    {
+        return minIdleConnections;
+    }
+
+    public void setMinIdleConnections(int minIdleConnections)
+    {
+        this.minIdleConnections = minIdleConnections;
+        warmUp();
+    }
+
+    /**
+     * <p>Returns whether the TLS handshake of the connections opened to keep
+     * this pool warm is completed before they are made available.</p>
+     * <p>Connections that negotiate the protocol via ALPN always complete
+     * the TLS handshake before they are available; other connections
+     * otherwise perform the TLS handshake when the first request is sent.</p>
+     *
+     * @return whether warm connections complete the TLS handshake
+     */
+    @ManagedAttribute(value = "Whether warm connections complete the TLS handshake")
+    public boolean isWarmUpHandshake()
+    {
+        return warmUpHandshake;
+    }
+
+    public void setWarmUpHandshake(boolean warmUpHandshake)
+    {
+        this.warmUpHandshake = warmUpHandshake;
+    }
+
+    @ManagedAttribute(value = "The number of acquisitions of warm connections", readonly = true)
+    public long getWarmConnectionHits()
+    {
+        return warmHits.sum();
+    }
+
+    @ManagedAttribute(value = "The number of connections opened on demand", readonly = true)
+    public long getColdConnectionMisses()
+    {
+        return coldMisses.sum();
+    }
+
+    @ManagedAttribute(value = "The ratio of warm connections over the connections used", readonly = true)
+    public double getWarmConnectionHitRate()
+    {
+        long hits = getWarmConnectionHits();
+        long total = hits + getColdConnectionMisses();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+    @ManagedOperation(value = "Resets the warm connection statistics", impact = "ACTION")
+    public void resetWarmConnectionStatistics()
+    {
+        warmHits.reset();
+        coldMisses.reset();
+    }
+
     @ManagedAttribute(value = "The number of active connections", readonly = true)
     public int getActiveConnectionCount()
     {
@@ -234,10 +319,44 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
         {
             tryCreate(create);
             connection = activate();
+            // There were no idle connections, replenish them.
+            warmUp();
         }
         return connection;
     }
 
+    /**
+     * <p>Opens new connections asynchronously if the number of idle connections
+     * is below {@link #getMinIdleConnections()}, taking into account the
+     * connections that are already being opened.</p>
+     */
+    protected void warmUp()
+    {
+        int minIdle = getMinIdleConnections();
+        if (minIdle <= 0 || !isRunning())
+            return;
+
+        while (true)
+        {
+            int pending = this.pending.get();
+            if (getIdleConnectionCount() + pending >= minIdle)
+                return;
+            if (!this.pending.compareAndSet(pending, pending + 1))
+                continue;
+
+            Pool.Entry<Connection> entry = pool.reserve();
+            if (entry == null)
+            {
+                this.pending.decrementAndGet();
+                return;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Warming up connection {}/{} at {}", getIdleConnectionCount(), minIdle, entry);
+            destination.newConnection(new FutureConnection(entry, true));
+        }
+    }
+
     /**
      * <p>Tries to create a new connection.</p>
      * <p>Whether a new connection is created is determined by the {@code create} parameter
@@ -289,7 +408,8 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
 
         if (LOG.isDebugEnabled())
             LOG.debug("Creating connection {}/{} at {}", connectionCount, getMaxConnectionCount(), entry);
-        Promise<Connection> future = new FutureConnection(entry);
+        coldMisses.increment();
+        Promise<Connection> future = new FutureConnection(entry, false);
         destination.newConnection(future);
     }
 
@@ -357,6 +477,16 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
                     // Entry is now used, so it must be acquired.
                 }
 
+                EntryHolder holder = (EntryHolder)((Attachable)connection).getAttachment();
+                if (holder != null && holder.warm)
+                {
+                    // Only the first acquisition of a warm connection is a hit.
+                    holder.warm = false;
+                    warmHits.increment();
+                    // A warm connection has been consumed, replace it.
+                    warmUp();
+                }
+
                 if (LOG.isDebugEnabled())
                     LOG.debug("Activated {} {}", entry, pool);
                 acquired(connection);
@@ -435,6 +565,7 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
         {
             released(connection);
             onRemoved(connection);
+            warmUp();
         }
         return removed;
     }
@@ -593,10 +724,12 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
     private class FutureConnection extends Promise.Completable<Connection>
     {
         private final Pool.Entry<Connection> reserved;
+        private final boolean warm;
 
-        public FutureConnection(Pool.Entry<Connection> reserved)
+        public FutureConnection(Pool.Entry<Connection> reserved, boolean warm)
         {
             this.reserved = reserved;
+            this.warm = warm;
         }
 
         @Override
@@ -606,13 +739,24 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
                 LOG.debug("Connection creation succeeded {}: {}", reserved, connection);
             if (connection instanceof Attachable)
             {
-                ((Attachable)connection).setAttachment(new EntryHolder(reserved));
-                onCreated(connection);
-                pending.decrementAndGet();
-                reserved.enable(connection, false);
-                idle(connection, false);
-                super.succeeded(connection);
-                proceed();
+                if (warm && isWarmUpHandshake() && connection instanceof AbstractConnection ioConnection)
+                {
+                    EndPoint endPoint = ioConnection.getEndPoint();
+                    if (endPoint instanceof SslConnection.SslEndPoint)
+                    {
+                        // Writing no bytes triggers the TLS handshake, and
+                        // completes when the TLS handshake is complete.
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("TLS handshaking warm connection {}", connection);
+                        endPoint.write(Callback.from(() -> enable(connection), x ->
+                        {
+                            IO.close(connection);
+                            failed(x);
+                        }), BufferUtil.EMPTY_BUFFER);
+                        return;
+                    }
+                }
+                enable(connection);
             }
             else
             {
@@ -620,6 +764,19 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
             }
         }
 
+        private void enable(Connection connection)
+        {
+            EntryHolder holder = new EntryHolder(reserved);
+            holder.warm = warm;
+            ((Attachable)connection).setAttachment(holder);
+            onCreated(connection);
+            pending.decrementAndGet();
+            reserved.enable(connection, false);
+            idle(connection, false);
+            super.succeeded(connection);
+            proceed();
+        }
+
         @Override
         public void failed(Throwable x)
         {
@@ -637,6 +794,8 @@ public abstract class AbstractConnectionPool extends ContainerLifeCycle implemen
         private final Pool.Entry<Connection> entry;
         private final long creationNanoTime = NanoTime.now();
         private final AtomicInteger usage = new AtomicInteger();
+        // Whether the connection has been opened in advance and not yet used.
+        private volatile boolean warm;
 
         private EntryHolder(Pool.Entry<Connection> entry)
         {
@@ -119,6 +119,7 @@ public class HttpClient extends ContainerLifeCycle implements AutoCloseable
     private final ClientConnector connector;
     private AuthenticationStore authenticationStore = new HttpAuthenticationStore();
     private HttpCookieStore cookieStore;
+    private HttpResponseCache responseCache;
     private SocketAddressResolver resolver;
     private HttpField agentField = new HttpField(HttpHeader.USER_AGENT, USER_AGENT);
     private boolean followRedirects = true;
@@ -212,6 +213,8 @@ public class HttpClient extends ContainerLifeCycle implements AutoCloseable
         handlers.put(new WWWAuthenticationProtocolHandler(this));
         handlers.put(new ProxyAuthenticationProtocolHandler(this));
         handlers.put(new UpgradeProtocolHandler());
+        if (responseCache != null)
+            handlers.put(responseCache);
 
         decoderFactories.put(new GZIPContentDecoder.Factory(byteBufferPool));
 
@@ -279,6 +282,27 @@ public class HttpClient extends ContainerLifeCycle implements AutoCloseable
         this.cookieStore = Objects.requireNonNull(cookieStore);
     }
 
+    /**
+     * @return the cache of the responses, or null if responses are not cached
+     */
+    public HttpResponseCache getHttpResponseCache()
+    {
+        return responseCache;
+    }
+
+    /**
+     * <p>Sets the cache of the responses.</p>
+     *
+     * @param responseCache the cache of the responses, or null to not cache responses
+     */
+    public void setHttpResponseCache(HttpResponseCache responseCache)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        updateBean(this.responseCache, responseCache);
+        this.responseCache = responseCache;
+    }
+
     public void putCookie(URI uri, HttpField field)
     {
         HttpCookie cookie = COOKIE_PARSER.parse(field.getValue());
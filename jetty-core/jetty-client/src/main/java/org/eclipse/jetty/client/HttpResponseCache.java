@@ -0,0 +1,1334 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.transport.HttpConversation;
+import org.eclipse.jetty.client.transport.HttpRequest;
+import org.eclipse.jetty.client.transport.HttpResponse;
+import org.eclipse.jetty.client.transport.ResponseListeners;
+import org.eclipse.jetty.http.HttpDateTime;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.ByteBufferAccumulator;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.io.Retainable;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.SerializedInvoker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An HTTP cache for {@link HttpClient}, as specified by
+ * <a href="https://datatracker.ietf.org/doc/html/rfc9111">RFC 9111</a>.</p>
+ * <p>The cache is enabled via {@link HttpClient#setHttpResponseCache(HttpResponseCache)}
+ * and is consulted when a {@code GET} request is sent: if a fresh response
+ * is stored for the request URI, it is served to the response listeners
+ * without sending the request; otherwise the request is sent and the
+ * response is stored, if it is cacheable.</p>
+ * <p>Stale responses that have a validator are revalidated by adding
+ * {@code If-None-Match} and {@code If-Modified-Since} headers to the
+ * request; a {@code 304} response is handled by this class, acting as
+ * a {@link ProtocolHandler}, by refreshing the stored response and
+ * serving it to the response listeners.</p>
+ * <p>Concurrent requests for the same URI that miss the cache are
+ * collapsed: only the first request is sent, while the others wait
+ * for its response to be stored, and then they are served from the cache.
+ * Only the requests whose headers listed in the {@code Vary} header match
+ * those of the first request are collapsed, and a waiting request fails
+ * if its {@link Request#getTimeout() timeout} expires.
+ * If the response cannot be stored, for example because it is {@code no-store}
+ * or too large, the waiting requests are sent as soon as the response headers
+ * or content show it, and requests for the same URI are not collapsed for
+ * the {@link #getPassTimeout() pass timeout}.</p>
+ * <p>A shared cache, for example in a reverse proxy, does not store
+ * {@code private} responses nor {@code Set-Cookie} headers, and honors
+ * the {@code s-maxage} directive, while a private cache, the default, does not.</p>
+ * <p>The content of the stored responses is kept in buffers acquired from the
+ * {@link ByteBufferPool} of {@link HttpClient}, bounded by {@link #getMaxMemorySize()};
+ * if a {@link #setStoreDirectory(Path) store directory} is configured, the content
+ * is instead written to files in that directory and memory mapped, bounded by
+ * {@link #getMaxDiskSize()}.
+ * Least recently used responses are evicted when the bounds are exceeded.</p>
+ * <p>Only one variant of a resource is stored, the one that matches the
+ * request headers listed in the {@code Vary} header of the most recent response.</p>
+ * <p>Requests served from the cache do not notify {@link Request.Listener}s,
+ * since they are not sent.</p>
+ */
+@ManagedObject
+public class HttpResponseCache extends ContainerLifeCycle implements ProtocolHandler, HttpClient.Aware
+{
+    public static final String NAME = "cache";
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpResponseCache.class);
+    private static final String REVALIDATION_ATTRIBUTE = HttpResponseCache.class.getName() + ".revalidation";
+    private static final String COLLAPSED_ATTRIBUTE = HttpResponseCache.class.getName() + ".collapsed";
+    // The status codes that are understood and heuristically cacheable, see RFC 9110, section 15.1.
+    private static final Set<Integer> CACHEABLE_STATUSES = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+    private static final EnumSet<HttpHeader> CONDITIONAL_HEADERS = EnumSet.of(HttpHeader.IF_MATCH, HttpHeader.IF_NONE_MATCH,
+        HttpHeader.IF_MODIFIED_SINCE, HttpHeader.IF_UNMODIFIED_SINCE, HttpHeader.IF_RANGE, HttpHeader.RANGE);
+    // The max number of resources whose responses could not be stored that are remembered.
+    private static final int MAX_PASSES = 1024;
+    private static final EnumSet<HttpHeader> COOKIE_HEADERS = EnumSet.of(HttpHeader.SET_COOKIE, HttpHeader.SET_COOKIE2);
+
+    private final AutoLock lock = new AutoLock();
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private final Map<String, Fill> fills = new ConcurrentHashMap<>();
+    private final Map<String, Long> passes = new LinkedHashMap<>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+        {
+            return size() > MAX_PASSES;
+        }
+    };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final Response.Listener revalidationListener = new RevalidationListener();
+    private final boolean shared;
+    private HttpClient httpClient;
+    private long memorySize;
+    private long diskSize;
+    private long maxMemorySize = 32 * 1024 * 1024;
+    private long maxDiskSize = 1024 * 1024 * 1024;
+    private int maxEntrySize = 1024 * 1024;
+    private long passTimeout = 120_000;
+    private Path storeDirectory;
+
+    public HttpResponseCache()
+    {
+        this(false);
+    }
+
+    /**
+     * @param shared whether this cache is shared among many users, as in a proxy
+     */
+    public HttpResponseCache(boolean shared)
+    {
+        this.shared = shared;
+    }
+
+    @Override
+    public void setHttpClient(HttpClient httpClient)
+    {
+        this.httpClient = httpClient;
+    }
+
+    @ManagedAttribute("Whether the cache is shared among many users")
+    public boolean isShared()
+    {
+        return shared;
+    }
+
+    @ManagedAttribute("The max size in bytes of the content of the responses stored in memory")
+    public long getMaxMemorySize()
+    {
+        return maxMemorySize;
+    }
+
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    @ManagedAttribute("The max size in bytes of the content of the responses stored on disk")
+    public long getMaxDiskSize()
+    {
+        return maxDiskSize;
+    }
+
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    @ManagedAttribute("The max size in bytes of the content of a stored response")
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute("The time in milliseconds during which the requests for a resource whose response could not be stored are not collapsed")
+    public long getPassTimeout()
+    {
+        return passTimeout;
+    }
+
+    /**
+     * <p>Sets the time during which the requests for a resource, whose response
+     * could not be stored, are sent without waiting for concurrent requests.</p>
+     *
+     * @param passTimeout the pass timeout in milliseconds
+     */
+    public void setPassTimeout(long passTimeout)
+    {
+        this.passTimeout = passTimeout;
+    }
+
+    /**
+     * @return the directory where the content of the responses is stored, or null to store it in memory
+     */
+    public Path getStoreDirectory()
+    {
+        return storeDirectory;
+    }
+
+    /**
+     * <p>Sets the directory where the content of the responses is stored.</p>
+     * <p>The files in the directory are memory mapped and are deleted
+     * when the responses are evicted and no longer in use.</p>
+     *
+     * @param storeDirectory the directory where the content is stored, or null to store it in memory
+     */
+    public void setStoreDirectory(Path storeDirectory)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        this.storeDirectory = storeDirectory;
+    }
+
+    @ManagedAttribute(value = "The number of responses served from the cache without revalidation", readonly = true)
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    @ManagedAttribute(value = "The number of requests that could not be served from the cache without being sent", readonly = true)
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    @ManagedAttribute(value = "The number of stored responses revalidated with a 304 response", readonly = true)
+    public long getRevalidations()
+    {
+        return revalidations.sum();
+    }
+
+    @ManagedAttribute(value = "The number of requests that waited for a concurrent request for the same resource", readonly = true)
+    public long getCollapsedRequests()
+    {
+        return collapsed.sum();
+    }
+
+    @ManagedAttribute(value = "The number of content bytes served from the cache", readonly = true)
+    public long getBytesSaved()
+    {
+        return bytesSaved.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+        revalidations.reset();
+        collapsed.reset();
+        bytesSaved.reset();
+    }
+
+    @ManagedAttribute(value = "The number of stored responses", readonly = true)
+    public int getSize()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return entries.size();
+        }
+    }
+
+    @ManagedAttribute(value = "The size in bytes of the content of the responses stored in memory", readonly = true)
+    public long getMemorySize()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return memorySize;
+        }
+    }
+
+    @ManagedAttribute(value = "The size in bytes of the content of the responses stored on disk", readonly = true)
+    public long getDiskSize()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return diskSize;
+        }
+    }
+
+    @ManagedOperation(value = "Removes all the stored responses", impact = "ACTION")
+    public void clear()
+    {
+        List<Entry> removed;
+        try (AutoLock ignored = lock.lock())
+        {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            passes.clear();
+            memorySize = 0;
+            diskSize = 0;
+        }
+        removed.forEach(Entry::release);
+    }
+
+    /**
+     * <p>Removes the response stored for the given URI.</p>
+     *
+     * @param uri the URI of the response to remove
+     * @return whether a response was removed
+     */
+    public boolean invalidate(URI uri)
+    {
+        return invalidate(uri.toString());
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        clear();
+        super.doStop();
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public boolean accept(Request request, Response response)
+    {
+        if (response.getStatus() != HttpStatus.NOT_MODIFIED_304)
+            return false;
+        return request.getAttributes().get(REVALIDATION_ATTRIBUTE) instanceof Revalidation revalidation &&
+            revalidation.key.equals(key(request));
+    }
+
+    @Override
+    public Response.Listener getResponseListener()
+    {
+        return revalidationListener;
+    }
+
+    /**
+     * <p>Serves the given request from the cache, or prepares it to be sent.</p>
+     * <p>This method is called by {@link Request#send(Response.CompleteListener)}.</p>
+     *
+     * @param request the request to send
+     * @param listener the listener passed to {@link Request#send(Response.CompleteListener)}
+     * @return true if the request has been served from the cache, or will be
+     * after a concurrent request completes, false if the request must be sent
+     */
+    public boolean send(HttpRequest request, Response.CompleteListener listener)
+    {
+        if (!isRunning())
+            return false;
+
+        String key = key(request);
+        if (key == null)
+            return false;
+
+        String method = request.getMethod();
+        if (!HttpMethod.GET.is(method))
+        {
+            // Successful unsafe requests invalidate the stored response, see RFC 9111, section 4.4.
+            if (!HttpMethod.HEAD.is(method) && !HttpMethod.OPTIONS.is(method) && !HttpMethod.TRACE.is(method))
+            {
+                request.onResponseSuccess(response ->
+                {
+                    if (response.getStatus() < HttpStatus.BAD_REQUEST_400)
+                        invalidate(key);
+                });
+            }
+            return false;
+        }
+
+        HttpFields requestHeaders = request.getHeaders();
+        // Do not interfere with the conditional requests of the application.
+        if (requestHeaders.contains(CONDITIONAL_HEADERS))
+            return false;
+
+        Map<String, String> requestDirectives = directives(requestHeaders);
+        if (requestDirectives.containsKey("no-store"))
+            return false;
+        boolean noCache = requestDirectives.containsKey("no-cache") ||
+            (!requestHeaders.contains(HttpHeader.CACHE_CONTROL) && requestHeaders.contains(HttpHeader.PRAGMA, "no-cache"));
+
+        long now = System.currentTimeMillis();
+        Entry entry = get(key, request);
+        if (entry != null)
+        {
+            if (!noCache && isFresh(entry, requestDirectives, now))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cache hit {} for {}", entry, request);
+                hits.increment();
+                bytesSaved.add(entry.getContentLength());
+                ResponseListeners listeners = new ResponseListeners(request.getResponseListeners());
+                listeners.addCompleteListener(listener, true);
+                replay(request, listeners, entry, now);
+                return true;
+            }
+
+            if (entry.etag != null || entry.lastModified != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Revalidating {} for {}", entry, request);
+                request.headers(headers ->
+                {
+                    if (entry.etag != null)
+                        headers.put(HttpHeader.IF_NONE_MATCH, entry.etag);
+                    if (entry.lastModified != null)
+                        headers.put(HttpHeader.IF_MODIFIED_SINCE, entry.lastModified);
+                });
+                request.attribute(REVALIDATION_ATTRIBUTE, new Revalidation(key, entry, now));
+            }
+            else
+            {
+                entry.release();
+            }
+        }
+        else if (!noCache && request.getAttributes().get(COLLAPSED_ATTRIBUTE) == null && !isPass(key, now))
+        {
+            Fill fill = new Fill(request, varyNames(key));
+            Fill existing = fills.putIfAbsent(key, fill);
+            if (existing != null)
+            {
+                if (collapse(request, listener, existing))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Collapsed {} with {}", request, existing);
+                    collapsed.increment();
+                    return true;
+                }
+            }
+            else
+            {
+                tee(request, key, now, fill);
+                misses.increment();
+                return false;
+            }
+        }
+
+        tee(request, key, now, null);
+        misses.increment();
+        return false;
+    }
+
+    private boolean collapse(HttpRequest request, Response.CompleteListener listener, Fill fill)
+    {
+        Runnable waiter = () ->
+        {
+            // Send again, without collapsing, so that if
+            // the response was not stored it is not waited
+            // for again, and requests are not serialized.
+            request.attribute(COLLAPSED_ATTRIBUTE, Boolean.TRUE);
+            request.send(listener);
+        };
+
+        // The request timeout must expire also while waiting.
+        Scheduler.Task task = null;
+        long timeout = request.getTimeout();
+        Scheduler scheduler = httpClient == null ? null : httpClient.getScheduler();
+        if (timeout > 0 && scheduler != null)
+        {
+            Scheduler.Task expiration = scheduler.schedule(() -> expire(request, listener, fill, waiter), timeout, TimeUnit.MILLISECONDS);
+            request.onComplete(result -> expiration.cancel());
+            task = expiration;
+        }
+
+        if (fill.await(request, waiter))
+            return true;
+        if (task != null)
+            task.cancel();
+        return false;
+    }
+
+    private void expire(HttpRequest request, Response.CompleteListener listener, Fill fill, Runnable waiter)
+    {
+        TimeoutException failure = new TimeoutException("Total timeout " + request.getTimeout() + " ms elapsed");
+        // If the request has been sent again, it is aborted as usual.
+        request.abort(failure);
+        if (!fill.cancel(waiter))
+            return;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Collapsed request timed out {}", request);
+        ResponseListeners listeners = new ResponseListeners(request.getResponseListeners());
+        listeners.addCompleteListener(listener, true);
+        Response response = new HttpResponse(request);
+        listeners.notifyFailure(response, failure);
+        listeners.notifyComplete(new Result(request, failure, response, failure));
+    }
+
+    private void tee(HttpRequest request, String key, long requestTime, Fill fill)
+    {
+        Tee tee = new Tee(request, key, requestTime, fill);
+        request.onResponseHeaders(tee)
+            .onResponseContent(tee)
+            .onComplete(tee);
+    }
+
+    private boolean isFresh(Entry entry, Map<String, String> requestDirectives, long now)
+    {
+        if (entry.directives.containsKey("no-cache"))
+            return false;
+        long lifetime = entry.getFreshnessLifetime(isShared());
+        long age = entry.getCurrentAge(now);
+        long maxAge = seconds(requestDirectives.get("max-age"));
+        if (maxAge >= 0 && age > maxAge)
+            return false;
+        long minFresh = seconds(requestDirectives.get("min-fresh"));
+        if (minFresh > 0)
+            age += minFresh;
+        if (lifetime > age)
+            return true;
+        // A stale response may be served if the request allows it.
+        if (!requestDirectives.containsKey("max-stale") || entry.directives.containsKey("must-revalidate"))
+            return false;
+        if (isShared() && entry.directives.containsKey("proxy-revalidate"))
+            return false;
+        long maxStale = seconds(requestDirectives.get("max-stale"));
+        return maxStale < 0 || age - lifetime <= maxStale;
+    }
+
+    private boolean isStorable(Request request, Response response)
+    {
+        if (!CACHEABLE_STATUSES.contains(response.getStatus()))
+            return false;
+        HttpFields headers = response.getHeaders();
+        Map<String, String> directives = directives(headers);
+        if (directives.containsKey("no-store"))
+            return false;
+        boolean shared = isShared();
+        if (shared)
+        {
+            if (directives.containsKey("private"))
+                return false;
+            if (request.getHeaders().contains(HttpHeader.AUTHORIZATION) &&
+                !directives.containsKey("public") &&
+                !directives.containsKey("s-maxage") &&
+                !directives.containsKey("must-revalidate"))
+                return false;
+        }
+        if (headers.getCSV(HttpHeader.VARY, false).contains("*"))
+            return false;
+        // Store only responses that can be served or revalidated.
+        return directives.containsKey("public") ||
+            directives.containsKey("max-age") ||
+            (shared && directives.containsKey("s-maxage")) ||
+            headers.contains(HttpHeader.EXPIRES) ||
+            headers.contains(HttpHeader.ETAG) ||
+            headers.contains(HttpHeader.LAST_MODIFIED);
+    }
+
+    private boolean isPass(String key, long now)
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            Long expiration = passes.get(key);
+            if (expiration == null)
+                return false;
+            if (expiration > now)
+                return true;
+            passes.remove(key);
+            return false;
+        }
+    }
+
+    private void pass(String key)
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            passes.put(key, System.currentTimeMillis() + getPassTimeout());
+        }
+    }
+
+    private HttpFields storable(HttpFields headers)
+    {
+        // A shared cache must not give the cookies of a user to other users.
+        if (!isShared() || (!headers.contains(HttpHeader.SET_COOKIE) && !headers.contains(HttpHeader.SET_COOKIE2)))
+            return headers;
+        return HttpFields.build(headers).remove(COOKIE_HEADERS).asImmutable();
+    }
+
+    private List<String> varyNames(String key)
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            Entry entry = entries.get(key);
+            return entry == null ? List.of() : entry.headers.getCSV(HttpHeader.VARY, false);
+        }
+    }
+
+    private Entry get(String key, Request request)
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.vary.equals(vary(entry.headers, request)))
+                return null;
+            entry.retain();
+            return entry;
+        }
+    }
+
+    private void put(Entry entry)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Storing {}", entry);
+        List<Entry> evicted = new ArrayList<>();
+        try (AutoLock ignored = lock.lock())
+        {
+            Entry existing = entries.put(entry.key, entry);
+            passes.remove(entry.key);
+            if (existing != null)
+            {
+                account(existing, -1);
+                evicted.add(existing);
+            }
+            account(entry, 1);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while ((memorySize > getMaxMemorySize() || diskSize > getMaxDiskSize()) && iterator.hasNext())
+            {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                account(eldest, -1);
+                evicted.add(eldest);
+            }
+        }
+        evicted.forEach(Entry::release);
+    }
+
+    private void account(Entry entry, int sign)
+    {
+        assert lock.isHeldByCurrentThread();
+        if (entry.onDisk)
+            diskSize += sign * entry.getContentLength();
+        else
+            memorySize += sign * entry.getContentLength();
+    }
+
+    private boolean invalidate(String key)
+    {
+        Entry entry;
+        try (AutoLock ignored = lock.lock())
+        {
+            entry = entries.remove(key);
+            if (entry != null)
+                account(entry, -1);
+        }
+        if (entry == null)
+            return false;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Invalidated {}", entry);
+        entry.release();
+        return true;
+    }
+
+    private RetainableByteBuffer store(RetainableByteBuffer content) throws IOException
+    {
+        Path file = Files.createTempFile(getStoreDirectory(), "entry-", ".cache");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer byteBuffer = content.getByteBuffer().slice();
+            while (byteBuffer.hasRemaining())
+            {
+                channel.write(byteBuffer);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Retainable.ReferenceCounter counter = new Retainable.ReferenceCounter()
+            {
+                @Override
+                public boolean release()
+                {
+                    boolean released = super.release();
+                    if (released)
+                        IO.delete(file);
+                    return released;
+                }
+            };
+            return RetainableByteBuffer.wrap(mapped, counter);
+        }
+        catch (Throwable x)
+        {
+            IO.delete(file);
+            throw x;
+        }
+    }
+
+    /**
+     * <p>Serves the given stored response to the given listeners.</p>
+     * <p>The reference to the entry retained by the caller is released
+     * when the response is complete.</p>
+     */
+    private void replay(HttpRequest request, ResponseListeners listeners, Entry entry, long now)
+    {
+        CachedResponse response = new CachedResponse(request, entry, now);
+        listeners.notifyBegin(response);
+        for (HttpField field : response.getHeaders())
+        {
+            listeners.notifyHeader(response, field);
+        }
+        listeners.notifyHeaders(response);
+        listeners.notifyContentSource(response, new ReplayContentSource(request, response, listeners, entry));
+    }
+
+    private void execute(Runnable task)
+    {
+        HttpClient httpClient = this.httpClient;
+        Executor executor = httpClient == null ? null : httpClient.getExecutor();
+        if (executor == null)
+            task.run();
+        else
+            executor.execute(task);
+    }
+
+    private static String key(Request request)
+    {
+        URI uri = request.getURI();
+        return uri == null ? null : uri.toString();
+    }
+
+    private static Map<String, String> directives(HttpFields headers)
+    {
+        List<String> values = headers.getCSV(HttpHeader.CACHE_CONTROL, false);
+        if (values.isEmpty())
+            return Map.of();
+        Map<String, String> result = new HashMap<>();
+        for (String value : values)
+        {
+            int equal = value.indexOf('=');
+            if (equal < 0)
+                result.put(StringUtil.asciiToLowerCase(value.trim()), "");
+            else
+                result.put(StringUtil.asciiToLowerCase(value.substring(0, equal).trim()), value.substring(equal + 1).trim());
+        }
+        return result;
+    }
+
+    private static Map<String, String> vary(HttpFields responseHeaders, Request request)
+    {
+        return vary(responseHeaders.getCSV(HttpHeader.VARY, false), request);
+    }
+
+    private static Map<String, String> vary(List<String> names, Request request)
+    {
+        if (names.isEmpty())
+            return Map.of();
+        Map<String, String> result = new HashMap<>();
+        for (String name : names)
+        {
+            result.put(StringUtil.asciiToLowerCase(name), String.join(",", request.getHeaders().getValuesList(name)));
+        }
+        return result;
+    }
+
+    /**
+     * @return the given delta-seconds in milliseconds, or -1 if the value is missing or invalid
+     */
+    private static long seconds(String value)
+    {
+        if (StringUtil.isBlank(value))
+            return -1;
+        try
+        {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        }
+        catch (NumberFormatException x)
+        {
+            return -1;
+        }
+    }
+
+    private static long date(HttpFields headers, HttpHeader header)
+    {
+        String value = headers.get(header);
+        return value == null ? -1 : HttpDateTime.parseToEpoch(value);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[shared=%b,size=%d,hits=%d,misses=%d]",
+            getClass().getSimpleName(),
+            hashCode(),
+            isShared(),
+            getSize(),
+            getHits(),
+            getMisses());
+    }
+
+    /**
+     * <p>A stored response.</p>
+     */
+    private static class Entry
+    {
+        private final String key;
+        private final HttpVersion version;
+        private final int status;
+        private final String reason;
+        private final HttpFields headers;
+        private final Map<String, String> directives;
+        private final Map<String, String> vary;
+        private final RetainableByteBuffer content;
+        private final boolean onDisk;
+        private final long requestTime;
+        private final long responseTime;
+        private final String etag;
+        private final String lastModified;
+
+        private Entry(String key, HttpVersion version, int status, String reason, HttpFields headers, Map<String, String> vary, RetainableByteBuffer content, boolean onDisk, long requestTime, long responseTime)
+        {
+            this.key = key;
+            this.version = version;
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.directives = directives(headers);
+            this.vary = vary;
+            this.content = content;
+            this.onDisk = onDisk;
+            this.requestTime = requestTime;
+            this.responseTime = responseTime;
+            this.etag = headers.get(HttpHeader.ETAG);
+            this.lastModified = headers.get(HttpHeader.LAST_MODIFIED);
+        }
+
+        /**
+         * <p>Returns a new entry with the headers updated from the given
+         * {@code 304} response, see RFC 9111, section 3.2.</p>
+         */
+        private Entry refresh(Response notModified, long requestTime, long responseTime)
+        {
+            HttpFields.Mutable fields = HttpFields.build(headers);
+            HttpFields updates = notModified.getHeaders();
+            for (HttpField field : updates)
+            {
+                if (field.getHeader() != HttpHeader.CONTENT_LENGTH)
+                    fields.remove(field.getName());
+            }
+            for (HttpField field : updates)
+            {
+                if (field.getHeader() != HttpHeader.CONTENT_LENGTH)
+                    fields.add(field);
+            }
+            content.retain();
+            return new Entry(key, version, status, reason, fields.asImmutable(), vary, content, onDisk, requestTime, responseTime);
+        }
+
+        private Entry with(HttpFields headers)
+        {
+            content.retain();
+            return new Entry(key, version, status, reason, headers, vary, content, onDisk, requestTime, responseTime);
+        }
+
+        private int getContentLength()
+        {
+            return content.remaining();
+        }
+
+        /**
+         * @return the freshness lifetime in milliseconds, see RFC 9111, section 4.2.1
+         */
+        private long getFreshnessLifetime(boolean shared)
+        {
+            long maxAge = shared ? seconds(directives.get("s-maxage")) : -1;
+            if (maxAge < 0)
+                maxAge = seconds(directives.get("max-age"));
+            if (maxAge >= 0)
+                return maxAge;
+            long date = getDate();
+            if (headers.contains(HttpHeader.EXPIRES))
+            {
+                // Invalid Expires values represent a time in the past.
+                long expires = date(headers, HttpHeader.EXPIRES);
+                return expires < 0 ? 0 : Math.max(0, expires - date);
+            }
+            // Heuristic freshness, see RFC 9111, section 4.2.2.
+            long lastModified = date(headers, HttpHeader.LAST_MODIFIED);
+            if (lastModified >= 0 && CACHEABLE_STATUSES.contains(status))
+                return Math.max(0, date - lastModified) / 10;
+            return 0;
+        }
+
+        /**
+         * @return the current age in milliseconds, see RFC 9111, section 4.2.3
+         */
+        private long getCurrentAge(long now)
+        {
+            long apparentAge = Math.max(0, responseTime - getDate());
+            long ageValue = Math.max(0, seconds(headers.get(HttpHeader.AGE)));
+            long correctedAge = ageValue + (responseTime - requestTime);
+            return Math.max(apparentAge, correctedAge) + (now - responseTime);
+        }
+
+        private long getDate()
+        {
+            long date = date(headers, HttpHeader.DATE);
+            return date < 0 ? responseTime : date;
+        }
+
+        private void retain()
+        {
+            content.retain();
+        }
+
+        private void release()
+        {
+            content.release();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s,status=%d,length=%d,disk=%b]", getClass().getSimpleName(), hashCode(), key, status, getContentLength(), onDisk);
+        }
+    }
+
+    /**
+     * <p>A response served from the cache.</p>
+     */
+    private static class CachedResponse extends HttpResponse
+    {
+        private CachedResponse(Request request, Entry entry, long now)
+        {
+            super(request);
+            version(entry.version).status(entry.status).reason(entry.reason);
+            for (HttpField field : entry.headers)
+            {
+                if (field.getHeader() != HttpHeader.AGE)
+                    addHeader(field);
+            }
+            addHeader(new HttpField(HttpHeader.AGE, String.valueOf(TimeUnit.MILLISECONDS.toSeconds(entry.getCurrentAge(now)))));
+        }
+    }
+
+    /**
+     * <p>The content of a response served from the cache.</p>
+     */
+    private static class ReplayContentSource implements Content.Source
+    {
+        private final AutoLock lock = new AutoLock();
+        private final SerializedInvoker invoker = new SerializedInvoker(ReplayContentSource.class);
+        private final Request request;
+        private final Response response;
+        private final ResponseListeners listeners;
+        private final Entry entry;
+        private boolean read;
+        private Content.Chunk terminated;
+        private Runnable demandCallback;
+
+        private ReplayContentSource(Request request, Response response, ResponseListeners listeners, Entry entry)
+        {
+            this.request = request;
+            this.response = response;
+            this.listeners = listeners;
+            this.entry = entry;
+        }
+
+        @Override
+        public long getLength()
+        {
+            return entry.getContentLength();
+        }
+
+        @Override
+        public Content.Chunk read()
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                if (terminated != null)
+                    return terminated;
+                if (!read)
+                {
+                    read = true;
+                    if (entry.getContentLength() > 0)
+                    {
+                        entry.retain();
+                        return Content.Chunk.asChunk(entry.content.getByteBuffer().slice(), false, entry.content);
+                    }
+                }
+                terminated = Content.Chunk.EOF;
+            }
+            listeners.notifySuccess(response);
+            listeners.notifyComplete(new Result(request, response));
+            entry.release();
+            return Content.Chunk.EOF;
+        }
+
+        @Override
+        public void demand(Runnable demandCallback)
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                if (this.demandCallback != null)
+                    throw new IllegalStateException("demand pending");
+                this.demandCallback = demandCallback;
+            }
+            invoker.run(this::invokeDemandCallback);
+        }
+
+        private void invokeDemandCallback()
+        {
+            Runnable demandCallback;
+            try (AutoLock ignored = lock.lock())
+            {
+                demandCallback = this.demandCallback;
+                this.demandCallback = null;
+            }
+            if (demandCallback == null)
+                return;
+            try
+            {
+                demandCallback.run();
+            }
+            catch (Throwable x)
+            {
+                fail(x);
+            }
+        }
+
+        @Override
+        public void fail(Throwable failure)
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                if (terminated != null)
+                    return;
+                terminated = Content.Chunk.from(failure);
+            }
+            listeners.notifyFailure(response, failure);
+            listeners.notifyComplete(new Result(request, null, response, failure));
+            entry.release();
+        }
+    }
+
+    /**
+     * <p>Accumulates the content of a response, and stores the response when it is complete.</p>
+     */
+    private class Tee implements Response.HeadersListener, Response.ContentListener, Response.CompleteListener
+    {
+        private final HttpRequest request;
+        private final String key;
+        private final long requestTime;
+        private Fill fill;
+        private ByteBufferAccumulator accumulator;
+
+        private Tee(HttpRequest request, String key, long requestTime, Fill fill)
+        {
+            this.request = request;
+            this.key = key;
+            this.requestTime = requestTime;
+            this.fill = fill;
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            // Responses served from the cache, or for redirected requests, are not stored.
+            if (response instanceof CachedResponse || !key.equals(key(response.getRequest())))
+                return;
+            if (!isStorable(request, response) || response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH) > getMaxEntrySize())
+            {
+                // Do not make the collapsed requests wait for a response that will not be stored.
+                pass();
+                return;
+            }
+            // Do not make the collapsed requests wait for a different variant.
+            Fill fill = this.fill;
+            if (fill != null)
+                fill.vary(response.getHeaders().getCSV(HttpHeader.VARY, false));
+            ByteBufferPool byteBufferPool = httpClient == null ? null : httpClient.getByteBufferPool();
+            accumulator = new ByteBufferAccumulator(byteBufferPool, false);
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content)
+        {
+            if (accumulator == null)
+                return;
+            if (accumulator.getLength() + content.remaining() > getMaxEntrySize())
+            {
+                accumulator.close();
+                accumulator = null;
+                pass();
+                return;
+            }
+            accumulator.copyBuffer(content.slice());
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            try
+            {
+                complete(result);
+            }
+            finally
+            {
+                // The collapsed requests are served from the cache, if the response has been stored.
+                release();
+            }
+        }
+
+        private void complete(Result result)
+        {
+            if (request.getAttributes().get(REVALIDATION_ATTRIBUTE) instanceof Revalidation revalidation)
+                revalidation.release();
+
+            ByteBufferAccumulator accumulator = this.accumulator;
+            this.accumulator = null;
+            if (accumulator == null)
+                return;
+            if (result.isFailed())
+            {
+                accumulator.close();
+                return;
+            }
+
+            Response response = result.getResponse();
+            RetainableByteBuffer content = accumulator.takeRetainableByteBuffer();
+            accumulator.close();
+            boolean onDisk = false;
+            if (getStoreDirectory() != null)
+            {
+                try
+                {
+                    RetainableByteBuffer stored = store(content);
+                    content.release();
+                    content = stored;
+                    onDisk = true;
+                }
+                catch (Throwable x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Could not store content on disk for {}", request, x);
+                }
+            }
+            HttpFields headers = storable(response.getHeaders());
+            put(new Entry(key, response.getVersion(), response.getStatus(), response.getReason(), headers, vary(headers, request), content, onDisk, requestTime, System.currentTimeMillis()));
+        }
+
+        private void pass()
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Not storable response, passing {} for {}", key, request);
+            HttpResponseCache.this.pass(key);
+            release();
+        }
+
+        private void release()
+        {
+            Fill fill = this.fill;
+            this.fill = null;
+            if (fill != null)
+            {
+                fills.remove(key, fill);
+                fill.complete();
+            }
+        }
+    }
+
+    /**
+     * <p>Handles the {@code 304} response to a revalidation request.</p>
+     */
+    private class RevalidationListener implements Response.Listener
+    {
+        @Override
+        public void onComplete(Result result)
+        {
+            HttpRequest request = (HttpRequest)result.getRequest();
+            HttpConversation conversation = request.getConversation();
+            conversation.updateResponseListeners(null);
+            ResponseListeners listeners = conversation.getResponseListeners();
+            Revalidation revalidation = (Revalidation)request.getAttributes().get(REVALIDATION_ATTRIBUTE);
+            Entry entry = revalidation.take();
+            if (result.isFailed() || entry == null)
+            {
+                if (entry != null)
+                    entry.release();
+                listeners.emitFailureComplete(result.isFailed() ? result : new Result(result, new IllegalStateException("No stored response")));
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            Entry refreshed = entry.refresh(result.getResponse(), revalidation.requestTime, now);
+            entry.release();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Revalidated {} for {}", refreshed, request);
+            revalidations.increment();
+            bytesSaved.add(refreshed.getContentLength());
+            // Store a copy that retains the content, as it may be evicted as soon as it
+            // is stored, and that does not keep the cookies sent to this requester.
+            put(refreshed.with(storable(refreshed.headers)));
+            replay(request, listeners, refreshed, now);
+        }
+    }
+
+    /**
+     * <p>The stored response that a request is revalidating.</p>
+     */
+    private static class Revalidation
+    {
+        private final AtomicReference<Entry> entry;
+        private final String key;
+        private final long requestTime;
+
+        private Revalidation(String key, Entry entry, long requestTime)
+        {
+            this.key = key;
+            this.entry = new AtomicReference<>(entry);
+            this.requestTime = requestTime;
+        }
+
+        private Entry take()
+        {
+            return entry.getAndSet(null);
+        }
+
+        private void release()
+        {
+            Entry entry = take();
+            if (entry != null)
+                entry.release();
+        }
+    }
+
+    /**
+     * <p>The requests waiting for the response of a concurrent request for the same resource.</p>
+     */
+    private class Fill
+    {
+        private final AutoLock lock = new AutoLock();
+        private final Map<Runnable, Request> waiters = new LinkedHashMap<>();
+        private final Request request;
+        private List<String> varyNames;
+        private boolean complete;
+
+        private Fill(Request request, List<String> varyNames)
+        {
+            this.request = request;
+            this.varyNames = varyNames;
+        }
+
+        private boolean await(Request request, Runnable waiter)
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                if (complete || !matches(request))
+                    return false;
+                waiters.put(waiter, request);
+                return true;
+            }
+        }
+
+        private boolean cancel(Runnable waiter)
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                return waiters.remove(waiter) != null;
+            }
+        }
+
+        /**
+         * <p>Updates the names of the request headers that select the response variant,
+         * and releases the waiting requests that do not match the request being sent.</p>
+         */
+        private void vary(List<String> varyNames)
+        {
+            List<Runnable> released = new ArrayList<>();
+            try (AutoLock ignored = lock.lock())
+            {
+                this.varyNames = varyNames;
+                for (Iterator<Map.Entry<Runnable, Request>> iterator = waiters.entrySet().iterator(); iterator.hasNext();)
+                {
+                    Map.Entry<Runnable, Request> waiter = iterator.next();
+                    if (!matches(waiter.getValue()))
+                    {
+                        iterator.remove();
+                        released.add(waiter.getKey());
+                    }
+                }
+            }
+            released.forEach(HttpResponseCache.this::execute);
+        }
+
+        private boolean matches(Request request)
+        {
+            assert lock.isHeldByCurrentThread();
+            return HttpResponseCache.vary(varyNames, this.request).equals(HttpResponseCache.vary(varyNames, request));
+        }
+
+        private void complete()
+        {
+            List<Runnable> waiters;
+            try (AutoLock ignored = lock.lock())
+            {
+                complete = true;
+                waiters = new ArrayList<>(this.waiters.keySet());
+                this.waiters.clear();
+            }
+            waiters.forEach(HttpResponseCache.this::execute);
+        }
+
+        @Override
+        public String toString()
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                return String.format("%s@%x[waiters=%d]", getClass().getSimpleName(), hashCode(), waiters.size());
+            }
+        }
+    }
+}
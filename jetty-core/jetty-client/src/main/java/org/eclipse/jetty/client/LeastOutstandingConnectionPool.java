@@ -0,0 +1,330 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.ConcurrentPool;
+import org.eclipse.jetty.util.NanoTime;
+import org.eclipse.jetty.util.Pool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link ConnectionPool} that provides the connection with the fewest
+ * outstanding exchanges, weighted by the observed latency of the connection.</p>
+ * <p>Each connection keeps an exponentially weighted moving average (EWMA)
+ * of the time between its acquisition and its release, that is the latency
+ * of the exchanges sent over the connection.
+ * The connection with the lowest {@code (latency + 1) * (outstanding + 1)}
+ * score is provided, so that connections towards slow servers, for example
+ * an HTTP/2 connection that landed on a slow backend behind a load balancer,
+ * are given fewer exchanges than connections towards fast servers.</p>
+ * <p>A connection whose latency is more than {@link #getDegradationFactor()}
+ * times the latency of the fastest connection is considered degraded:
+ * it is not provided while other connections are available, and it is
+ * removed from this pool and closed as soon as its outstanding exchanges
+ * complete, so that a new connection may be opened in its place.</p>
+ * <p>The statistics of each connection are available as a {@link ConnectionLatency}
+ * bean of this pool, and therefore exported via JMX along with the other
+ * components of {@link HttpClient}.</p>
+ * <p>Applications using this class should {@link #preCreateConnections(int) pre-create}
+ * the connections, otherwise the first connection, being multiplexed, may be the
+ * only one used.</p>
+ */
+@ManagedObject
+public class LeastOutstandingConnectionPool extends MultiplexConnectionPool
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LeastOutstandingConnectionPool.class);
+    // The min number of samples before the latency of a connection is trusted.
+    private static final int MIN_SAMPLES = 8;
+
+    private final Map<Connection, ConnectionLatency> latencies;
+    private volatile double latencyWeight = 0.2;
+    private volatile double degradationFactor = 4.0;
+
+    public LeastOutstandingConnectionPool(Destination destination, int maxConnections)
+    {
+        this(destination, maxConnections, 1);
+    }
+
+    public LeastOutstandingConnectionPool(Destination destination, int maxConnections, int initialMaxMultiplex)
+    {
+        this(destination, maxConnections, initialMaxMultiplex, new ConcurrentHashMap<>());
+    }
+
+    private LeastOutstandingConnectionPool(Destination destination, int maxConnections, int initialMaxMultiplex, Map<Connection, ConnectionLatency> latencies)
+    {
+        super(destination, new Pool.Factory<>()
+        {
+            @Override
+            public Pool<Connection> newPool()
+            {
+                return new ConcurrentPool<>(ConcurrentPool.StrategyType.FIRST, maxConnections, newMaxMultiplexer(initialMaxMultiplex));
+            }
+
+            @Override
+            public Pool<Connection> wrap(Pool<Connection> pool)
+            {
+                ConcurrentPool<Connection> concurrentPool = (ConcurrentPool<Connection>)pool;
+                return new Pool.Wrapper<>(pool)
+                {
+                    @Override
+                    public Pool.Entry<Connection> acquire()
+                    {
+                        return concurrentPool.acquireLowest(connection -> score(latencies.get(connection)));
+                    }
+                };
+            }
+        }, initialMaxMultiplex);
+        this.latencies = latencies;
+        // Replace the degraded connections that are closed
+        // with new connections, to process queued requests.
+        setMaximizeConnections(true);
+    }
+
+    /**
+     * @return the weight of the latest latency sample in the moving average
+     */
+    @ManagedAttribute("The weight, between 0 and 1, of the latest latency sample in the moving average")
+    public double getLatencyWeight()
+    {
+        return latencyWeight;
+    }
+
+    /**
+     * <p>Sets the weight of the latest latency sample in the moving average:
+     * larger values make the average react faster to changes in latency,
+     * smaller values make it more stable.</p>
+     *
+     * @param latencyWeight the weight of the latest latency sample, between 0 and 1
+     */
+    public void setLatencyWeight(double latencyWeight)
+    {
+        if (latencyWeight <= 0 || latencyWeight > 1)
+            throw new IllegalArgumentException("Invalid latency weight " + latencyWeight);
+        this.latencyWeight = latencyWeight;
+    }
+
+    /**
+     * @return the factor over the latency of the fastest connection
+     * above which a connection is considered degraded
+     */
+    @ManagedAttribute("The factor over the fastest connection latency above which a connection is degraded")
+    public double getDegradationFactor()
+    {
+        return degradationFactor;
+    }
+
+    /**
+     * <p>Sets the factor over the latency of the fastest connection above
+     * which a connection is considered degraded and therefore drained.</p>
+     * <p>Values less than or equal to {@code 1} disable the draining of
+     * degraded connections.</p>
+     *
+     * @param degradationFactor the degradation factor
+     */
+    public void setDegradationFactor(double degradationFactor)
+    {
+        this.degradationFactor = degradationFactor;
+    }
+
+    @ManagedAttribute(value = "The number of degraded connections", readonly = true)
+    public int getDegradedConnectionCount()
+    {
+        return (int)latencies.values().stream().filter(ConnectionLatency::isDegraded).count();
+    }
+
+    @Override
+    protected void onCreated(Connection connection)
+    {
+        ConnectionLatency latency = new ConnectionLatency(connection);
+        latencies.put(connection, latency);
+        addBean(latency);
+        super.onCreated(connection);
+    }
+
+    @Override
+    protected void onRemoved(Connection connection)
+    {
+        // The connection is null for entries that are terminated before being enabled.
+        ConnectionLatency latency = connection == null ? null : latencies.remove(connection);
+        if (latency != null)
+            removeBean(latency);
+        super.onRemoved(connection);
+    }
+
+    @Override
+    public Connection acquire(boolean create)
+    {
+        Connection connection = super.acquire(create);
+        if (connection != null)
+        {
+            ConnectionLatency latency = latencies.get(connection);
+            if (latency != null)
+                latency.onAcquired();
+        }
+        return connection;
+    }
+
+    @Override
+    public boolean release(Connection connection)
+    {
+        ConnectionLatency latency = latencies.get(connection);
+        if (latency != null && latency.onReleased(getLatencyWeight()) && isDegraded(latency))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Draining degraded {}", latency);
+            // Remove instead of release, so that the connection is closed
+            // by the caller, and a new connection may be opened.
+            return !remove(connection);
+        }
+        return super.release(connection);
+    }
+
+    /**
+     * <p>Checks whether the given connection is degraded, updating its degraded flag.</p>
+     *
+     * @param latency the connection latency to check
+     * @return whether the connection is degraded and has no outstanding exchanges
+     */
+    private boolean isDegraded(ConnectionLatency latency)
+    {
+        double factor = getDegradationFactor();
+        if (factor <= 1 || latency.getSamples() < MIN_SAMPLES)
+            return false;
+        long fastest = Long.MAX_VALUE;
+        for (ConnectionLatency other : latencies.values())
+        {
+            if (other != latency && !other.isDegraded() && other.getSamples() >= MIN_SAMPLES)
+                fastest = Math.min(fastest, other.latency);
+        }
+        // Only drain when there is another connection to fall back to.
+        boolean degraded = fastest != Long.MAX_VALUE && latency.latency > factor * Math.max(1, fastest);
+        latency.degraded = degraded;
+        return degraded && latency.getOutstanding() == 0;
+    }
+
+    private static long score(ConnectionLatency latency)
+    {
+        if (latency == null)
+            return 0;
+        if (latency.isDegraded())
+            return Long.MAX_VALUE;
+        return (latency.latency + 1) * (latency.getOutstanding() + 1);
+    }
+
+    /**
+     * <p>The latency statistics of a connection.</p>
+     * <p>As multiplexed exchanges may complete out of order, the latency
+     * sample recorded when an exchange completes is the average age of the
+     * outstanding exchanges, which is exact for non-multiplexed connections.</p>
+     */
+    @ManagedObject("The latency statistics of a connection")
+    public static class ConnectionLatency
+    {
+        private final AutoLock lock = new AutoLock();
+        private final long baseNanoTime = NanoTime.now();
+        private final Connection connection;
+        private int outstanding;
+        // The sum of the start times of the outstanding exchanges, relative to baseNanoTime.
+        private long startNanoTimes;
+        private long samples;
+        private volatile long latency;
+        private volatile boolean degraded;
+
+        private ConnectionLatency(Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        @ManagedAttribute(value = "The connection", readonly = true)
+        public String getConnection()
+        {
+            return connection.toString();
+        }
+
+        @ManagedAttribute(value = "The number of outstanding exchanges", readonly = true)
+        public int getOutstanding()
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                return outstanding;
+            }
+        }
+
+        @ManagedAttribute(value = "The number of latency samples", readonly = true)
+        public long getSamples()
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                return samples;
+            }
+        }
+
+        @ManagedAttribute(value = "The moving average of the latency in microseconds", readonly = true)
+        public long getLatency()
+        {
+            return TimeUnit.NANOSECONDS.toMicros(latency);
+        }
+
+        @ManagedAttribute(value = "Whether the connection is degraded", readonly = true)
+        public boolean isDegraded()
+        {
+            return degraded;
+        }
+
+        private void onAcquired()
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                ++outstanding;
+                startNanoTimes += NanoTime.since(baseNanoTime);
+            }
+        }
+
+        private boolean onReleased(double weight)
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                if (outstanding == 0)
+                    return false;
+                long startNanoTime = startNanoTimes / outstanding;
+                startNanoTimes -= startNanoTime;
+                --outstanding;
+                long sample = NanoTime.since(baseNanoTime) - startNanoTime;
+                latency = samples++ == 0 ? sample : (long)(latency + weight * (sample - latency));
+                return true;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[outstanding=%d,latency=%dus,samples=%d,degraded=%b,%s]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getOutstanding(),
+                getLatency(),
+                getSamples(),
+                isDegraded(),
+                connection);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A {@link ConnectionPool.Factory} that configures, per {@link Origin},
+ * the min number of idle connections that the {@link ConnectionPool}s
+ * created by another factory keep warm.</p>
+ * <p>Origins are matched by scheme, host and port, regardless of the
+ * protocol or tag of the {@link Origin} of the {@link Destination}.
+ * Origins that are not explicitly configured use the
+ * {@link #getDefaultMinIdleConnections() default} value.</p>
+ * <p>Connections are kept warm from when the destination is created,
+ * so applications that want warm connections from startup should
+ * resolve the destinations in advance, for example:</p>
+ * <pre>{@code
+ * WarmUpConnectionPoolFactory warmUp = new WarmUpConnectionPoolFactory(transport.getConnectionPoolFactory());
+ * warmUp.setMinIdleConnections(new Origin("https", "backend", 443), 4);
+ * transport.setConnectionPoolFactory(warmUp);
+ * httpClient.start();
+ *
+ * // Creates the destination and opens the warm connections.
+ * httpClient.resolveDestination(httpClient.newRequest("https://backend/"));
+ * }</pre>
+ *
+ * @see AbstractConnectionPool#setMinIdleConnections(int)
+ */
+public class WarmUpConnectionPoolFactory implements ConnectionPool.Factory
+{
+    private final Map<String, Integer> minIdleConnections = new ConcurrentHashMap<>();
+    private final ConnectionPool.Factory factory;
+    private int defaultMinIdleConnections;
+    private boolean warmUpHandshake;
+
+    public WarmUpConnectionPoolFactory(ConnectionPool.Factory factory)
+    {
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * @return the factory that creates the {@link ConnectionPool}s
+     */
+    public ConnectionPool.Factory getConnectionPoolFactory()
+    {
+        return factory;
+    }
+
+    /**
+     * @return the min number of idle connections for origins that are not explicitly configured
+     */
+    public int getDefaultMinIdleConnections()
+    {
+        return defaultMinIdleConnections;
+    }
+
+    public void setDefaultMinIdleConnections(int defaultMinIdleConnections)
+    {
+        this.defaultMinIdleConnections = defaultMinIdleConnections;
+    }
+
+    /**
+     * @param origin the origin
+     * @return the min number of idle connections kept warm for the given origin
+     */
+    public int getMinIdleConnections(Origin origin)
+    {
+        return minIdleConnections.getOrDefault(key(origin), getDefaultMinIdleConnections());
+    }
+
+    /**
+     * <p>Sets the min number of idle connections kept warm for the given origin.</p>
+     * <p>The value only applies to the {@link ConnectionPool}s created after
+     * this method is called.</p>
+     *
+     * @param origin the origin
+     * @param minIdleConnections the min number of idle connections
+     */
+    public void setMinIdleConnections(Origin origin, int minIdleConnections)
+    {
+        this.minIdleConnections.put(key(origin), minIdleConnections);
+    }
+
+    /**
+     * @return whether warm connections complete the TLS handshake
+     * @see AbstractConnectionPool#isWarmUpHandshake()
+     */
+    public boolean isWarmUpHandshake()
+    {
+        return warmUpHandshake;
+    }
+
+    public void setWarmUpHandshake(boolean warmUpHandshake)
+    {
+        this.warmUpHandshake = warmUpHandshake;
+    }
+
+    @Override
+    public ConnectionPool newConnectionPool(Destination destination)
+    {
+        ConnectionPool connectionPool = factory.newConnectionPool(destination);
+        if (connectionPool instanceof AbstractConnectionPool abstractConnectionPool)
+        {
+            abstractConnectionPool.setWarmUpHandshake(isWarmUpHandshake());
+            abstractConnectionPool.setMinIdleConnections(getMinIdleConnections(destination.getOrigin()));
+        }
+        return connectionPool;
+    }
+
+    private static String key(Origin origin)
+    {
+        return origin.getScheme() + "://" + origin.getAddress().asString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[default=%d,origins=%s,%s]", getClass().getSimpleName(), hashCode(), getDefaultMinIdleConnections(), minIdleConnections, factory);
+    }
+}
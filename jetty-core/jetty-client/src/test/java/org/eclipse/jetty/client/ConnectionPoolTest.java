@@ -16,13 +16,16 @@ package org.eclipse.jetty.client;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -52,8 +55,10 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
@@ -75,10 +80,11 @@ public class ConnectionPoolTest
         return pool;
     });
     private static final ConnectionPoolFactory ROUND_ROBIN = new ConnectionPoolFactory("round-robin", destination -> new RoundRobinConnectionPool(destination, destination.getHttpClient().getMaxConnectionsPerDestination()));
+    private static final ConnectionPoolFactory LEAST_OUTSTANDING = new ConnectionPoolFactory("least-outstanding", destination -> new LeastOutstandingConnectionPool(destination, destination.getHttpClient().getMaxConnectionsPerDestination()));
 
     public static Stream<ConnectionPoolFactory> pools()
     {
-        return Stream.of(DUPLEX, MULTIPLEX, RANDOM, DUPLEX_MAX_DURATION, ROUND_ROBIN);
+        return Stream.of(DUPLEX, MULTIPLEX, RANDOM, DUPLEX_MAX_DURATION, ROUND_ROBIN, LEAST_OUTSTANDING);
     }
 
     public static Stream<ConnectionPoolFactory> poolsNoRoundRobin()
@@ -703,6 +709,85 @@ public class ConnectionPoolTest
         assertThat(connectionPool.toString(), not(nullValue()));
     }
 
+    @Test
+    public void testWarmUpReplacesIdleTimedOutConnections() throws Exception
+    {
+        startServer(new EmptyServerHandler());
+        WarmUpConnectionPoolFactory warmUp = new WarmUpConnectionPoolFactory(DUPLEX.factory);
+        int minIdle = 2;
+        warmUp.setMinIdleConnections(new Origin("http", "localhost", connector.getLocalPort()), minIdle);
+        startClient(warmUp);
+        long idleTimeout = 500;
+        client.setIdleTimeout(idleTimeout);
+
+        AtomicInteger opened = new AtomicInteger();
+        client.addBean(new org.eclipse.jetty.io.Connection.Listener()
+        {
+            @Override
+            public void onOpened(org.eclipse.jetty.io.Connection connection)
+            {
+                opened.incrementAndGet();
+            }
+        });
+
+        Destination destination = client.resolveDestination(client.newRequest("localhost", connector.getLocalPort()));
+        AbstractConnectionPool connectionPool = (AbstractConnectionPool)destination.getConnectionPool();
+        await().atMost(5, TimeUnit.SECONDS).until(connectionPool::getIdleConnectionCount, is(minIdle));
+
+        // The idle timed out connections are replaced.
+        await().atMost(5, TimeUnit.SECONDS).until(opened::get, greaterThanOrEqualTo(2 * minIdle));
+        await().atMost(5, TimeUnit.SECONDS).until(connectionPool::getIdleConnectionCount, is(minIdle));
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort()).send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertThat(connectionPool.getWarmConnectionHits(), greaterThanOrEqualTo(1L));
+        assertEquals(0, connectionPool.getColdConnectionMisses());
+        assertThat(connectionPool.getWarmConnectionHitRate(), is(1.0));
+    }
+
+    @Test
+    public void testLeastOutstandingDrainsSlowConnection() throws Exception
+    {
+        // The server is slow on the first connection.
+        AtomicReference<String> slowConnection = new AtomicReference<>();
+        Map<String, AtomicInteger> requestsPerConnection = new ConcurrentHashMap<>();
+        // Both requests of a pair must be on the server at the same time,
+        // so that they are sent on different connections.
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        start(LEAST_OUTSTANDING.factory, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, Response response) throws Throwable
+            {
+                barrier.await(5, TimeUnit.SECONDS);
+                String connection = request.getConnectionMetaData().getId();
+                requestsPerConnection.computeIfAbsent(connection, k -> new AtomicInteger()).incrementAndGet();
+                slowConnection.compareAndSet(null, connection);
+                if (connection.equals(slowConnection.get()))
+                    Thread.sleep(50);
+            }
+        });
+        client.setMaxConnectionsPerDestination(2);
+
+        // Send pairs of concurrent requests, so that both connections are used.
+        int pairs = 16;
+        for (int i = 0; i < pairs; ++i)
+        {
+            CompletableFuture<ContentResponse> completable1 = new CompletableResponseListener(client.newRequest("localhost", connector.getLocalPort())).send();
+            CompletableFuture<ContentResponse> completable2 = new CompletableResponseListener(client.newRequest("localhost", connector.getLocalPort())).send();
+            assertEquals(HttpStatus.OK_200, completable1.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(HttpStatus.OK_200, completable2.get(5, TimeUnit.SECONDS).getStatus());
+        }
+
+        // The slow connection has been drained and replaced.
+        assertThat(requestsPerConnection.size(), greaterThanOrEqualTo(3));
+        assertThat(requestsPerConnection.get(slowConnection.get()).get(), lessThanOrEqualTo(pairs / 2));
+
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        LeastOutstandingConnectionPool connectionPool = (LeastOutstandingConnectionPool)destination.getConnectionPool();
+        assertThat(connectionPool.getBeans(LeastOutstandingConnectionPool.ConnectionLatency.class).size(), is(connectionPool.getConnectionCount()));
+    }
+
     public static class ConnectionPoolFactory
     {
         private final String name;
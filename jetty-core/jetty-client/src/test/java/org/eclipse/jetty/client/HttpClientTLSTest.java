@@ -377,6 +377,44 @@ public class HttpClientTLSTest
         assertTrue(clientLatch.await(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testWarmUpConnectionsCompleteHandshake() throws Exception
+    {
+        SslContextFactory.Server serverTLSFactory = createServerSslContextFactory();
+        startServer(serverTLSFactory, new EmptyServerHandler());
+
+        int minIdle = 2;
+        CountDownLatch serverLatch = new CountDownLatch(minIdle);
+        connector.addBean(new SslHandshakeListener()
+        {
+            @Override
+            public void handshakeSucceeded(Event event)
+            {
+                serverLatch.countDown();
+            }
+        });
+
+        SslContextFactory.Client clientTLSFactory = createClientSslContextFactory();
+        startClient(clientTLSFactory);
+        WarmUpConnectionPoolFactory warmUp = new WarmUpConnectionPoolFactory(client.getTransport().getConnectionPoolFactory());
+        warmUp.setMinIdleConnections(new Origin("https", "localhost", connector.getLocalPort()), minIdle);
+        warmUp.setWarmUpHandshake(true);
+        client.getTransport().setConnectionPoolFactory(warmUp);
+
+        // Resolving the destination opens the warm connections, without sending requests.
+        Destination destination = client.resolveDestination(client.newRequest("https://localhost:" + connector.getLocalPort()));
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        AbstractConnectionPool connectionPool = (AbstractConnectionPool)destination.getConnectionPool();
+        await().atMost(5, TimeUnit.SECONDS).until(connectionPool::getIdleConnectionCount, is(minIdle));
+
+        ContentResponse response = client.GET("https://localhost:" + connector.getLocalPort());
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertThat(connectionPool.getWarmConnectionHits(), Matchers.greaterThanOrEqualTo(1L));
+        assertEquals(0, connectionPool.getColdConnectionMisses());
+        // The warm connection that has been used is replaced.
+        await().atMost(5, TimeUnit.SECONDS).until(connectionPool::getIdleConnectionCount, Matchers.greaterThanOrEqualTo(minIdle));
+    }
+
     // Excluded in JDK 11+ because resumed sessions cannot be compared
     // using their session IDs even though they are resumed correctly.
     @EnabledForJreRange(max = JRE.JAVA_10)
@@ -0,0 +1,509 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(WorkDirExtension.class)
+public class HttpResponseCacheTest extends AbstractHttpClientServerTest
+{
+    private final AtomicInteger requests = new AtomicInteger();
+    private final HttpResponseCache cache = new HttpResponseCache(true);
+
+    private void start(Scenario scenario, Consumer<org.eclipse.jetty.server.Response> headers) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, org.eclipse.jetty.server.Response response) throws Throwable
+            {
+                requests.incrementAndGet();
+                headers.accept(response);
+                Content.Sink.write(response, true, UTF_8.encode("hello"));
+            }
+        });
+    }
+
+    private void start(Scenario scenario, EmptyServerHandler handler) throws Exception
+    {
+        startServer(scenario, handler);
+        startClient(scenario, client -> client.setHttpResponseCache(cache));
+    }
+
+    private ContentResponse send(Scenario scenario) throws Exception
+    {
+        return client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testFreshResponseIsServedFromCache(Scenario scenario) throws Exception
+    {
+        start(scenario, response -> response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60"));
+
+        ContentResponse response1 = send(scenario);
+        assertEquals(HttpStatus.OK_200, response1.getStatus());
+        assertEquals("hello", response1.getContentAsString());
+
+        ContentResponse response2 = send(scenario);
+        assertEquals(HttpStatus.OK_200, response2.getStatus());
+        assertEquals("hello", response2.getContentAsString());
+        assertNotNull(response2.getHeaders().get(HttpHeader.AGE));
+
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(5, cache.getBytesSaved());
+        assertEquals(5, cache.getMemorySize());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testNoStoreResponseIsNotCached(Scenario scenario) throws Exception
+    {
+        start(scenario, response -> response.getHeaders().put(HttpHeader.CACHE_CONTROL, "no-store, max-age=60"));
+
+        assertEquals("hello", send(scenario).getContentAsString());
+        assertEquals("hello", send(scenario).getContentAsString());
+
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getSize());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testPrivateResponseIsNotStoredBySharedCache(Scenario scenario) throws Exception
+    {
+        start(scenario, response -> response.getHeaders().put(HttpHeader.CACHE_CONTROL, "private, max-age=60"));
+
+        send(scenario);
+        send(scenario);
+
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testStaleResponseIsRevalidated(Scenario scenario) throws Exception
+    {
+        List<String> validators = new CopyOnWriteArrayList<>();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, org.eclipse.jetty.server.Response response) throws Throwable
+            {
+                requests.incrementAndGet();
+                response.getHeaders().put(HttpHeader.CACHE_CONTROL, "no-cache");
+                response.getHeaders().put(HttpHeader.ETAG, "\"v1\"");
+                String validator = request.getHeaders().get(HttpHeader.IF_NONE_MATCH);
+                validators.add(String.valueOf(validator));
+                if ("\"v1\"".equals(validator))
+                {
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                    Content.Sink.write(response, true, null);
+                }
+                else
+                {
+                    Content.Sink.write(response, true, UTF_8.encode("hello"));
+                }
+            }
+        });
+
+        assertEquals("hello", send(scenario).getContentAsString());
+        ContentResponse response = send(scenario);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("hello", response.getContentAsString());
+
+        assertEquals(List.of("null", "\"v1\""), validators);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(5, cache.getBytesSaved());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testConcurrentMissesAreCollapsed(Scenario scenario) throws Exception
+    {
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, org.eclipse.jetty.server.Response response) throws Throwable
+            {
+                requests.incrementAndGet();
+                assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+                response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60");
+                Content.Sink.write(response, true, UTF_8.encode("hello"));
+            }
+        });
+
+        int count = 4;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/resource")
+                .send(new BufferingResponseListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded() && "hello".equals(getContentAsString()))
+                            latch.countDown();
+                    }
+                });
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(cache::getCollapsedRequests, is((long)count - 1));
+        serverLatch.countDown();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals(count - 1, cache.getHits());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testCollapsedRequestsAreReleasedByUncacheableResponse(Scenario scenario) throws Exception
+    {
+        CountDownLatch headersLatch = new CountDownLatch(1);
+        CountDownLatch contentLatch = new CountDownLatch(1);
+        CountDownLatch passLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, org.eclipse.jetty.server.Response response) throws Throwable
+            {
+                int index = requests.incrementAndGet();
+                response.getHeaders().put(HttpHeader.CACHE_CONTROL, "no-store");
+                if (index == 1)
+                {
+                    assertTrue(headersLatch.await(5, TimeUnit.SECONDS));
+                    Content.Sink.write(response, false, UTF_8.encode("hel"));
+                    assertTrue(contentLatch.await(5, TimeUnit.SECONDS));
+                    Content.Sink.write(response, true, UTF_8.encode("lo"));
+                    return;
+                }
+                if (index > 4)
+                    assertTrue(passLatch.await(5, TimeUnit.SECONDS));
+                Content.Sink.write(response, true, UTF_8.encode("hello"));
+            }
+        });
+
+        int count = 4;
+        CountDownLatch leaderLatch = new CountDownLatch(1);
+        CountDownLatch followersLatch = new CountDownLatch(count - 1);
+        for (int i = 0; i < count; ++i)
+        {
+            CountDownLatch latch = i == 0 ? leaderLatch : followersLatch;
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/resource")
+                .send(new BufferingResponseListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded() && "hello".equals(getContentAsString()))
+                            latch.countDown();
+                    }
+                });
+            // Make sure the first request is the leader.
+            if (i == 0)
+                await().atMost(5, TimeUnit.SECONDS).until(requests::get, is(1));
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(cache::getCollapsedRequests, is((long)count - 1));
+
+        // The followers must not wait for the whole uncacheable response.
+        headersLatch.countDown();
+        assertTrue(followersLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(count, requests.get());
+        contentLatch.countDown();
+        assertTrue(leaderLatch.await(5, TimeUnit.SECONDS));
+
+        // The key is now uncacheable, so concurrent misses go upstream.
+        CountDownLatch passesLatch = new CountDownLatch(2);
+        for (int i = 0; i < 2; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/resource")
+                .send(result ->
+                {
+                    if (result.isSucceeded())
+                        passesLatch.countDown();
+                });
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(requests::get, is(count + 2));
+        passLatch.countDown();
+        assertTrue(passesLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(count - 1, cache.getCollapsedRequests());
+        assertEquals(0, cache.getSize());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testCollapsedRequestTimesOut(Scenario scenario) throws Exception
+    {
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, org.eclipse.jetty.server.Response response) throws Throwable
+            {
+                requests.incrementAndGet();
+                assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+                response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60");
+                Content.Sink.write(response, true, UTF_8.encode("hello"));
+            }
+        });
+
+        CountDownLatch leaderLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/resource")
+            .send(result ->
+            {
+                if (result.isSucceeded())
+                    leaderLatch.countDown();
+            });
+        await().atMost(5, TimeUnit.SECONDS).until(requests::get, is(1));
+
+        AtomicReference<Result> followerResult = new AtomicReference<>();
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/resource")
+            .timeout(500, TimeUnit.MILLISECONDS)
+            .send(followerResult::set);
+        await().atMost(5, TimeUnit.SECONDS).until(cache::getCollapsedRequests, is(1L));
+
+        // The follower fails when its own timeout expires, while the leader is still waiting.
+        await().atMost(5, TimeUnit.SECONDS).until(followerResult::get, notNullValue());
+        assertThat(followerResult.get().getFailure(), instanceOf(TimeoutException.class));
+        assertEquals(1, leaderLatch.getCount());
+
+        serverLatch.countDown();
+        assertTrue(leaderLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testCollapsedRequestsMatchVary(Scenario scenario) throws Exception
+    {
+        CountDownLatch headersLatch = new CountDownLatch(1);
+        CountDownLatch contentLatch = new CountDownLatch(1);
+        CountDownLatch waitLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(org.eclipse.jetty.server.Request request, org.eclipse.jetty.server.Response response) throws Throwable
+            {
+                int index = requests.incrementAndGet();
+                response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60");
+                response.getHeaders().put(HttpHeader.VARY, HttpHeader.ACCEPT_LANGUAGE.asString());
+                String language = request.getHeaders().get(HttpHeader.ACCEPT_LANGUAGE);
+                if (request.getHeaders().contains("X-Wait"))
+                    assertTrue(waitLatch.await(5, TimeUnit.SECONDS));
+                if (index == 1)
+                {
+                    // Wait before sending the headers, and before completing the response.
+                    assertTrue(headersLatch.await(5, TimeUnit.SECONDS));
+                    Content.Sink.write(response, false, UTF_8.encode(language.substring(0, 1)));
+                    assertTrue(contentLatch.await(5, TimeUnit.SECONDS));
+                    Content.Sink.write(response, true, UTF_8.encode(language.substring(1)));
+                    return;
+                }
+                Content.Sink.write(response, true, UTF_8.encode(language));
+            }
+        });
+
+        CountDownLatch itLatch = new CountDownLatch(2);
+        CountDownLatch deLatch = new CountDownLatch(1);
+        for (String language : List.of("it", "it", "de"))
+        {
+            CountDownLatch latch = "it".equals(language) ? itLatch : deLatch;
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/resource")
+                .headers(headers -> headers.put(HttpHeader.ACCEPT_LANGUAGE, language))
+                .timeout(5, TimeUnit.SECONDS)
+                .send(new BufferingResponseListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        if (result.isSucceeded() && language.equals(getContentAsString()))
+                            latch.countDown();
+                    }
+                });
+            // Make sure the first request is the leader.
+            if (requests.get() == 0)
+                await().atMost(5, TimeUnit.SECONDS).until(requests::get, is(1));
+        }
+
+        // The Vary header is not known yet, so the requests are collapsed.
+        await().atMost(5, TimeUnit.SECONDS).until(cache::getCollapsedRequests, is(2L));
+
+        // The request for a different variant is sent as soon as the Vary header arrives.
+        headersLatch.countDown();
+        assertTrue(deLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertEquals(2, itLatch.getCount());
+
+        contentLatch.countDown();
+        assertTrue(itLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.getHits());
+
+        // The Vary header of the stored variant is known, so a request for another
+        // variant is not collapsed, even before the response headers arrive.
+        CountDownLatch frLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/resource")
+            .headers(headers -> headers.put(HttpHeader.ACCEPT_LANGUAGE, "fr").put("X-Wait", "true"))
+            .timeout(5, TimeUnit.SECONDS)
+            .send(result ->
+            {
+                if (result.isSucceeded())
+                    frLatch.countDown();
+            });
+        await().atMost(5, TimeUnit.SECONDS).until(requests::get, is(3));
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/resource")
+            .headers(headers -> headers.put(HttpHeader.ACCEPT_LANGUAGE, "es"))
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals("es", response.getContentAsString());
+        assertEquals(2, cache.getCollapsedRequests());
+        waitLatch.countDown();
+        assertTrue(frLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testSharedCacheDoesNotReplayCookies(Scenario scenario) throws Exception
+    {
+        start(scenario, response ->
+        {
+            response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60");
+            response.getHeaders().put(HttpHeader.SET_COOKIE, "session=123");
+        });
+
+        ContentResponse response1 = send(scenario);
+        assertEquals("session=123", response1.getHeaders().get(HttpHeader.SET_COOKIE));
+
+        ContentResponse response2 = send(scenario);
+        assertEquals("hello", response2.getContentAsString());
+        assertNull(response2.getHeaders().get(HttpHeader.SET_COOKIE));
+
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testUnsafeRequestInvalidatesStoredResponse(Scenario scenario) throws Exception
+    {
+        start(scenario, response -> response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60"));
+
+        send(scenario);
+        send(scenario);
+        assertEquals(1, requests.get());
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .method(HttpMethod.POST)
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(0, cache.getSize());
+
+        send(scenario);
+        assertEquals(3, requests.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testContentStoredOnDisk(Scenario scenario, WorkDir workDir) throws Exception
+    {
+        Path directory = workDir.getEmptyPathDir();
+        cache.setStoreDirectory(directory);
+        start(scenario, response -> response.getHeaders().put(HttpHeader.CACHE_CONTROL, "max-age=60"));
+
+        send(scenario);
+        assertEquals("hello", send(scenario).getContentAsString());
+
+        assertEquals(1, requests.get());
+        assertEquals(0, cache.getMemorySize());
+        assertEquals(5, cache.getDiskSize());
+        Path file;
+        try (Stream<Path> files = Files.list(directory))
+        {
+            file = files.findFirst().orElse(null);
+        }
+        assertThat(file, notNullValue());
+
+        // Files are deleted when the responses are evicted.
+        cache.clear();
+        assertEquals(0, cache.getDiskSize());
+        try (Stream<Path> files = Files.list(directory))
+        {
+            assertNull(files.findFirst().orElse(null));
+        }
+        assertEquals("hello", new String(send(scenario).getContent(), UTF_8));
+        assertEquals(2, requests.get());
+    }
+}
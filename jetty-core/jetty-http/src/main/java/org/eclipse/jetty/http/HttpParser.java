@@ -17,10 +17,12 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http.HttpTokens.EndOfContent;
 import org.eclipse.jetty.util.BufferUtil;
@@ -276,6 +278,7 @@ public class HttpParser
     private ByteBuffer _contentChunk;
     private int _length;
     private final StringBuilder _string = new StringBuilder();
+    private boolean _fieldValueScanning = true;
 
     private static HttpCompliance compliance()
     {
@@ -359,6 +362,40 @@ public class HttpParser
         _fieldCache.setCaseSensitive(headerCacheCaseSensitive);
     }
 
+    public SharedFieldCache getSharedFieldCache()
+    {
+        return _fieldCache.getShared();
+    }
+
+    /**
+     * <p>Sets the cache of fields shared with other parsers, typically those of the same connector.</p>
+     * <p>The header cache of this parser is initialized with the shared fields, and the fields
+     * learned by this parser are added to the shared cache.</p>
+     *
+     * @param sharedFieldCache the shared cache of fields, or null for no shared cache
+     */
+    public void setSharedFieldCache(SharedFieldCache sharedFieldCache)
+    {
+        _fieldCache.setShared(sharedFieldCache);
+    }
+
+    /**
+     * @return whether runs of visible characters in field values are scanned many bytes at a time
+     */
+    public boolean isFieldValueScanning()
+    {
+        return _fieldValueScanning;
+    }
+
+    /**
+     * @param fieldValueScanning whether runs of visible characters in field values
+     * are scanned many bytes at a time, rather than parsed one byte at a time
+     */
+    public void setFieldValueScanning(boolean fieldValueScanning)
+    {
+        _fieldValueScanning = fieldValueScanning;
+    }
+
     protected void checkViolation(Violation violation) throws BadMessageException
     {
         if (violation.isAllowedBy(_complianceMode))
@@ -1204,6 +1241,12 @@ public class HttpParser
                         break;
 
                     default:
+                        // Learn other fields, only if their value is repeated.
+                        if (_field == null && _fieldCache.repeated(_headerString, _valueString))
+                        {
+                            _field = new LearnedField(_header, caseInsensitiveHeader(_headerString, _header.asString()), _valueString);
+                            addToFieldCache = true;
+                        }
                         break;
                 }
 
@@ -1216,6 +1259,12 @@ public class HttpParser
                     _fieldCache.add(_field);
                 }
             }
+            else if (_field == null && _fieldCache.repeated(_headerString, _valueString))
+            {
+                // Learn unknown fields, such as custom or tracing fields, if their value is repeated.
+                _field = new LearnedField(null, _headerString, _valueString);
+                _fieldCache.add(_field);
+            }
             if (LOG.isDebugEnabled())
                 LOG.debug("parsedHeader({}) header={}, headerString=[{}], valueString=[{}]", _field, _header, _headerString, _valueString);
             _handler.parsedHeader(_field != null ? _field : new HttpField(_header, _headerString, _valueString));
@@ -1264,6 +1313,41 @@ public class HttpParser
         // Process headers
         while ((_state == State.HEADER || _state == State.TRAILER) && buffer.hasRemaining())
         {
+            // Visible characters and spaces are always appended to a field value, so process runs of them at once.
+            if (_fieldState == FieldState.IN_VALUE && _fieldValueScanning && !_cr)
+            {
+                int position = buffer.position();
+                int limit = buffer.limit();
+                // Stop before the max header bytes, so that it is exceeded by the byte-at-a-time parsing.
+                if (_maxHeaderBytes > 0)
+                    limit = (int)Math.min(limit, position + (long)_maxHeaderBytes - _headerBytes);
+                int index = position;
+                while (index < limit)
+                {
+                    int length = HttpTokens.visibleCharsLength(buffer, index, limit);
+                    if (length > 0)
+                    {
+                        for (int end = index + length; index < end; ++index)
+                        {
+                            _string.append((char)buffer.get(index));
+                        }
+                        _length = _string.length();
+                    }
+                    // Spaces are appended, but do not extend the length, so that trailing spaces are trimmed.
+                    if (index == limit || buffer.get(index) != HttpTokens.SPACE)
+                        break;
+                    _string.append(' ');
+                    ++index;
+                }
+                if (index > position)
+                {
+                    if (_maxHeaderBytes > 0)
+                        _headerBytes += index - position;
+                    buffer.position(index);
+                    continue;
+                }
+            }
+
             // process each character
             HttpTokens.Token t = next(buffer);
             if (t == null)
@@ -1412,7 +1496,8 @@ public class HttpParser
                                             }
                                         }
 
-                                        if (isHeaderCacheCaseSensitive())
+                                        // Learned values, such as tokens, must match exactly even if the cache is case-insensitive.
+                                        if (isHeaderCacheCaseSensitive() || cachedField instanceof LearnedField)
                                         {
                                             String ev = BufferUtil.toString(buffer, buffer.position() + n.length() + 1, v.length(), StandardCharsets.ISO_8859_1);
                                             if (!v.equals(ev))
@@ -2206,10 +2291,14 @@ public class HttpParser
 
     private static class FieldCache
     {
+        private static final int MAX_REPEAT_CANDIDATES = 64;
+
         private int _size = 1024;
         private Index.Mutable<HttpField> _cache;
         private List<HttpField> _cacheableFields;
         private boolean _caseSensitive;
+        private Map<String, String> _lastValues;
+        private SharedFieldCache _shared;
 
         public int getCapacity()
         {
@@ -2245,6 +2334,16 @@ public class HttpParser
             return _cache;
         }
 
+        public SharedFieldCache getShared()
+        {
+            return _shared;
+        }
+
+        public void setShared(SharedFieldCache shared)
+        {
+            _shared = shared;
+        }
+
         public HttpField getBest(ByteBuffer buffer, int i, int remaining)
         {
             Index.Mutable<HttpField> cache = _cache;
@@ -2253,6 +2352,8 @@ public class HttpParser
 
         public void add(HttpField field)
         {
+            if (field instanceof LearnedField && _shared != null)
+                _shared.add(field);
             if (_cache == null)
             {
                 if (_cacheableFields == null)
@@ -2271,19 +2372,126 @@ public class HttpParser
             return isEnabled() && header != null && valueString != null && valueString.length() <= _size;
         }
 
+        /**
+         * @return whether the field has the same value as the last field with the same name
+         */
+        public boolean repeated(String name, String value)
+        {
+            if (!isEnabled() || name == null || value == null || name.length() + value.length() > _size)
+                return false;
+            if (_lastValues == null)
+                _lastValues = new HashMap<>();
+            String last = _lastValues.put(name, value);
+            if (value.equals(last))
+                return true;
+            // Bound the candidates, as the names of unknown fields are not bounded.
+            if (last == null && _lastValues.size() > MAX_REPEAT_CANDIDATES)
+                _lastValues.clear();
+            return false;
+        }
+
         private void prepare()
         {
-            if (_cache == null && _cacheableFields != null)
+            if (_cache == null && (_cacheableFields != null || _shared != null))
             {
                 _cache = Index.buildMutableVisibleAsciiAlphabet(_caseSensitive, _size);
-                for (HttpField f : _cacheableFields)
+                boolean full = false;
+                if (_cacheableFields != null)
                 {
-                    if (!_cache.put(f))
-                        break;
+                    for (HttpField f : _cacheableFields)
+                    {
+                        if (!_cache.put(f))
+                        {
+                            full = true;
+                            break;
+                        }
+                    }
+                    _cacheableFields.clear();
+                    _cacheableFields = null;
+                }
+                if (_shared != null && !full)
+                {
+                    for (HttpField f : _shared.getFields())
+                    {
+                        if (!_cache.put(f))
+                            break;
+                    }
                 }
-                _cacheableFields.clear();
-                _cacheableFields = null;
             }
         }
     }
+
+    /**
+     * <p>A field learned by a parser because its value was repeated.</p>
+     */
+    private static class LearnedField extends HttpField
+    {
+        private LearnedField(HttpHeader header, String name, String value)
+        {
+            super(header, name, value);
+        }
+    }
+
+    /**
+     * <p>A bounded cache of the fields learned by many parsers, such as the parsers
+     * of the connections of a connector, so that new connections can reuse the fields
+     * already learned by other connections, rather than learn them again.</p>
+     * <p>A field is learned by a parser when the field is received twice with the same value,
+     * for example by the connection of a client that sends the same authorization,
+     * user agent or custom fields with all its requests.</p>
+     */
+    public static class SharedFieldCache
+    {
+        private final AtomicReference<List<HttpField>> _fields = new AtomicReference<>(List.of());
+        private final int _capacity;
+
+        /**
+         * @param capacity the max number of fields in this cache
+         */
+        public SharedFieldCache(int capacity)
+        {
+            _capacity = capacity;
+        }
+
+        public int getCapacity()
+        {
+            return _capacity;
+        }
+
+        /**
+         * @return the fields in this cache, from the least recently to the most recently added
+         */
+        public List<HttpField> getFields()
+        {
+            return _fields.get();
+        }
+
+        private void add(HttpField field)
+        {
+            while (true)
+            {
+                List<HttpField> fields = _fields.get();
+                if (_capacity <= 0 || fields.contains(field))
+                    return;
+                // Evict the least recently added fields, as fields that are still repeated will be added again.
+                int from = Math.max(0, fields.size() + 1 - _capacity);
+                List<HttpField> newFields = new ArrayList<>(fields.size() + 1 - from);
+                newFields.addAll(fields.subList(from, fields.size()));
+                newFields.add(field);
+                if (_fields.compareAndSet(fields, List.copyOf(newFields)))
+                    return;
+            }
+        }
+
+        public void clear()
+        {
+            _fields.set(List.of());
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{size=%d/%d}", getClass().getSimpleName(), hashCode(), getFields().size(), _capacity);
+        }
+    }
 }
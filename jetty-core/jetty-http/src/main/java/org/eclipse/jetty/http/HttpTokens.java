@@ -13,6 +13,9 @@
 
 package org.eclipse.jetty.http;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.eclipse.jetty.util.TypeUtil;
 
 /**
@@ -26,6 +29,9 @@ public class HttpTokens
     static final byte CARRIAGE_RETURN = 0x0D;
     static final byte SPACE = 0x20;
     static final byte[] CRLF = {CARRIAGE_RETURN, LINE_FEED};
+    private static final long BYTES_0x01 = 0x0101010101010101L;
+    private static final long BYTES_0x21 = 0x2121212121212121L;
+    private static final long BYTES_0x80 = 0x8080808080808080L;
 
     public enum EndOfContent
     {
@@ -275,5 +281,40 @@ public class HttpTokens
     {
         return (c >= 256 || c < ' ');
     }
-}
 
+    /**
+     * <p>Returns the length of the run of visible characters ({@code %x21-7E}) that
+     * starts at the given index of the buffer, examining the bytes 8 at a time.</p>
+     *
+     * @param buffer the buffer to scan
+     * @param from the index of the first byte to scan
+     * @param to the index after the last byte to scan
+     * @return the number of visible characters from the {@code from} index
+     */
+    static int visibleCharsLength(ByteBuffer buffer, int from, int to)
+    {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int index = from;
+        while (to - index >= Long.BYTES)
+        {
+            long word = buffer.getLong(index);
+            // The first byte must be the least significant, as the borrows and
+            // carries below propagate from a non-visible byte to the bytes after it.
+            if (bigEndian)
+                word = Long.reverseBytes(word);
+            // The high bit of each byte is set if the byte is < 0x21, or > 0x7E.
+            long invisible = (((word - BYTES_0x21) & ~word) | (word + BYTES_0x01) | word) & BYTES_0x80;
+            if (invisible != 0)
+                return index - from + (Long.numberOfTrailingZeros(invisible) >>> 3);
+            index += Long.BYTES;
+        }
+        while (index < to)
+        {
+            int b = buffer.get(index) & 0xFF;
+            if (b < 0x21 || b > 0x7E)
+                break;
+            ++index;
+        }
+        return index - from;
+    }
+}
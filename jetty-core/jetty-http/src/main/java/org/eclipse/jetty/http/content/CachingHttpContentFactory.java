@@ -146,7 +146,11 @@ public class CachingHttpContentFactory implements HttpContent.Factory
         _useDirectByteBuffers = useDirectByteBuffers;
     }
 
-    private void shrinkCache()
+    /**
+     * <p>Evicts entries until the cache fits within the configured limits.</p>
+     * <p>Called after an entry has been added to the cache, and after the limits have changed.</p>
+     */
+    protected void shrinkCache()
     {
         // While we need to shrink
         int numCacheEntries = _cache.size();
@@ -0,0 +1,500 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http.content;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>A {@link ValidatingCachingHttpContentFactory} that evicts entries in constant time,
+ * using the W-TinyLFU admission and eviction policy.</p>
+ * <p>New entries enter a small LRU <em>window</em>; entries evicted from the window
+ * are only admitted in the <em>main</em> segmented LRU (made of a <em>probation</em>
+ * and a <em>protected</em> segment) if they have been requested more frequently than
+ * the entry that would be evicted in their place.
+ * Request frequencies are approximated with a compact count-min sketch that is
+ * periodically aged, so that a burst of requests for entries that are requested
+ * only once (for example, a crawler scanning all the resources) does not evict
+ * the entries that are requested often.</p>
+ * <p>Accesses to cached entries are recorded on a best-effort basis: if another
+ * thread is updating the policy, the access is not recorded rather than waiting.</p>
+ */
+@ManagedObject("W-TinyLFU HttpContent cache")
+public class TinyLfuCachingHttpContentFactory extends ValidatingCachingHttpContentFactory
+{
+    private final AutoLock _lock = new AutoLock();
+    private final Map<String, Node> _nodes = new HashMap<>();
+    private final Segment _window = new Segment();
+    private final Segment _probation = new Segment();
+    private final Segment _protected = new Segment();
+    private final FrequencySketch _sketch = new FrequencySketch();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _rejections = new LongAdder();
+    private long _bytes;
+
+    /**
+     * @param authority the wrapped {@link HttpContent.Factory} to use.
+     * @param validationPeriod time between filesystem checks in ms to see if an {@link HttpContent} is still valid (-1 never validate, 0 always validate).
+     * @param bufferPool the {@link ByteBufferPool} to use.
+     */
+    public TinyLfuCachingHttpContentFactory(@Name("authority") HttpContent.Factory authority,
+                                            @Name("validationPeriod") long validationPeriod,
+                                            @Name("bufferPool") ByteBufferPool bufferPool)
+    {
+        this(authority, validationPeriod, bufferPool, null, -1, -1);
+    }
+
+    /**
+     * @param authority the wrapped {@link HttpContent.Factory} to use.
+     * @param validationPeriod time between filesystem checks in ms to see if an {@link HttpContent} is still valid (-1 never validate, 0 always validate).
+     * @param bufferPool the {@link ByteBufferPool} to use.
+     * @param scheduler scheduler to use for the sweeper, can be null to not use sweeper.
+     * @param sweepPeriod time between runs of the sweeper in ms (if 0 never sweep for invalid entries).
+     * @param idleTimeout amount of time in ms an entry can be unused before evicted by the sweeper (if 0 never evict unused entries).
+     */
+    public TinyLfuCachingHttpContentFactory(@Name("authority") HttpContent.Factory authority,
+                                            @Name("validationPeriod") long validationPeriod,
+                                            @Name("byteBufferPool") ByteBufferPool bufferPool,
+                                            @Name("scheduler") Scheduler scheduler,
+                                            @Name("sweepPeriod") long sweepPeriod,
+                                            @Name("idleTimeout") long idleTimeout)
+    {
+        super(authority, validationPeriod, bufferPool, scheduler, sweepPeriod, idleTimeout);
+    }
+
+    @ManagedAttribute("The number of requests for cached content")
+    public long getCacheHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of requests for content that was not cached")
+    public long getCacheMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of entries evicted to make room for other entries")
+    public long getCacheEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedAttribute("The number of new entries evicted because less frequently requested than existing entries")
+    public long getCacheRejections()
+    {
+        return _rejections.sum();
+    }
+
+    @ManagedAttribute("The ratio of requests for cached content")
+    public double getCacheHitRatio()
+    {
+        long hits = getCacheHits();
+        long total = hits + getCacheMisses();
+        return total == 0 ? 0.0D : (double)hits / total;
+    }
+
+    @Override
+    @ManagedAttribute("The number of cached entries")
+    public int getCachedFiles()
+    {
+        return super.getCachedFiles();
+    }
+
+    @Override
+    @ManagedAttribute("The number of bytes occupied by the cached entries")
+    public long getCachedSize()
+    {
+        return super.getCachedSize();
+    }
+
+    @Override
+    @ManagedAttribute("The maximum number of cached entries")
+    public int getMaxCachedFiles()
+    {
+        return super.getMaxCachedFiles();
+    }
+
+    @Override
+    @ManagedAttribute("The maximum number of bytes occupied by the cached entries")
+    public long getMaxCacheSize()
+    {
+        return super.getMaxCacheSize();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+        _rejections.reset();
+    }
+
+    @Override
+    @ManagedOperation(value = "Evicts all the cached entries", impact = "ACTION")
+    public void flushCache()
+    {
+        super.flushCache();
+    }
+
+    @Override
+    public HttpContent getContent(String path) throws IOException
+    {
+        int hash = FrequencySketch.spread(path.hashCode());
+        if (getCache().containsKey(path))
+        {
+            _hits.increment();
+            // Do not wait to record the access if the lock is contended.
+            try (AutoLock l = _lock.tryLock())
+            {
+                if (l.isHeldByCurrentThread())
+                {
+                    _sketch.increment(hash);
+                    Node node = _nodes.get(path);
+                    if (node != null)
+                        onAccess(node);
+                }
+            }
+        }
+        else
+        {
+            _misses.increment();
+            try (AutoLock ignored = _lock.lock())
+            {
+                _sketch.increment(hash);
+            }
+        }
+        return super.getContent(path);
+    }
+
+    @Override
+    protected CachingHttpContent newCachedContent(String p, HttpContent httpContent)
+    {
+        return link(super.newCachedContent(p, httpContent));
+    }
+
+    @Override
+    protected CachingHttpContent newNotFoundContent(String p)
+    {
+        return link(super.newNotFoundContent(p));
+    }
+
+    private CachingHttpContent link(CachingHttpContent content)
+    {
+        try (AutoLock ignored = _lock.lock())
+        {
+            Node node = new Node(content);
+            Node previous = _nodes.put(content.getKey(), node);
+            if (previous != null)
+                unlink(previous);
+            _window.addLast(node);
+            _bytes += node._size;
+        }
+        return content;
+    }
+
+    @Override
+    protected void removeFromCache(CachingHttpContent content)
+    {
+        try (AutoLock ignored = _lock.lock())
+        {
+            Node node = _nodes.get(content.getKey());
+            if (node != null && node._content == content)
+            {
+                _nodes.remove(content.getKey());
+                unlink(node);
+            }
+        }
+        super.removeFromCache(content);
+    }
+
+    @Override
+    protected void shrinkCache()
+    {
+        // Select the victims while holding the lock, but remove them outside
+        // of the lock, as removal from the cache map may take other locks.
+        List<CachingHttpContent> victims = null;
+        try (AutoLock ignored = _lock.lock())
+        {
+            int maxEntries = Math.max(1, getMaxCachedFiles());
+            long maxBytes = getMaxCacheSize();
+            _sketch.ensureCapacity(maxEntries);
+            int windowCapacity = Math.max(1, maxEntries / 100);
+            int protectedCapacity = (maxEntries - windowCapacity) * 8 / 10;
+
+            // Entries that overflow the window become candidates for the main space.
+            while (_window._count > windowCapacity)
+            {
+                Node candidate = _window._head._next;
+                _window.remove(candidate);
+                _probation.addLast(candidate);
+            }
+
+            while (_nodes.size() > maxEntries || _bytes > maxBytes)
+            {
+                Node victim = selectVictim();
+                if (victim == null)
+                    break;
+                _nodes.remove(victim._content.getKey());
+                unlink(victim);
+                if (victims == null)
+                    victims = new ArrayList<>();
+                victims.add(victim._content);
+            }
+
+            while (_protected._count > protectedCapacity)
+            {
+                Node demoted = _protected._head._next;
+                _protected.remove(demoted);
+                _probation.addLast(demoted);
+            }
+        }
+
+        if (victims != null)
+        {
+            for (CachingHttpContent victim : victims)
+            {
+                super.removeFromCache(victim);
+            }
+        }
+    }
+
+    private Node selectVictim()
+    {
+        assert _lock.isHeldByCurrentThread();
+
+        // The least recently used entry of the probation segment competes with the
+        // most recently admitted candidate, and the least frequently used is evicted.
+        if (_probation._count > 1)
+        {
+            Node victim = _probation._head._next;
+            Node candidate = _probation._head._prev;
+            int victimFrequency = _sketch.frequency(FrequencySketch.spread(victim._content.getKey().hashCode()));
+            int candidateFrequency = _sketch.frequency(FrequencySketch.spread(candidate._content.getKey().hashCode()));
+            if (candidateFrequency > victimFrequency)
+            {
+                _evictions.increment();
+                return victim;
+            }
+            _rejections.increment();
+            return candidate;
+        }
+
+        _evictions.increment();
+        if (_probation._count > 0)
+            return _probation._head._next;
+        if (_protected._count > 0)
+            return _protected._head._next;
+        if (_window._count > 0)
+            return _window._head._next;
+        return null;
+    }
+
+    private void onAccess(Node node)
+    {
+        assert _lock.isHeldByCurrentThread();
+
+        if (node._segment == _probation)
+        {
+            // Promote to the protected segment; overflow is demoted by shrinkCache().
+            _probation.remove(node);
+            _protected.addLast(node);
+        }
+        else
+        {
+            Segment segment = node._segment;
+            segment.remove(node);
+            segment.addLast(node);
+        }
+    }
+
+    private void unlink(Node node)
+    {
+        assert _lock.isHeldByCurrentThread();
+        if (node._segment != null)
+        {
+            node._segment.remove(node);
+            _bytes -= node._size;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        try (AutoLock ignored = _lock.tryLock())
+        {
+            return String.format("%s@%x[entries=%d,window=%d,probation=%d,protected=%d,bytes=%d]",
+                getClass().getSimpleName(), hashCode(), _nodes.size(), _window._count, _probation._count, _protected._count, _bytes);
+        }
+    }
+
+    private static class Node
+    {
+        private final CachingHttpContent _content;
+        private final long _size;
+        private Segment _segment;
+        private Node _prev;
+        private Node _next;
+
+        private Node()
+        {
+            this(null, 0);
+        }
+
+        private Node(CachingHttpContent content)
+        {
+            this(content, content.getBytesOccupied());
+        }
+
+        private Node(CachingHttpContent content, long size)
+        {
+            _content = content;
+            _size = size;
+        }
+    }
+
+    /**
+     * <p>An intrusive, circular, doubly linked list of {@link Node}s,
+     * from the least recently used to the most recently used.</p>
+     */
+    private static class Segment
+    {
+        private final Node _head = new Node();
+        private int _count;
+
+        private Segment()
+        {
+            _head._prev = _head;
+            _head._next = _head;
+        }
+
+        private void addLast(Node node)
+        {
+            node._segment = this;
+            node._prev = _head._prev;
+            node._next = _head;
+            _head._prev._next = node;
+            _head._prev = node;
+            _count++;
+        }
+
+        private void remove(Node node)
+        {
+            node._prev._next = node._next;
+            node._next._prev = node._prev;
+            node._prev = null;
+            node._next = null;
+            node._segment = null;
+            _count--;
+        }
+    }
+
+    /**
+     * <p>A count-min sketch of 4-bit counters that approximates the frequency
+     * of requests for a key, halving all the counters periodically so that
+     * older requests weigh less than recent requests.</p>
+     */
+    static class FrequencySketch
+    {
+        private static final long[] SEEDS = {0x97CB3127C3A5C85CL, 0xBE98F273B492B66FL, 0x2F90404F9AE16A3BL, 0x84222325CBF29CE4L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private long[] _table = new long[16];
+        private int _sampleSize = 160;
+        private int _additions;
+
+        static int spread(int hash)
+        {
+            hash ^= hash >>> 16;
+            hash *= 0x45D9F3B;
+            return hash ^ (hash >>> 16);
+        }
+
+        void ensureCapacity(int maxEntries)
+        {
+            int length = Integer.highestOneBit(Math.max(16, Math.min(maxEntries, 1 << 24)) - 1) << 1;
+            if (length <= _table.length)
+                return;
+            _table = new long[length];
+            _sampleSize = 10 * length;
+            _additions = 0;
+        }
+
+        int frequency(int hash)
+        {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; ++i)
+            {
+                int shift = shift(hash, i);
+                frequency = Math.min(frequency, (int)((_table[index(hash, i)] >>> shift) & 0xF));
+            }
+            return frequency;
+        }
+
+        void increment(int hash)
+        {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; ++i)
+            {
+                int index = index(hash, i);
+                long mask = 0xFL << shift(hash, i);
+                if ((_table[index] & mask) != mask)
+                {
+                    _table[index] += 1L << shift(hash, i);
+                    added = true;
+                }
+            }
+            if (added && ++_additions >= _sampleSize)
+                reset();
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < _table.length; ++i)
+            {
+                _table[i] = (_table[i] >>> 1) & RESET_MASK;
+            }
+            _additions /= 2;
+        }
+
+        private int index(int hash, int depth)
+        {
+            long h = (hash + SEEDS[depth]) * SEEDS[depth];
+            h += h >>> 32;
+            return (int)h & (_table.length - 1);
+        }
+
+        private int shift(int hash, int depth)
+        {
+            // Each long holds 16 counters, 4 for each depth.
+            int counter = (depth << 2) + ((hash >>> (depth << 3)) & 3);
+            return counter << 2;
+        }
+    }
+}
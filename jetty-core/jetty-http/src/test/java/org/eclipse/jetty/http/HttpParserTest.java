@@ -14,8 +14,10 @@
 package org.eclipse.jetty.http;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.stream.Stream;
@@ -43,8 +45,10 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -2614,6 +2618,184 @@ public class HttpParserTest
         assertEquals("431", _bad);
     }
 
+    @Test
+    public void testVisibleCharsLength()
+    {
+        for (ByteOrder order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN))
+        {
+            for (int b = 0; b < 256; b++)
+            {
+                for (int position = 0; position < 20; position++)
+                {
+                    byte[] bytes = new byte[24];
+                    Arrays.fill(bytes, (byte)'a');
+                    bytes[position] = (byte)b;
+                    // The bytes after the tested one must not affect the result.
+                    bytes[position + 1] = (byte)(0xFF - b);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+                    for (int from : new int[]{0, 3})
+                    {
+                        for (int to : new int[]{5, 17, bytes.length})
+                        {
+                            int expected = from;
+                            while (expected < to && bytes[expected] >= 0x21 && bytes[expected] <= 0x7E)
+                            {
+                                expected++;
+                            }
+                            assertEquals(expected - from, HttpTokens.visibleCharsLength(buffer, from, to), "b=" + b + " position=" + position + " from=" + from + " to=" + to);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\r\n", "\n"})
+    public void testFieldValueScanning(String eoln)
+    {
+        String request = "GET / HTTP/1.1" + eoln +
+            "Host: localhost" + eoln +
+            "X-Forwarded-For: 10.0.0.1, 192.168.100.200,\t172.16.0.1  " + eoln +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8" + eoln +
+            "Cookie: session=0123456789abcdefghijklmnopqrstuvwxyz; theme=d\u00E9j\u00E0-vu" + eoln +
+            "X-Empty:" + eoln +
+            "X-Short: a" + eoln +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0" + eoln +
+            eoln;
+
+        List<HttpField> expected = null;
+        for (boolean scanning : List.of(false, true))
+        {
+            // Split the request at every position, to parse values that span buffers.
+            for (int split = 0; split < request.length(); split++)
+            {
+                HttpParser parser = new HttpParser((HttpParser.RequestHandler)new Handler());
+                parser.setFieldValueScanning(scanning);
+                ByteBuffer buffer = BufferUtil.toBuffer(request, StandardCharsets.ISO_8859_1);
+                ByteBuffer first = buffer.slice(0, split);
+                while (first.hasRemaining() && !parser.isState(State.END))
+                {
+                    parser.parseNext(first);
+                }
+                buffer.position(split);
+                while (buffer.hasRemaining() && !parser.isState(State.END))
+                {
+                    parser.parseNext(buffer);
+                }
+
+                assertNull(_bad);
+                assertTrue(_messageCompleted);
+                if (expected == null)
+                    expected = List.copyOf(_fields);
+                else
+                    assertEquals(expected, _fields, "scanning=" + scanning + " split=" + split);
+            }
+        }
+        assertThat(expected.get(1).getValue(), is("10.0.0.1, 192.168.100.200,\t172.16.0.1"));
+        assertThat(expected.get(3).getValue(), is("session=0123456789abcdefghijklmnopqrstuvwxyz; theme=d\u00E9j\u00E0-vu"));
+        assertThat(expected.get(4).getValue(), is(""));
+    }
+
+    @Test
+    public void testFieldValueScanningMaxHeaderBytes()
+    {
+        String request = """
+            GET / HTTP/1.1\r
+            Host: localhost\r
+            X-Large-Header: 0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz\r
+            Connection: close\r
+            \r
+            """;
+        for (int maxHeaderBytes = 16; maxHeaderBytes < request.length(); maxHeaderBytes++)
+        {
+            String[] bad = new String[2];
+            int[] remaining = new int[2];
+            for (int i = 0; i < 2; i++)
+            {
+                _bad = null;
+                HttpParser parser = new HttpParser((HttpParser.RequestHandler)new Handler(), maxHeaderBytes);
+                parser.setFieldValueScanning(i == 1);
+                ByteBuffer buffer = BufferUtil.toBuffer(request);
+                parseAll(parser, buffer);
+                bad[i] = _bad;
+                remaining[i] = buffer.remaining();
+            }
+            assertEquals(bad[0], bad[1], "maxHeaderBytes=" + maxHeaderBytes);
+            assertEquals(remaining[0], remaining[1], "maxHeaderBytes=" + maxHeaderBytes);
+        }
+    }
+
+    private HttpField parseField(HttpParser parser, String name, String... fields)
+    {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\nHost: localhost\r\n");
+        for (String field : fields)
+        {
+            request.append(field).append("\r\n");
+        }
+        request.append("\r\n");
+        parseAll(parser, BufferUtil.toBuffer(request.toString()));
+        assertNull(_bad);
+        assertTrue(_messageCompleted);
+        return _fields.stream().filter(f -> f.is(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void testLearnedFieldCache()
+    {
+        HttpParser parser = new HttpParser((HttpParser.RequestHandler)new Handler());
+
+        // Fields are learned when their value is repeated, then reused.
+        HttpField client0 = parseField(parser, "X-Client", "X-Client: internal-service", "X-Request-Id: 0");
+        HttpField client1 = parseField(parser, "X-Client", "X-Client: internal-service", "X-Request-Id: 1");
+        HttpField client2 = parseField(parser, "X-Client", "X-Client: internal-service", "X-Request-Id: 2");
+        HttpField client3 = parseField(parser, "X-Client", "X-Client: internal-service", "X-Request-Id: 3");
+        assertThat(client0, not(sameInstance(client1)));
+        assertThat(client2, sameInstance(client1));
+        assertThat(client3, sameInstance(client1));
+        assertThat(client3.getValue(), is("internal-service"));
+
+        // Fields with values that are not repeated are not learned.
+        assertThat(parseField(parser, "X-Request-Id", "X-Request-Id: 4").getValue(), is("4"));
+        assertThat(parseField(parser, "X-Request-Id", "X-Request-Id: 5").getValue(), is("5"));
+
+        // Known fields are learned too.
+        HttpField type0 = parseField(parser, "Content-Type", "Content-Type: application/vnd.api+json");
+        HttpField type1 = parseField(parser, "Content-Type", "Content-Type: application/vnd.api+json");
+        HttpField type2 = parseField(parser, "Content-Type", "Content-Type: application/vnd.api+json");
+        assertThat(type0, not(sameInstance(type1)));
+        assertThat(type2, sameInstance(type1));
+        assertThat(type2.getHeader(), is(HttpHeader.CONTENT_TYPE));
+
+        // Learned values must match exactly, even if the cache is case-insensitive.
+        assertThat(parseField(parser, "X-Client", "X-Client: INTERNAL-service").getValue(), is("INTERNAL-service"));
+        assertThat(parseField(parser, "X-Client", "X-Client: internal-service-2").getValue(), is("internal-service-2"));
+        assertThat(parseField(parser, "X-Client", "X-Client: internal-service"), sameInstance(client1));
+    }
+
+    @Test
+    public void testSharedFieldCache()
+    {
+        HttpParser.SharedFieldCache shared = new HttpParser.SharedFieldCache(2);
+
+        HttpParser parser1 = new HttpParser((HttpParser.RequestHandler)new Handler());
+        parser1.setSharedFieldCache(shared);
+        parseField(parser1, "X-Client", "X-Client: internal-service", "X-Tenant: acme");
+        HttpField client = parseField(parser1, "X-Client", "X-Client: internal-service", "X-Tenant: acme");
+        HttpField tenant = _fields.stream().filter(f -> f.is("X-Tenant")).findFirst().orElseThrow();
+        assertThat(shared.getFields(), contains(client, tenant));
+
+        // A new parser reuses the fields learned by the other parser.
+        HttpParser parser2 = new HttpParser((HttpParser.RequestHandler)new Handler());
+        parser2.setSharedFieldCache(shared);
+        assertThat(parseField(parser2, "X-Client", "X-Client: internal-service"), sameInstance(client));
+
+        // The least recently learned fields are evicted.
+        parseField(parser1, "X-Zone", "X-Zone: eu-west-1");
+        HttpField zone = parseField(parser1, "X-Zone", "X-Zone: eu-west-1");
+        assertThat(shared.getFields(), contains(tenant, zone));
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {"\r\n", "\n"})
     @SuppressWarnings("ReferenceEquality")
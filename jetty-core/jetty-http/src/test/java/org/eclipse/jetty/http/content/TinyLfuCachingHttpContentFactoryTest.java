@@ -0,0 +1,147 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http.content;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@ExtendWith(WorkDirExtension.class)
+public class TinyLfuCachingHttpContentFactoryTest
+{
+    public WorkDir workDir;
+    private HttpContent.Factory authority;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        Path dir = workDir.getEmptyPathDir();
+        for (int i = 0; i < 1000; ++i)
+        {
+            Files.writeString(dir.resolve("file" + i + ".txt"), "content of file " + i);
+        }
+        authority = new ResourceHttpContentFactory(ResourceFactory.root().newResource(dir), MimeTypes.DEFAULTS);
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception
+    {
+        TinyLfuCachingHttpContentFactory factory = new TinyLfuCachingHttpContentFactory(authority, -1, ByteBufferPool.NON_POOLING);
+
+        HttpContent content = factory.getContent("file0.txt");
+        assertNotNull(content);
+        content.release();
+        content = factory.getContent("file0.txt");
+        assertNotNull(content);
+        content.release();
+        assertNull(factory.getContent("missing.txt"));
+        assertNull(factory.getContent("missing.txt"));
+
+        assertEquals(2, factory.getCacheMisses());
+        assertEquals(2, factory.getCacheHits());
+        assertEquals(2, factory.getCachedFiles());
+        assertEquals(0.5D, factory.getCacheHitRatio());
+
+        factory.resetStatistics();
+        assertEquals(0, factory.getCacheHits());
+        assertEquals(0, factory.getCacheMisses());
+    }
+
+    @Test
+    public void testMaxCachedFiles() throws Exception
+    {
+        TinyLfuCachingHttpContentFactory factory = new TinyLfuCachingHttpContentFactory(authority, -1, ByteBufferPool.NON_POOLING);
+        factory.setMaxCachedFiles(10);
+
+        for (int i = 0; i < 100; ++i)
+        {
+            HttpContent content = factory.getContent("file" + i + ".txt");
+            assertNotNull(content);
+            content.release();
+        }
+
+        assertEquals(10, factory.getCachedFiles());
+        assertEquals(100, factory.getCacheMisses());
+        assertEquals(90, factory.getCacheEvictions() + factory.getCacheRejections());
+
+        factory.flushCache();
+        assertEquals(0, factory.getCachedFiles());
+        assertEquals(0, factory.getCachedSize());
+    }
+
+    @Test
+    public void testMaxCacheSize() throws Exception
+    {
+        TinyLfuCachingHttpContentFactory factory = new TinyLfuCachingHttpContentFactory(authority, -1, ByteBufferPool.NON_POOLING);
+        factory.setMaxCacheSize(200);
+
+        for (int i = 0; i < 100; ++i)
+        {
+            HttpContent content = factory.getContent("file" + i + ".txt");
+            assertNotNull(content);
+            content.release();
+        }
+
+        assertThat(factory.getCachedSize(), lessThanOrEqualTo(200L));
+        assertThat(factory.getCachedFiles(), greaterThan(0));
+    }
+
+    @Test
+    public void testScanDoesNotEvictFrequentlyRequestedContent() throws Exception
+    {
+        TinyLfuCachingHttpContentFactory factory = new TinyLfuCachingHttpContentFactory(authority, -1, ByteBufferPool.NON_POOLING);
+        factory.setMaxCachedFiles(100);
+
+        // Request a hot set of entries multiple times.
+        for (int r = 0; r < 10; ++r)
+        {
+            for (int i = 0; i < 50; ++i)
+            {
+                factory.getContent("file" + i + ".txt").release();
+            }
+        }
+
+        // Scan all the other entries once.
+        for (int i = 50; i < 1000; ++i)
+        {
+            factory.getContent("file" + i + ".txt").release();
+        }
+        assertThat(factory.getCacheRejections(), greaterThan(0L));
+
+        // The hot set must still be cached.
+        factory.resetStatistics();
+        for (int i = 0; i < 50; ++i)
+        {
+            factory.getContent("file" + i + ".txt").release();
+        }
+        assertThat(factory.getCacheHits(), greaterThanOrEqualTo(45L));
+        assertThat(factory.getCachedFiles(), lessThanOrEqualTo(100));
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.Executor;
 import org.eclipse.jetty.alpn.client.ALPNClientConnectionFactory;
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.FrameScheduler;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
@@ -115,6 +116,8 @@ public class HTTP2Client extends ContainerLifeCycle implements AutoCloseable
     private int maxRequestHeadersSize = 8 * 1024;
     private int maxResponseHeadersSize = 8 * 1024;
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
+    private FrameScheduler.Factory frameSchedulerFactory = () -> FrameScheduler.FIFO;
+    private int coalesceThreshold;
     private long streamIdleTimeout;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
@@ -176,6 +179,40 @@ public class HTTP2Client extends ContainerLifeCycle implements AutoCloseable
         this.flowControlStrategyFactory = flowControlStrategyFactory;
     }
 
+    public FrameScheduler.Factory getFrameSchedulerFactory()
+    {
+        return frameSchedulerFactory;
+    }
+
+    /**
+     * @param frameSchedulerFactory the factory of the policy that orders the frames waiting to be written
+     */
+    public void setFrameSchedulerFactory(FrameScheduler.Factory frameSchedulerFactory)
+    {
+        this.frameSchedulerFactory = frameSchedulerFactory;
+    }
+
+    @ManagedAttribute("The max size of the buffers that are copied into larger buffers before a write")
+    public int getCoalesceThreshold()
+    {
+        return coalesceThreshold;
+    }
+
+    /**
+     * <p>Sets the max size of the buffers, typically frame headers and small
+     * DATA frame payloads, that are copied into larger pooled buffers before
+     * being written, so that each write has fewer, larger buffers.</p>
+     * <p>Coalescing trades a copy of the small buffers for fewer buffers
+     * to write, which benefits for example applications that stream many
+     * small chunks of content on many streams.</p>
+     *
+     * @param coalesceThreshold the max size of the buffers to coalesce, or {@code 0} to disable coalescing
+     */
+    public void setCoalesceThreshold(int coalesceThreshold)
+    {
+        this.coalesceThreshold = coalesceThreshold;
+    }
+
     @ManagedAttribute("The number of selectors")
     public int getSelectors()
     {
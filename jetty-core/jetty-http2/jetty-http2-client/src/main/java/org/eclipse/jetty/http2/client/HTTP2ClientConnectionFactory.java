@@ -64,6 +64,8 @@ public class HTTP2ClientConnectionFactory implements ClientConnectionFactory
         HTTP2ClientSession session = new HTTP2ClientSession(client.getScheduler(), endPoint, parser, generator, listener, flowControl);
         session.setMaxRemoteStreams(client.getMaxConcurrentPushedStreams());
         session.setMaxEncoderTableCapacity(client.getMaxEncoderTableCapacity());
+        session.setFrameScheduler(client.getFrameSchedulerFactory().newFrameScheduler());
+        session.setCoalesceThreshold(client.getCoalesceThreshold());
         long streamIdleTimeout = client.getStreamIdleTimeout();
         if (streamIdleTimeout > 0)
             session.setStreamIdleTimeout(streamIdleTimeout);
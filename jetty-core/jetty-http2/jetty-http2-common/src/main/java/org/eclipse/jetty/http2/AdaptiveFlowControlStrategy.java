@@ -0,0 +1,465 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.util.Atomics;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.NanoTime;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A flow control strategy that sizes the receive windows after the
+ * bandwidth-delay product (BDP) of the connection.</p>
+ * <p>When data is received, a PING frame is sent to the other peer, and the
+ * bytes received until the PING reply arrives are counted: this number of
+ * bytes is a sample of the BDP, received in one round trip.
+ * A PING that fails to be sent, or whose reply does not arrive within
+ * {@link #getPingTimeout() the PING timeout}, is abandoned and a new sample is taken.
+ * If the sample is close to the current window size, then the window limits
+ * the throughput, and both the session window and the stream windows are
+ * enlarged to twice the sample, up to {@link #getMaxWindow() the max window}.
+ * Windows are not enlarged if the application does not consume the data
+ * it receives, as in this case it is the application that limits the throughput,
+ * and no PING is sent to sample the BDP until the application consumes the data.
+ * If the samples remain much smaller than the window size, then the windows
+ * are shrunk, down to {@link #getMinWindow() the min window}.</p>
+ * <p>Windows are enlarged by sending a session WINDOW_UPDATE frame and a
+ * SETTINGS frame with a larger {@code SETTINGS_INITIAL_WINDOW_SIZE}.
+ * Since reducing the initial window size with a SETTINGS frame could make
+ * data already in flight exceed the windows, windows are instead shrunk
+ * by withholding the window updates until the windows are within the
+ * target size.</p>
+ * <p>Window updates are otherwise emitted when the consumed data exceeds
+ * the {@code bufferRatio} of the window, like in {@link BufferingFlowControlStrategy}.</p>
+ * <p>This strategy is typically configured on both {@code HTTP2Client} and the
+ * HTTP/2 server connection factories:</p>
+ * <pre>{@code
+ * http2.setFlowControlStrategyFactory(() -> new AdaptiveFlowControlStrategy(64 * 1024, 16 * 1024 * 1024));
+ * }</pre>
+ */
+@ManagedObject
+public class AdaptiveFlowControlStrategy extends AbstractFlowControlStrategy
+{
+    public static final int DEFAULT_MAX_WINDOW = 16 * 1024 * 1024;
+    public static final long DEFAULT_MIN_PING_INTERVAL = 100;
+    public static final long DEFAULT_PING_TIMEOUT = 5000;
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveFlowControlStrategy.class);
+    // The high bytes of the PING payloads sent by this strategy, "BDP".
+    private static final long PING_PREFIX = 0x4244500000000000L;
+    // The number of consecutive small samples after which the windows are shrunk.
+    private static final int SHRINK_SAMPLES = 4;
+
+    private final AutoLock lock = new AutoLock();
+    private final AtomicInteger sessionTarget = new AtomicInteger(DEFAULT_WINDOW_SIZE);
+    private final AtomicInteger sessionLevel = new AtomicInteger();
+    private final Map<Stream, AtomicInteger> streamLevels = new ConcurrentHashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesConsumed = new AtomicLong();
+    private final AtomicLong pingNanoTime = new AtomicLong();
+    private final int minWindow;
+    private final int maxWindow;
+    private volatile int streamTarget = Integer.MAX_VALUE;
+    private long minPingInterval = DEFAULT_MIN_PING_INTERVAL;
+    private long pingTimeout = DEFAULT_PING_TIMEOUT;
+    private float bufferRatio = 0.5F;
+    // The fields below are guarded by the lock.
+    private long pingPayload;
+    private long pingBytes;
+    private long lastPingNanoTime;
+    private int pings;
+    private int smallSamples;
+    private long maxBandwidth;
+    private long lastSample;
+    private long lastRoundTrip;
+
+    public AdaptiveFlowControlStrategy()
+    {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOW);
+    }
+
+    /**
+     * @param minWindow the minimum size of the receive windows
+     * @param maxWindow the maximum size of the receive windows, which bounds the memory used to buffer received data
+     */
+    public AdaptiveFlowControlStrategy(int minWindow, int maxWindow)
+    {
+        super(DEFAULT_WINDOW_SIZE);
+        if (minWindow <= 0 || maxWindow < minWindow)
+            throw new IllegalArgumentException("Invalid window bounds " + minWindow + "/" + maxWindow);
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+    }
+
+    @ManagedAttribute("The minimum size of the receive windows")
+    public int getMinWindow()
+    {
+        return minWindow;
+    }
+
+    @ManagedAttribute("The maximum size of the receive windows")
+    public int getMaxWindow()
+    {
+        return maxWindow;
+    }
+
+    @ManagedAttribute("The minimum interval in milliseconds between PING frames sent to sample the BDP")
+    public long getMinPingInterval()
+    {
+        return minPingInterval;
+    }
+
+    /**
+     * <p>Sets the minimum interval between the PING frames sent to sample the BDP.</p>
+     * <p>The other peer may treat too many PING frames as an attack and close the
+     * connection, so the interval should keep the PING rate well below the rate limits
+     * of the other peer (for example, Jetty servers allow by default 128 PING frames
+     * per second).</p>
+     *
+     * @param minPingInterval the minimum interval in milliseconds between PING frames
+     */
+    public void setMinPingInterval(long minPingInterval)
+    {
+        this.minPingInterval = minPingInterval;
+    }
+
+    @ManagedAttribute("The timeout in milliseconds after which a PING frame sent to sample the BDP is abandoned")
+    public long getPingTimeout()
+    {
+        return pingTimeout;
+    }
+
+    /**
+     * <p>Sets the timeout after which a PING frame sent to sample the BDP, that has
+     * not been replied, is abandoned so that a new sample can be taken.</p>
+     *
+     * @param pingTimeout the timeout in milliseconds of the PING frames
+     */
+    public void setPingTimeout(long pingTimeout)
+    {
+        this.pingTimeout = pingTimeout;
+    }
+
+    @ManagedAttribute("The ratio between the receive buffer and the consume buffer")
+    public float getBufferRatio()
+    {
+        return bufferRatio;
+    }
+
+    public void setBufferRatio(float bufferRatio)
+    {
+        this.bufferRatio = bufferRatio;
+    }
+
+    @ManagedAttribute(value = "The target size of the session receive window", readonly = true)
+    public int getSessionRecvWindowTarget()
+    {
+        return sessionTarget.get();
+    }
+
+    @ManagedAttribute(value = "The target size of the streams receive windows", readonly = true)
+    public int getStreamRecvWindowTarget()
+    {
+        return Math.min(streamTarget, getInitialStreamRecvWindow());
+    }
+
+    @ManagedAttribute(value = "The last BDP sample in bytes", readonly = true)
+    public long getBandwidthDelayProduct()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return lastSample;
+        }
+    }
+
+    @ManagedAttribute(value = "The last round trip time in nanoseconds", readonly = true)
+    public long getRoundTripTime()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return lastRoundTrip;
+        }
+    }
+
+    @ManagedAttribute(value = "The number of PING frames sent to sample the BDP", readonly = true)
+    public int getPingCount()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return pings;
+        }
+    }
+
+    @Override
+    public void onStreamCreated(Stream stream)
+    {
+        super.onStreamCreated(stream);
+        streamLevels.put(stream, new AtomicInteger());
+    }
+
+    @Override
+    public void onStreamDestroyed(Stream stream)
+    {
+        streamLevels.remove(stream);
+        super.onStreamDestroyed(stream);
+    }
+
+    @Override
+    public void onDataReceived(Session session, Stream stream, int length)
+    {
+        super.onDataReceived(session, stream, length);
+        long received = bytesReceived.addAndGet(length);
+        // A sample taken while the application does not consume
+        // the data would not resize the windows, so do not take it.
+        if (isConsumerLimited(received - bytesConsumed.get()))
+            return;
+        long sent = pingNanoTime.get();
+        if (sent == 0 || NanoTime.millisSince(sent) > getPingTimeout())
+            samplePing(session, received);
+    }
+
+    private boolean isConsumerLimited(long unconsumed)
+    {
+        return unconsumed * 2 > sessionTarget.get();
+    }
+
+    private void samplePing(Session session, long received)
+    {
+        long payload;
+        try (AutoLock ignored = lock.lock())
+        {
+            long now = NanoTime.now();
+            long sent = pingNanoTime.get();
+            if (sent != 0)
+            {
+                if (NanoTime.millisElapsed(sent, now) <= getPingTimeout())
+                    return;
+                // The PING reply was lost, abandon this sample.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Abandoning BDP sample with PING {} for {}", Long.toHexString(pingPayload), session);
+            }
+            if (pings > 0 && NanoTime.millisElapsed(lastPingNanoTime, now) < getMinPingInterval())
+                return;
+            // Zero is the marker for no PING in flight.
+            pingNanoTime.set(now == 0 ? 1 : now);
+            lastPingNanoTime = now;
+            pingBytes = received;
+            payload = PING_PREFIX | (++pings & 0xFFFF_FFFFL);
+            pingPayload = payload;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Sampling BDP with PING {} for {}", Long.toHexString(payload), session);
+        session.ping(new PingFrame(payload, false), Callback.from(() -> {}, x -> onPingFailure(session, payload, x)));
+    }
+
+    private void onPingFailure(Session session, long payload, Throwable failure)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Could not sample BDP with PING {} for {}", Long.toHexString(payload), session, failure);
+        try (AutoLock ignored = lock.lock())
+        {
+            // Allow a new sample, unless another PING has been sent meanwhile.
+            if (pingPayload == payload)
+                pingNanoTime.set(0);
+        }
+    }
+
+    @Override
+    public boolean onPingReply(Session session, PingFrame frame)
+    {
+        long sample;
+        long roundTrip;
+        int target;
+        try (AutoLock ignored = lock.lock())
+        {
+            long sent = pingNanoTime.get();
+            if (sent == 0 || frame.getPayloadAsLong() != pingPayload)
+                return false;
+            roundTrip = Math.max(1, NanoTime.since(sent));
+            long received = bytesReceived.get();
+            sample = received - pingBytes;
+            lastSample = sample;
+            lastRoundTrip = roundTrip;
+            pingNanoTime.set(0);
+            target = estimate(sample, roundTrip, received - bytesConsumed.get());
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Sampled BDP {} bytes in {} us, window target {} for {}", sample, TimeUnit.NANOSECONDS.toMicros(roundTrip), target, session);
+
+        if (target > 0)
+            resize(session, target);
+        return true;
+    }
+
+    private int estimate(long sample, long roundTrip, long unconsumed)
+    {
+        assert lock.isHeldByCurrentThread();
+        int current = sessionTarget.get();
+        long bandwidth = sample * TimeUnit.SECONDS.toNanos(1) / roundTrip;
+        // The window limits the throughput if the peer sent
+        // an amount of data close to the window in a round trip.
+        if (sample * 3 >= current * 2L)
+        {
+            smallSamples = 0;
+            // If the application does not consume the data, a larger
+            // window would only buffer more data, without more throughput.
+            if (isConsumerLimited(unconsumed))
+                return 0;
+            if (bandwidth < maxBandwidth || current >= maxWindow)
+                return 0;
+            maxBandwidth = bandwidth;
+            return (int)Math.min(maxWindow, Math.max(current, 2 * sample));
+        }
+        if (sample * 4 < current && current > minWindow)
+        {
+            if (++smallSamples < SHRINK_SAMPLES)
+                return 0;
+            smallSamples = 0;
+            // Conditions have changed, so restart measuring the bandwidth.
+            maxBandwidth = bandwidth;
+            return (int)Math.max(minWindow, Math.max(current / 2, 2 * sample));
+        }
+        smallSamples = 0;
+        return 0;
+    }
+
+    private void resize(Session session, int target)
+    {
+        int current = sessionTarget.getAndSet(target);
+        streamTarget = target;
+        int delta = target - current;
+        if (delta > 0)
+        {
+            updateRecvWindow(session, delta);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Enlarged session recv window by {} to {} for {}", delta, target, session);
+            sendWindowUpdate(session, null, List.of(new WindowUpdateFrame(0, delta)));
+
+            if (target > getInitialStreamRecvWindow())
+            {
+                // The stream windows are enlarged when the SETTINGS frame is sent,
+                // see HTTP2Session.configure() and updateInitialStreamWindow().
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Enlarging initial stream recv window to {} for {}", target, session);
+                session.settings(new SettingsFrame(Map.of(SettingsFrame.INITIAL_WINDOW_SIZE, target), false), Callback.NOOP);
+            }
+        }
+        else if (delta < 0)
+        {
+            // Window updates are withheld in onDataConsumed(),
+            // until the windows shrink to the target size.
+            if (LOG.isDebugEnabled())
+                LOG.debug("Shrinking session recv window by {} to {} for {}", -delta, target, session);
+        }
+    }
+
+    @Override
+    public void onDataConsumed(Session session, Stream stream, int length)
+    {
+        if (length <= 0)
+            return;
+
+        bytesConsumed.addAndGet(length);
+        float ratio = bufferRatio;
+
+        int target = sessionTarget.get();
+        int level = sessionLevel.addAndGet(length);
+        int maxLevel = (int)(target * ratio);
+        if (level > maxLevel && sessionLevel.compareAndSet(level, 0))
+        {
+            int credit = credit(level, target, updateRecvWindow(session, 0));
+            if (credit > 0)
+            {
+                updateRecvWindow(session, credit);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Data consumed, {} bytes, updated session recv window by {}/{} for {}", length, credit, level, session);
+                sendWindowUpdate(session, null, List.of(new WindowUpdateFrame(0, credit)));
+            }
+        }
+
+        if (stream != null && !stream.isRemotelyClosed())
+        {
+            AtomicInteger streamLevel = streamLevels.get(stream);
+            if (streamLevel != null)
+            {
+                target = getStreamRecvWindowTarget();
+                level = streamLevel.addAndGet(length);
+                maxLevel = (int)(target * ratio);
+                if (level > maxLevel)
+                {
+                    level = streamLevel.getAndSet(0);
+                    int credit = credit(level, target, updateRecvWindow(stream, 0));
+                    if (credit > 0)
+                    {
+                        updateRecvWindow(stream, credit);
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Data consumed, {} bytes, updated stream recv window by {}/{} for {}", length, credit, level, stream);
+                        sendWindowUpdate(session, stream, List.of(new WindowUpdateFrame(stream.getId(), credit)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int credit(int consumed, int target, int window)
+    {
+        // Credit the consumed bytes, but not beyond the target window size,
+        // so that a shrunk window is reduced by the data received meanwhile.
+        return Math.min(consumed, Math.max(0, target - window));
+    }
+
+    @Override
+    public void windowUpdate(Session session, Stream stream, WindowUpdateFrame frame)
+    {
+        super.windowUpdate(session, stream, frame);
+        // Track the session window that was configured, for example
+        // from HTTP2Session.initialSessionRecvWindow, as the initial target.
+        if (frame.getStreamId() == 0)
+        {
+            int sessionWindow = updateRecvWindow(session, 0);
+            if (sessionWindow <= maxWindow)
+                Atomics.updateMax(sessionTarget, sessionWindow);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[window=%d/%d/%d,sessionLevel=%s,sessionStallTime=%dms,streamsStallTime=%dms]",
+            getClass().getSimpleName(),
+            hashCode(),
+            getMinWindow(),
+            getSessionRecvWindowTarget(),
+            getMaxWindow(),
+            sessionLevel,
+            getSessionStallTime(),
+            getStreamsStallTime());
+    }
+}
@@ -15,6 +15,7 @@ package org.eclipse.jetty.http2;
 
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.PingFrame;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
 
 public interface FlowControlStrategy
@@ -39,6 +40,19 @@ public interface FlowControlStrategy
 
     public void onDataSent(Stream stream, int length);
 
+    /**
+     * <p>Callback method invoked when a PING reply is received.</p>
+     *
+     * @param session the session
+     * @param frame the PING reply
+     * @return whether the PING reply was in response to a PING sent by this strategy,
+     * in which case the PING reply is not notified to the application
+     */
+    public default boolean onPingReply(Session session, PingFrame frame)
+    {
+        return false;
+    }
+
     public interface Factory
     {
         public FlowControlStrategy newFlowControlStrategy();
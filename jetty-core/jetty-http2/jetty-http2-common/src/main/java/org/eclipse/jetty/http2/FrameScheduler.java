@@ -0,0 +1,404 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.FrameType;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.internal.HTTP2StreamTable;
+import org.eclipse.jetty.util.StringUtil;
+
+/**
+ * <p>The policy that orders the frames of a session that are waiting to be written.</p>
+ * <p>Before generating frames, the flusher calls {@link #schedule(List)} with the
+ * entries that are pending, that can be reordered by the scheduler.
+ * A scheduler must not reorder the entries of the same stream with respect to each
+ * other, as the order of the frames within a stream is significant; this is
+ * guaranteed by sorting the entries with a stable sort and a key that depends only
+ * on the stream, as done by {@link StreamOrder}.
+ * A scheduler must only reorder DATA frames with respect to other DATA frames:
+ * HEADERS and PUSH_PROMISE frames open streams, that must be opened in stream id
+ * order, and session frames such as GOAWAY must not overtake the frames queued
+ * before them.</p>
+ * <p>DATA frames are generated lazily, one frame per entry at a time, so that
+ * a stream that has a large amount of data to write does not prevent other streams
+ * to write their frames; the scheduler decides the order in which entries take turns.</p>
+ * <p>With the default {@link #FIFO} scheduler, each flush generates one frame for every
+ * pending entry in queue order; with other schedulers, the flush stops as soon as
+ * the write threshold is reached, so that the entries scheduled first are preferred.</p>
+ */
+public interface FrameScheduler
+{
+    /**
+     * <p>The scheduler that writes the frames in the order they are queued.</p>
+     */
+    public static final FrameScheduler FIFO = entries ->
+    {
+    };
+
+    /**
+     * <p>Reorders the given entries, that are pending to be written.</p>
+     *
+     * @param entries the entries to reorder in-place
+     */
+    public void schedule(List<HTTP2Session.Entry> entries);
+
+    /**
+     * <p>Callback method invoked when frame bytes have been generated for the given entry.</p>
+     *
+     * @param entry the entry
+     * @param frameBytes the number of frame bytes generated
+     */
+    public default void onGenerated(HTTP2Session.Entry entry, int frameBytes)
+    {
+    }
+
+    public interface Factory
+    {
+        public FrameScheduler newFrameScheduler();
+    }
+
+    /**
+     * <p>A {@link FrameScheduler} that orders the DATA entries by stream,
+     * using a per-stream state.</p>
+     * <p>Only the runs of consecutive DATA entries are sorted, while all the
+     * other entries, such as HEADERS or session frames, keep their position
+     * in the queue; when they are written, the DATA entries queued before and
+     * after them can be sorted together.</p>
+     * <p>The per-stream state tracks the bytes written by the stream,
+     * scaled by the stream weight, as in weighted fair queueing; a stream
+     * that starts writing is assigned the current least scaled bytes, so
+     * that it cannot monopolize the connection.</p>
+     */
+    public abstract static class StreamOrder implements FrameScheduler
+    {
+        private static final int MIN_PRUNE_THRESHOLD = 64;
+
+        private final HTTP2StreamTable<State> states = new HTTP2StreamTable<>();
+        private final Comparator<HTTP2Session.Entry> comparator = this::compare;
+        private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+        private long virtualTime;
+        private long turns;
+
+        @Override
+        public void schedule(List<HTTP2Session.Entry> entries)
+        {
+            if (entries.size() < 2)
+                return;
+
+            long minVirtualTime = Long.MAX_VALUE;
+            for (HTTP2Session.Entry entry : entries)
+            {
+                State state = state(entry);
+                if (state != null)
+                {
+                    update(state, entry);
+                    minVirtualTime = Math.min(minVirtualTime, state.virtualTime);
+                }
+            }
+            if (minVirtualTime != Long.MAX_VALUE)
+                virtualTime = minVirtualTime;
+
+            // Sort the runs of DATA entries, the other entries act as barriers.
+            int size = entries.size();
+            int from = 0;
+            for (int i = 0; i <= size; ++i)
+            {
+                if (i == size || !isData(entries.get(i)))
+                {
+                    if (i - from > 1)
+                        entries.subList(from, i).sort(comparator);
+                    from = i + 1;
+                }
+            }
+
+            if (states.size() > pruneThreshold)
+                prune();
+        }
+
+        @Override
+        public void onGenerated(HTTP2Session.Entry entry, int frameBytes)
+        {
+            State state = state(entry);
+            if (state != null)
+            {
+                state.virtualTime += (long)frameBytes * Weighted.MAX_WEIGHT / state.weight;
+                state.turn = ++turns;
+            }
+        }
+
+        /**
+         * <p>Compares the states of two different streams.</p>
+         *
+         * @param state1 the state of the first stream
+         * @param state2 the state of the second stream
+         * @return a negative integer, zero, or a positive integer as the first stream
+         * should be written before, in turn with, or after the second stream
+         */
+        protected abstract int compare(State state1, State state2);
+
+        /**
+         * <p>Updates the state of the stream of the given entry before sorting the entries.</p>
+         *
+         * @param state the stream state
+         * @param entry an entry of the stream
+         */
+        protected void update(State state, HTTP2Session.Entry entry)
+        {
+        }
+
+        private int compare(HTTP2Session.Entry entry1, HTTP2Session.Entry entry2)
+        {
+            State state1 = state(entry1);
+            State state2 = state(entry2);
+            if (state1 == state2)
+                return 0;
+            int compare = compare(state1, state2);
+            if (compare != 0)
+                return compare;
+            // In case of a tie, the stream that has not written for longer goes first.
+            return Long.compare(state1.turn, state2.turn);
+        }
+
+        private static boolean isData(HTTP2Session.Entry entry)
+        {
+            return entry.stream != null && entry.frame().getType() == FrameType.DATA;
+        }
+
+        private State state(HTTP2Session.Entry entry)
+        {
+            HTTP2Stream stream = entry.stream;
+            if (stream == null)
+                return null;
+            FrameType frameType = entry.frame().getType();
+            if (frameType == FrameType.WINDOW_UPDATE || frameType == FrameType.PRIORITY)
+                return null;
+            int streamId = stream.getId();
+            State state = states.get(streamId);
+            if (state == null)
+            {
+                state = new State(stream, virtualTime);
+                states.putIfAbsent(streamId, state);
+            }
+            return state;
+        }
+
+        private void prune()
+        {
+            for (State state : states.values())
+            {
+                if (state.stream.isClosed() || state.stream.isResetOrFailed())
+                    states.remove(state.stream.getId());
+            }
+            pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, 2 * states.size());
+        }
+
+        /**
+         * <p>The scheduling state of a stream.</p>
+         */
+        protected static class State
+        {
+            private final HTTP2Stream stream;
+            private long virtualTime;
+            private long turn;
+            private int weight = Weighted.MAX_WEIGHT;
+            private int urgency = ExtensiblePriority.DEFAULT_URGENCY;
+            private boolean incremental;
+            private boolean prioritized;
+
+            private State(HTTP2Stream stream, long virtualTime)
+            {
+                this.stream = stream;
+                this.virtualTime = virtualTime;
+            }
+
+            public Stream getStream()
+            {
+                return stream;
+            }
+
+            /**
+             * @return the bytes written by the stream, scaled by the stream weight
+             */
+            public long getVirtualTime()
+            {
+                return virtualTime;
+            }
+
+            public int getWeight()
+            {
+                return weight;
+            }
+
+            public int getUrgency()
+            {
+                return urgency;
+            }
+
+            public boolean isIncremental()
+            {
+                return incremental;
+            }
+
+            @Override
+            public String toString()
+            {
+                return String.format("%s@%x[stream=%d,virtualTime=%d,weight=%d,u=%d,i=%b]",
+                    getClass().getSimpleName(), hashCode(), stream.getId(), virtualTime, weight, urgency, incremental);
+            }
+        }
+    }
+
+    /**
+     * <p>A {@link FrameScheduler} that shares the connection among the streams
+     * in proportion of their weight, from {@code 1} to {@value #MAX_WEIGHT}.</p>
+     * <p>By default, the weight of a stream is read from the stream attribute
+     * {@link #WEIGHT_ATTRIBUTE}, or is {@value #DEFAULT_WEIGHT} if the attribute
+     * is not set, like the default stream weight of RFC 7540.</p>
+     */
+    public static class Weighted extends StreamOrder
+    {
+        public static final String WEIGHT_ATTRIBUTE = Weighted.class.getName() + ".weight";
+        public static final int DEFAULT_WEIGHT = 16;
+        public static final int MAX_WEIGHT = 256;
+
+        private final ToIntFunction<Stream> weights;
+
+        public Weighted()
+        {
+            this(Weighted::weightOf);
+        }
+
+        /**
+         * @param weights the function that returns the weight of a stream
+         */
+        public Weighted(ToIntFunction<Stream> weights)
+        {
+            this.weights = weights;
+        }
+
+        @Override
+        protected void update(State state, HTTP2Session.Entry entry)
+        {
+            int weight = weights.applyAsInt(state.getStream());
+            state.weight = Math.max(1, Math.min(MAX_WEIGHT, weight));
+        }
+
+        @Override
+        protected int compare(State state1, State state2)
+        {
+            return Long.compare(state1.getVirtualTime(), state2.getVirtualTime());
+        }
+
+        private static int weightOf(Stream stream)
+        {
+            return stream.getAttribute(WEIGHT_ATTRIBUTE) instanceof Number weight ? weight.intValue() : DEFAULT_WEIGHT;
+        }
+    }
+
+    /**
+     * <p>A {@link FrameScheduler} that shares the connection equally among the streams,
+     * in turns that are proportional to the bytes written by each stream.</p>
+     */
+    public static class RoundRobin extends Weighted
+    {
+        public RoundRobin()
+        {
+            super(stream -> DEFAULT_WEIGHT);
+        }
+    }
+
+    /**
+     * <p>A {@link FrameScheduler} that implements the extensible priorities of RFC 9218.</p>
+     * <p>The priority of a stream is read from the {@code priority} header of the request
+     * or, if present, of the response, which overrides the request priority.
+     * Streams with a lower {@code urgency} are written first; within the same urgency,
+     * non-incremental streams are written one after the other in stream id order, then
+     * incremental streams share the connection in round-robin.</p>
+     */
+    public static class ExtensiblePriority extends StreamOrder
+    {
+        public static final String PRIORITY_HEADER = "priority";
+        public static final int DEFAULT_URGENCY = 3;
+        public static final int MAX_URGENCY = 7;
+
+        @Override
+        protected void update(State state, HTTP2Session.Entry entry)
+        {
+            if (!state.prioritized)
+            {
+                state.prioritized = true;
+                MetaData.Request request = state.stream.getRequest();
+                if (request != null)
+                    parse(state, request.getHttpFields());
+            }
+            if (entry.frame() instanceof HeadersFrame headersFrame)
+            {
+                MetaData metaData = headersFrame.getMetaData();
+                if (metaData != null && metaData.isResponse())
+                    parse(state, metaData.getHttpFields());
+            }
+        }
+
+        @Override
+        protected int compare(State state1, State state2)
+        {
+            int compare = Integer.compare(state1.getUrgency(), state2.getUrgency());
+            if (compare != 0)
+                return compare;
+            compare = Boolean.compare(state1.isIncremental(), state2.isIncremental());
+            if (compare != 0)
+                return compare;
+            if (state1.isIncremental())
+                return Long.compare(state1.getVirtualTime(), state2.getVirtualTime());
+            return Integer.compare(state1.getStream().getId(), state2.getStream().getId());
+        }
+
+        private static void parse(State state, HttpFields fields)
+        {
+            if (fields == null)
+                return;
+            String priority = fields.get(PRIORITY_HEADER);
+            if (priority == null)
+                return;
+            // Parses the structured field dictionary, for example "u=1, i".
+            for (String member : StringUtil.csvSplit(priority))
+            {
+                String item = member.trim();
+                int equals = item.indexOf('=');
+                String key = equals < 0 ? item : item.substring(0, equals).trim();
+                String value = equals < 0 ? "?1" : item.substring(equals + 1).trim();
+                switch (key)
+                {
+                    case "u" ->
+                    {
+                        if (value.length() == 1 && value.charAt(0) >= '0' && value.charAt(0) <= '0' + MAX_URGENCY)
+                            state.urgency = value.charAt(0) - '0';
+                    }
+                    case "i" -> state.incremental = "?1".equals(value);
+                    default ->
+                    {
+                        // Unknown parameters are ignored.
+                    }
+                }
+            }
+        }
+    }
+}
@@ -26,9 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -57,6 +55,7 @@ import org.eclipse.jetty.http2.generator.Generator;
 import org.eclipse.jetty.http2.hpack.HpackEncoder;
 import org.eclipse.jetty.http2.hpack.HpackException;
 import org.eclipse.jetty.http2.internal.HTTP2Flusher;
+import org.eclipse.jetty.http2.internal.HTTP2StreamTable;
 import org.eclipse.jetty.http2.parser.Parser;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.CyclicTimeouts;
@@ -85,8 +84,8 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
     // SPEC: stream numbers can go up to 2^31-1, but increment by 2.
     private static final int MAX_TOTAL_LOCAL_STREAMS = Integer.MAX_VALUE / 2;
 
-    private final Map<Integer, HTTP2Stream> streams = new ConcurrentHashMap<>();
-    private final Set<Integer> priorityStreams = ConcurrentHashMap.newKeySet();
+    private final HTTP2StreamTable<HTTP2Stream> streams = new HTTP2StreamTable<>();
+    private final HTTP2StreamTable<Boolean> priorityStreams = new HTTP2StreamTable<>();
     private final AtomicLong streamsOpened = new AtomicLong();
     private final AtomicLong streamsClosed = new AtomicLong();
     private final StreamsState streamsState = new StreamsState();
@@ -104,6 +103,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
     private final Session.Listener listener;
     private final FlowControlStrategy flowControl;
     private final HTTP2Flusher flusher;
+    private FrameScheduler frameScheduler = FrameScheduler.FIFO;
     private final StreamTimeouts streamTimeouts;
     private int maxLocalStreams;
     private int maxRemoteStreams;
@@ -111,6 +111,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
     private long streamIdleTimeout;
     private int initialSessionRecvWindow;
     private int writeThreshold;
+    private int coalesceThreshold;
     private int maxEncoderTableCapacity;
     private boolean pushEnabled;
     private boolean connectProtocolEnabled;
@@ -230,6 +231,37 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
         this.writeThreshold = writeThreshold;
     }
 
+    @ManagedAttribute("The max size of the buffers that are copied into larger buffers before a TCP write")
+    public int getCoalesceThreshold()
+    {
+        return coalesceThreshold;
+    }
+
+    /**
+     * <p>Sets the max size of the buffers, typically frame headers and small
+     * DATA frame payloads, that are copied into larger pooled buffers before
+     * being written, so that a TCP write has fewer, larger buffers.</p>
+     *
+     * @param coalesceThreshold the max size of the buffers to coalesce, or {@code 0} to disable coalescing
+     */
+    public void setCoalesceThreshold(int coalesceThreshold)
+    {
+        this.coalesceThreshold = coalesceThreshold;
+    }
+
+    public FrameScheduler getFrameScheduler()
+    {
+        return frameScheduler;
+    }
+
+    /**
+     * @param frameScheduler the policy that orders the frames waiting to be written
+     */
+    public void setFrameScheduler(FrameScheduler frameScheduler)
+    {
+        this.frameScheduler = frameScheduler == null ? FrameScheduler.FIFO : frameScheduler;
+    }
+
     @ManagedAttribute("The HPACK encoder dynamic table maximum capacity")
     public int getMaxEncoderTableCapacity()
     {
@@ -492,7 +524,8 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
 
         if (frame.isReply())
         {
-            notifyPing(this, frame);
+            if (!flowControl.onPingReply(this, frame))
+                notifyPing(this, frame);
         }
         else
         {
@@ -1273,6 +1306,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
     {
         protected final Frame frame;
         protected final HTTP2Stream stream;
+        private long queueNanoTime = Long.MIN_VALUE;
 
         protected Entry(Frame frame, HTTP2Stream stream, Callback callback)
         {
@@ -1300,6 +1334,34 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
             return false;
         }
 
+        /**
+         * <p>Marks this entry as queued to be written.</p>
+         *
+         * @param nanoTime the time at which this entry was queued
+         */
+        public void queued(long nanoTime)
+        {
+            queueNanoTime = nanoTime;
+        }
+
+        /**
+         * <p>Marks this entry as started to be written, after its first frame has been generated.</p>
+         *
+         * @return the time, in nanoseconds, that this entry waited since it was queued,
+         * or {@code -1} if this entry was already started
+         */
+        public long started()
+        {
+            long queued = queueNanoTime;
+            if (queued == Long.MIN_VALUE)
+                return -1;
+            queueNanoTime = Long.MIN_VALUE;
+            long wait = NanoTime.since(queued);
+            if (stream != null)
+                stream.addFrameWaitTime(wait);
+            return wait;
+        }
+
         public void closeAndFail(Throwable failure)
         {
             if (stream != null)
@@ -2148,7 +2210,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
             if (streamId <= 0)
                 return 0;
 
-            if (!priorityStreams.add(streamId))
+            if (priorityStreams.putIfAbsent(streamId, Boolean.TRUE) != null)
             {
                 callback.failed(new IllegalStateException("Duplicate stream " + streamId));
                 return 0;
@@ -2358,7 +2420,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
                                 }
                                 else
                                 {
-                                    if (streams.containsKey(streamId) || priorityStreams.contains(streamId))
+                                    if (streams.containsKey(streamId) || priorityStreams.containsKey(streamId))
                                     {
                                         reservedStreamId = streamId;
                                         slots.offer(slot);
@@ -2501,7 +2563,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements Session
         @Override
         protected Iterator<HTTP2Stream> iterator()
         {
-            return streams.values().stream().map(HTTP2Stream.class::cast).iterator();
+            return streams.values().iterator();
         }
 
         @Override
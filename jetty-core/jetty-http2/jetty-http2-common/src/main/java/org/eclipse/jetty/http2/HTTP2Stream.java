@@ -81,6 +81,7 @@ public class HTTP2Stream implements Stream, Attachable, Closeable, Callback, Dum
     private boolean committed;
     private long idleTimeout;
     private long expireNanoTime = Long.MAX_VALUE;
+    private volatile long frameWaitTime;
 
     public HTTP2Stream(HTTP2Session session, int streamId, MetaData.Request request, boolean local)
     {
@@ -98,6 +99,28 @@ public class HTTP2Stream implements Stream, Attachable, Closeable, Callback, Dum
         return streamId;
     }
 
+    /**
+     * @return the request that created this stream, or {@code null} for pushed streams
+     */
+    public MetaData.Request getRequest()
+    {
+        return request;
+    }
+
+    /**
+     * @return the total time, in nanoseconds, that the frames of this stream waited to start being written
+     */
+    public long getFrameWaitTime()
+    {
+        return frameWaitTime;
+    }
+
+    void addFrameWaitTime(long nanos)
+    {
+        // Only updated by the flusher.
+        frameWaitTime += nanos;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -19,6 +19,7 @@ import java.nio.channels.ClosedChannelException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -28,35 +29,50 @@ import java.util.Set;
 
 import org.eclipse.jetty.http2.ErrorCode;
 import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.FrameScheduler;
 import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.HTTP2Stream;
+import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.FrameType;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.http2.generator.Generator;
 import org.eclipse.jetty.http2.hpack.HpackException;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.NanoTime;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.Invocable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+@ManagedObject
 public class HTTP2Flusher extends IteratingCallback implements Dumpable
 {
     private static final Logger LOG = LoggerFactory.getLogger(HTTP2Flusher.class);
     private static final ByteBuffer[] EMPTY_BYTE_BUFFERS = new ByteBuffer[0];
+    private static final int COALESCE_BUFFER_SIZE = Frame.DEFAULT_MAX_SIZE + Frame.HEADER_LENGTH;
 
     private final AutoLock lock = new AutoLock();
     private final Queue<WindowEntry> windows = new ArrayDeque<>();
     private final Deque<HTTP2Session.Entry> entries = new ArrayDeque<>();
-    private final Queue<HTTP2Session.Entry> pendingEntries = new ArrayDeque<>();
+    private final List<HTTP2Session.Entry> pendingEntries = new ArrayList<>();
     private final Collection<HTTP2Session.Entry> processedEntries = new ArrayList<>();
     private final HTTP2Session session;
     private final ByteBufferPool.Accumulator accumulator;
+    private final ByteBufferPool.Accumulator coalesced = new ByteBufferPool.Accumulator();
     private InvocationType invocationType = InvocationType.NON_BLOCKING;
     private Throwable terminated;
     private HTTP2Session.Entry stalledEntry;
+    private final SampleStatistic frameWaitStats = new SampleStatistic();
+    private int maxFrameQueueSize;
 
     public HTTP2Flusher(HTTP2Session session)
     {
@@ -92,7 +108,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             closed = terminated;
             if (closed == null)
             {
+                entry.queued(NanoTime.now());
                 entries.offerFirst(entry);
+                updateMaxFrameQueueSize();
                 if (LOG.isDebugEnabled())
                     LOG.debug("Prepended {}, entries={}", entry, entries.size());
                 return true;
@@ -117,7 +135,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             }
             if (closed == null)
             {
+                entry.queued(NanoTime.now());
                 entries.offer(entry);
+                updateMaxFrameQueueSize();
                 if (LOG.isDebugEnabled())
                     LOG.debug("Appended {}, entries={}, {}", entry, entries.size(), this);
                 return true;
@@ -135,7 +155,13 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             closed = terminated;
             if (closed == null)
             {
-                list.forEach(entries::offer);
+                long now = NanoTime.now();
+                for (HTTP2Session.Entry entry : list)
+                {
+                    entry.queued(now);
+                    entries.offer(entry);
+                }
+                updateMaxFrameQueueSize();
                 if (LOG.isDebugEnabled())
                     LOG.debug("Appended {}, entries={} {}", list, entries.size(), this);
                 return true;
@@ -145,6 +171,12 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         return false;
     }
 
+    private void updateMaxFrameQueueSize()
+    {
+        assert lock.isHeldByCurrentThread();
+        maxFrameQueueSize = Math.max(maxFrameQueueSize, entries.size());
+    }
+
     private int getWindowQueueSize()
     {
         try (AutoLock ignored = lock.lock())
@@ -153,6 +185,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         }
     }
 
+    @ManagedAttribute("The number of frames queued to be written")
     public int getFrameQueueSize()
     {
         try (AutoLock ignored = lock.lock())
@@ -161,6 +194,49 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         }
     }
 
+    @ManagedAttribute("The maximum number of frames queued to be written")
+    public int getMaxFrameQueueSize()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            return maxFrameQueueSize;
+        }
+    }
+
+    @ManagedAttribute("The number of frames that started to be written")
+    public long getFrameWaitCount()
+    {
+        return frameWaitStats.getCount();
+    }
+
+    @ManagedAttribute("The mean time in nanoseconds that frames waited before starting to be written")
+    public double getFrameWaitTimeMean()
+    {
+        return frameWaitStats.getMean();
+    }
+
+    @ManagedAttribute("The maximum time in nanoseconds that frames waited before starting to be written")
+    public long getFrameWaitTimeMax()
+    {
+        return frameWaitStats.getMax();
+    }
+
+    @ManagedAttribute("The standard deviation of the time in nanoseconds that frames waited before starting to be written")
+    public double getFrameWaitTimeStdDev()
+    {
+        return frameWaitStats.getStdDev();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        frameWaitStats.reset();
+        try (AutoLock ignored = lock.lock())
+        {
+            maxFrameQueueSize = entries.size();
+        }
+    }
+
     @Override
     protected Action process() throws Throwable
     {
@@ -202,7 +278,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             HTTP2Session.Entry entry;
             while ((entry = entries.poll()) != null)
             {
-                pendingEntries.offer(entry);
+                pendingEntries.add(entry);
             }
         }
 
@@ -213,6 +289,11 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             return Action.IDLE;
         }
 
+        FrameScheduler scheduler = session.getFrameScheduler();
+        // Schedulers other than FIFO order the entries at every pass,
+        // so the pass may stop when the write threshold is reached.
+        boolean preemptive = scheduler != FrameScheduler.FIFO;
+        int writeThreshold = session.getWriteThreshold();
         while (true)
         {
             boolean progress = false;
@@ -220,6 +301,8 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (pendingEntries.isEmpty())
                 break;
 
+            scheduler.schedule(pendingEntries);
+
             Iterator<HTTP2Session.Entry> pending = pendingEntries.iterator();
             while (pending.hasNext())
             {
@@ -240,6 +323,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
                 try
                 {
+                    int frameBytes = entry.getFrameBytesGenerated();
                     if (entry.generate(accumulator))
                     {
                         if (LOG.isDebugEnabled())
@@ -247,6 +331,11 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
                         progress = true;
 
+                        long wait = entry.started();
+                        if (wait >= 0)
+                            frameWaitStats.record(wait);
+                        scheduler.onGenerated(entry, entry.getFrameBytesGenerated() - frameBytes);
+
                         // We use ArrayList contains() + add() instead of HashSet add()
                         // because that is faster for collections of size up to 250 entries.
                         if (!processedEntries.contains(entry))
@@ -257,6 +346,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
                         if (entry.getDataBytesRemaining() == 0)
                             pending.remove();
+
+                        if (preemptive && accumulator.getTotalLength() >= writeThreshold)
+                            break;
                     }
                     else
                     {
@@ -301,7 +393,6 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (stalledEntry != null)
                 break;
 
-            int writeThreshold = session.getWriteThreshold();
             if (accumulator.getTotalLength() >= writeThreshold)
             {
                 if (LOG.isDebugEnabled())
@@ -326,10 +417,44 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                 processedEntries,
                 pendingEntries);
 
+        int coalesceThreshold = session.getCoalesceThreshold();
+        if (coalesceThreshold > 0 && byteBuffers.size() > 1)
+            byteBuffers = coalesce(byteBuffers, coalesceThreshold);
+
         session.getEndPoint().write(this, byteBuffers.toArray(EMPTY_BYTE_BUFFERS));
         return Action.SCHEDULED;
     }
 
+    private List<ByteBuffer> coalesce(List<ByteBuffer> byteBuffers, int coalesceThreshold)
+    {
+        // Copy the small buffers, typically frame headers and small DATA
+        // payloads, into larger pooled buffers, so that the gathering
+        // write has fewer buffers; larger buffers are written as they are.
+        Generator generator = session.getGenerator();
+        ByteBufferPool bufferPool = generator.getByteBufferPool();
+        boolean direct = generator.isUseDirectByteBuffers();
+        RetainableByteBuffer aggregate = null;
+        for (ByteBuffer byteBuffer : byteBuffers)
+        {
+            int remaining = byteBuffer.remaining();
+            if (remaining > coalesceThreshold)
+            {
+                coalesced.append(RetainableByteBuffer.wrap(byteBuffer));
+                aggregate = null;
+                continue;
+            }
+            if (aggregate == null || BufferUtil.space(aggregate.getByteBuffer()) < remaining)
+            {
+                aggregate = bufferPool.acquire(Math.max(COALESCE_BUFFER_SIZE, remaining), direct);
+                coalesced.append(aggregate);
+            }
+            BufferUtil.append(aggregate.getByteBuffer(), byteBuffer);
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Coalesced {} buffers into {}", byteBuffers.size(), coalesced.getSize());
+        return coalesced.getByteBuffers();
+    }
+
     @Override
     protected void onSuccess()
     {
@@ -346,6 +471,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private void finish()
     {
         accumulator.release();
+        coalesced.release();
 
         processedEntries.forEach(HTTP2Session.Entry::succeeded);
         processedEntries.clear();
@@ -353,15 +479,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
         if (stalledEntry != null)
         {
-            int size = pendingEntries.size();
-            for (int i = 0; i < size; ++i)
-            {
-                HTTP2Session.Entry entry = pendingEntries.peek();
-                if (entry == stalledEntry)
-                    break;
-                pendingEntries.poll();
-                pendingEntries.offer(entry);
-            }
+            int index = pendingEntries.indexOf(stalledEntry);
+            if (index > 0)
+                Collections.rotate(pendingEntries, -index);
             stalledEntry = null;
         }
     }
@@ -376,6 +496,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     protected void onCompleteFailure(Throwable x)
     {
         accumulator.release();
+        coalesced.release();
 
         Throwable closed;
         Set<HTTP2Session.Entry> allEntries;
@@ -408,6 +529,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private void onSessionFailure(Throwable x)
     {
         accumulator.release();
+        coalesced.release();
 
         Throwable closed;
         Set<HTTP2Session.Entry> allEntries;
@@ -0,0 +1,287 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.internal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A concurrent map of positive {@code int} stream ids to values,
+ * that does not box the stream ids nor allocates on lookups and insertions.</p>
+ * <p>The table uses open addressing with linear probing, and indexes the
+ * slots directly with the low bits of the stream id: since HTTP/2 stream ids
+ * are allocated monotonically, the window of concurrently active streams
+ * maps to distinct slots, so that probe sequences are typically of length 1.</p>
+ * <p>Lookups are lock-free; insertions and removals are serialized by a lock.
+ * Removed slots are marked with a tombstone, that is reused by a later
+ * insertion in the same slot, and the table is rebuilt when the tombstones
+ * and the entries exceed the load factor.</p>
+ *
+ * @param <V> the type of the values
+ */
+public class HTTP2StreamTable<V>
+{
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private final AutoLock lock = new AutoLock();
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private volatile int size;
+    private int tombstones;
+
+    /**
+     * @param streamId the stream id
+     * @return the value associated with the stream id, or {@code null} if there is none
+     */
+    public V get(int streamId)
+    {
+        if (streamId <= 0)
+            return null;
+        while (true)
+        {
+            Table table = this.table;
+            Object value = table.get(streamId);
+            // Retry if the table was rebuilt, as the entry
+            // may have been removed from the new table.
+            if (table == this.table)
+                return cast(value);
+        }
+    }
+
+    /**
+     * @param streamId the stream id
+     * @return whether the table contains the stream id
+     */
+    public boolean containsKey(int streamId)
+    {
+        return get(streamId) != null;
+    }
+
+    /**
+     * <p>Associates the given value to the given stream id, if there is no association yet.</p>
+     *
+     * @param streamId the stream id, must be positive
+     * @param value the value, must not be {@code null}
+     * @return the value already associated with the stream id, or {@code null} if the value was added
+     */
+    public V putIfAbsent(int streamId, V value)
+    {
+        if (streamId <= 0)
+            throw new IllegalArgumentException("Invalid stream id " + streamId);
+        if (value == null)
+            throw new NullPointerException();
+        try (AutoLock ignored = lock.lock())
+        {
+            Table table = this.table;
+            int[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int index = streamId & mask;
+            int reusable = -1;
+            for (int probes = 0; probes <= mask; ++probes)
+            {
+                int key = keys[index];
+                if (key == EMPTY)
+                    break;
+                if (key == streamId)
+                    return cast(values[index]);
+                if (key == TOMBSTONE && reusable < 0)
+                    reusable = index;
+                index = (index + 1) & mask;
+            }
+
+            if (reusable >= 0)
+            {
+                index = reusable;
+                --tombstones;
+            }
+            // Publish the value before the key, so that lock-free lookups
+            // that see the key also see the value.
+            VALUES.setRelease(values, index, value);
+            KEYS.setRelease(keys, index, streamId);
+            int size = this.size + 1;
+            this.size = size;
+
+            if ((size + tombstones) * 4 >= keys.length * 3)
+                rebuild(table, size);
+            return null;
+        }
+    }
+
+    /**
+     * @param streamId the stream id
+     * @return the value that was associated with the stream id, or {@code null} if there was none
+     */
+    public V remove(int streamId)
+    {
+        if (streamId <= 0)
+            return null;
+        try (AutoLock ignored = lock.lock())
+        {
+            Table table = this.table;
+            int[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int index = streamId & mask;
+            for (int probes = 0; probes <= mask; ++probes)
+            {
+                int key = keys[index];
+                if (key == EMPTY)
+                    return null;
+                if (key == streamId)
+                {
+                    Object removed = values[index];
+                    KEYS.setRelease(keys, index, TOMBSTONE);
+                    VALUES.setRelease(values, index, null);
+                    this.size = this.size - 1;
+                    ++tombstones;
+                    return cast(removed);
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of entries in the table
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return whether the table is empty
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return the current capacity of the table
+     */
+    public int capacity()
+    {
+        return table.keys.length;
+    }
+
+    /**
+     * @return a snapshot of the values in the table
+     */
+    public List<V> values()
+    {
+        Table table = this.table;
+        int[] keys = table.keys;
+        Object[] values = table.values;
+        List<V> result = new ArrayList<>(size());
+        for (int i = 0; i < keys.length; ++i)
+        {
+            if ((int)KEYS.getAcquire(keys, i) > 0)
+            {
+                Object value = VALUES.getAcquire(values, i);
+                if (value != null)
+                    result.add(cast(value));
+            }
+        }
+        return result;
+    }
+
+    private void rebuild(Table table, int size)
+    {
+        // Size the new table so that it is at most a quarter full, which
+        // purges the tombstones and may grow or shrink the table.
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 4)
+        {
+            capacity <<= 1;
+        }
+        Table newTable = new Table(capacity);
+        int[] keys = table.keys;
+        Object[] values = table.values;
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; ++i)
+        {
+            int key = keys[i];
+            if (key > 0)
+            {
+                int index = key & mask;
+                while (newTable.keys[index] != EMPTY)
+                {
+                    index = (index + 1) & mask;
+                }
+                newTable.keys[index] = key;
+                newTable.values[index] = values[i];
+            }
+        }
+        tombstones = 0;
+        // The volatile write publishes the new table to lock-free lookups.
+        this.table = newTable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value)
+    {
+        return (V)value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[size=%d,capacity=%d]", getClass().getSimpleName(), hashCode(), size(), capacity());
+    }
+
+    private static class Table
+    {
+        private final int[] keys;
+        private final Object[] values;
+
+        private Table(int capacity)
+        {
+            keys = new int[capacity];
+            values = new Object[capacity];
+        }
+
+        private Object get(int streamId)
+        {
+            int mask = keys.length - 1;
+            int index = streamId & mask;
+            for (int probes = 0; probes <= mask; ++probes)
+            {
+                int key = (int)KEYS.getAcquire(keys, index);
+                if (key == EMPTY)
+                    return null;
+                if (key == streamId)
+                {
+                    Object value = VALUES.getAcquire(values, index);
+                    // Re-check the key, as the slot may have been
+                    // concurrently removed and reused by another stream id.
+                    if ((int)KEYS.getAcquire(keys, index) == streamId)
+                        return value;
+                    return null;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.GoAwayFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+public class FrameSchedulerTest
+{
+    @Test
+    public void testFIFO()
+    {
+        HTTP2Stream stream1 = newStream(1, null);
+        HTTP2Stream stream3 = newStream(3, null);
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(data(stream1), data(stream3), ping()));
+        List<HTTP2Session.Entry> expected = List.copyOf(entries);
+        FrameScheduler.FIFO.schedule(entries);
+        assertThat(entries, contains(expected.toArray()));
+    }
+
+    @Test
+    public void testExtensiblePriorityUrgency()
+    {
+        HTTP2Stream stream1 = newStream(1, "u=5");
+        HTTP2Stream stream3 = newStream(3, "u=1");
+        HTTP2Stream stream5 = newStream(5, null);
+        HTTP2Session.Entry data1 = data(stream1);
+        HTTP2Session.Entry data3 = data(stream3);
+        HTTP2Session.Entry ping = ping();
+        HTTP2Session.Entry headers5 = headers(stream5, null);
+        HTTP2Session.Entry data5 = data(stream5);
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(data1, data3, ping, headers5, data5));
+
+        new FrameScheduler.ExtensiblePriority().schedule(entries);
+
+        // DATA frames by urgency, while other frames keep their position in the queue.
+        assertThat(entries, contains(data3, data1, ping, headers5, data5));
+    }
+
+    @Test
+    public void testExtensiblePriorityKeepsNonDataFramesInQueueOrder()
+    {
+        HTTP2Stream stream1 = newStream(1, "u=7");
+        HTTP2Stream stream3 = newStream(3, "u=0");
+        HTTP2Stream stream5 = newStream(5, "u=0");
+        HTTP2Session.Entry data1 = data(stream1);
+        HTTP2Session.Entry headers3 = request(stream3);
+        HTTP2Session.Entry data3 = data(stream3);
+        HTTP2Session.Entry headers5 = request(stream5);
+        HTTP2Session.Entry goAway = goAway();
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(data1, headers3, headers5, data3, goAway));
+        List<HTTP2Session.Entry> expected = List.copyOf(entries);
+
+        new FrameScheduler.ExtensiblePriority().schedule(entries);
+
+        // Streams are opened in stream id order, and GOAWAY does not overtake DATA.
+        assertThat(entries, contains(expected.toArray()));
+
+        // Once the HEADERS have been written, DATA frames are ordered by urgency.
+        entries.remove(headers3);
+        entries.remove(headers5);
+        new FrameScheduler.ExtensiblePriority().schedule(entries);
+        assertThat(entries, contains(data3, data1, goAway));
+    }
+
+    @Test
+    public void testExtensiblePriorityResponseOverridesRequest()
+    {
+        HTTP2Stream stream1 = newStream(1, "u=1");
+        HTTP2Stream stream3 = newStream(3, "u=2");
+        HTTP2Session.Entry headers1 = headers(stream1, "u=6");
+        HTTP2Session.Entry data1 = data(stream1);
+        HTTP2Session.Entry data3 = data(stream3);
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(headers1, data1, data3));
+
+        new FrameScheduler.ExtensiblePriority().schedule(entries);
+
+        assertThat(entries, contains(headers1, data3, data1));
+    }
+
+    @Test
+    public void testExtensiblePriorityIncremental()
+    {
+        FrameScheduler scheduler = new FrameScheduler.ExtensiblePriority();
+        HTTP2Stream stream1 = newStream(1, "u=3, i");
+        HTTP2Stream stream3 = newStream(3, "u=3, i");
+        HTTP2Stream stream5 = newStream(5, "u=3");
+        HTTP2Stream stream7 = newStream(7, "u=3");
+        HTTP2Session.Entry data1 = data(stream1);
+        HTTP2Session.Entry data3 = data(stream3);
+        HTTP2Session.Entry data5 = data(stream5);
+        HTTP2Session.Entry data7 = data(stream7);
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(data7, data1, data3, data5));
+
+        // Non-incremental streams are written sequentially first.
+        scheduler.schedule(entries);
+        assertThat(entries, contains(data5, data7, data1, data3));
+
+        // Incremental streams take turns.
+        entries.remove(data5);
+        entries.remove(data7);
+        scheduler.onGenerated(data1, 16384);
+        scheduler.schedule(entries);
+        assertThat(entries, contains(data3, data1));
+        scheduler.onGenerated(data3, 32768);
+        scheduler.schedule(entries);
+        assertThat(entries, contains(data1, data3));
+    }
+
+    @Test
+    public void testRoundRobin()
+    {
+        FrameScheduler scheduler = new FrameScheduler.RoundRobin();
+        HTTP2Stream stream1 = newStream(1, null);
+        HTTP2Stream stream3 = newStream(3, null);
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(data(stream1), data(stream3)));
+
+        assertThat(turns(scheduler, entries, 6), contains(1, 3, 1, 3, 1, 3));
+
+        // A new stream takes turns with the others, rather than taking over the connection.
+        HTTP2Stream stream5 = newStream(5, null);
+        entries.add(data(stream5));
+        List<Integer> turns = turns(scheduler, entries, 6);
+        assertThat(turns, containsInAnyOrder(1, 1, 3, 3, 5, 5));
+        assertThat(turns.subList(0, 3), containsInAnyOrder(1, 3, 5));
+    }
+
+    @Test
+    public void testWeighted()
+    {
+        FrameScheduler scheduler = new FrameScheduler.Weighted();
+        HTTP2Stream stream1 = newStream(1, null);
+        stream1.setAttribute(FrameScheduler.Weighted.WEIGHT_ATTRIBUTE, 64);
+        HTTP2Stream stream3 = newStream(3, null);
+        HTTP2Session.Entry data1 = data(stream1);
+        HTTP2Session.Entry data3 = data(stream3);
+        List<HTTP2Session.Entry> entries = new ArrayList<>(List.of(data3, data1));
+
+        // Stream 1 has 4 times the weight of stream 3,
+        // so it writes 4 frames for every frame of stream 3.
+        assertThat(turns(scheduler, entries, 10), contains(3, 1, 1, 1, 1, 3, 1, 1, 1, 1));
+    }
+
+    private static List<Integer> turns(FrameScheduler scheduler, List<HTTP2Session.Entry> entries, int count)
+    {
+        // Simulates the flusher writing only the first entry at every flush.
+        List<Integer> turns = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            scheduler.schedule(entries);
+            HTTP2Session.Entry first = entries.get(0);
+            turns.add(first.stream.getId());
+            scheduler.onGenerated(first, 1024);
+        }
+        return turns;
+    }
+
+    private static HTTP2Stream newStream(int streamId, String priority)
+    {
+        HttpFields.Mutable fields = HttpFields.build();
+        if (priority != null)
+            fields.put(FrameScheduler.ExtensiblePriority.PRIORITY_HEADER, priority);
+        MetaData.Request request = new MetaData.Request("GET", HttpURI.from("http://localhost/" + streamId), HttpVersion.HTTP_2, fields);
+        return new HTTP2Stream(null, streamId, request, false);
+    }
+
+    private static HTTP2Session.Entry data(HTTP2Stream stream)
+    {
+        return new TestEntry(new DataFrame(stream.getId(), ByteBuffer.allocate(1024), false), stream);
+    }
+
+    private static HTTP2Session.Entry headers(HTTP2Stream stream, String priority)
+    {
+        HttpFields.Mutable fields = HttpFields.build();
+        if (priority != null)
+            fields.put(FrameScheduler.ExtensiblePriority.PRIORITY_HEADER, priority);
+        MetaData.Response response = new MetaData.Response(200, null, HttpVersion.HTTP_2, fields);
+        return new TestEntry(new HeadersFrame(stream.getId(), response, null, false), stream);
+    }
+
+    private static HTTP2Session.Entry request(HTTP2Stream stream)
+    {
+        return new TestEntry(new HeadersFrame(stream.getId(), stream.getRequest(), null, false), stream);
+    }
+
+    private static HTTP2Session.Entry goAway()
+    {
+        return new TestEntry(new GoAwayFrame(1, ErrorCode.NO_ERROR.code, null), null);
+    }
+
+    private static HTTP2Session.Entry ping()
+    {
+        return new TestEntry(new PingFrame(false), null);
+    }
+
+    private static class TestEntry extends HTTP2Session.Entry
+    {
+        private TestEntry(Frame frame, HTTP2Stream stream)
+        {
+            super(frame, stream, Callback.NOOP);
+        }
+
+        @Override
+        public int getFrameBytesGenerated()
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean generate(ByteBufferPool.Accumulator accumulator)
+        {
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return frame.getType() + "#" + (stream == null ? 0 : stream.getId());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HTTP2StreamTableTest
+{
+    @Test
+    public void testPutGetRemove()
+    {
+        HTTP2StreamTable<String> table = new HTTP2StreamTable<>();
+        assertTrue(table.isEmpty());
+        assertNull(table.get(1));
+        assertNull(table.get(0));
+        assertNull(table.get(-1));
+        assertThrows(IllegalArgumentException.class, () -> table.putIfAbsent(0, "zero"));
+
+        assertNull(table.putIfAbsent(1, "one"));
+        assertNull(table.putIfAbsent(2, "two"));
+        // Collides with stream 1 in the initial table.
+        assertNull(table.putIfAbsent(17, "seventeen"));
+        assertEquals("one", table.putIfAbsent(1, "uno"));
+        assertEquals(3, table.size());
+        assertEquals("one", table.get(1));
+        assertEquals("two", table.get(2));
+        assertEquals("seventeen", table.get(17));
+        assertTrue(table.containsKey(17));
+        assertFalse(table.containsKey(33));
+        assertThat(table.values(), containsInAnyOrder("one", "two", "seventeen"));
+
+        assertEquals("one", table.remove(1));
+        assertNull(table.remove(1));
+        assertNull(table.get(1));
+        // Stream 17 must still be found past the tombstone of stream 1.
+        assertEquals("seventeen", table.get(17));
+        assertNull(table.putIfAbsent(33, "thirty-three"));
+        assertEquals("thirty-three", table.get(33));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void testMonotonicStreamIdsDoNotGrowTable()
+    {
+        HTTP2StreamTable<Integer> table = new HTTP2StreamTable<>();
+        int window = 8;
+        for (int streamId = 1; streamId < 1_000_000; streamId += 2)
+        {
+            assertNull(table.putIfAbsent(streamId, streamId));
+            int oldest = streamId - 2 * window;
+            if (oldest > 0)
+                assertEquals(oldest, table.remove(oldest));
+        }
+        assertEquals(window, table.size());
+        assertThat(table.capacity(), lessThanOrEqualTo(64));
+    }
+
+    @Test
+    public void testGrowAndShrink()
+    {
+        HTTP2StreamTable<Integer> table = new HTTP2StreamTable<>();
+        int count = 10_000;
+        for (int streamId = 1; streamId <= count; ++streamId)
+        {
+            assertNull(table.putIfAbsent(streamId, streamId));
+        }
+        assertEquals(count, table.size());
+        for (int streamId = 1; streamId <= count; ++streamId)
+        {
+            assertEquals(streamId, table.get(streamId));
+        }
+        for (int streamId = 1; streamId <= count; ++streamId)
+        {
+            assertEquals(streamId, table.remove(streamId));
+        }
+        assertTrue(table.isEmpty());
+        assertTrue(table.values().isEmpty());
+        assertNull(table.putIfAbsent(count + 1, count + 1));
+        // The tombstones are eventually purged, shrinking the table.
+        for (int streamId = count + 2; streamId < 2 * count; ++streamId)
+        {
+            table.putIfAbsent(streamId, streamId);
+            table.remove(streamId);
+        }
+        assertEquals(1, table.size());
+        assertThat(table.capacity(), lessThanOrEqualTo(64));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception
+    {
+        HTTP2StreamTable<Integer> table = new HTTP2StreamTable<>();
+        // A long-lived stream that must always be found.
+        table.putIfAbsent(1, 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 2; ++i)
+        {
+            Thread reader = new Thread(() ->
+            {
+                while (done.getCount() > 0)
+                {
+                    if (table.get(1) == null)
+                        failure.compareAndSet(null, new AssertionError("stream 1 not found"));
+                    for (int streamId = 3; streamId < 64; streamId += 2)
+                    {
+                        Integer value = table.get(streamId);
+                        if (value != null && value != streamId)
+                            failure.compareAndSet(null, new AssertionError("stream " + streamId + " mapped to " + value));
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int streamId = 3; streamId < 2_000_000; streamId += 2)
+        {
+            table.putIfAbsent(streamId, streamId);
+            int oldest = streamId - 20;
+            if (oldest > 1)
+                table.remove(oldest);
+        }
+        done.countDown();
+        for (Thread reader : readers)
+        {
+            reader.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        assertNull(failure.get());
+    }
+}
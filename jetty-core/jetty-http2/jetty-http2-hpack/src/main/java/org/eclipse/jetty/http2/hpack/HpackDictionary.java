@@ -0,0 +1,365 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A dictionary of header fields, shared by the {@link HpackEncoder}s
+ * of many connections, that learns the fields that are frequently encoded
+ * and keeps them pre-encoded.</p>
+ * <p>Every {@link HpackEncoder} starts with an empty dynamic table, so that
+ * the first header block of every connection encodes the fields literally.
+ * The fields that the dictionary considers <em>hot</em>, either because they
+ * have been {@link #addField(HttpField) added explicitly} or because they have
+ * been encoded literally by many connections, are written from their shared
+ * pre-encoded bytes and are added to the dynamic table of the connection,
+ * so that the next header blocks of the connection refer to them by index.</p>
+ * <p>HPACK does not allow to add entries to the dynamic table of the decoder
+ * other than by encoding them in a header block, so the dynamic table of a
+ * connection is seeded with the hot fields when they are first encoded;
+ * the {@link SeedPolicy} controls how the other fields share the table.</p>
+ * <p>Fields whose values change often are discarded when the number of
+ * candidate fields exceeds {@link #getMaxCandidates()}.</p>
+ * <p>The dictionary also records the size of the fields before and after
+ * encoding, to report the compression ratio of the encoders that use it.</p>
+ */
+@ManagedObject
+public class HpackDictionary
+{
+    /**
+     * <p>The policy that controls how the dynamic tables of the connections
+     * are seeded with the hot fields.</p>
+     */
+    public enum SeedPolicy
+    {
+        /**
+         * <p>The dictionary only records the compression statistics,
+         * and does not change the encoding.</p>
+         */
+        NONE,
+        /**
+         * <p>The hot fields are written from their pre-encoded bytes
+         * and added to the dynamic table; the other fields are encoded
+         * as if the dictionary was not present.</p>
+         */
+        HOT_FIELDS,
+        /**
+         * <p>Like {@link #HOT_FIELDS}, but once the dictionary has hot fields,
+         * the other fields are not added to the dynamic table, so that they
+         * cannot evict the hot fields.</p>
+         */
+        HOT_FIELDS_ONLY
+    }
+
+    private final AutoLock lock = new AutoLock();
+    private final Map<String, Map<String, Candidate>> candidates = new ConcurrentHashMap<>();
+    private final AtomicInteger candidateCount = new AtomicInteger();
+    private final LongAdder fieldsBytes = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder headerBlocks = new LongAdder();
+    private final LongAdder hotHits = new LongAdder();
+    private final SeedPolicy seedPolicy;
+    private volatile int hotFieldCount;
+    private int hotFieldsSize;
+    private int hotThreshold = 16;
+    private int maxCandidates = 512;
+    private int maxHotFieldsSize = HpackContext.DEFAULT_MAX_TABLE_CAPACITY / 2;
+
+    public HpackDictionary()
+    {
+        this(SeedPolicy.HOT_FIELDS);
+    }
+
+    public HpackDictionary(SeedPolicy seedPolicy)
+    {
+        this.seedPolicy = seedPolicy;
+    }
+
+    @ManagedAttribute("The policy used to seed the dynamic tables with the hot fields")
+    public SeedPolicy getSeedPolicy()
+    {
+        return seedPolicy;
+    }
+
+    @ManagedAttribute("The number of connections that must encode a field literally before it becomes hot")
+    public int getHotThreshold()
+    {
+        return hotThreshold;
+    }
+
+    public void setHotThreshold(int hotThreshold)
+    {
+        this.hotThreshold = hotThreshold;
+    }
+
+    @ManagedAttribute("The max number of fields that are candidates to become hot")
+    public int getMaxCandidates()
+    {
+        return maxCandidates;
+    }
+
+    public void setMaxCandidates(int maxCandidates)
+    {
+        this.maxCandidates = maxCandidates;
+    }
+
+    @ManagedAttribute("The max total size of the hot fields, as computed for the dynamic table")
+    public int getMaxHotFieldsSize()
+    {
+        return maxHotFieldsSize;
+    }
+
+    public void setMaxHotFieldsSize(int maxHotFieldsSize)
+    {
+        this.maxHotFieldsSize = maxHotFieldsSize;
+    }
+
+    /**
+     * <p>Adds the given field as a hot field, so that it is pre-encoded
+     * before it has been learned, for example the {@code Server} header
+     * or security headers that are present in all responses.</p>
+     *
+     * @param field the field to add
+     * @return whether the field has been added as a hot field
+     */
+    public boolean addField(HttpField field)
+    {
+        if (!isLearnable(field))
+            return false;
+        return promote(candidate(field, true));
+    }
+
+    /**
+     * @return the hot fields of this dictionary
+     */
+    public List<HttpField> getHotFields()
+    {
+        List<HttpField> result = new ArrayList<>();
+        for (Map<String, Candidate> values : candidates.values())
+        {
+            for (Candidate candidate : values.values())
+            {
+                if (candidate.encoded != null)
+                    result.add(candidate.field);
+            }
+        }
+        return result;
+    }
+
+    @ManagedAttribute(value = "The number of hot fields", readonly = true)
+    public int getHotFieldCount()
+    {
+        return hotFieldCount;
+    }
+
+    @ManagedAttribute(value = "The number of fields written from their pre-encoded bytes", readonly = true)
+    public long getHotFieldHits()
+    {
+        return hotHits.sum();
+    }
+
+    @ManagedAttribute(value = "The number of header blocks encoded", readonly = true)
+    public long getHeaderBlocks()
+    {
+        return headerBlocks.sum();
+    }
+
+    @ManagedAttribute(value = "The size in bytes of the fields in HTTP/1.1 format", readonly = true)
+    public long getFieldsBytes()
+    {
+        return fieldsBytes.sum();
+    }
+
+    @ManagedAttribute(value = "The size in bytes of the encoded header blocks", readonly = true)
+    public long getEncodedBytes()
+    {
+        return encodedBytes.sum();
+    }
+
+    @ManagedAttribute(value = "The ratio between the encoded bytes and the fields bytes", readonly = true)
+    public double getCompressionRatio()
+    {
+        long fields = getFieldsBytes();
+        return fields == 0 ? 1.0 : (double)getEncodedBytes() / fields;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        fieldsBytes.reset();
+        encodedBytes.reset();
+        headerBlocks.reset();
+        hotHits.reset();
+    }
+
+    /**
+     * @return whether fields other than the hot fields should not be added to the dynamic table
+     */
+    boolean isHotFieldsOnly()
+    {
+        return seedPolicy == SeedPolicy.HOT_FIELDS_ONLY && hotFieldCount > 0;
+    }
+
+    /**
+     * <p>Returns the pre-encoded bytes of the given field, if it is hot,
+     * otherwise counts the field towards becoming hot.</p>
+     * <p>This method is called by the encoder when the field is not
+     * in the dynamic table, so it needs to be encoded literally.</p>
+     *
+     * @param field the field to encode
+     * @return the pre-encoded bytes, or null if the field is not hot
+     */
+    byte[] getEncodedField(HttpField field)
+    {
+        if (seedPolicy == SeedPolicy.NONE || !isLearnable(field))
+            return null;
+        Candidate candidate = candidate(field, true);
+        byte[] encoded = candidate.encoded;
+        if (encoded != null)
+        {
+            hotHits.increment();
+            return encoded;
+        }
+        if (candidate.count.incrementAndGet() == getHotThreshold())
+            promote(candidate);
+        return null;
+    }
+
+    /**
+     * <p>Records the sizes of a header block.</p>
+     *
+     * @param fieldsSize the size of the fields in HTTP/1.1 format
+     * @param encodedSize the size of the encoded header block
+     */
+    void onEncoded(int fieldsSize, int encodedSize)
+    {
+        headerBlocks.increment();
+        fieldsBytes.add(fieldsSize);
+        encodedBytes.add(encodedSize);
+    }
+
+    private boolean isLearnable(HttpField field)
+    {
+        String value = field.getValue();
+        if (value == null)
+            return false;
+        HttpHeader header = field.getHeader();
+        if (header != null)
+        {
+            // Pseudo headers are either in the static table or unique per request,
+            // and the Date header changes every second.
+            if (header.isPseudo() || header == HttpHeader.DATE || header == HttpHeader.CONTENT_LENGTH)
+                return false;
+            if (HpackEncoder.DO_NOT_INDEX.contains(header))
+                return false;
+        }
+        return field.getName().length() + value.length() + 32 <= getMaxHotFieldsSize();
+    }
+
+    private Candidate candidate(HttpField field, boolean create)
+    {
+        String name = field.getLowerCaseName();
+        Map<String, Candidate> values = candidates.get(name);
+        Candidate candidate = values == null ? null : values.get(field.getValue());
+        if (candidate != null || !create)
+            return candidate;
+        if (candidateCount.get() >= getMaxCandidates())
+            sweep();
+        values = candidates.computeIfAbsent(name, k -> new ConcurrentHashMap<>());
+        return values.computeIfAbsent(field.getValue(), v ->
+        {
+            candidateCount.incrementAndGet();
+            return new Candidate(field.getHeader() == null ? new HttpField(name, v) : new HttpField(field.getHeader(), v));
+        });
+    }
+
+    private void sweep()
+    {
+        try (AutoLock ignored = lock.lock())
+        {
+            if (candidateCount.get() < getMaxCandidates())
+                return;
+            // Fields with values that change often, such as request ids,
+            // are discarded, while the counts of the others decay.
+            for (Map<String, Candidate> values : candidates.values())
+            {
+                values.values().removeIf(candidate ->
+                {
+                    if (candidate.encoded != null)
+                        return false;
+                    int count = candidate.count.updateAndGet(c -> c / 2);
+                    if (count > 0)
+                        return false;
+                    candidateCount.decrementAndGet();
+                    return true;
+                });
+            }
+            candidates.values().removeIf(Map::isEmpty);
+        }
+    }
+
+    private boolean promote(Candidate candidate)
+    {
+        HttpField field = candidate.field;
+        int size = field.getName().length() + field.getValue().length() + 32;
+        try (AutoLock ignored = lock.lock())
+        {
+            if (candidate.encoded != null)
+                return true;
+            if (hotFieldsSize + size > getMaxHotFieldsSize())
+                return false;
+            hotFieldsSize += size;
+            candidate.encoded = new HpackFieldPreEncoder().getEncodedField(field.getHeader(), field.getLowerCaseName(), field.getValue());
+            hotFieldCount++;
+            return true;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[policy=%s,hot=%d,candidates=%d,ratio=%.3f]",
+            getClass().getSimpleName(),
+            hashCode(),
+            getSeedPolicy(),
+            getHotFieldCount(),
+            candidateCount.get(),
+            getCompressionRatio());
+    }
+
+    private static class Candidate
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final HttpField field;
+        private volatile byte[] encoded;
+
+        private Candidate(HttpField field)
+        {
+            this.field = field;
+        }
+    }
+}
@@ -98,6 +98,8 @@ public class HpackEncoder
     private int _tableCapacity;
     private int _maxHeaderListSize;
     private int _headerListSize;
+    private int _fieldsSize;
+    private HpackDictionary _dictionary;
     private boolean _validateEncoding = true;
     private boolean _maxDynamicTableSizeSent = false;
 
@@ -164,6 +166,23 @@ public class HpackEncoder
         return _context;
     }
 
+    public HpackDictionary getDictionary()
+    {
+        return _dictionary;
+    }
+
+    /**
+     * <p>Sets the dictionary, possibly shared with other encoders,
+     * that provides the pre-encoded hot fields.</p>
+     *
+     * @param dictionary the dictionary, or null to encode without dictionary
+     * @see HpackDictionary
+     */
+    public void setDictionary(HpackDictionary dictionary)
+    {
+        _dictionary = dictionary;
+    }
+
     public boolean isValidateEncoding()
     {
         return _validateEncoding;
@@ -195,6 +214,7 @@ public class HpackEncoder
             }
 
             _headerListSize = 0;
+            _fieldsSize = 0;
             int pos = buffer.position();
 
             // If max table size changed, send the correspondent instruction.
@@ -283,6 +303,10 @@ public class HpackEncoder
             if (maxHeaderListSize > 0 && _headerListSize > maxHeaderListSize)
                 throw new HpackException.SessionException("Header size %d > %d", _headerListSize, maxHeaderListSize);
 
+            HpackDictionary dictionary = _dictionary;
+            if (dictionary != null)
+                dictionary.onEncoded(_fieldsSize, buffer.position() - pos);
+
             if (LOG.isDebugEnabled())
                 LOG.debug(String.format("CtxTbl[%x] encoded %d octets", _context.hashCode(), buffer.position() - pos));
         }
@@ -312,8 +336,12 @@ public class HpackEncoder
 
         int fieldSize = field.getName().length() + field.getValue().length();
         _headerListSize += fieldSize + 32;
+        // The size in HTTP/1.1 format, with the colon, space and CRLF.
+        _fieldsSize += fieldSize + 4;
 
         String encoding = null;
+        HpackDictionary dictionary = _dictionary;
+        byte[] dictionaryField;
 
         // Is there an index entry for the field?
         Entry entry = _context.get(field);
@@ -335,10 +363,20 @@ public class HpackEncoder
                     encoding = "IdxField" + (entry.isStatic() ? "S" : "") + NBitIntegerEncoder.octetsNeeded(7, index);
             }
         }
+        else if (dictionary != null && (dictionaryField = dictionary.getEncodedField(field)) != null)
+        {
+            // A hot field of the dictionary, pre-encoded with incremental indexing.
+            buffer.put(dictionaryField);
+            _context.add(field);
+            if (_debug)
+                encoding = "DictIdx";
+        }
         else
         {
             // Unknown field entry, so we will have to send literally, but perhaps add an index.
             final boolean indexed;
+            // Only the hot fields of the dictionary may be indexed.
+            boolean hotFieldsOnly = dictionary != null && dictionary.isHotFieldsOnly();
 
             // Do we know its name?
             HttpHeader header = field.getHeader();
@@ -358,7 +396,7 @@ public class HpackEncoder
                     if (_debug)
                         encoding = indexed ? "PreEncodedIdx" : "PreEncoded";
                 }
-                else if (name == null && fieldSize < _context.getMaxDynamicTableSize())
+                else if (name == null && fieldSize < _context.getMaxDynamicTableSize() && !hotFieldsOnly)
                 {
                     // unknown name and value that will fit in dynamic table, so let's index
                     // this just in case it is the first time we have seen a custom name or a
@@ -410,9 +448,9 @@ public class HpackEncoder
                             (huffman ? "HuffV" : "LitV") +
                             (neverIndex ? "!!Idx" : "!Idx");
                 }
-                else if (fieldSize >= _context.getMaxDynamicTableSize() || header == HttpHeader.CONTENT_LENGTH && !"0".equals(field.getValue()))
+                else if (fieldSize >= _context.getMaxDynamicTableSize() || header == HttpHeader.CONTENT_LENGTH && !"0".equals(field.getValue()) || hotFieldsOnly)
                 {
-                    // The field is too large or a non-zero content length, so do not index.
+                    // The field is too large, a non-zero content length or not a hot field, so do not index.
                     indexed = false;
                     encodeName(buffer, (byte)0x00, 4, header.asString(), name);
                     encodeValue(buffer, true, field.getValue());
@@ -0,0 +1,149 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.NanoTime;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HpackDictionaryTest
+{
+    private static final HttpField SERVER = new HttpField(HttpHeader.SERVER, "jetty");
+    private static final HttpField HSTS = new HttpField(HttpHeader.STRICT_TRANSPORT_SECURITY, "max-age=31536000; includeSubDomains");
+
+    @Test
+    public void testAddedFieldIsPreEncoded() throws Exception
+    {
+        HpackDictionary dictionary = new HpackDictionary();
+        assertTrue(dictionary.addField(HSTS));
+        // Fields that must not be indexed cannot be hot.
+        assertFalse(dictionary.addField(new HttpField(HttpHeader.SET_COOKIE, "a=b")));
+
+        HttpFields fields = HttpFields.build().add(HSTS).add(SERVER);
+        MetaData.Response response = new MetaData.Response(200, null, HttpVersion.HTTP_2, fields);
+
+        HpackEncoder encoder = newHpackEncoder(dictionary);
+        HpackDecoder decoder = new HpackDecoder(8192, NanoTime::now);
+        ByteBuffer first = encode(encoder, response);
+        int firstLength = first.remaining();
+        assertEquals(1, dictionary.getHotFieldHits());
+        MetaData.Response decoded = (MetaData.Response)decoder.decode(first);
+        assertEquals(HSTS.getValue(), decoded.getHttpFields().get(HttpHeader.STRICT_TRANSPORT_SECURITY));
+
+        // The hot field has been added to the dynamic table, so it is now indexed.
+        ByteBuffer second = encode(encoder, response);
+        assertThat(second.remaining(), lessThan(firstLength));
+        assertEquals(1, dictionary.getHotFieldHits());
+        decoded = (MetaData.Response)decoder.decode(second);
+        assertEquals(HSTS.getValue(), decoded.getHttpFields().get(HttpHeader.STRICT_TRANSPORT_SECURITY));
+
+        assertEquals(2, dictionary.getHeaderBlocks());
+        assertThat(dictionary.getCompressionRatio(), lessThan(1.0));
+    }
+
+    @Test
+    public void testFieldsAreLearnedAcrossConnections() throws Exception
+    {
+        HpackDictionary dictionary = new HpackDictionary();
+        dictionary.setHotThreshold(4);
+
+        for (int i = 0; i < 8; ++i)
+        {
+            // Each encoder is a new connection.
+            HpackEncoder encoder = newHpackEncoder(dictionary);
+            HpackDecoder decoder = new HpackDecoder(8192, NanoTime::now);
+            HttpFields fields = HttpFields.build()
+                .add(SERVER)
+                .add("x-request-id", String.valueOf(i));
+            MetaData.Response response = new MetaData.Response(200, null, HttpVersion.HTTP_2, fields);
+            MetaData.Response decoded = (MetaData.Response)decoder.decode(encode(encoder, response));
+            assertEquals("jetty", decoded.getHttpFields().get(HttpHeader.SERVER));
+            assertEquals(String.valueOf(i), decoded.getHttpFields().get("x-request-id"));
+        }
+
+        assertThat(dictionary.getHotFields(), contains(SERVER));
+        // The connections after the 4th use the pre-encoded field.
+        assertEquals(4, dictionary.getHotFieldHits());
+    }
+
+    @Test
+    public void testHotFieldsOnlyDoesNotIndexOtherFields() throws Exception
+    {
+        HpackDictionary dictionary = new HpackDictionary(HpackDictionary.SeedPolicy.HOT_FIELDS_ONLY);
+        dictionary.addField(SERVER);
+
+        HpackEncoder encoder = newHpackEncoder(dictionary);
+        HpackDecoder decoder = new HpackDecoder(8192, NanoTime::now);
+        HttpFields fields = HttpFields.build()
+            .add(SERVER)
+            .add(HttpHeader.CONTENT_TYPE, "text/plain")
+            .add("x-custom", "value");
+        MetaData.Response response = new MetaData.Response(200, null, HttpVersion.HTTP_2, fields);
+        MetaData.Response decoded = (MetaData.Response)decoder.decode(encode(encoder, response));
+        assertEquals("jetty", decoded.getHttpFields().get(HttpHeader.SERVER));
+        assertEquals("text/plain", decoded.getHttpFields().get(HttpHeader.CONTENT_TYPE));
+        assertEquals("value", decoded.getHttpFields().get("x-custom"));
+
+        // Only the hot field is in the dynamic table.
+        assertEquals(1, encoder.getHpackContext().size());
+        assertNotNull(encoder.getHpackContext().get(SERVER));
+    }
+
+    @Test
+    public void testNonePolicyOnlyRecordsStatistics() throws Exception
+    {
+        HpackDictionary dictionary = new HpackDictionary(HpackDictionary.SeedPolicy.NONE);
+        dictionary.setHotThreshold(1);
+
+        HpackEncoder encoder = newHpackEncoder(dictionary);
+        HttpFields fields = HttpFields.build().add(SERVER);
+        encode(encoder, new MetaData.Response(200, null, HttpVersion.HTTP_2, fields));
+
+        assertEquals(0, dictionary.getHotFieldCount());
+        assertEquals(1, dictionary.getHeaderBlocks());
+        assertTrue(dictionary.getEncodedBytes() > 0);
+        assertEquals(SERVER.getName().length() + SERVER.getValue().length() + 4 + ":status".length() + "200".length() + 4, dictionary.getFieldsBytes());
+    }
+
+    private static HpackEncoder newHpackEncoder(HpackDictionary dictionary)
+    {
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setDictionary(dictionary);
+        return encoder;
+    }
+
+    private static ByteBuffer encode(HpackEncoder encoder, MetaData metaData) throws HpackException
+    {
+        ByteBuffer buffer = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer);
+        encoder.encode(buffer, metaData);
+        BufferUtil.flipToFlush(buffer, pos);
+        return buffer;
+    }
+}
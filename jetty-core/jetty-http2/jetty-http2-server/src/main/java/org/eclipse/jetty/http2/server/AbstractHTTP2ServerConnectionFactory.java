@@ -25,6 +25,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.FrameScheduler;
 import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.RateControl;
@@ -35,6 +36,7 @@ import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
 import org.eclipse.jetty.http2.generator.Generator;
 import org.eclipse.jetty.http2.hpack.HpackContext;
+import org.eclipse.jetty.http2.hpack.HpackDictionary;
 import org.eclipse.jetty.http2.parser.ServerParser;
 import org.eclipse.jetty.http2.server.internal.HTTP2ServerConnection;
 import org.eclipse.jetty.http2.server.internal.HTTP2ServerSession;
@@ -75,6 +77,9 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private boolean connectProtocolEnabled = true;
     private RateControl.Factory rateControlFactory = new WindowRateControl.Factory(128);
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
+    private FrameScheduler.Factory frameSchedulerFactory = () -> FrameScheduler.FIFO;
+    private HpackDictionary hpackDictionary;
+    private int coalesceThreshold;
     private long streamIdleTimeout;
     private boolean useInputDirectByteBuffers;
     private boolean useOutputDirectByteBuffers;
@@ -182,6 +187,60 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.flowControlStrategyFactory = flowControlStrategyFactory;
     }
 
+    public FrameScheduler.Factory getFrameSchedulerFactory()
+    {
+        return frameSchedulerFactory;
+    }
+
+    /**
+     * @param frameSchedulerFactory the factory of the policy that orders the frames waiting to be written
+     */
+    public void setFrameSchedulerFactory(FrameScheduler.Factory frameSchedulerFactory)
+    {
+        this.frameSchedulerFactory = frameSchedulerFactory;
+    }
+
+    @ManagedAttribute("The HPACK dictionary shared by the connections")
+    public HpackDictionary getHpackDictionary()
+    {
+        return hpackDictionary;
+    }
+
+    /**
+     * <p>Sets the HPACK dictionary shared by the HPACK encoders of all the
+     * connections created by this factory, that pre-encodes the response
+     * fields that are common to many connections, and reports the HPACK
+     * compression ratio of the connections.</p>
+     *
+     * @param hpackDictionary the HPACK dictionary, or null to not use a dictionary
+     */
+    public void setHpackDictionary(HpackDictionary hpackDictionary)
+    {
+        updateBean(this.hpackDictionary, hpackDictionary);
+        this.hpackDictionary = hpackDictionary;
+    }
+
+    @ManagedAttribute("The max size of the buffers that are copied into larger buffers before a write")
+    public int getCoalesceThreshold()
+    {
+        return coalesceThreshold;
+    }
+
+    /**
+     * <p>Sets the max size of the buffers, typically frame headers and small
+     * DATA frame payloads, that are copied into larger pooled buffers before
+     * being written, so that each write has fewer, larger buffers.</p>
+     * <p>Coalescing trades a copy of the small buffers for fewer buffers
+     * to write, which benefits for example applications that stream many
+     * small chunks of content on many streams.</p>
+     *
+     * @param coalesceThreshold the max size of the buffers to coalesce, or {@code 0} to disable coalescing
+     */
+    public void setCoalesceThreshold(int coalesceThreshold)
+    {
+        this.coalesceThreshold = coalesceThreshold;
+    }
+
     @ManagedAttribute("The stream idle timeout in milliseconds")
     public long getStreamIdleTimeout()
     {
@@ -307,6 +366,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
 
         Generator generator = new Generator(connector.getByteBufferPool(), isUseOutputDirectByteBuffers(), getMaxHeaderBlockFragment());
         generator.getHpackEncoder().setMaxHeaderListSize(getHttpConfiguration().getResponseHeaderSize());
+        generator.getHpackEncoder().setDictionary(getHpackDictionary());
 
         FlowControlStrategy flowControl = getFlowControlStrategyFactory().newFlowControlStrategy();
 
@@ -327,6 +387,8 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         session.setStreamIdleTimeout(streamIdleTimeout);
         session.setInitialSessionRecvWindow(getInitialSessionRecvWindow());
         session.setWriteThreshold(getHttpConfiguration().getOutputBufferSize());
+        session.setCoalesceThreshold(getCoalesceThreshold());
+        session.setFrameScheduler(getFrameSchedulerFactory().newFrameScheduler());
         session.setConnectProtocolEnabled(isConnectProtocolEnabled());
 
         HTTP2Connection connection = new HTTP2ServerConnection(connector,
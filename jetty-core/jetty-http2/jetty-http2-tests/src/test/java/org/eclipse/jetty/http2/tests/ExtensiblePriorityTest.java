@@ -0,0 +1,165 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.tests;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.FrameScheduler;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.GoAwayFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExtensiblePriorityTest extends AbstractTest
+{
+    @Test
+    public void testConcurrentStreamsWithMixedUrgencies() throws Exception
+    {
+        int streams = 32;
+        int contentLength = 64 * 1024;
+        start(new ServerSessionListener()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                String priority = ((MetaData.Request)frame.getMetaData()).getHttpFields().get(FrameScheduler.ExtensiblePriority.PRIORITY_HEADER);
+                stream.demand();
+                return new Stream.Listener()
+                {
+                    @Override
+                    public void onDataAvailable(Stream stream)
+                    {
+                        Stream.Data data = stream.readData();
+                        if (data == null)
+                        {
+                            stream.demand();
+                            return;
+                        }
+                        data.release();
+                        if (!data.frame().isEndStream())
+                        {
+                            stream.demand();
+                            return;
+                        }
+                        HttpFields fields = HttpFields.build().put(FrameScheduler.ExtensiblePriority.PRIORITY_HEADER, priority);
+                        MetaData.Response response = new MetaData.Response(HttpStatus.OK_200, null, HttpVersion.HTTP_2, fields);
+                        stream.headers(new HeadersFrame(stream.getId(), response, null, false), Callback.from(() ->
+                            stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(contentLength), true), Callback.NOOP)));
+                    }
+                };
+            }
+        }, factory -> factory.setFrameSchedulerFactory(FrameScheduler.ExtensiblePriority::new));
+        http2Client.setFrameSchedulerFactory(FrameScheduler.ExtensiblePriority::new);
+
+        AtomicReference<Object> failure = new AtomicReference<>();
+        Session session = newClientSession(new Session.Listener()
+        {
+            @Override
+            public void onGoAway(Session session, GoAwayFrame frame)
+            {
+                failure.compareAndSet(null, frame);
+            }
+
+            @Override
+            public void onFailure(Session session, Throwable x, Callback callback)
+            {
+                failure.compareAndSet(null, x);
+                callback.succeeded();
+            }
+        });
+
+        Map<Integer, AtomicLong> received = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(streams);
+        Stream.Listener listener = new Stream.Listener()
+        {
+            @Override
+            public void onHeaders(Stream stream, HeadersFrame frame)
+            {
+                assertEquals(HttpStatus.OK_200, ((MetaData.Response)frame.getMetaData()).getStatus());
+                stream.demand();
+            }
+
+            @Override
+            public void onDataAvailable(Stream stream)
+            {
+                Stream.Data data = stream.readData();
+                if (data == null)
+                {
+                    stream.demand();
+                    return;
+                }
+                received.computeIfAbsent(stream.getId(), id -> new AtomicLong()).addAndGet(data.frame().remaining());
+                data.release();
+                if (data.frame().isEndStream())
+                    latch.countDown();
+                else
+                    stream.demand();
+            }
+        };
+
+        // Open the other streams from the completion of the first, while the flusher
+        // is iterating, so that their HEADERS and DATA frames are queued together;
+        // the urgencies alternate between the lowest and the highest.
+        newStream(session, 0, listener, () ->
+        {
+            for (int i = 1; i < streams; ++i)
+            {
+                newStream(session, i, listener, () -> {});
+            }
+        });
+
+        // Streams opened out of order, or a failed connection, would not complete.
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        assertThat(failure.get(), nullValue());
+        assertThat(received.size(), is(streams));
+        received.values().forEach(bytes -> assertThat(bytes.get(), is((long)contentLength)));
+    }
+
+    private void newStream(Session session, int index, Stream.Listener listener, Runnable opened)
+    {
+        int urgency = index % 2 == 0 ? FrameScheduler.ExtensiblePriority.MAX_URGENCY : 0;
+        HttpFields fields = HttpFields.build().put(FrameScheduler.ExtensiblePriority.PRIORITY_HEADER, "u=" + urgency);
+        HeadersFrame headersFrame = new HeadersFrame(newRequest("POST", fields), null, false);
+        session.newStream(headersFrame, new Promise.Adapter<>()
+        {
+            @Override
+            public void succeeded(Stream stream)
+            {
+                stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(1024), true), Callback.NOOP);
+                opened.run();
+            }
+        }, listener);
+    }
+}
@@ -34,6 +34,7 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http2.AbstractFlowControlStrategy;
+import org.eclipse.jetty.http2.AdaptiveFlowControlStrategy;
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.ErrorCode;
 import org.eclipse.jetty.http2.FlowControlStrategy;
@@ -47,6 +48,7 @@ import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.GoAwayFrame;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
 import org.eclipse.jetty.http2.frames.ResetFrame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
@@ -61,10 +63,14 @@ import org.eclipse.jetty.util.FuturePromise;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 
 import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -123,6 +129,7 @@ public class FlowControlStrategyTest
         {
             case SIMPLE -> new SimpleFlowControlStrategy();
             case BUFFERING -> new BufferingFlowControlStrategy(0.5F);
+            case ADAPTIVE -> new AdaptiveFlowControlStrategy();
         };
     }
 
@@ -641,6 +648,200 @@ public class FlowControlStrategyTest
         assertArrayEquals(data, bytes);
     }
 
+    @Test
+    public void testAdaptiveWindowGrowsWithBandwidthDelayProduct() throws Exception
+    {
+        byte[] data = new byte[8 * 1024 * 1024];
+        new Random().nextBytes(data);
+
+        start(FlowControlStrategyType.BUFFERING, new ServerSessionListener()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame requestFrame)
+            {
+                MetaData.Response metaData = new MetaData.Response(200, null, HttpVersion.HTTP_2, HttpFields.EMPTY);
+                HeadersFrame responseFrame = new HeadersFrame(stream.getId(), metaData, null, false);
+                stream.headers(responseFrame)
+                    .thenAccept(s -> s.data(new DataFrame(s.getId(), ByteBuffer.wrap(data), true)));
+                return null;
+            }
+        });
+        int maxWindow = 1024 * 1024;
+        client.setFlowControlStrategyFactory(() ->
+        {
+            AdaptiveFlowControlStrategy strategy = new AdaptiveFlowControlStrategy(FlowControlStrategy.DEFAULT_WINDOW_SIZE, maxWindow);
+            strategy.setMinPingInterval(20);
+            return strategy;
+        });
+
+        AtomicInteger pings = new AtomicInteger();
+        HTTP2Session session = (HTTP2Session)newClient(new Session.Listener()
+        {
+            @Override
+            public void onPing(Session session, PingFrame frame)
+            {
+                pings.incrementAndGet();
+            }
+        });
+        MetaData.Request metaData = newRequest("GET", HttpFields.EMPTY);
+        HeadersFrame requestFrame = new HeadersFrame(metaData, null, true);
+        CountDownLatch latch = new CountDownLatch(1);
+        session.newStream(requestFrame, new Promise.Adapter<>(), new Stream.Listener()
+        {
+            @Override
+            public void onDataAvailable(Stream stream)
+            {
+                Stream.Data data = stream.readData();
+                data.release();
+                if (data.frame().isEndStream())
+                    latch.countDown();
+                else
+                    stream.demand();
+            }
+        });
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        AdaptiveFlowControlStrategy strategy = (AdaptiveFlowControlStrategy)session.getFlowControlStrategy();
+        assertThat(strategy.getPingCount(), greaterThan(0));
+        assertThat(strategy.getSessionRecvWindowTarget(), greaterThan(FlowControlStrategy.DEFAULT_WINDOW_SIZE));
+        assertThat(strategy.getSessionRecvWindowTarget(), lessThanOrEqualTo(maxWindow));
+        assertThat(session.getRecvWindow(), lessThanOrEqualTo(maxWindow));
+        // The replies to the PINGs sent by the strategy are not notified to the application.
+        assertEquals(0, pings.get());
+    }
+
+    @Test
+    public void testAdaptiveSamplesAgainAfterLostPingReply() throws Exception
+    {
+        int chunks = 50;
+        start(FlowControlStrategyType.BUFFERING, new ServerSessionListener()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame requestFrame)
+            {
+                MetaData.Response metaData = new MetaData.Response(200, null, HttpVersion.HTTP_2, HttpFields.EMPTY);
+                stream.headers(new HeadersFrame(stream.getId(), metaData, null, false)).thenAccept(s -> new Thread(() ->
+                {
+                    try
+                    {
+                        // Send the data slowly, so that the PING timeout expires during the download.
+                        for (int i = 0; i < chunks; ++i)
+                        {
+                            s.data(new DataFrame(s.getId(), ByteBuffer.allocate(1024), i == chunks - 1)).get(5, TimeUnit.SECONDS);
+                            Thread.sleep(10);
+                        }
+                    }
+                    catch (Throwable x)
+                    {
+                        s.reset(new ResetFrame(s.getId(), ErrorCode.INTERNAL_ERROR.code), Callback.NOOP);
+                    }
+                }).start());
+                return null;
+            }
+        });
+        AtomicInteger lostReplies = new AtomicInteger();
+        client.setFlowControlStrategyFactory(() ->
+        {
+            AdaptiveFlowControlStrategy strategy = new AdaptiveFlowControlStrategy()
+            {
+                @Override
+                public boolean onPingReply(Session session, PingFrame frame)
+                {
+                    // Simulate the loss of the first PING reply.
+                    if (lostReplies.compareAndSet(0, 1))
+                        return true;
+                    return super.onPingReply(session, frame);
+                }
+            };
+            strategy.setMinPingInterval(0);
+            strategy.setPingTimeout(100);
+            return strategy;
+        });
+
+        HTTP2Session session = (HTTP2Session)newClient(new Session.Listener() {});
+        MetaData.Request metaData = newRequest("GET", HttpFields.EMPTY);
+        CountDownLatch latch = new CountDownLatch(1);
+        session.newStream(new HeadersFrame(metaData, null, true), new Promise.Adapter<>(), new Stream.Listener()
+        {
+            @Override
+            public void onDataAvailable(Stream stream)
+            {
+                Stream.Data data = stream.readData();
+                data.release();
+                if (data.frame().isEndStream())
+                    latch.countDown();
+                else
+                    stream.demand();
+            }
+        });
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        AdaptiveFlowControlStrategy strategy = (AdaptiveFlowControlStrategy)session.getFlowControlStrategy();
+        assertEquals(1, lostReplies.get());
+        // The lost sample was abandoned, and new samples were taken.
+        assertThat(strategy.getPingCount(), greaterThan(1));
+        assertThat(strategy.getRoundTripTime(), greaterThan(0L));
+    }
+
+    @Test
+    public void testAdaptiveDoesNotSampleWhileDataNotConsumed() throws Exception
+    {
+        int chunks = 10;
+        CountDownLatch sentLatch = new CountDownLatch(1);
+        start(FlowControlStrategyType.BUFFERING, new ServerSessionListener()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame requestFrame)
+            {
+                MetaData.Response metaData = new MetaData.Response(200, null, HttpVersion.HTTP_2, HttpFields.EMPTY);
+                stream.headers(new HeadersFrame(stream.getId(), metaData, null, false)).thenAccept(s -> new Thread(() ->
+                {
+                    try
+                    {
+                        // Fill more than half of the window at once.
+                        s.data(new DataFrame(s.getId(), ByteBuffer.allocate(48 * 1024), false)).get(5, TimeUnit.SECONDS);
+                        // Then send the data slowly, so that the PING timeout expires.
+                        for (int i = 0; i < chunks; ++i)
+                        {
+                            s.data(new DataFrame(s.getId(), ByteBuffer.allocate(1024), false)).get(5, TimeUnit.SECONDS);
+                            Thread.sleep(50);
+                        }
+                        sentLatch.countDown();
+                    }
+                    catch (Throwable x)
+                    {
+                        s.reset(new ResetFrame(s.getId(), ErrorCode.INTERNAL_ERROR.code), Callback.NOOP);
+                    }
+                }).start());
+                return null;
+            }
+        });
+        client.setFlowControlStrategyFactory(() ->
+        {
+            AdaptiveFlowControlStrategy strategy = new AdaptiveFlowControlStrategy();
+            strategy.setMinPingInterval(0);
+            strategy.setPingTimeout(100);
+            return strategy;
+        });
+
+        HTTP2Session session = (HTTP2Session)newClient(new Session.Listener() {});
+        MetaData.Request metaData = newRequest("GET", HttpFields.EMPTY);
+        session.newStream(new HeadersFrame(metaData, null, true), new Promise.Adapter<>(), new Stream.Listener()
+        {
+            @Override
+            public void onDataAvailable(Stream stream)
+            {
+                // Do not consume the data.
+            }
+        });
+
+        assertTrue(sentLatch.await(15, TimeUnit.SECONDS));
+        AdaptiveFlowControlStrategy strategy = (AdaptiveFlowControlStrategy)session.getFlowControlStrategy();
+        // Only the first DATA frame was sampled, before the window was half full.
+        assertEquals(1, strategy.getPingCount());
+        assertEquals(FlowControlStrategy.DEFAULT_WINDOW_SIZE, strategy.getSessionRecvWindowTarget());
+    }
+
     @ParameterizedTest
     @EnumSource(FlowControlStrategyType.class)
     public void testClientSendingInitialSmallWindow(FlowControlStrategyType type) throws Exception
@@ -1048,7 +1249,7 @@ public class FlowControlStrategyTest
         {
             case SIMPLE -> 1;
             // For small writes, session updates are buffered.
-            case BUFFERING -> 0;
+            case BUFFERING, ADAPTIVE -> 0;
         };
         assertEquals(sessionUpdates, sessionWindowUpdates.size());
         assertEquals(0, streamWindowUpdates.size());
@@ -1056,6 +1257,6 @@ public class FlowControlStrategyTest
 
     public enum FlowControlStrategyType
     {
-        SIMPLE, BUFFERING
+        SIMPLE, BUFFERING, ADAPTIVE
     }
 }
@@ -26,6 +26,8 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.eclipse.jetty.http.HostPortHttpField;
 import org.eclipse.jetty.http.HttpFields;
@@ -1353,6 +1355,76 @@ public class HTTP2Test extends AbstractTest
         assertTrue(responseLatch.await(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testCoalescedWritesOfSmallDataFrames() throws Exception
+    {
+        int chunks = 64;
+        start(new ServerSessionListener()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                MetaData.Response response = new MetaData.Response(HttpStatus.OK_200, null, HttpVersion.HTTP_2, HttpFields.EMPTY);
+                stream.headers(new HeadersFrame(stream.getId(), response, null, false))
+                    .thenAccept(s -> sendChunk(s, 0, chunks));
+                return null;
+            }
+
+            private void sendChunk(Stream stream, int chunk, int chunks)
+            {
+                ByteBuffer data = ByteBuffer.wrap(("chunk-" + chunk + "\n").getBytes(StandardCharsets.UTF_8));
+                boolean last = chunk == chunks - 1;
+                stream.data(new DataFrame(stream.getId(), data, last))
+                    .thenAccept(s ->
+                    {
+                        if (!last)
+                            sendChunk(s, chunk + 1, chunks);
+                    });
+            }
+        }, factory -> factory.setCoalesceThreshold(1024));
+        http2Client.setCoalesceThreshold(1024);
+
+        Session session = newClientSession(new Session.Listener() {});
+        HTTP2Session http2Session = (HTTP2Session)session;
+        assertEquals(1024, http2Session.getCoalesceThreshold());
+
+        String expected = IntStream.range(0, chunks).mapToObj(i -> "chunk-" + i + "\n").collect(Collectors.joining());
+        int streams = 8;
+        CountDownLatch latch = new CountDownLatch(streams);
+        for (int i = 0; i < streams; ++i)
+        {
+            StringBuilder content = new StringBuilder();
+            session.newStream(new HeadersFrame(newRequest("GET", HttpFields.EMPTY), null, true), new Stream.Listener()
+            {
+                @Override
+                public void onHeaders(Stream stream, HeadersFrame frame)
+                {
+                    stream.demand();
+                }
+
+                @Override
+                public void onDataAvailable(Stream stream)
+                {
+                    Stream.Data data = stream.readData();
+                    if (data != null)
+                    {
+                        content.append(StandardCharsets.UTF_8.decode(data.frame().getByteBuffer()));
+                        data.release();
+                        if (data.frame().isEndStream())
+                        {
+                            if (expected.contentEquals(content))
+                                latch.countDown();
+                            return;
+                        }
+                    }
+                    stream.demand();
+                }
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
     private static void sleep(long time)
     {
         try
@@ -0,0 +1,307 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io.epoll;
+
+import java.io.IOException;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectableChannel;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * <p>Bindings to the Linux epoll and eventfd system calls, and to the file descriptors of NIO channels.</p>
+ */
+class Epoll
+{
+    static final int EPOLLIN = 0x001;
+    static final int EPOLLOUT = 0x004;
+    static final int EPOLLERR = 0x008;
+    static final int EPOLLHUP = 0x010;
+    static final int EPOLLET = 1 << 31;
+    static final int EPOLL_CTL_ADD = 1;
+    static final int EPOLL_CTL_DEL = 2;
+    static final int EPOLL_CTL_MOD = 3;
+    static final int EPOLL_CLOEXEC = 0x80000;
+    static final int EFD_NONBLOCK = 0x800;
+    static final int EFD_CLOEXEC = 0x80000;
+    static final int ENOENT = 2;
+    static final int EINTR = 4;
+    static final int EBADF = 9;
+
+    /**
+     * <p>The size of {@code struct epoll_event}, which is packed on x86-64 only.</p>
+     */
+    static final long EVENT_SIZE;
+    static final long EVENT_EVENTS_OFFSET = 0;
+    static final long EVENT_DATA_OFFSET;
+    static final StructLayout CALL_STATE_LAYOUT;
+
+    private static final Throwable UNAVAILABLE;
+    private static final VarHandle ERRNO;
+    private static final MethodHandle EPOLL_CREATE1;
+    private static final MethodHandle EPOLL_CTL;
+    private static final MethodHandle EPOLL_WAIT;
+    private static final MethodHandle EVENTFD;
+    private static final MethodHandle READ;
+    private static final MethodHandle WRITE;
+    private static final MethodHandle CLOSE;
+    private static final MethodHandle GET_FD_VAL;
+    private static final MethodHandle KILL;
+
+    static
+    {
+        boolean packed = "amd64".equals(System.getProperty("os.arch")) || "x86_64".equals(System.getProperty("os.arch"));
+        EVENT_SIZE = packed ? 12 : 16;
+        EVENT_DATA_OFFSET = packed ? 4 : 8;
+
+        Throwable unavailable = null;
+        StructLayout callStateLayout = null;
+        VarHandle errno = null;
+        MethodHandle epollCreate1 = null;
+        MethodHandle epollCtl = null;
+        MethodHandle epollWait = null;
+        MethodHandle eventfd = null;
+        MethodHandle read = null;
+        MethodHandle write = null;
+        MethodHandle close = null;
+        MethodHandle getFDVal = null;
+        MethodHandle kill = null;
+        try
+        {
+            if (!System.getProperty("os.name").startsWith("Linux"))
+                throw new UnsupportedOperationException("epoll is only available on Linux");
+
+            Linker linker = Linker.nativeLinker();
+            SymbolLookup lookup = linker.defaultLookup();
+            Linker.Option errnoOption = Linker.Option.captureCallState("errno");
+            callStateLayout = Linker.Option.captureStateLayout();
+            errno = callStateLayout.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+            epollCreate1 = downcall(linker, lookup, "epoll_create1", FunctionDescriptor.of(JAVA_INT, JAVA_INT), errnoOption);
+            epollCtl = downcall(linker, lookup, "epoll_ctl", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS), errnoOption);
+            epollWait = downcall(linker, lookup, "epoll_wait", FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT), errnoOption);
+            eventfd = downcall(linker, lookup, "eventfd", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT), errnoOption);
+            read = downcall(linker, lookup, "read", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG));
+            write = downcall(linker, lookup, "write", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG));
+            close = downcall(linker, lookup, "close", FunctionDescriptor.of(JAVA_INT, JAVA_INT));
+
+            // The file descriptors of NIO channels are only accessible via the JDK internals,
+            // which requires --add-exports java.base/sun.nio.ch=org.eclipse.jetty.io.epoll.
+            Class<?> selChImpl = Class.forName("sun.nio.ch.SelChImpl");
+            MethodHandles.Lookup channels = MethodHandles.lookup();
+            getFDVal = channels.findVirtual(selChImpl, "getFDVal", MethodType.methodType(int.class))
+                .asType(MethodType.methodType(int.class, SelectableChannel.class));
+            kill = channels.findVirtual(selChImpl, "kill", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, SelectableChannel.class));
+        }
+        catch (Throwable x)
+        {
+            unavailable = x;
+        }
+        UNAVAILABLE = unavailable;
+        CALL_STATE_LAYOUT = callStateLayout;
+        ERRNO = errno;
+        EPOLL_CREATE1 = epollCreate1;
+        EPOLL_CTL = epollCtl;
+        EPOLL_WAIT = epollWait;
+        EVENTFD = eventfd;
+        READ = read;
+        WRITE = write;
+        CLOSE = close;
+        GET_FD_VAL = getFDVal;
+        KILL = kill;
+    }
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup lookup, String symbol, FunctionDescriptor descriptor, Linker.Option... options)
+    {
+        MemorySegment address = lookup.find(symbol).orElseThrow(() -> new UnsatisfiedLinkError("unresolved symbol: " + symbol));
+        return linker.downcallHandle(address, descriptor, options);
+    }
+
+    private Epoll()
+    {
+    }
+
+    /**
+     * @return the reason why epoll is not available, or {@code null} if it is available
+     */
+    static Throwable unavailable()
+    {
+        return UNAVAILABLE;
+    }
+
+    static int errno(MemorySegment callState)
+    {
+        return (int)ERRNO.get(callState, 0L);
+    }
+
+    static int epollCreate(MemorySegment callState) throws IOException
+    {
+        try
+        {
+            int epfd = (int)EPOLL_CREATE1.invokeExact(callState, EPOLL_CLOEXEC);
+            if (epfd < 0)
+                throw new IOException("epoll_create1 failed, errno=" + errno(callState));
+            return epfd;
+        }
+        catch (IOException x)
+        {
+            throw x;
+        }
+        catch (Throwable x)
+        {
+            throw new IOException(x);
+        }
+    }
+
+    /**
+     * @return 0 on success, otherwise the errno of the failure
+     */
+    static int epollCtl(int epfd, int op, int fd, int events, MemorySegment event, MemorySegment callState)
+    {
+        try
+        {
+            event.set(ValueLayout.JAVA_INT_UNALIGNED, EVENT_EVENTS_OFFSET, events);
+            event.set(ValueLayout.JAVA_LONG_UNALIGNED, EVENT_DATA_OFFSET, fd);
+            int result = (int)EPOLL_CTL.invokeExact(callState, epfd, op, fd, event);
+            return result < 0 ? errno(callState) : 0;
+        }
+        catch (Throwable x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /**
+     * @return the number of events, 0 if interrupted, otherwise the negated errno of the failure
+     */
+    static int epollWait(int epfd, MemorySegment events, int maxEvents, int timeout, MemorySegment callState)
+    {
+        try
+        {
+            int result = (int)EPOLL_WAIT.invokeExact(callState, epfd, events, maxEvents, timeout);
+            if (result >= 0)
+                return result;
+            int errno = errno(callState);
+            return errno == EINTR ? 0 : -errno;
+        }
+        catch (Throwable x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    static int eventfd(MemorySegment callState) throws IOException
+    {
+        try
+        {
+            int fd = (int)EVENTFD.invokeExact(callState, 0, EFD_NONBLOCK | EFD_CLOEXEC);
+            if (fd < 0)
+                throw new IOException("eventfd failed, errno=" + errno(callState));
+            return fd;
+        }
+        catch (IOException x)
+        {
+            throw x;
+        }
+        catch (Throwable x)
+        {
+            throw new IOException(x);
+        }
+    }
+
+    static long read(int fd, MemorySegment buffer)
+    {
+        try
+        {
+            return (long)READ.invokeExact(fd, buffer, buffer.byteSize());
+        }
+        catch (Throwable x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    static long write(int fd, MemorySegment buffer)
+    {
+        try
+        {
+            return (long)WRITE.invokeExact(fd, buffer, buffer.byteSize());
+        }
+        catch (Throwable x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    static void close(int fd)
+    {
+        try
+        {
+            int ignored = (int)CLOSE.invokeExact(fd);
+        }
+        catch (Throwable x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    static int fdOf(SelectableChannel channel)
+    {
+        try
+        {
+            return (int)GET_FD_VAL.invokeExact(channel);
+        }
+        catch (ClassCastException x)
+        {
+            throw new IllegalSelectorException();
+        }
+        catch (Throwable x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /**
+     * <p>Completes the close of a channel closed while registered, once it has been deregistered.</p>
+     */
+    static void kill(SelectableChannel channel) throws IOException
+    {
+        try
+        {
+            KILL.invokeExact(channel);
+        }
+        catch (IOException x)
+        {
+            throw x;
+        }
+        catch (Throwable x)
+        {
+            throw new IOException(x);
+        }
+    }
+}
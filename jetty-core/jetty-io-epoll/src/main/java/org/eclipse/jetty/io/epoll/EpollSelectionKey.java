@@ -0,0 +1,154 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io.epoll;
+
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectionKey;
+
+/**
+ * <p>The {@link SelectionKey} of a channel registered with an {@link EpollSelector}.</p>
+ */
+class EpollSelectionKey extends AbstractSelectionKey
+{
+    private final EpollSelector _selector;
+    private final SelectableChannel _channel;
+    private final int _fd;
+    private volatile int _interestOps;
+    private volatile int _readyOps;
+    // Whether the key was selected, and its interest has not been updated since.
+    private volatile boolean _reported;
+    // Whether the key is in the selected-key set; only accessed by the selecting thread.
+    boolean _selected;
+
+    EpollSelectionKey(EpollSelector selector, SelectableChannel channel, int fd)
+    {
+        _selector = selector;
+        _channel = channel;
+        _fd = fd;
+    }
+
+    int fd()
+    {
+        return _fd;
+    }
+
+    @Override
+    public SelectableChannel channel()
+    {
+        return _channel;
+    }
+
+    @Override
+    public Selector selector()
+    {
+        return _selector;
+    }
+
+    @Override
+    public int interestOps()
+    {
+        ensureValid();
+        return _interestOps;
+    }
+
+    @Override
+    public SelectionKey interestOps(int ops)
+    {
+        ensureValid();
+        if ((ops & ~_channel.validOps()) != 0)
+            throw new IllegalArgumentException("Invalid interest ops " + ops);
+        _selector.updateInterestOps(this, ops);
+        return this;
+    }
+
+    @Override
+    public int readyOps()
+    {
+        ensureValid();
+        return _readyOps;
+    }
+
+    int getInterestOps()
+    {
+        return _interestOps;
+    }
+
+    void setInterestOps(int ops)
+    {
+        _interestOps = ops;
+        _reported = false;
+    }
+
+    int getReadyOps()
+    {
+        return _readyOps;
+    }
+
+    void setReadyOps(int readyOps)
+    {
+        _readyOps = readyOps;
+    }
+
+    boolean isReported()
+    {
+        return _reported;
+    }
+
+    void setReported(boolean reported)
+    {
+        _reported = reported;
+    }
+
+    /**
+     * @return the epoll events for the interest ops, always edge-triggered
+     */
+    int toEvents(int ops)
+    {
+        int events = Epoll.EPOLLET;
+        if ((ops & (SelectionKey.OP_READ | SelectionKey.OP_ACCEPT)) != 0)
+            events |= Epoll.EPOLLIN;
+        if ((ops & (SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT)) != 0)
+            events |= Epoll.EPOLLOUT;
+        return events;
+    }
+
+    /**
+     * @return the ready ops for the epoll events, restricted to the interest ops
+     */
+    int toReadyOps(int events)
+    {
+        int interestOps = _interestOps;
+        int readyOps = 0;
+        if ((events & (Epoll.EPOLLIN | Epoll.EPOLLERR | Epoll.EPOLLHUP)) != 0)
+            readyOps |= interestOps & (SelectionKey.OP_READ | SelectionKey.OP_ACCEPT);
+        if ((events & (Epoll.EPOLLOUT | Epoll.EPOLLERR | Epoll.EPOLLHUP)) != 0)
+            readyOps |= interestOps & (SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT);
+        return readyOps;
+    }
+
+    private void ensureValid()
+    {
+        if (!isValid())
+            throw new CancelledKeyException();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{fd=%d,i=%d,r=%d}", getClass().getSimpleName(), hashCode(), _fd, _interestOps, _readyOps);
+    }
+}
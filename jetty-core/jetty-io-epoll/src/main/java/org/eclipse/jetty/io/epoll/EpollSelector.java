@@ -0,0 +1,528 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io.epoll;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link Selector} backed by a Linux epoll instance.</p>
+ * <p>Channels are registered edge-triggered, so that the kernel reports a file descriptor
+ * only when its readiness changes, and the events are collected in batches of up to
+ * {@code maxEvents} per {@code epoll_wait()} call into a reused native buffer.
+ * Keys are looked up by file descriptor in an array, and the selected-key set reuses
+ * its storage and its iterator, so that selecting does not allocate.</p>
+ * <p>To preserve the level-triggered semantic of {@link Selector}, a key that was selected
+ * and whose interest ops were not updated before the next select is re-armed, so that it
+ * is selected again if its channel is still ready.
+ * Users that update the interest ops after each selection, like {@code ManagedSelector}
+ * endpoints do, never pay for re-arming.</p>
+ * <p>{@link #wakeup()} writes to an eventfd, and concurrent wakeups are coalesced.</p>
+ */
+class EpollSelector extends AbstractSelector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(EpollSelector.class);
+
+    private final Object _ctlLock = new Object();
+    private final Set<SelectionKey> _keys = ConcurrentHashMap.newKeySet();
+    private final Set<SelectionKey> _publicKeys = Collections.unmodifiableSet(_keys);
+    private final SelectedKeys _selectedKeys = new SelectedKeys();
+    private final List<EpollSelectionKey> _rearm = new ArrayList<>();
+    private final AtomicBoolean _wakeupPending = new AtomicBoolean();
+    private final Arena _arena = Arena.ofShared();
+    private final int _maxEvents;
+    private final MemorySegment _events;
+    private final MemorySegment _waitState;
+    private final MemorySegment _ctlEvent;
+    private final MemorySegment _ctlState;
+    private final MemorySegment _wakeupValue;
+    private final MemorySegment _drainBuffer;
+    private final int _epfd;
+    private final int _eventfd;
+    private EpollSelectionKey[] _fdToKey = new EpollSelectionKey[1024];
+    // Guarded by _ctlLock, so that the file descriptors are not used after they are closed.
+    private boolean _closed;
+
+    EpollSelector(EpollSelectorProvider provider, int maxEvents) throws IOException
+    {
+        super(provider);
+        _maxEvents = maxEvents;
+        _events = _arena.allocate(Epoll.EVENT_SIZE * maxEvents, 8);
+        _waitState = _arena.allocate(Epoll.CALL_STATE_LAYOUT);
+        _ctlEvent = _arena.allocate(Epoll.EVENT_SIZE, 8);
+        _ctlState = _arena.allocate(Epoll.CALL_STATE_LAYOUT);
+        _wakeupValue = _arena.allocate(ValueLayout.JAVA_LONG);
+        _wakeupValue.set(ValueLayout.JAVA_LONG, 0, 1L);
+        _drainBuffer = _arena.allocate(ValueLayout.JAVA_LONG);
+        int epfd = -1;
+        try
+        {
+            epfd = Epoll.epollCreate(_ctlState);
+            _epfd = epfd;
+            _eventfd = Epoll.eventfd(_ctlState);
+        }
+        catch (Throwable x)
+        {
+            if (epfd >= 0)
+                Epoll.close(epfd);
+            _arena.close();
+            throw x;
+        }
+        // The eventfd is level-triggered, and drained when selected.
+        int errno = Epoll.epollCtl(_epfd, Epoll.EPOLL_CTL_ADD, _eventfd, Epoll.EPOLLIN, _ctlEvent, _ctlState);
+        if (errno != 0)
+        {
+            Epoll.close(_eventfd);
+            Epoll.close(_epfd);
+            _arena.close();
+            throw new IOException("epoll_ctl failed, errno=" + errno);
+        }
+    }
+
+    @Override
+    public Set<SelectionKey> keys()
+    {
+        ensureOpen();
+        return _publicKeys;
+    }
+
+    @Override
+    public Set<SelectionKey> selectedKeys()
+    {
+        ensureOpen();
+        return _selectedKeys;
+    }
+
+    @Override
+    public int selectNow() throws IOException
+    {
+        return doSelect(0);
+    }
+
+    @Override
+    public int select(long timeout) throws IOException
+    {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Negative timeout");
+        return doSelect(timeout == 0 ? -1 : (int)Math.min(timeout, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int select() throws IOException
+    {
+        return doSelect(-1);
+    }
+
+    @Override
+    public Selector wakeup()
+    {
+        if (_wakeupPending.compareAndSet(false, true))
+        {
+            synchronized (_ctlLock)
+            {
+                // The eventfd number may have been reused after close.
+                if (!_closed)
+                    Epoll.write(_eventfd, _wakeupValue);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    protected SelectionKey register(AbstractSelectableChannel channel, int ops, Object attachment)
+    {
+        ensureOpen();
+        EpollSelectionKey key = new EpollSelectionKey(this, channel, Epoll.fdOf(channel));
+        key.attach(attachment);
+        synchronized (_ctlLock)
+        {
+            int fd = key.fd();
+            if (fd >= _fdToKey.length)
+                _fdToKey = Arrays.copyOf(_fdToKey, Math.max(fd + 1, _fdToKey.length * 2));
+            _fdToKey[fd] = key;
+            key.setInterestOps(ops);
+            int errno = Epoll.epollCtl(_epfd, Epoll.EPOLL_CTL_ADD, fd, key.toEvents(ops), _ctlEvent, _ctlState);
+            if (errno != 0)
+            {
+                _fdToKey[fd] = null;
+                throw new IllegalStateException("epoll_ctl failed, errno=" + errno);
+            }
+        }
+        _keys.add(key);
+        return key;
+    }
+
+    void updateInterestOps(EpollSelectionKey key, int ops)
+    {
+        synchronized (_ctlLock)
+        {
+            key.setInterestOps(ops);
+            int errno = Epoll.epollCtl(_epfd, Epoll.EPOLL_CTL_MOD, key.fd(), key.toEvents(ops), _ctlEvent, _ctlState);
+            // The channel may have been closed concurrently, the key will be cancelled.
+            if (errno != 0 && errno != Epoll.ENOENT && errno != Epoll.EBADF)
+                throw new IllegalStateException("epoll_ctl failed, errno=" + errno);
+        }
+    }
+
+    private int doSelect(int timeout) throws IOException
+    {
+        ensureOpen();
+        synchronized (this)
+        {
+            processCancelledKeys();
+            rearm();
+
+            int count;
+            boolean blocking = timeout != 0;
+            if (blocking)
+                begin();
+            try
+            {
+                count = Epoll.epollWait(_epfd, _events, _maxEvents, timeout, _waitState);
+            }
+            finally
+            {
+                if (blocking)
+                    end();
+            }
+            if (count < 0)
+                throw new IOException("epoll_wait failed, errno=" + -count);
+
+            processCancelledKeys();
+            return processEvents(count);
+        }
+    }
+
+    private void rearm()
+    {
+        if (_rearm.isEmpty())
+            return;
+        synchronized (_ctlLock)
+        {
+            for (EpollSelectionKey key : _rearm)
+            {
+                // Re-arming re-evaluates the readiness of the file descriptor,
+                // so that a still ready channel is reported again.
+                int interestOps = key.getInterestOps();
+                if (key.isValid() && key.isReported() && interestOps != 0)
+                    Epoll.epollCtl(_epfd, Epoll.EPOLL_CTL_MOD, key.fd(), key.toEvents(interestOps), _ctlEvent, _ctlState);
+                key.setReported(false);
+            }
+        }
+        _rearm.clear();
+    }
+
+    private int processEvents(int count)
+    {
+        int updated = 0;
+        synchronized (_ctlLock)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                long offset = i * Epoll.EVENT_SIZE;
+                int events = _events.get(ValueLayout.JAVA_INT_UNALIGNED, offset + Epoll.EVENT_EVENTS_OFFSET);
+                int fd = (int)_events.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + Epoll.EVENT_DATA_OFFSET);
+                if (fd == _eventfd)
+                {
+                    _wakeupPending.set(false);
+                    Epoll.read(_eventfd, _drainBuffer);
+                    continue;
+                }
+
+                EpollSelectionKey key = fd < _fdToKey.length ? _fdToKey[fd] : null;
+                if (key == null || !key.isValid())
+                    continue;
+                int readyOps = key.toReadyOps(events);
+                if (readyOps == 0)
+                    continue;
+
+                key.setReported(true);
+                _rearm.add(key);
+                if (_selectedKeys.addKey(key))
+                {
+                    key.setReadyOps(readyOps);
+                    ++updated;
+                }
+                else if ((key.getReadyOps() | readyOps) != key.getReadyOps())
+                {
+                    key.setReadyOps(key.getReadyOps() | readyOps);
+                    ++updated;
+                }
+            }
+        }
+        return updated;
+    }
+
+    private void processCancelledKeys()
+    {
+        Set<SelectionKey> cancelledKeys = cancelledKeys();
+        synchronized (cancelledKeys)
+        {
+            if (cancelledKeys.isEmpty())
+                return;
+            for (SelectionKey key : cancelledKeys)
+            {
+                deregisterKey((EpollSelectionKey)key);
+            }
+            cancelledKeys.clear();
+        }
+    }
+
+    private void deregisterKey(EpollSelectionKey key)
+    {
+        synchronized (_ctlLock)
+        {
+            int fd = key.fd();
+            if (fd < _fdToKey.length && _fdToKey[fd] == key)
+            {
+                _fdToKey[fd] = null;
+                Epoll.epollCtl(_epfd, Epoll.EPOLL_CTL_DEL, fd, 0, _ctlEvent, _ctlState);
+            }
+        }
+        _keys.remove(key);
+        _selectedKeys.remove(key);
+        deregister(key);
+
+        // Complete the close of channels closed while registered.
+        SelectableChannel channel = key.channel();
+        if (!channel.isOpen() && !channel.isRegistered())
+        {
+            try
+            {
+                Epoll.kill(channel);
+            }
+            catch (IOException x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not close {}", channel, x);
+            }
+        }
+    }
+
+    @Override
+    protected void implCloseSelector() throws IOException
+    {
+        wakeup();
+        synchronized (this)
+        {
+            processCancelledKeys();
+            for (SelectionKey key : List.copyOf(_keys))
+            {
+                deregisterKey((EpollSelectionKey)key);
+            }
+            _rearm.clear();
+            synchronized (_ctlLock)
+            {
+                _closed = true;
+                Epoll.close(_eventfd);
+                Epoll.close(_epfd);
+                _arena.close();
+            }
+        }
+    }
+
+    private void ensureOpen()
+    {
+        if (!isOpen())
+            throw new ClosedSelectorException();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{epfd=%d,keys=%d}", getClass().getSimpleName(), hashCode(), _epfd, _keys.size());
+    }
+
+    /**
+     * <p>The selected-key set, backed by a reused array.</p>
+     * <p>Keys can be removed, but not added, as required by {@link Selector#selectedKeys()}.
+     * Removed keys leave a hole in the array, which is compacted when the set grows or is cleared.</p>
+     */
+    private class SelectedKeys extends AbstractSet<SelectionKey>
+    {
+        private final KeyIterator _iterator = new KeyIterator();
+        private EpollSelectionKey[] _array = new EpollSelectionKey[64];
+        private int _end;
+        private int _size;
+
+        private boolean addKey(EpollSelectionKey key)
+        {
+            if (key._selected)
+                return false;
+            if (_end == _array.length)
+            {
+                if (_size < _end)
+                    compact();
+                else
+                    _array = Arrays.copyOf(_array, _array.length * 2);
+            }
+            key._selected = true;
+            _array[_end++] = key;
+            ++_size;
+            return true;
+        }
+
+        private void compact()
+        {
+            int size = 0;
+            for (int i = 0; i < _end; ++i)
+            {
+                if (_array[i] != null)
+                    _array[size++] = _array[i];
+            }
+            Arrays.fill(_array, size, _end, null);
+            _end = size;
+        }
+
+        @Override
+        public boolean add(SelectionKey key)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean contains(Object object)
+        {
+            return object instanceof EpollSelectionKey key && key.selector() == EpollSelector.this && key._selected;
+        }
+
+        @Override
+        public boolean remove(Object object)
+        {
+            if (!contains(object))
+                return false;
+            for (int i = 0; i < _end; ++i)
+            {
+                if (_array[i] == object)
+                {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void removeAt(int index)
+        {
+            _array[index]._selected = false;
+            _array[index] = null;
+            --_size;
+        }
+
+        @Override
+        public void clear()
+        {
+            for (int i = 0; i < _end; ++i)
+            {
+                if (_array[i] != null)
+                    _array[i]._selected = false;
+            }
+            Arrays.fill(_array, 0, _end, null);
+            _end = 0;
+            _size = 0;
+            _iterator._iterating = false;
+        }
+
+        @Override
+        public int size()
+        {
+            return _size;
+        }
+
+        @Override
+        public Iterator<SelectionKey> iterator()
+        {
+            // The iterator is reused, unless a previous iteration was not completed.
+            KeyIterator iterator = _iterator.isIterating() ? new KeyIterator() : _iterator;
+            iterator.reset();
+            return iterator;
+        }
+
+        private class KeyIterator implements Iterator<SelectionKey>
+        {
+            private int _next;
+            private int _last;
+            private boolean _iterating;
+
+            private void reset()
+            {
+                _next = advance(0);
+                _last = -1;
+                _iterating = true;
+            }
+
+            private boolean isIterating()
+            {
+                return _iterating;
+            }
+
+            private int advance(int index)
+            {
+                while (index < _end && _array[index] == null)
+                {
+                    ++index;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                boolean hasNext = _next < _end;
+                if (!hasNext)
+                    _iterating = false;
+                return hasNext;
+            }
+
+            @Override
+            public SelectionKey next()
+            {
+                if (_next >= _end)
+                    throw new NoSuchElementException();
+                _last = _next;
+                _next = advance(_next + 1);
+                return _array[_last];
+            }
+
+            @Override
+            public void remove()
+            {
+                if (_last < 0 || _array[_last] == null)
+                    throw new IllegalStateException();
+                removeAt(_last);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io.epoll;
+
+import java.io.IOException;
+import java.net.ProtocolFamily;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link SelectorProvider} of Linux epoll selectors, bound via the Foreign Function &amp; Memory API.</p>
+ * <p>The selectors accept the channels of the system-wide default provider, to which
+ * this provider delegates the creation of channels, so that it can be configured with
+ * {@code SelectorManager.setSelectorProvider(SelectorProvider)}:</p>
+ * <pre>{@code
+ * ServerConnector connector = new ServerConnector(server);
+ * connector.getSelectorManager().setSelectorProvider(EpollSelectorProvider.provider());
+ * }</pre>
+ * <p>The JVM must be started with {@code --enable-native-access=org.eclipse.jetty.io.epoll} and
+ * {@code --add-exports java.base/sun.nio.ch=org.eclipse.jetty.io.epoll} (or {@code ALL-UNNAMED}
+ * when running from the class-path), as the file descriptors of the channels are not otherwise
+ * accessible; when epoll is not available, {@link #provider()} falls back to the default provider.</p>
+ */
+public class EpollSelectorProvider extends SelectorProvider
+{
+    public static final int DEFAULT_MAX_EVENTS = 1024;
+    private static final Logger LOG = LoggerFactory.getLogger(EpollSelectorProvider.class);
+
+    /**
+     * @return whether epoll selectors are available on this platform and JVM
+     */
+    public static boolean isAvailable()
+    {
+        return Epoll.unavailable() == null;
+    }
+
+    /**
+     * @return an {@code EpollSelectorProvider} if {@link #isAvailable() available},
+     * otherwise the system-wide default provider
+     */
+    public static SelectorProvider provider()
+    {
+        Throwable unavailable = Epoll.unavailable();
+        if (unavailable == null)
+            return new EpollSelectorProvider();
+        if (LOG.isDebugEnabled())
+            LOG.debug("epoll not available, falling back to NIO", unavailable);
+        else
+            LOG.info("epoll not available, falling back to NIO: {}", unavailable.toString());
+        return SelectorProvider.provider();
+    }
+
+    private final SelectorProvider _delegate = SelectorProvider.provider();
+    private final int _maxEvents;
+
+    public EpollSelectorProvider()
+    {
+        this(DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * @param maxEvents the maximum number of events collected by each {@code epoll_wait()} call
+     */
+    public EpollSelectorProvider(int maxEvents)
+    {
+        Throwable unavailable = Epoll.unavailable();
+        if (unavailable != null)
+            throw new UnsupportedOperationException("epoll not available", unavailable);
+        if (maxEvents <= 0)
+            throw new IllegalArgumentException("Invalid max events " + maxEvents);
+        _maxEvents = maxEvents;
+    }
+
+    /**
+     * @return the maximum number of events collected by each {@code epoll_wait()} call
+     */
+    public int getMaxEvents()
+    {
+        return _maxEvents;
+    }
+
+    @Override
+    public AbstractSelector openSelector() throws IOException
+    {
+        return new EpollSelector(this, _maxEvents);
+    }
+
+    @Override
+    public DatagramChannel openDatagramChannel() throws IOException
+    {
+        return _delegate.openDatagramChannel();
+    }
+
+    @Override
+    public DatagramChannel openDatagramChannel(ProtocolFamily family) throws IOException
+    {
+        return _delegate.openDatagramChannel(family);
+    }
+
+    @Override
+    public Pipe openPipe() throws IOException
+    {
+        return _delegate.openPipe();
+    }
+
+    @Override
+    public ServerSocketChannel openServerSocketChannel() throws IOException
+    {
+        return _delegate.openServerSocketChannel();
+    }
+
+    @Override
+    public SocketChannel openSocketChannel() throws IOException
+    {
+        return _delegate.openSocketChannel();
+    }
+
+    @Override
+    public SocketChannel openSocketChannel(ProtocolFamily family) throws IOException
+    {
+        return _delegate.openSocketChannel(family);
+    }
+
+    @Override
+    public ServerSocketChannel openServerSocketChannel(ProtocolFamily family) throws IOException
+    {
+        return _delegate.openServerSocketChannel(family);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{maxEvents=%d}", getClass().getSimpleName(), hashCode(), _maxEvents);
+    }
+}
@@ -0,0 +1,184 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io.epoll;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class EpollSelectorTest
+{
+    @BeforeEach
+    public void assumeAvailable()
+    {
+        assumeTrue(EpollSelectorProvider.isAvailable(), "epoll not available");
+    }
+
+    @Test
+    public void testSelectReadable() throws Exception
+    {
+        try (Selector selector = new EpollSelectorProvider().openSelector();
+             ServerSocketChannel server = ServerSocketChannel.open())
+        {
+            server.bind(new InetSocketAddress("localhost", 0));
+            server.configureBlocking(false);
+            SelectionKey acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress()))
+            {
+                assertEquals(1, selector.select(5000));
+                assertTrue(selector.selectedKeys().contains(acceptKey));
+                assertTrue(acceptKey.isAcceptable());
+                selector.selectedKeys().clear();
+
+                SocketChannel accepted = server.accept();
+                accepted.configureBlocking(false);
+                SelectionKey readKey = accepted.register(selector, SelectionKey.OP_READ, "attachment");
+
+                client.write(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)));
+                assertEquals(1, selector.select(5000));
+                SelectionKey selected = selector.selectedKeys().iterator().next();
+                assertSame(readKey, selected);
+                assertEquals("attachment", selected.attachment());
+                assertTrue(selected.isReadable());
+                selector.selectedKeys().clear();
+
+                // Not reading, and not updating the interest, the key must be selected again.
+                assertEquals(1, selector.select(5000));
+                selector.selectedKeys().clear();
+
+                ByteBuffer buffer = ByteBuffer.allocate(16);
+                assertEquals(5, accepted.read(buffer));
+                readKey.interestOps(SelectionKey.OP_READ);
+                assertEquals(0, selector.selectNow());
+
+                // Closing the channel cancels its key.
+                accepted.close();
+                selector.selectNow();
+                assertFalse(readKey.isValid());
+                assertFalse(selector.keys().contains(readKey));
+            }
+        }
+    }
+
+    @Test
+    public void testWakeup() throws Exception
+    {
+        try (Selector selector = new EpollSelectorProvider().openSelector())
+        {
+            // A wakeup before select makes it return immediately.
+            selector.wakeup();
+            selector.wakeup();
+            assertEquals(0, selector.select(5000));
+
+            CountDownLatch selecting = new CountDownLatch(1);
+            CompletableFuture<Integer> selected = CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    selecting.countDown();
+                    return selector.select();
+                }
+                catch (IOException x)
+                {
+                    throw new UncheckedIOException(x);
+                }
+            });
+            assertTrue(selecting.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            selector.wakeup();
+            assertEquals(0, selected.get(5, TimeUnit.SECONDS));
+
+            // Waking up a closed selector is a no-op.
+            selector.close();
+            selector.wakeup();
+        }
+    }
+
+    @Test
+    public void testServerConnector() throws Exception
+    {
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.getSelectorManager().setSelectorProvider(EpollSelectorProvider.provider());
+        server.addConnector(connector);
+        server.setHandler(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback)
+            {
+                Content.Sink.write(response, true, "epoll", callback);
+                return true;
+            }
+        });
+        server.start();
+        try
+        {
+            for (int i = 0; i < 3; ++i)
+            {
+                try (Socket socket = new Socket("localhost", connector.getLocalPort()))
+                {
+                    OutputStream output = socket.getOutputStream();
+                    output.write("""
+                        GET / HTTP/1.1\r
+                        Host: localhost\r
+                        Connection: close\r
+                        \r
+                        """.getBytes(StandardCharsets.UTF_8));
+                    output.flush();
+                    InputStream input = socket.getInputStream();
+                    String response = IO.toString(input);
+                    assertThat(response, startsWith("HTTP/1.1 200 "));
+                    assertThat(response, containsString("epoll"));
+                }
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -368,6 +368,12 @@ public abstract class AbstractEndPoint extends IdleTimeout implements EndPoint
         _writeFlusher.write(callback, buffers);
     }
 
+    @Override
+    public void writeInterested(Callback callback) throws WritePendingException
+    {
+        _writeFlusher.writeInterested(callback);
+    }
+
     protected abstract void onIncompleteFlush();
 
     protected abstract void needsFillInterest() throws IOException;
@@ -19,13 +19,20 @@ import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
@@ -34,7 +41,9 @@ import org.eclipse.jetty.io.internal.CompoundPool;
 import org.eclipse.jetty.io.internal.QueuedPool;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.ConcurrentPool;
+import org.eclipse.jetty.util.NanoTime;
 import org.eclipse.jetty.util.Pool;
+import org.eclipse.jetty.util.ProcessorUtils;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
@@ -153,8 +162,8 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         for (int i = 0; i < directArray.length; i++)
         {
             int capacity = Math.min(bucketCapacity.applyAsInt(i), maxCapacity);
-            directArray[i] = new RetainedBucket(capacity, maxBucketSize);
-            indirectArray[i] = new RetainedBucket(capacity, maxBucketSize);
+            directArray[i] = new RetainedBucket(i, true, capacity, maxBucketSize);
+            indirectArray[i] = new RetainedBucket(length + i, false, capacity, maxBucketSize);
         }
 
         _minCapacity = minCapacity;
@@ -273,6 +282,13 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         entry.remove();
     }
 
+    /**
+     * <p>Called when a buffer of the given bucket is released by the application.</p>
+     */
+    void released(RetainedBucket bucket)
+    {
+    }
+
     private void release(RetainedBucket bucket, Pool.Entry<RetainableByteBuffer> entry)
     {
         bucket.recordRelease();
@@ -280,6 +296,16 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         RetainableByteBuffer buffer = entry.getPooled();
         BufferUtil.reset(buffer.getByteBuffer());
 
+        recycle(bucket, entry);
+    }
+
+    /**
+     * <p>Gives back to the bucket the released buffer of the given entry.</p>
+     */
+    void recycle(RetainedBucket bucket, Pool.Entry<RetainableByteBuffer> entry)
+    {
+        RetainableByteBuffer buffer = entry.getPooled();
+
         // Release the buffer and check the memory 1% of the times.
         int used = ((Buffer)buffer).use();
         if (entry.release())
@@ -322,7 +348,12 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         }
     }
 
-    private void evict(long excessMemory, boolean direct)
+    /**
+     * <p>Evicts idle buffers to free the given excess memory.</p>
+     *
+     * @return the excess memory that could not be freed
+     */
+    long evict(long excessMemory, boolean direct)
     {
         RetainedBucket[] buckets = direct ? _direct : _indirect;
         int length = buckets.length;
@@ -336,8 +367,9 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
             int evicted = bucket.evict();
             excessMemory -= evicted;
             if (excessMemory <= 0)
-                return;
+                return 0;
         }
+        return excessMemory;
     }
 
     public Pool<RetainableByteBuffer> poolFor(int capacity, boolean direct)
@@ -405,7 +437,10 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         return getMemory(false);
     }
 
-    private long getMemory(boolean direct)
+    /**
+     * @return the bytes retained by the idle buffers
+     */
+    long getMemory(boolean direct)
     {
         long size = 0;
         for (RetainedBucket bucket : direct ? _direct : _indirect)
@@ -469,10 +504,14 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         private final LongAdder _removes = new LongAdder();
         private final LongAdder _releases = new LongAdder();
         private final Pool<RetainableByteBuffer> _pool;
+        private final int _index;
+        private final boolean _direct;
         private final int _capacity;
 
-        private RetainedBucket(int capacity, int poolSize)
+        private RetainedBucket(int index, boolean direct, int capacity, int poolSize)
         {
+            _index = index;
+            _direct = direct;
             if (poolSize <= ConcurrentPool.OPTIMAL_MAX_SIZE)
                 _pool = new ConcurrentPool<>(ConcurrentPool.StrategyType.THREAD_ID, poolSize, e -> 1);
             else
@@ -620,6 +659,8 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         public boolean release()
         {
             boolean released = super.release();
+            if (released)
+                released(_bucket);
             if (released && _removed.compareAndSet(false, true))
                 reserve(_bucket, getByteBuffer());
             return released;
@@ -650,7 +691,10 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         {
             boolean released = super.release();
             if (released)
+            {
+                released(_bucket);
                 ArrayByteBufferPool.this.release(_bucket, _entry);
+            }
             return released;
         }
 
@@ -698,6 +742,656 @@ public class ArrayByteBufferPool implements ByteBufferPool, Dumpable
         }
     }
 
+    /**
+     * <p>A variant of {@link ArrayByteBufferPool} that keeps, in front of the buckets,
+     * shards of magazines of released buffers.</p>
+     * <p>Threads are mapped to shards by their id, and acquire from and release to the
+     * magazines of their shard, so that threads on many-core machines rarely contend on
+     * the buckets. Magazines are refilled from, and flushed to, the buckets in batches of
+     * half their size, and the memory retained by the magazines of each shard is limited.</p>
+     * <p>The buffers in magazines are accounted as available by {@link #getDirectMemory()},
+     * {@link #getAvailableDirectMemory()} and the other memory and buffer count statistics,
+     * so they count towards the max heap and direct memory, and are evicted from the
+     * magazines when the buckets have no idle buffers left to evict.</p>
+     */
+    public static class Sharded extends ArrayByteBufferPool
+    {
+        public static final int DEFAULT_MAGAZINE_SIZE = 8;
+
+        private final Shard[] _shards;
+        private final int _magazineSize;
+        private final long _maxShardMemory;
+
+        public Sharded()
+        {
+            this(0, -1, -1, Integer.MAX_VALUE, 0L, 0L, -1, -1, 0L);
+        }
+
+        /**
+         * Creates a new Sharded pool with the given configuration.
+         *
+         * @param minCapacity the minimum ByteBuffer capacity
+         * @param factor the capacity factor
+         * @param maxCapacity the maximum ByteBuffer capacity
+         * @param maxBucketSize the maximum number of ByteBuffers for each bucket
+         * @param maxHeapMemory the max heap memory in bytes, -1 for unlimited memory or 0 to use default heuristic
+         * @param maxDirectMemory the max direct memory in bytes, -1 for unlimited memory or 0 to use default heuristic
+         * @param shards the number of shards, or -1 for twice the number of available processors
+         * @param magazineSize the maximum number of ByteBuffers in each magazine, or -1 for the default
+         * @param maxShardMemory the max memory in bytes retained by the magazines of each shard,
+         * or 0 for enough memory to fill one magazine with ByteBuffers of the maximum capacity
+         */
+        public Sharded(int minCapacity, int factor, int maxCapacity, int maxBucketSize, long maxHeapMemory, long maxDirectMemory, int shards, int magazineSize, long maxShardMemory)
+        {
+            super(minCapacity, factor, maxCapacity, maxBucketSize, maxHeapMemory, maxDirectMemory);
+            if (shards <= 0)
+                shards = 2 * ProcessorUtils.availableProcessors();
+            _magazineSize = magazineSize <= 0 ? DEFAULT_MAGAZINE_SIZE : magazineSize;
+            _maxShardMemory = maxShardMemory <= 0 ? (long)_magazineSize * getMaxCapacity() : maxShardMemory;
+            // Round up to a power of 2 to map thread ids to shards with a mask.
+            _shards = new Shard[Integer.highestOneBit(shards * 2 - 1)];
+            for (int i = 0; i < _shards.length; i++)
+            {
+                _shards[i] = new Shard(super._direct.length + super._indirect.length);
+            }
+        }
+
+        @ManagedAttribute("The number of shards of magazines")
+        public int getShardCount()
+        {
+            return _shards.length;
+        }
+
+        @ManagedAttribute("The maximum number of ByteBuffers in each magazine")
+        public int getMagazineSize()
+        {
+            return _magazineSize;
+        }
+
+        @ManagedAttribute("The max memory in bytes retained by the magazines of each shard")
+        public long getMaxShardMemory()
+        {
+            return _maxShardMemory;
+        }
+
+        @Override
+        public RetainableByteBuffer acquire(int size, boolean direct)
+        {
+            RetainedBucket bucket = super.bucketFor(size, direct);
+            if (bucket == null)
+                return super.acquire(size, direct);
+
+            // Try to acquire a buffer from the magazine of the current thread's shard.
+            Shard shard = shard();
+            Buffer buffer = shard.pop(bucket);
+            if (buffer != null)
+            {
+                bucket.recordAcquire();
+                bucket.recordPooled();
+                buffer.acquire();
+                return buffer;
+            }
+
+            RetainableByteBuffer acquired = super.acquire(size, direct);
+            // Refill the magazine with a batch of pooled entries.
+            if (acquired instanceof Buffer)
+                shard.refill(bucket);
+            return acquired;
+        }
+
+        @Override
+        void recycle(RetainedBucket bucket, Pool.Entry<RetainableByteBuffer> entry)
+        {
+            // Keep the buffer in the magazine of the current thread's shard.
+            if (!shard().push(bucket, (Buffer)entry.getPooled()))
+                super.recycle(bucket, entry);
+        }
+
+        private Shard shard()
+        {
+            long id = Thread.currentThread().getId();
+            return _shards[(int)(id ^ (id >>> 32)) & (_shards.length - 1)];
+        }
+
+        @Override
+        public long getAvailableDirectByteBufferCount()
+        {
+            return super.getAvailableDirectByteBufferCount() + Arrays.stream(_shards).mapToLong(shard -> shard._directCount).sum();
+        }
+
+        @Override
+        public long getAvailableHeapByteBufferCount()
+        {
+            return super.getAvailableHeapByteBufferCount() + Arrays.stream(_shards).mapToLong(shard -> shard._heapCount).sum();
+        }
+
+        @Override
+        long getMemory(boolean direct)
+        {
+            // Buffers in magazines are in use for the buckets, but available to acquirers.
+            return super.getMemory(direct) + Arrays.stream(_shards).mapToLong(shard -> direct ? shard._directMemory : shard._heapMemory).sum();
+        }
+
+        @Override
+        long evict(long excessMemory, boolean direct)
+        {
+            excessMemory = super.evict(excessMemory, direct);
+            if (excessMemory <= 0)
+                return 0;
+            // The buckets have no idle buffers left, evict the buffers in magazines.
+            int length = _shards.length;
+            int index = ThreadLocalRandom.current().nextInt(length);
+            for (int c = 0; c < length && excessMemory > 0; ++c)
+            {
+                excessMemory = _shards[index].evict(excessMemory, direct);
+                if (++index == length)
+                    index = 0;
+            }
+            return Math.max(0, excessMemory);
+        }
+
+        @Override
+        public void clear()
+        {
+            for (Shard shard : _shards)
+            {
+                shard.clear();
+            }
+            super.clear();
+        }
+
+        /**
+         * <p>A shard of magazines, one per bucket, each holding a few released
+         * buffers that can be acquired again without contending on the bucket.</p>
+         * <p>A shard is used by the threads whose id maps to it; a thread that finds
+         * the shard busy uses the bucket directly, rather than waiting.</p>
+         */
+        private class Shard
+        {
+            private final AtomicBoolean _busy = new AtomicBoolean();
+            private final Buffer[][] _magazines;
+            private final int[] _sizes;
+            private long _memory;
+            private volatile long _directMemory;
+            private volatile long _heapMemory;
+            private volatile int _directCount;
+            private volatile int _heapCount;
+
+            private Shard(int buckets)
+            {
+                _magazines = new Buffer[buckets][];
+                _sizes = new int[buckets];
+            }
+
+            private Buffer pop(RetainedBucket bucket)
+            {
+                if (!_busy.compareAndSet(false, true))
+                    return null;
+                try
+                {
+                    int index = bucket._index;
+                    int size = _sizes[index];
+                    if (size == 0)
+                        return null;
+                    Buffer[] magazine = _magazines[index];
+                    Buffer buffer = magazine[--size];
+                    magazine[size] = null;
+                    _sizes[index] = size;
+                    account(bucket, -1);
+                    return buffer;
+                }
+                finally
+                {
+                    _busy.set(false);
+                }
+            }
+
+            private boolean push(RetainedBucket bucket, Buffer buffer)
+            {
+                if (!_busy.compareAndSet(false, true))
+                    return false;
+                try
+                {
+                    int index = bucket._index;
+                    Buffer[] magazine = magazine(index);
+                    if (_sizes[index] == magazine.length)
+                        flush(bucket, Math.max(1, magazine.length / 2));
+                    if (_memory + bucket.getCapacity() > _maxShardMemory)
+                    {
+                        // Give the memory of this bucket's magazine back to the bucket.
+                        flush(bucket, _sizes[index]);
+                        if (_memory + bucket.getCapacity() > _maxShardMemory)
+                            return false;
+                    }
+                    magazine[_sizes[index]++] = buffer;
+                    account(bucket, 1);
+                    return true;
+                }
+                finally
+                {
+                    _busy.set(false);
+                }
+            }
+
+            private void refill(RetainedBucket bucket)
+            {
+                if (!_busy.compareAndSet(false, true))
+                    return;
+                try
+                {
+                    int index = bucket._index;
+                    Buffer[] magazine = magazine(index);
+                    int batch = Math.max(1, magazine.length / 2);
+                    while (batch-- > 0 && _sizes[index] < magazine.length && _memory + bucket.getCapacity() <= _maxShardMemory)
+                    {
+                        Pool.Entry<RetainableByteBuffer> entry = bucket.getPool().acquire();
+                        if (entry == null)
+                            break;
+                        magazine[_sizes[index]++] = (Buffer)entry.getPooled();
+                        account(bucket, 1);
+                    }
+                }
+                finally
+                {
+                    _busy.set(false);
+                }
+            }
+
+            private Buffer[] magazine(int index)
+            {
+                Buffer[] magazine = _magazines[index];
+                if (magazine == null)
+                {
+                    magazine = new Buffer[_magazineSize];
+                    _magazines[index] = magazine;
+                }
+                return magazine;
+            }
+
+            private void flush(RetainedBucket bucket, int count)
+            {
+                // Release the least recently used buffers to the bucket, in a batch.
+                int index = bucket._index;
+                Buffer[] magazine = _magazines[index];
+                int size = _sizes[index];
+                for (int i = 0; i < count; i++)
+                {
+                    Sharded.super.recycle(bucket, magazine[i]._entry);
+                    account(bucket, -1);
+                }
+                System.arraycopy(magazine, count, magazine, 0, size - count);
+                Arrays.fill(magazine, size - count, size, null);
+                _sizes[index] = size - count;
+            }
+
+            private void account(RetainedBucket bucket, int delta)
+            {
+                long memory = (long)delta * bucket.getCapacity();
+                _memory += memory;
+                if (bucket._direct)
+                {
+                    _directMemory += memory;
+                    _directCount += delta;
+                }
+                else
+                {
+                    _heapMemory += memory;
+                    _heapCount += delta;
+                }
+            }
+
+            private long evict(long excessMemory, boolean direct)
+            {
+                // Do not wait for a busy shard, the next check will evict from it.
+                if (!_busy.compareAndSet(false, true))
+                    return excessMemory;
+                try
+                {
+                    for (int index = 0; index < _magazines.length && excessMemory > 0; index++)
+                    {
+                        Buffer[] magazine = _magazines[index];
+                        int size = _sizes[index];
+                        if (size == 0 || magazine[0]._bucket._direct != direct)
+                            continue;
+                        // Evict the least recently used buffers first.
+                        int count = 0;
+                        while (count < size && excessMemory > 0)
+                        {
+                            Buffer buffer = magazine[count++];
+                            account(buffer._bucket, -1);
+                            buffer.remove();
+                            excessMemory -= buffer._bucket.getCapacity();
+                        }
+                        System.arraycopy(magazine, count, magazine, 0, size - count);
+                        Arrays.fill(magazine, size - count, size, null);
+                        _sizes[index] = size - count;
+                    }
+                    return excessMemory;
+                }
+                finally
+                {
+                    _busy.set(false);
+                }
+            }
+
+            private void clear()
+            {
+                while (!_busy.compareAndSet(false, true))
+                {
+                    Thread.onSpinWait();
+                }
+                try
+                {
+                    for (int index = 0; index < _magazines.length; index++)
+                    {
+                        Buffer[] magazine = _magazines[index];
+                        for (int i = 0; i < _sizes[index]; i++)
+                        {
+                            Buffer buffer = magazine[i];
+                            account(buffer._bucket, -1);
+                            buffer.remove();
+                            magazine[i] = null;
+                        }
+                        _sizes[index] = 0;
+                    }
+                }
+                finally
+                {
+                    _busy.set(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>A variant of {@link ArrayByteBufferPool} that adapts the number of retained
+     * buffers to the observed demand.</p>
+     * <p>The pool samples the sizes of the acquired buffers, and the number of buffers of
+     * each bucket that are in use. Every {@code tuneInterval}, a release dispatches a tuning
+     * to the {@link #getExecutor() executor}, which learns the demand of each bucket as the
+     * peak number of buffers in use since the last tuning, or the previously learned demand
+     * multiplied by {@code decay}, whichever is larger, and removes the idle buffers in excess
+     * of the demand.
+     * While the pool retains idle buffers, a sweep also dispatches the tuning when no release
+     * did for a {@code tuneInterval}, so that a pool that became idle shrinks as well.</p>
+     * <p>After a burst of traffic, the buffers retained for the burst are thus progressively
+     * removed from the pool, and their memory, in particular direct memory, can be freed by
+     * the garbage collector.</p>
+     * <p>The learned demand and the distribution of the acquired sizes are exposed via JMX,
+     * and can be used to configure the capacity {@code factor} and {@code maxCapacity}
+     * of the pool that best fit the application.</p>
+     */
+    public static class Adaptive extends ArrayByteBufferPool
+    {
+        public static final long DEFAULT_TUNE_INTERVAL = 1000;
+        public static final double DEFAULT_DECAY = 0.9;
+        private static final ScheduledExecutorService TUNER = newTuner();
+
+        private final LongAdder[] _sizes = new LongAdder[Integer.SIZE + 1];
+        private final AtomicIntegerArray _inUse;
+        private final AtomicIntegerArray _peaks;
+        private final AtomicIntegerArray _targets;
+        private final AtomicBoolean _tuning = new AtomicBoolean();
+        private final AtomicBoolean _sweeping = new AtomicBoolean();
+        private final LongAdder _trims = new LongAdder();
+        private final Runnable _tuner = this::tuneAndReset;
+        private final Runnable _sweeper = this::sweep;
+        private final long _tuneInterval;
+        private final double _decay;
+        private volatile long _lastTune = NanoTime.now();
+        private volatile Executor _executor = TUNER;
+
+        public Adaptive()
+        {
+            this(0, -1, -1, Integer.MAX_VALUE, 0L, 0L, -1L, -1D);
+        }
+
+        /**
+         * Creates a new Adaptive pool with the given configuration.
+         *
+         * @param minCapacity the minimum ByteBuffer capacity
+         * @param factor the capacity factor
+         * @param maxCapacity the maximum ByteBuffer capacity
+         * @param maxBucketSize the maximum number of ByteBuffers for each bucket
+         * @param maxHeapMemory the max heap memory in bytes, -1 for unlimited memory or 0 to use default heuristic
+         * @param maxDirectMemory the max direct memory in bytes, -1 for unlimited memory or 0 to use default heuristic
+         * @param tuneInterval the interval in milliseconds between tunings, or -1 for the default
+         * @param decay the fraction of the learned demand that is retained at each tuning, or -1 for the default
+         */
+        public Adaptive(int minCapacity, int factor, int maxCapacity, int maxBucketSize, long maxHeapMemory, long maxDirectMemory, long tuneInterval, double decay)
+        {
+            super(minCapacity, factor, maxCapacity, maxBucketSize, maxHeapMemory, maxDirectMemory);
+            _tuneInterval = tuneInterval < 0 ? DEFAULT_TUNE_INTERVAL : tuneInterval;
+            _decay = decay < 0 ? DEFAULT_DECAY : decay;
+            if (_tuneInterval == 0)
+                throw new IllegalArgumentException("Invalid tune interval " + tuneInterval);
+            if (_decay >= 1)
+                throw new IllegalArgumentException("Invalid decay " + decay);
+            int buckets = super._direct.length + super._indirect.length;
+            _inUse = new AtomicIntegerArray(buckets);
+            _peaks = new AtomicIntegerArray(buckets);
+            _targets = new AtomicIntegerArray(buckets);
+            for (int i = 0; i < _sizes.length; i++)
+            {
+                _sizes[i] = new LongAdder();
+            }
+        }
+
+        private static ScheduledExecutorService newTuner()
+        {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task ->
+            {
+                Thread thread = new Thread(task, "ArrayByteBufferPool-tuner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        /**
+         * @return the executor that runs the periodic tunings
+         */
+        public Executor getExecutor()
+        {
+            return _executor;
+        }
+
+        /**
+         * <p>Sets the executor that runs the periodic tunings, by default
+         * a daemon thread shared by all the {@code Adaptive} pools, which
+         * also schedules the sweeps of the idle pools.</p>
+         *
+         * @param executor the executor that runs the periodic tunings
+         */
+        public void setExecutor(Executor executor)
+        {
+            _executor = Objects.requireNonNull(executor);
+        }
+
+        @ManagedAttribute("The interval in milliseconds between tunings")
+        public long getTuneInterval()
+        {
+            return _tuneInterval;
+        }
+
+        @ManagedAttribute("The fraction of the learned demand retained at each tuning")
+        public double getDecay()
+        {
+            return _decay;
+        }
+
+        @ManagedAttribute("The number of acquired ByteBuffers by size range")
+        public Map<String, Long> getAcquiredSizeDistribution()
+        {
+            Map<String, Long> distribution = new LinkedHashMap<>();
+            for (int i = 0; i < _sizes.length; i++)
+            {
+                long count = _sizes[i].sum();
+                if (count > 0)
+                    distribution.put("<=" + (1L << i), count);
+            }
+            return distribution;
+        }
+
+        @ManagedAttribute("The learned number of direct ByteBuffers by capacity")
+        public Map<Integer, Integer> getDirectDemand()
+        {
+            return getTargets(super._direct);
+        }
+
+        @ManagedAttribute("The learned number of heap ByteBuffers by capacity")
+        public Map<Integer, Integer> getHeapDemand()
+        {
+            return getTargets(super._indirect);
+        }
+
+        private Map<Integer, Integer> getTargets(RetainedBucket[] buckets)
+        {
+            Map<Integer, Integer> targets = new LinkedHashMap<>();
+            for (RetainedBucket bucket : buckets)
+            {
+                int target = _targets.get(bucket._index);
+                if (target > 0)
+                    targets.put(bucket.getCapacity(), target);
+            }
+            return targets;
+        }
+
+        @ManagedAttribute("The number of idle ByteBuffers trimmed")
+        public long getTrimCount()
+        {
+            return _trims.sum();
+        }
+
+        @Override
+        public RetainableByteBuffer acquire(int size, boolean direct)
+        {
+            // Sample the sizes in power of 2 ranges, including those too large to be pooled.
+            _sizes[32 - Integer.numberOfLeadingZeros(Math.max(0, size - 1))].increment();
+            RetainedBucket bucket = super.bucketFor(size, direct);
+            if (bucket != null)
+            {
+                int index = bucket._index;
+                int inUse = _inUse.incrementAndGet(index);
+                while (true)
+                {
+                    int peak = _peaks.get(index);
+                    if (inUse <= peak || _peaks.compareAndSet(index, peak, inUse))
+                        break;
+                }
+            }
+            return super.acquire(size, direct);
+        }
+
+        @Override
+        void released(RetainedBucket bucket)
+        {
+            _inUse.decrementAndGet(bucket._index);
+            if (NanoTime.millisSince(_lastTune) >= _tuneInterval)
+                dispatchTune();
+            else
+                scheduleSweep();
+        }
+
+        private void dispatchTune()
+        {
+            // Only dispatch the tuning, to not delay the releasing thread.
+            if (_tuning.compareAndSet(false, true))
+            {
+                try
+                {
+                    _executor.execute(_tuner);
+                }
+                catch (Throwable x)
+                {
+                    // Retry at a later release or sweep.
+                    _tuning.set(false);
+                    scheduleSweep();
+                }
+            }
+        }
+
+        private void scheduleSweep()
+        {
+            if (_sweeping.get() || !_sweeping.compareAndSet(false, true))
+                return;
+            try
+            {
+                TUNER.schedule(_sweeper, _tuneInterval, TimeUnit.MILLISECONDS);
+            }
+            catch (Throwable x)
+            {
+                // Retry at a later release.
+                _sweeping.set(false);
+            }
+        }
+
+        private void sweep()
+        {
+            _sweeping.set(false);
+            // Tune if no release did recently, so that an idle pool shrinks.
+            if (NanoTime.millisSince(_lastTune) >= _tuneInterval)
+                dispatchTune();
+            else
+                scheduleSweep();
+        }
+
+        /**
+         * <p>Learns the current demand and trims the idle buffers in excess,
+         * without waiting for the tune interval to elapse.</p>
+         */
+        @ManagedOperation(value = "Trims the idle ByteBuffers in excess of the learned demand", impact = "ACTION")
+        public void tune()
+        {
+            if (_tuning.compareAndSet(false, true))
+                tuneAndReset();
+        }
+
+        private void tuneAndReset()
+        {
+            try
+            {
+                _lastTune = NanoTime.now();
+                boolean idle = tune(super._direct);
+                idle |= tune(super._indirect);
+                // Sweep until there are no idle buffers left to trim.
+                if (idle)
+                    scheduleSweep();
+            }
+            finally
+            {
+                _tuning.set(false);
+            }
+        }
+
+        /**
+         * @return whether idle buffers remain in the given buckets after the trimming
+         */
+        private boolean tune(RetainedBucket[] buckets)
+        {
+            boolean idle = false;
+            for (RetainedBucket bucket : buckets)
+            {
+                int index = bucket._index;
+                int inUse = Math.max(0, _inUse.get(index));
+                int peak = Math.max(inUse, _peaks.getAndSet(index, inUse));
+                // Past demand decays, so that the buffers retained after a burst are eventually trimmed.
+                int target = Math.max(peak, (int)(_targets.get(index) * _decay));
+                _targets.set(index, target);
+
+                int excess = bucket.getPool().size() - target;
+                while (excess-- > 0 && bucket.evict() > 0)
+                {
+                    _trims.increment();
+                }
+                idle |= bucket.getPool().getIdleCount() > 0;
+            }
+            return idle;
+        }
+    }
+
     /**
      * <p>A variant of {@link ArrayByteBufferPool} that tracks buffer
      * acquires/releases, useful to identify buffer leaks.</p>
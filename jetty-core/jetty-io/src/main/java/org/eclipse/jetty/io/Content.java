@@ -18,6 +18,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -707,6 +708,30 @@ public class Content
          * @param callback the callback to notify when the write operation is complete
          */
         void write(boolean last, ByteBuffer byteBuffer, Callback callback);
+
+        /**
+         * <p>Writes the given region of a file as the last content of this sink,
+         * notifying the {@link Callback} when the write is complete.</p>
+         * <p>Sinks that write to a network connection may transfer the bytes
+         * directly from the file to the network, without copying them through
+         * user space buffers.</p>
+         * <p>The file is not closed by this method, and must not be closed
+         * until the callback is notified.</p>
+         * <p>The default implementation returns {@code false} and does not notify
+         * the callback, to indicate that the caller must instead read the file
+         * and write its bytes via {@link #write(boolean, ByteBuffer, Callback)}.</p>
+         *
+         * @param file the file to transfer bytes from
+         * @param position the position within the file of the first byte to transfer
+         * @param length the number of bytes to transfer
+         * @param callback the callback to notify when the write operation is complete
+         * @return {@code true} if the transfer has been initiated and the callback
+         * will be notified, {@code false} if this sink cannot transfer file regions
+         */
+        default boolean transferFrom(FileChannel file, long position, long length, Callback callback)
+        {
+            return false;
+        }
     }
 
     /**
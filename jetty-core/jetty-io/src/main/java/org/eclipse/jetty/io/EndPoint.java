@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadPendingException;
 import java.nio.channels.WritePendingException;
 import java.security.cert.X509Certificate;
@@ -228,6 +229,49 @@ public interface EndPoint extends Closeable
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * @return whether this endpoint supports {@link #transferFrom(FileChannel, long, long)}
+     */
+    default boolean isFileTransferSupported()
+    {
+        return false;
+    }
+
+    /**
+     * <p>Transfers bytes from the given file directly to this endpoint,
+     * without copying them through user space buffers, if the underlying
+     * transport allows it (for example, via {@code sendfile(2)}).</p>
+     * <p>Like {@link #flush(ByteBuffer...)}, this method does not block
+     * and may transfer fewer bytes than requested, possibly zero.</p>
+     *
+     * @param file the file to transfer bytes from
+     * @param position the position within the file of the first byte to transfer
+     * @param count the maximum number of bytes to transfer
+     * @return the number of bytes transferred
+     * @throws IOException if the endpoint is closed or output is shutdown.
+     * @see #isFileTransferSupported()
+     */
+    default long transferFrom(FileChannel file, long position, long count) throws IOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <p>Requests a callback when a write to this endpoint is likely to be able
+     * to progress, for example after {@link #transferFrom(FileChannel, long, long)}
+     * returned zero because the network could not accept more bytes.</p>
+     * <p>No data is written; the callback is completed when this endpoint is writable,
+     * or failed if this endpoint is closed or fails.</p>
+     *
+     * @param callback the callback to complete when this endpoint is writable
+     * @throws WritePendingException if another write operation is concurrent
+     * @see #isFileTransferSupported()
+     */
+    default void writeInterested(Callback callback) throws WritePendingException
+    {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * <p>Sends to the given address the data in the given buffers.</p>
      * <p>This methods should be used to send UDP data.</p>
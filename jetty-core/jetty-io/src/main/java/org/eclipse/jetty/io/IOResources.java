@@ -16,6 +16,7 @@ package org.eclipse.jetty.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -338,6 +339,7 @@ public class IOResources
         private final boolean direct;
         private long remainingLength;
         private RetainableByteBuffer retainableByteBuffer;
+        private boolean transferred;
         private boolean terminated;
 
         public PathToSinkCopier(Path path, Content.Sink sink, ByteBufferPool pool, int bufferSize, boolean direct, Callback callback) throws IOException
@@ -370,6 +372,22 @@ public class IOResources
             if (terminated)
                 return Action.SUCCEEDED;
 
+            // Try once to let the sink transfer the file without copying its bytes.
+            if (!transferred)
+            {
+                transferred = true;
+                if (channel instanceof FileChannel fileChannel)
+                {
+                    long position = fileChannel.position();
+                    long length = remainingLength >= 0 ? remainingLength : fileChannel.size() - position;
+                    if (length > 0 && sink.transferFrom(fileChannel, position, length, this))
+                    {
+                        terminated = true;
+                        return Action.SCHEDULED;
+                    }
+                }
+            }
+
             if (retainableByteBuffer == null)
                 retainableByteBuffer = pool.acquire(bufferSize, direct);
 
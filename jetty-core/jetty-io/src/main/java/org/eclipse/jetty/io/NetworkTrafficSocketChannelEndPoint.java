@@ -67,6 +67,13 @@ public class NetworkTrafficSocketChannelEndPoint extends SocketChannelEndPoint
         return flushed;
     }
 
+    @Override
+    public boolean isFileTransferSupported()
+    {
+        // File transfers bypass flush(), so the listener would not be notified.
+        return false;
+    }
+
     @Override
     public void onOpen()
     {
@@ -22,6 +22,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
 import java.util.Arrays;
 import java.util.EventListener;
 import java.util.List;
@@ -62,6 +63,7 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
     private final IntUnaryOperator _selectorIndexUpdate;
     private final List<AcceptListener> _acceptListeners = new CopyOnWriteArrayList<>();
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private SelectorProvider _selectorProvider;
     private ThreadPoolBudget.Lease _lease;
 
     private static int defaultSelectors(Executor executor)
@@ -129,6 +131,30 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         _connectTimeout = milliseconds;
     }
 
+    /**
+     * @return the provider of the {@link Selector}s, or {@code null} for the system-wide default provider
+     */
+    @ManagedAttribute("The provider of the NIO Selectors")
+    public SelectorProvider getSelectorProvider()
+    {
+        return _selectorProvider;
+    }
+
+    /**
+     * <p>Sets the provider of the {@link Selector}s, for example a native selector backend.</p>
+     * <p>The provider only needs to open selectors that accept the channels of the
+     * system-wide default provider.</p>
+     *
+     * @param selectorProvider the provider of the {@link Selector}s, or {@code null} for the system-wide default provider
+     * @see #newSelector()
+     */
+    public void setSelectorProvider(SelectorProvider selectorProvider)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _selectorProvider = selectorProvider;
+    }
+
     /**
      * Executes the given task in a different thread.
      *
@@ -269,7 +295,8 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
 
     protected Selector newSelector() throws IOException
     {
-        return Selector.open();
+        SelectorProvider selectorProvider = getSelectorProvider();
+        return selectorProvider == null ? Selector.open() : selectorProvider.openSelector();
     }
 
     @Override
@@ -303,6 +303,38 @@ public abstract class WriteFlusher
         }
     }
 
+    /**
+     * <p>Waits until a write to the EndPoint is likely to be able to progress, without writing any data.</p>
+     * <p>The WriteFlusher switches to the PENDING state with no data to write and calls
+     * {@link #onIncompleteFlush()}, so that the callback is completed by {@link #completeWrite()}
+     * when the EndPoint becomes writable, or failed by {@link #onFail(Throwable)} or {@link #onClose()}.</p>
+     *
+     * @param callback the callback to complete when the EndPoint is writable
+     * @throws WritePendingException if unable to wait due to prior pending write
+     */
+    public void writeInterested(Callback callback) throws WritePendingException
+    {
+        Objects.requireNonNull(callback);
+
+        if (isFailed())
+        {
+            fail(callback);
+            return;
+        }
+
+        if (DEBUG)
+            LOG.debug("writeInterested: {}", this);
+
+        if (!updateState(__IDLE, __WRITING))
+            throw new WritePendingException();
+
+        PendingState pending = new PendingState(callback, null, EMPTY_BUFFERS);
+        if (updateState(__WRITING, pending))
+            onIncompleteFlush();
+        else
+            fail(callback);
+    }
+
     private void fail(Callback callback, Throwable... suppressed)
     {
         Throwable cause;
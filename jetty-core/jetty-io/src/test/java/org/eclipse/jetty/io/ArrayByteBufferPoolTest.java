@@ -17,17 +17,22 @@ import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.io.internal.CompoundPool;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.ConcurrentPool;
 import org.eclipse.jetty.util.Pool;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.sameInstance;
@@ -484,4 +489,259 @@ public class ArrayByteBufferPoolTest
         assertTrue(retained0.release());
         assertThat(pool.getHeapByteBufferCount(), is(3L));
     }
+
+    @Test
+    public void testShardedReusesBufferFromMagazine()
+    {
+        ArrayByteBufferPool.Sharded pool = new ArrayByteBufferPool.Sharded(0, 1024, 8192, Integer.MAX_VALUE, 0, 0, 1, 4, 4 * 8192);
+        Pool<RetainableByteBuffer> bucketPool = pool.poolFor(1024, true);
+
+        // The first buffer is reserved into the bucket when released.
+        pool.acquire(1024, true).release();
+        assertThat(bucketPool.size(), is(1));
+        assertThat(bucketPool.getIdleCount(), is(1));
+
+        // The pooled buffer is kept in the magazine when released, not returned to the bucket.
+        RetainableByteBuffer buffer1 = pool.acquire(1024, true);
+        assertThat(bucketPool.getIdleCount(), is(0));
+        assertThat(pool.getDirectMemory(), is(0L));
+        buffer1.release();
+        assertThat(bucketPool.getIdleCount(), is(0));
+        assertThat(pool.getDirectByteBufferCount(), is(1L));
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(1L));
+        assertThat(pool.getDirectMemory(), is(1024L));
+        assertThat(pool.getAvailableDirectMemory(), is(1024L));
+
+        RetainableByteBuffer buffer2 = pool.acquire(1024, true);
+        assertThat(buffer2, sameInstance(buffer1));
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(0L));
+        assertThat(pool.getAvailableDirectMemory(), is(0L));
+        buffer2.release();
+
+        pool.clear();
+        assertThat(bucketPool.size(), is(0));
+        assertThat(pool.getDirectByteBufferCount(), is(0L));
+        assertThat(pool.getDirectMemory(), is(0L));
+    }
+
+    @Test
+    public void testShardedMagazineFlushAndRefill()
+    {
+        ArrayByteBufferPool.Sharded pool = new ArrayByteBufferPool.Sharded(0, 1024, 8192, Integer.MAX_VALUE, 0, 0, 1, 4, 4 * 8192);
+        Pool<RetainableByteBuffer> bucketPool = pool.poolFor(1024, false);
+
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            buffers.add(pool.acquire(1024, false));
+        buffers.forEach(RetainableByteBuffer::release);
+        buffers.clear();
+
+        assertThat(bucketPool.size(), is(10));
+        assertThat(bucketPool.getIdleCount(), is(10));
+
+        // Acquiring from an empty magazine refills it from the bucket.
+        buffers.add(pool.acquire(1024, false));
+        assertThat(bucketPool.getIdleCount(), is(7));
+        assertThat(pool.getAvailableHeapByteBufferCount(), is(9L));
+        for (int i = 1; i < 10; i++)
+            buffers.add(pool.acquire(1024, false));
+        assertThat(bucketPool.size(), is(10));
+        assertThat(pool.getAvailableHeapByteBufferCount(), is(0L));
+
+        // The magazine holds at most 4 buffers, the others are flushed to the bucket in batches.
+        buffers.forEach(RetainableByteBuffer::release);
+        assertThat(bucketPool.getIdleCount(), is(6));
+        assertThat(pool.getAvailableHeapByteBufferCount(), is(10L));
+        assertThat(pool.getHeapMemory(), is(10 * 1024L));
+        assertThat(pool.getAvailableHeapMemory(), is(10 * 1024L));
+    }
+
+    @Test
+    public void testShardedMaxShardMemory()
+    {
+        ArrayByteBufferPool.Sharded pool = new ArrayByteBufferPool.Sharded(0, 1024, 8192, Integer.MAX_VALUE, 0, 0, 1, 16, 2 * 1024);
+        assertThat(pool.getShardCount(), is(1));
+        assertThat(pool.getMagazineSize(), is(16));
+        assertThat(pool.getMaxShardMemory(), is(2048L));
+
+        // Reserve the buffers into the buckets, then acquire them from the buckets.
+        for (int round = 0; round < 2; round++)
+        {
+            List<RetainableByteBuffer> buffers = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                buffers.add(pool.acquire(1024, true));
+            buffers.add(pool.acquire(4096, true));
+            buffers.forEach(RetainableByteBuffer::release);
+        }
+
+        // At most 2 KiB are retained by the magazines, the rest is in the buckets.
+        assertThat(pool.poolFor(1024, true).getIdleCount(), greaterThan(1));
+        assertThat(pool.poolFor(4096, true).getIdleCount(), is(1));
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(5L));
+        assertThat(pool.getAvailableDirectMemory(), is(4 * 1024L + 4096L));
+    }
+
+    @Test
+    public void testShardedMaxMemoryAccountsMagazines()
+    {
+        ArrayByteBufferPool.Sharded pool = new ArrayByteBufferPool.Sharded(0, 1024, 8192, Integer.MAX_VALUE, 0, 4 * 1024, 1, 8, 0);
+
+        for (int round = 0; round < 3; round++)
+        {
+            List<RetainableByteBuffer> buffers = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                buffers.add(pool.acquire(1024, true));
+            buffers.forEach(RetainableByteBuffer::release);
+
+            // The buffers kept in the magazine count towards the max direct memory.
+            assertThat(pool.getDirectMemory(), lessThanOrEqualTo(4 * 1024L));
+        }
+
+        // With no idle buffers left in the bucket, eviction removes the buffers in the magazine.
+        Pool<RetainableByteBuffer> bucketPool = pool.poolFor(1024, true);
+        assertThat(bucketPool.getIdleCount(), is(0));
+        assertThat(pool.getAvailableDirectByteBufferCount(), greaterThan(0L));
+        pool.acquire(8192, true).release();
+        assertThat(pool.getDirectMemory(), lessThanOrEqualTo(4 * 1024L));
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(pool.getDirectByteBufferCount()));
+    }
+
+    @Test
+    public void testShardedConcurrentAcquireRelease() throws Exception
+    {
+        ArrayByteBufferPool.Sharded pool = new ArrayByteBufferPool.Sharded(0, 1024, 8192, 64, 0, 0, 2, 4, 0);
+        int threads = 8;
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++)
+        {
+            Thread worker = new Thread(() ->
+            {
+                try
+                {
+                    List<RetainableByteBuffer> held = new ArrayList<>();
+                    for (int i = 0; i < 10_000; i++)
+                    {
+                        RetainableByteBuffer buffer = pool.acquire(1024 * (1 + i % 4), i % 2 == 0);
+                        // Buffers must be empty when acquired.
+                        if (buffer.hasRemaining())
+                            throw new IllegalStateException("not empty " + buffer);
+                        BufferUtil.append(buffer.getByteBuffer(), (byte)i);
+                        held.add(buffer);
+                        if (held.size() > 3)
+                            held.remove(0).release();
+                    }
+                    held.forEach(RetainableByteBuffer::release);
+                }
+                catch (Throwable x)
+                {
+                    failures.add(x);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+
+        assertThat(failures, Matchers.empty());
+        // All the buffers have been released, so they are all available.
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(pool.getDirectByteBufferCount()));
+        assertThat(pool.getAvailableHeapByteBufferCount(), is(pool.getHeapByteBufferCount()));
+        assertThat(pool.getAvailableDirectMemory(), is(pool.getDirectMemory()));
+
+        pool.clear();
+        assertThat(pool.getDirectByteBufferCount(), is(0L));
+        assertThat(pool.getHeapByteBufferCount(), is(0L));
+        assertThat(pool.getDirectMemory(), is(0L));
+        assertThat(pool.getHeapMemory(), is(0L));
+    }
+
+    @Test
+    public void testAdaptiveTrimsAfterBurst()
+    {
+        ArrayByteBufferPool.Adaptive pool = new ArrayByteBufferPool.Adaptive(0, 1024, 8192, Integer.MAX_VALUE, -1, -1, 3_600_000, 0.5);
+
+        // A burst of buffers is retained by the pool.
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+            buffers.add(pool.acquire(1024, true));
+        buffers.forEach(RetainableByteBuffer::release);
+        buffers.clear();
+        assertThat(pool.getDirectMemory(), is(16 * 1024L));
+
+        pool.tune();
+        assertThat(pool.getDirectDemand(), is(Map.of(1024, 16)));
+        assertThat(pool.getDirectMemory(), is(16 * 1024L));
+        assertThat(pool.getTrimCount(), is(0L));
+
+        // After the burst, the learned demand decays and the idle buffers are trimmed.
+        for (int i = 0; i < 2; i++)
+            buffers.add(pool.acquire(1024, true));
+        buffers.forEach(RetainableByteBuffer::release);
+        buffers.clear();
+        pool.tune();
+        assertThat(pool.getDirectDemand(), is(Map.of(1024, 8)));
+        assertThat(pool.getDirectMemory(), is(8 * 1024L));
+
+        pool.tune();
+        assertThat(pool.getDirectDemand(), is(Map.of(1024, 4)));
+        assertThat(pool.getDirectMemory(), is(4 * 1024L));
+        assertThat(pool.getTrimCount(), is(12L));
+
+        // Buffers in use are not trimmed.
+        for (int i = 0; i < 6; i++)
+            buffers.add(pool.acquire(1024, true));
+        pool.tune();
+        pool.tune();
+        assertThat(pool.getDirectDemand(), is(Map.of(1024, 6)));
+        buffers.forEach(RetainableByteBuffer::release);
+        assertThat(pool.getDirectMemory(), is(6 * 1024L));
+    }
+
+    @Test
+    public void testAdaptiveSizeDistribution()
+    {
+        ArrayByteBufferPool.Adaptive pool = new ArrayByteBufferPool.Adaptive(0, 1024, 8192, Integer.MAX_VALUE, -1, -1, -1, -1);
+        for (int size : new int[]{100, 1000, 1024, 5000, 100_000})
+            pool.acquire(size, false).release();
+
+        assertThat(pool.getAcquiredSizeDistribution(), is(Map.of("<=128", 1L, "<=1024", 2L, "<=8192", 1L, "<=131072", 1L)));
+    }
+
+    @Test
+    public void testAdaptiveTunesOnRelease() throws Exception
+    {
+        ArrayByteBufferPool.Adaptive pool = new ArrayByteBufferPool.Adaptive(0, 1024, 8192, Integer.MAX_VALUE, -1, -1, 1, 0);
+
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            buffers.add(pool.acquire(1024, false));
+        buffers.forEach(RetainableByteBuffer::release);
+
+        // A release dispatches the tuning to the executor, which trims the buffers of the burst.
+        await().atMost(5, TimeUnit.SECONDS).until(() ->
+        {
+            pool.acquire(1024, false).release();
+            return pool.getTrimCount() > 0;
+        });
+        await().atMost(5, TimeUnit.SECONDS).until(pool::getHeapByteBufferCount, lessThan(8L));
+    }
+
+    @Test
+    public void testAdaptiveTrimsWhenIdle()
+    {
+        ArrayByteBufferPool.Adaptive pool = new ArrayByteBufferPool.Adaptive(0, 1024, 8192, Integer.MAX_VALUE, -1, -1, 50, 0.5);
+
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            buffers.add(pool.acquire(1024, true));
+        buffers.forEach(RetainableByteBuffer::release);
+        assertThat(pool.getDirectByteBufferCount(), is(8L));
+
+        // Without further acquires or releases, the sweeps trim the idle pool.
+        await().atMost(5, TimeUnit.SECONDS).until(pool::getDirectByteBufferCount, is(0L));
+        assertThat(pool.getTrimCount(), is(8L));
+        assertThat(pool.getDirectDemand(), is(Map.of()));
+    }
 }
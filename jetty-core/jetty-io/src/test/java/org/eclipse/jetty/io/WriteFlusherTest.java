@@ -84,6 +84,36 @@ public class WriteFlusherTest
         assertTrue(flusher.isIdle());
     }
 
+    @Test
+    public void testWriteInterested() throws Exception
+    {
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint(new byte[0], 16);
+
+        AtomicBoolean incompleteFlush = new AtomicBoolean();
+        WriteFlusher flusher = new WriteFlusher(endPoint)
+        {
+            @Override
+            protected void onIncompleteFlush()
+            {
+                incompleteFlush.set(true);
+            }
+        };
+
+        FutureCallback callback = new FutureCallback();
+        flusher.writeInterested(callback);
+
+        assertFalse(callback.isDone());
+        assertTrue(incompleteFlush.get());
+        assertThrows(WritePendingException.class, () -> flusher.write(Callback.NOOP, BufferUtil.toBuffer("foo")));
+
+        flusher.completeWrite();
+
+        assertTrue(callback.isDone());
+        callback.get();
+        assertEquals("", endPoint.takeOutputString());
+        assertTrue(flusher.isIdle());
+    }
+
     @Test
     public void testClosedNoBlocking() throws Exception
     {
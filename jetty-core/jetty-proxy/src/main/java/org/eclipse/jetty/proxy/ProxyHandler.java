@@ -16,13 +16,19 @@ package org.eclipse.jetty.proxy;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -32,6 +38,7 @@ import org.eclipse.jetty.client.ContentSourceRequestContent;
 import org.eclipse.jetty.client.ContinueProtocolHandler;
 import org.eclipse.jetty.client.EarlyHintsProtocolHandler;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponseCache;
 import org.eclipse.jetty.client.ProcessingProtocolHandler;
 import org.eclipse.jetty.client.ProtocolHandlers;
 import org.eclipse.jetty.client.Result;
@@ -41,17 +48,24 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.io.ClientConnector;
 import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.io.RetainableByteBuffer;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.NanoTime;
 import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,12 +83,14 @@ import org.slf4j.LoggerFactory;
  * @see Forward
  * @see Reverse
  */
+@ManagedObject
 public abstract class ProxyHandler extends Handler.Abstract
 {
     private static final Logger LOG = LoggerFactory.getLogger(ProxyHandler.class);
     private static final String CLIENT_TO_PROXY_REQUEST_ATTRIBUTE = ProxyHandler.class.getName() + ".clientToProxyRequest";
     private static final String PROXY_TO_CLIENT_RESPONSE_ATTRIBUTE = ProxyHandler.class.getName() + ".proxyToClientResponse";
     private static final String PROXY_TO_SERVER_CONTINUE_ATTRIBUTE = ProxyHandler.class.getName() + ".proxyToServerContinue";
+    private static final String PROXY_TO_SERVER_FLIGHT_ATTRIBUTE = ProxyHandler.class.getName() + ".proxyToServerFlight";
     private static final EnumSet<HttpHeader> HOP_HEADERS = EnumSet.of(
         HttpHeader.CONNECTION,
         HttpHeader.KEEP_ALIVE,
@@ -86,10 +102,35 @@ public abstract class ProxyHandler extends Handler.Abstract
         HttpHeader.TRAILER,
         HttpHeader.UPGRADE
     );
+    private static final EnumSet<HttpHeader> UNCOALESCABLE_HEADERS = EnumSet.of(
+        HttpHeader.RANGE,
+        HttpHeader.IF_RANGE,
+        HttpHeader.IF_MATCH,
+        HttpHeader.IF_NONE_MATCH,
+        HttpHeader.IF_MODIFIED_SINCE,
+        HttpHeader.IF_UNMODIFIED_SINCE
+    );
 
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalescedRequests = new LongAdder();
+    private final LongAdder proxyToClientBytesInFlight = new LongAdder();
+    private final LongAdder proxyToClientBytes = new LongAdder();
+    private final LongAdder proxyToClientWrites = new LongAdder();
+    private final LongAdder aggregatedChunks = new LongAdder();
+    private final LongAdder downstreamStallNanos = new LongAdder();
+    private final LongAdder upstreamStallNanos = new LongAdder();
     private HttpClient httpClient;
     private String proxyToServerHost;
     private String viaHost;
+    private boolean coalescing;
+    private int contentAggregationThreshold;
+    private List<String> coalescingHeaders = List.of(
+        HttpHeader.ACCEPT.asString(),
+        HttpHeader.ACCEPT_ENCODING.asString(),
+        HttpHeader.ACCEPT_LANGUAGE.asString(),
+        HttpHeader.AUTHORIZATION.asString(),
+        HttpHeader.COOKIE.asString()
+    );
 
     public HttpClient getHttpClient()
     {
@@ -141,6 +182,143 @@ public abstract class ProxyHandler extends Handler.Abstract
         this.viaHost = viaHost;
     }
 
+    @ManagedAttribute("Whether concurrent requests for the same resource are coalesced")
+    public boolean isCoalescing()
+    {
+        return coalescing;
+    }
+
+    /**
+     * <p>Sets whether concurrent client-to-proxy requests for the same resource
+     * are coalesced into one proxy-to-server request.</p>
+     * <p>When enabled, a client-to-proxy request that has the same
+     * {@link #coalescingKey(Request, HttpURI) key} of a proxy-to-server request
+     * in flight, whose response has not arrived yet, is not sent to the server,
+     * and the response to the request in flight is sent to both clients.
+     * The response content chunks are shared, rather than copied, among the
+     * clients, and more content is read from the server when all the clients
+     * have written the current chunk, so the slowest client sets the pace.</p>
+     * <p>The response events of each client are notified to its own
+     * {@link #newServerToProxyResponseListener(Request, org.eclipse.jetty.client.Request, Response, Callback) listener},
+     * except the content events: the content chunks are written directly to the
+     * clients, so they are not passed to {@link ProxyResponseListener#onContent(org.eclipse.jetty.client.Response, Content.Chunk, Runnable)},
+     * nor {@link #setContentAggregationThreshold(int) aggregated}.</p>
+     * <p>When {@link #sendProxyToServerRequest(Request, org.eclipse.jetty.client.Request, Response, Callback)}
+     * fails, the clients that joined the request are failed; when it is overridden
+     * to not send the request, the clients that joined it are handled again.</p>
+     * <p>This protects the server from bursts of identical requests, for example
+     * when a popular resource expires from a cache in front of the server.</p>
+     *
+     * @param coalescing whether concurrent requests for the same resource are coalesced
+     */
+    public void setCoalescing(boolean coalescing)
+    {
+        this.coalescing = coalescing;
+    }
+
+    /**
+     * @return the names of the request headers whose values are part of the coalescing key
+     */
+    public List<String> getCoalescingHeaders()
+    {
+        return coalescingHeaders;
+    }
+
+    /**
+     * <p>Sets the names of the request headers whose values are part of the
+     * coalescing key, so that only requests with the same values are coalesced.</p>
+     * <p>By default, the headers that select the representation of the resource
+     * ({@code Accept}, {@code Accept-Encoding} and {@code Accept-Language})
+     * and the headers that carry credentials ({@code Authorization} and
+     * {@code Cookie}) are part of the coalescing key.</p>
+     *
+     * @param coalescingHeaders the names of the request headers that are part of the coalescing key
+     */
+    public void setCoalescingHeaders(List<String> coalescingHeaders)
+    {
+        this.coalescingHeaders = List.copyOf(coalescingHeaders);
+    }
+
+    @ManagedAttribute(value = "The number of client-to-proxy requests coalesced with a request in flight", readonly = true)
+    public long getCoalescedRequests()
+    {
+        return coalescedRequests.sum();
+    }
+
+    @ManagedAttribute("The size in bytes below which the response content chunks are aggregated")
+    public int getContentAggregationThreshold()
+    {
+        return contentAggregationThreshold;
+    }
+
+    /**
+     * <p>Sets the size in bytes below which the server-to-proxy response content
+     * chunks are aggregated before being written to the client.</p>
+     * <p>By default the threshold is {@code 0} and the content chunks are passed
+     * through: each chunk received from the server is retained and written to the
+     * client without copying it, and more content is demanded from the server when
+     * the write completes.</p>
+     * <p>When the server sends many small chunks, the per-write cost may dominate,
+     * so a positive threshold copies the chunks smaller than the threshold into a
+     * buffer of that size, which is written when full or when the response completes;
+     * larger chunks are still passed through.
+     * Only responses with a {@code Content-Length} are aggregated, so that the content
+     * of streamed responses, such as server-sent events, is not delayed.</p>
+     *
+     * @param contentAggregationThreshold the size in bytes below which content chunks are aggregated
+     */
+    public void setContentAggregationThreshold(int contentAggregationThreshold)
+    {
+        this.contentAggregationThreshold = contentAggregationThreshold;
+    }
+
+    @ManagedAttribute(value = "The number of bytes being written to the clients", readonly = true)
+    public long getProxyToClientBytesInFlight()
+    {
+        return proxyToClientBytesInFlight.sum();
+    }
+
+    @ManagedAttribute(value = "The number of response content bytes written to the clients", readonly = true)
+    public long getProxyToClientBytes()
+    {
+        return proxyToClientBytes.sum();
+    }
+
+    @ManagedAttribute(value = "The number of response content writes to the clients", readonly = true)
+    public long getProxyToClientWrites()
+    {
+        return proxyToClientWrites.sum();
+    }
+
+    @ManagedAttribute(value = "The number of response content chunks aggregated before being written", readonly = true)
+    public long getAggregatedChunks()
+    {
+        return aggregatedChunks.sum();
+    }
+
+    @ManagedAttribute(value = "The time in ms spent waiting for the clients to accept the response content", readonly = true)
+    public long getDownstreamStallTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(downstreamStallNanos.sum());
+    }
+
+    @ManagedAttribute(value = "The time in ms spent waiting for the servers to provide the response content", readonly = true)
+    public long getUpstreamStallTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(upstreamStallNanos.sum());
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        coalescedRequests.reset();
+        proxyToClientBytes.reset();
+        proxyToClientWrites.reset();
+        aggregatedChunks.reset();
+        downstreamStallNanos.reset();
+        upstreamStallNanos.reset();
+    }
+
     private static String viaHost()
     {
         try
@@ -177,6 +355,15 @@ public abstract class ProxyHandler extends Handler.Abstract
         protocolHandlers.put(new ProxyContinueProtocolHandler());
         protocolHandlers.put(new ProxyProcessingProtocolHandler());
         protocolHandlers.put(new ProxyEarlyHintsProtocolHandler());
+        // The response cache handles the revalidation of its stored responses.
+        HttpResponseCache responseCache = httpClient.getHttpResponseCache();
+        if (responseCache != null)
+        {
+            // A private cache would give the responses of a client to other clients.
+            if (!responseCache.isShared())
+                throw new IllegalStateException("Response cache must be shared: " + responseCache);
+            protocolHandlers.put(responseCache);
+        }
         return httpClient;
     }
 
@@ -229,9 +416,49 @@ public abstract class ProxyHandler extends Handler.Abstract
         if (LOG.isDebugEnabled())
             LOG.debug("{} URI rewrite {} => {}", requestId(clientToProxyRequest), clientToProxyRequest.getHttpURI(), rewritten);
 
+        Flight flight = null;
+        String coalescingKey = isCoalescing() ? coalescingKey(clientToProxyRequest, rewritten) : null;
+        if (coalescingKey != null)
+        {
+            flight = new Flight(coalescingKey);
+            Flight existing = flights.putIfAbsent(coalescingKey, flight);
+            if (existing != null)
+            {
+                flight = null;
+                if (existing.join(clientToProxyRequest, proxyToClientResponse, proxyToClientCallback))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} C2P coalesced with {}", requestId(clientToProxyRequest), existing);
+                    coalescedRequests.increment();
+                    return true;
+                }
+            }
+        }
+
+        try
+        {
+            proxy(clientToProxyRequest, rewritten, flight, proxyToClientResponse, proxyToClientCallback);
+        }
+        catch (Throwable x)
+        {
+            if (flight != null)
+                flight.abandon(x);
+            throw x;
+        }
+        // The request may not have been sent through the flight, for example by an
+        // overridden sendProxyToServerRequest(), so the flight would never complete.
+        if (flight != null)
+            flight.abandon(null);
+        return true;
+    }
+
+    private void proxy(Request clientToProxyRequest, HttpURI rewritten, Flight flight, Response proxyToClientResponse, Callback proxyToClientCallback)
+    {
         var proxyToServerRequest = newProxyToServerRequest(clientToProxyRequest, rewritten);
         proxyToServerRequest.attribute(CLIENT_TO_PROXY_REQUEST_ATTRIBUTE, clientToProxyRequest)
             .attribute(PROXY_TO_CLIENT_RESPONSE_ATTRIBUTE, proxyToClientResponse);
+        if (flight != null)
+            proxyToServerRequest.attribute(PROXY_TO_SERVER_FLIGHT_ATTRIBUTE, flight);
 
         copyRequestHeaders(clientToProxyRequest, proxyToServerRequest);
 
@@ -262,7 +489,6 @@ public abstract class ProxyHandler extends Handler.Abstract
         }
 
         sendProxyToServerRequest(clientToProxyRequest, proxyToServerRequest, proxyToClientResponse, proxyToClientCallback);
-        return true;
     }
 
     /**
@@ -273,6 +499,38 @@ public abstract class ProxyHandler extends Handler.Abstract
      */
     protected abstract HttpURI rewriteHttpURI(Request clientToProxyRequest);
 
+    /**
+     * <p>Returns the key used to coalesce concurrent client-to-proxy requests
+     * for the same resource, when {@link #isCoalescing() coalescing} is enabled.</p>
+     * <p>By default, only {@code GET} and {@code HEAD} requests without content
+     * are coalesced, and the key is made of the method, the proxy-to-server URI
+     * and the values of the {@link #getCoalescingHeaders() coalescing headers}.
+     * Range and conditional requests are not coalesced, since their responses
+     * (for example {@code 206} or {@code 304}) depend on headers that are not
+     * part of the key.</p>
+     *
+     * @param clientToProxyRequest the client-to-proxy request
+     * @param proxyToServerHttpURI the proxy-to-server request URI
+     * @return the coalescing key, or null if the request must not be coalesced
+     */
+    protected String coalescingKey(Request clientToProxyRequest, HttpURI proxyToServerHttpURI)
+    {
+        String method = clientToProxyRequest.getMethod();
+        if (!HttpMethod.GET.is(method) && !HttpMethod.HEAD.is(method))
+            return null;
+        if (hasContent(clientToProxyRequest))
+            return null;
+        HttpFields headers = clientToProxyRequest.getHeaders();
+        if (headers.contains(UNCOALESCABLE_HEADERS))
+            return null;
+        StringBuilder key = new StringBuilder(method).append(' ').append(proxyToServerHttpURI);
+        for (String name : getCoalescingHeaders())
+        {
+            key.append('\n').append(name).append(": ").append(String.join(",", headers.getValuesList(name)));
+        }
+        return key.toString();
+    }
+
     protected org.eclipse.jetty.client.Request newProxyToServerRequest(Request clientToProxyRequest, HttpURI newHttpURI)
     {
         return getHttpClient().newRequest(newHttpURI.toURI())
@@ -423,7 +681,10 @@ public abstract class ProxyHandler extends Handler.Abstract
                 proxyToServerRequest,
                 proxyToServerRequest.getHeaders());
         }
-        proxyToServerRequest.send(newServerToProxyResponseListener(clientToProxyRequest, proxyToServerRequest, proxyToClientResponse, proxyToClientCallback));
+        var serverToProxyResponseListener = newServerToProxyResponseListener(clientToProxyRequest, proxyToServerRequest, proxyToClientResponse, proxyToClientCallback);
+        if (proxyToServerRequest.getAttributes().get(PROXY_TO_SERVER_FLIGHT_ATTRIBUTE) instanceof Flight flight)
+            serverToProxyResponseListener = flight.lead(clientToProxyRequest, proxyToClientResponse, serverToProxyResponseListener);
+        proxyToServerRequest.send(serverToProxyResponseListener);
     }
 
     protected org.eclipse.jetty.client.Response.CompleteListener newServerToProxyResponseListener(Request clientToProxyRequest, org.eclipse.jetty.client.Request proxyToServerRequest, Response proxyToClientResponse, Callback proxyToClientCallback)
@@ -478,6 +739,17 @@ public abstract class ProxyHandler extends Handler.Abstract
         proxyToClientCallback.failed(failure);
     }
 
+    private void writeProxyToClient(Response proxyToClientResponse, boolean last, ByteBuffer content, Callback callback)
+    {
+        proxyToClientResponse.write(last, content, new ProxyToClientWriteCallback(content.remaining(), callback));
+    }
+
+    private void upstreamStalled(long stallNanoTime)
+    {
+        if (stallNanoTime != 0)
+            upstreamStallNanos.add(NanoTime.since(stallNanoTime));
+    }
+
     /**
      * <p>A {@code ProxyHandler} that can be used to implement a forward proxy server.</p>
      * <p>Forward proxies are configured in client applications that use
@@ -608,6 +880,8 @@ public abstract class ProxyHandler extends Handler.Abstract
         private final org.eclipse.jetty.client.Request proxyToServerRequest;
         private final Response proxyToClientResponse;
         private final Callback proxyToClientCallback;
+        private RetainableByteBuffer aggregate;
+        private long demandNanoTime;
 
         public ProxyResponseListener(Request clientToProxyRequest, org.eclipse.jetty.client.Request proxyToServerRequest, Response proxyToClientResponse, Callback proxyToClientCallback)
         {
@@ -655,15 +929,69 @@ public abstract class ProxyHandler extends Handler.Abstract
                     proxyToClientResponse,
                     proxyToClientResponse.getHeaders());
             }
+            int threshold = getContentAggregationThreshold();
+            if (threshold > 0 && serverToProxyResponse.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH) > 0)
+            {
+                aggregate = clientToProxyRequest.getComponents().getByteBufferPool().acquire(threshold, true);
+                BufferUtil.clear(aggregate.getByteBuffer());
+            }
         }
 
         @Override
         public void onContent(org.eclipse.jetty.client.Response serverToProxyResponse, Content.Chunk serverToProxyChunk, Runnable serverToProxyDemander)
         {
+            upstreamStalled(demandNanoTime);
+            demandNanoTime = 0;
             ByteBuffer serverToProxyContent = serverToProxyChunk.getByteBuffer();
             if (LOG.isDebugEnabled())
                 LOG.debug("{} S2P received content {}", requestId(clientToProxyRequest), BufferUtil.toDetailString(serverToProxyContent));
 
+            if (aggregate != null)
+            {
+                ByteBuffer aggregateBuffer = aggregate.getByteBuffer();
+                int length = serverToProxyContent.remaining();
+                if (length < getContentAggregationThreshold())
+                {
+                    if (BufferUtil.space(aggregateBuffer) >= length)
+                    {
+                        aggregatedChunks.increment();
+                        BufferUtil.append(aggregateBuffer, serverToProxyContent);
+                        if (BufferUtil.space(aggregateBuffer) == 0)
+                            writeAggregate(serverToProxyResponse, () -> demand(serverToProxyDemander));
+                        else
+                            demand(serverToProxyDemander);
+                        return;
+                    }
+                    // Write the aggregated content, then aggregate this chunk.
+                    serverToProxyChunk.retain();
+                    writeAggregate(serverToProxyResponse, () ->
+                    {
+                        aggregatedChunks.increment();
+                        BufferUtil.append(aggregateBuffer, serverToProxyContent);
+                        serverToProxyChunk.release();
+                        demand(serverToProxyDemander);
+                    }, serverToProxyChunk::release);
+                    return;
+                }
+                if (aggregateBuffer.hasRemaining())
+                {
+                    // Write the aggregated content, then pass this chunk through.
+                    serverToProxyChunk.retain();
+                    writeAggregate(serverToProxyResponse, () ->
+                    {
+                        writeChunk(serverToProxyResponse, serverToProxyChunk, serverToProxyDemander);
+                        serverToProxyChunk.release();
+                    }, serverToProxyChunk::release);
+                    return;
+                }
+            }
+
+            writeChunk(serverToProxyResponse, serverToProxyChunk, serverToProxyDemander);
+        }
+
+        private void writeChunk(org.eclipse.jetty.client.Response serverToProxyResponse, Content.Chunk serverToProxyChunk, Runnable serverToProxyDemander)
+        {
+            ByteBuffer serverToProxyContent = serverToProxyChunk.getByteBuffer();
             serverToProxyChunk.retain();
             Callback callback = new Callback()
             {
@@ -673,7 +1001,7 @@ public abstract class ProxyHandler extends Handler.Abstract
                     if (LOG.isDebugEnabled())
                         LOG.debug("{} P2C succeeded to write content {}", requestId(clientToProxyRequest), BufferUtil.toDetailString(serverToProxyContent));
                     serverToProxyChunk.release();
-                    serverToProxyDemander.run();
+                    demand(serverToProxyDemander);
                 }
 
                 @Override
@@ -693,18 +1021,86 @@ public abstract class ProxyHandler extends Handler.Abstract
                 }
             };
 
-            proxyToClientResponse.write(false, serverToProxyContent, callback);
+            writeProxyToClient(proxyToClientResponse, false, serverToProxyContent, callback);
+        }
+
+        private void writeAggregate(org.eclipse.jetty.client.Response serverToProxyResponse, Runnable onWritten)
+        {
+            writeAggregate(serverToProxyResponse, onWritten, () -> {});
+        }
+
+        private void writeAggregate(org.eclipse.jetty.client.Response serverToProxyResponse, Runnable onWritten, Runnable onFailed)
+        {
+            RetainableByteBuffer aggregate = this.aggregate;
+            ByteBuffer aggregateBuffer = aggregate.getByteBuffer();
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} P2C writing aggregated content {}", requestId(clientToProxyRequest), BufferUtil.toDetailString(aggregateBuffer));
+            aggregate.retain();
+            Callback callback = new Callback()
+            {
+                @Override
+                public void succeeded()
+                {
+                    aggregate.release();
+                    // The buffer is reused to aggregate more content.
+                    BufferUtil.clear(aggregateBuffer);
+                    onWritten.run();
+                }
+
+                @Override
+                public void failed(Throwable failure)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} P2C failed to write aggregated content", requestId(clientToProxyRequest), failure);
+                    aggregate.release();
+                    onFailed.run();
+                    // Cannot write towards the client, abort towards the server.
+                    serverToProxyResponse.abort(failure);
+                }
+
+                @Override
+                public InvocationType getInvocationType()
+                {
+                    return InvocationType.NON_BLOCKING;
+                }
+            };
+            writeProxyToClient(proxyToClientResponse, false, aggregateBuffer.slice(), callback);
+        }
+
+        private void demand(Runnable serverToProxyDemander)
+        {
+            demandNanoTime = NanoTime.now();
+            serverToProxyDemander.run();
         }
 
         @Override
         public void onSuccess(org.eclipse.jetty.client.Response serverToProxyResponse)
         {
-            proxyToClientResponse.write(true, BufferUtil.EMPTY_BUFFER, this);
+            upstreamStalled(demandNanoTime);
+            demandNanoTime = 0;
+            RetainableByteBuffer aggregate = this.aggregate;
+            if (aggregate != null && aggregate.hasRemaining())
+            {
+                // Write the aggregated content along with the last write.
+                aggregate.retain();
+                writeProxyToClient(proxyToClientResponse, true, aggregate.getByteBuffer().slice(), Callback.from(aggregate::release, this));
+            }
+            else
+            {
+                writeProxyToClient(proxyToClientResponse, true, BufferUtil.EMPTY_BUFFER, this);
+            }
         }
 
         @Override
         public void onComplete(Result result)
         {
+            RetainableByteBuffer aggregate = this.aggregate;
+            if (aggregate != null)
+            {
+                // Pending writes of the aggregated content retain the buffer.
+                this.aggregate = null;
+                aggregate.release();
+            }
             if (result.isSucceeded())
             {
                 // Wait for the last write to complete.
@@ -733,6 +1129,304 @@ public abstract class ProxyHandler extends Handler.Abstract
         }
     }
 
+    /**
+     * <p>A proxy-to-server request in flight, whose response is sent to
+     * the client of the request and to the clients that joined it.</p>
+     */
+    private class Flight implements org.eclipse.jetty.client.Response.Listener
+    {
+        private final AutoLock lock = new AutoLock();
+        private final List<Downstream> downstreams = new ArrayList<>();
+        private final String key;
+        private boolean led;
+        private boolean closed;
+        private volatile List<Downstream> clients;
+
+        private Flight(String key)
+        {
+            this.key = key;
+        }
+
+        private boolean join(Request clientToProxyRequest, Response proxyToClientResponse, Callback proxyToClientCallback)
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                if (closed)
+                    return false;
+                downstreams.add(new Downstream(clientToProxyRequest, proxyToClientResponse, proxyToClientCallback));
+                return true;
+            }
+        }
+
+        private org.eclipse.jetty.client.Response.Listener lead(Request clientToProxyRequest, Response proxyToClientResponse, org.eclipse.jetty.client.Response.CompleteListener listener)
+        {
+            Downstream downstream = new Downstream(clientToProxyRequest, proxyToClientResponse, null);
+            downstream.listener = toResponseListener(listener);
+            try (AutoLock ignored = lock.lock())
+            {
+                led = true;
+                downstreams.add(0, downstream);
+            }
+            return this;
+        }
+
+        /**
+         * <p>Removes this flight if its request has not been sent through it,
+         * and fails the clients that joined it, or handles them again if
+         * there is no failure.</p>
+         *
+         * @param failure the failure to send the request, or null
+         */
+        private void abandon(Throwable failure)
+        {
+            List<Downstream> joined;
+            try (AutoLock ignored = lock.lock())
+            {
+                if (closed || (failure == null && led))
+                    return;
+                closed = true;
+                flights.remove(key, this);
+                joined = downstreams.stream()
+                    .filter(downstream -> downstream.listener == null)
+                    .toList();
+                downstreams.removeAll(joined);
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Abandoned {} with {} clients", this, joined.size(), failure);
+            for (Downstream downstream : joined)
+            {
+                if (failure != null)
+                {
+                    downstream.proxyToClientCallback.failed(failure);
+                    continue;
+                }
+                try
+                {
+                    handle(downstream.clientToProxyRequest, downstream.proxyToClientResponse, downstream.proxyToClientCallback);
+                }
+                catch (Throwable x)
+                {
+                    downstream.proxyToClientCallback.failed(x);
+                }
+            }
+        }
+
+        /**
+         * <p>Closes this flight to new clients, and creates the response
+         * listeners of the clients that joined it.</p>
+         *
+         * @return the clients of this flight
+         */
+        private List<Downstream> close(org.eclipse.jetty.client.Request proxyToServerRequest)
+        {
+            // The response events are serialized, so no other thread closes this flight.
+            List<Downstream> result = clients;
+            if (result != null)
+                return result;
+            try (AutoLock ignored = lock.lock())
+            {
+                closed = true;
+                flights.remove(key, this);
+                result = List.copyOf(downstreams);
+            }
+            for (Downstream downstream : result)
+            {
+                if (downstream.listener == null)
+                    downstream.listener = toResponseListener(newServerToProxyResponseListener(downstream.clientToProxyRequest, proxyToServerRequest, downstream.proxyToClientResponse, downstream.proxyToClientCallback));
+            }
+            clients = result;
+            return result;
+        }
+
+        private org.eclipse.jetty.client.Response.Listener toResponseListener(org.eclipse.jetty.client.Response.CompleteListener listener)
+        {
+            if (listener instanceof org.eclipse.jetty.client.Response.Listener responseListener)
+                return responseListener;
+            return new org.eclipse.jetty.client.Response.Listener()
+            {
+                @Override
+                public void onComplete(Result result)
+                {
+                    listener.onComplete(result);
+                }
+            };
+        }
+
+        @Override
+        public void onBegin(org.eclipse.jetty.client.Response serverToProxyResponse)
+        {
+            for (Downstream downstream : close(serverToProxyResponse.getRequest()))
+            {
+                downstream.listener.onBegin(serverToProxyResponse);
+            }
+        }
+
+        @Override
+        public void onHeaders(org.eclipse.jetty.client.Response serverToProxyResponse)
+        {
+            for (Downstream downstream : close(serverToProxyResponse.getRequest()))
+            {
+                downstream.listener.onHeaders(serverToProxyResponse);
+            }
+        }
+
+        @Override
+        public void onContent(org.eclipse.jetty.client.Response serverToProxyResponse, Content.Chunk serverToProxyChunk, Runnable serverToProxyDemander)
+        {
+            List<Downstream> active = close(serverToProxyResponse.getRequest()).stream()
+                .filter(downstream -> downstream.failure == null)
+                .toList();
+            ByteBuffer serverToProxyContent = serverToProxyChunk.getByteBuffer();
+            if (LOG.isDebugEnabled())
+                LOG.debug("S2P received content {} for {} clients of {}", BufferUtil.toDetailString(serverToProxyContent), active.size(), this);
+
+            AtomicInteger pending = new AtomicInteger(active.size());
+            for (Downstream downstream : active)
+            {
+                // Each client shares the chunk bytes, but has its own position.
+                serverToProxyChunk.retain();
+                Callback callback = new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        serverToProxyChunk.release();
+                        written(serverToProxyResponse, active, pending, serverToProxyDemander);
+                    }
+
+                    @Override
+                    public void failed(Throwable failure)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("{} P2C failed to write content {}", requestId(downstream.clientToProxyRequest), BufferUtil.toDetailString(serverToProxyContent), failure);
+                        serverToProxyChunk.release();
+                        // Only this client fails, the others continue to receive content.
+                        downstream.failure = failure;
+                        written(serverToProxyResponse, active, pending, serverToProxyDemander);
+                    }
+
+                    @Override
+                    public InvocationType getInvocationType()
+                    {
+                        return InvocationType.NON_BLOCKING;
+                    }
+                };
+                writeProxyToClient(downstream.proxyToClientResponse, false, serverToProxyContent.slice(), callback);
+            }
+        }
+
+        private void written(org.eclipse.jetty.client.Response serverToProxyResponse, List<Downstream> active, AtomicInteger pending, Runnable serverToProxyDemander)
+        {
+            if (pending.decrementAndGet() > 0)
+                return;
+            Throwable failure = null;
+            for (Downstream downstream : active)
+            {
+                failure = downstream.failure;
+                if (failure == null)
+                {
+                    serverToProxyDemander.run();
+                    return;
+                }
+            }
+            // Cannot write towards any client, abort towards the server.
+            serverToProxyResponse.abort(failure);
+        }
+
+        @Override
+        public void onSuccess(org.eclipse.jetty.client.Response serverToProxyResponse)
+        {
+            for (Downstream downstream : close(serverToProxyResponse.getRequest()))
+            {
+                if (downstream.failure == null)
+                    downstream.listener.onSuccess(serverToProxyResponse);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            for (Downstream downstream : close(result.getRequest()))
+            {
+                Throwable failure = downstream.failure;
+                if (failure != null && result.isSucceeded())
+                    downstream.listener.onComplete(new Result(result, failure));
+                else
+                    downstream.listener.onComplete(result);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            try (AutoLock ignored = lock.lock())
+            {
+                return String.format("%s@%x[clients=%d,closed=%b]", getClass().getSimpleName(), hashCode(), downstreams.size(), closed);
+            }
+        }
+    }
+
+    private static class Downstream
+    {
+        private final Request clientToProxyRequest;
+        private final Response proxyToClientResponse;
+        private final Callback proxyToClientCallback;
+        private org.eclipse.jetty.client.Response.Listener listener;
+        private volatile Throwable failure;
+
+        private Downstream(Request clientToProxyRequest, Response proxyToClientResponse, Callback proxyToClientCallback)
+        {
+            this.clientToProxyRequest = clientToProxyRequest;
+            this.proxyToClientResponse = proxyToClientResponse;
+            this.proxyToClientCallback = proxyToClientCallback;
+        }
+    }
+
+    /**
+     * <p>Records the statistics of a write of response content to the client.</p>
+     */
+    private class ProxyToClientWriteCallback implements Callback
+    {
+        private final long beginNanoTime = NanoTime.now();
+        private final int bytes;
+        private final Callback callback;
+
+        private ProxyToClientWriteCallback(int bytes, Callback callback)
+        {
+            this.bytes = bytes;
+            this.callback = callback;
+            proxyToClientBytesInFlight.add(bytes);
+        }
+
+        @Override
+        public void succeeded()
+        {
+            written();
+            proxyToClientBytes.add(bytes);
+            callback.succeeded();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            written();
+            callback.failed(x);
+        }
+
+        private void written()
+        {
+            proxyToClientBytesInFlight.add(-bytes);
+            proxyToClientWrites.increment();
+            downstreamStallNanos.add(NanoTime.since(beginNanoTime));
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return callback.getInvocationType();
+        }
+    }
+
     private class ProxyToClientResponseFailureCallback implements Callback
     {
         private final Request clientToProxyRequest;
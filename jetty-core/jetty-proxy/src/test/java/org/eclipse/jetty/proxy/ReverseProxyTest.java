@@ -13,17 +13,25 @@
 
 package org.eclipse.jetty.proxy;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.CompletableResponseListener;
 import org.eclipse.jetty.client.ContentResponse;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponseCache;
 import org.eclipse.jetty.client.StringRequestContent;
 import org.eclipse.jetty.client.transport.HttpClientConnectionFactory;
 import org.eclipse.jetty.client.transport.HttpClientTransportDynamic;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.http.HttpVersion;
@@ -34,11 +42,15 @@ import org.eclipse.jetty.io.Content;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Blocker;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -415,6 +427,378 @@ public class ReverseProxyTest extends AbstractProxyTest
         assertTrue(responseFailureLatch.await(5, TimeUnit.SECONDS));
     }
 
+    @ParameterizedTest
+    @MethodSource("httpVersions")
+    public void testCoalescing(HttpVersion httpVersion) throws Exception
+    {
+        int clients = 4;
+        String chunk = "A".repeat(16 * 1024);
+        AtomicInteger serverRequests = new AtomicInteger();
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        CountDownLatch proxyLatch = new CountDownLatch(clients);
+        startServer(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback) throws Exception
+            {
+                serverRequests.incrementAndGet();
+                assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+                // Write the content in many chunks.
+                try (Blocker.Callback blocker = Blocker.callback())
+                {
+                    Content.Sink.write(response, false, chunk, blocker);
+                    blocker.block();
+                }
+                Content.Sink.write(response, true, chunk, callback);
+                return true;
+            }
+        });
+
+        ProxyHandler.Reverse proxyHandler = new ProxyHandler.Reverse(clientToProxyRequest ->
+            HttpURI.build(clientToProxyRequest.getHttpURI()).port(serverConnector.getLocalPort()))
+        {
+            @Override
+            protected HttpClient newHttpClient()
+            {
+                return newProxyHttpClient();
+            }
+
+            @Override
+            protected org.eclipse.jetty.client.Request newProxyToServerRequest(Request clientToProxyRequest, HttpURI newHttpURI)
+            {
+                // Use the client to proxy protocol also from the proxy to server.
+                return super.newProxyToServerRequest(clientToProxyRequest, newHttpURI)
+                    .version(httpVersion);
+            }
+
+            @Override
+            public boolean handle(Request clientToProxyRequest, Response proxyToClientResponse, Callback proxyToClientCallback)
+            {
+                boolean handled = super.handle(clientToProxyRequest, proxyToClientResponse, proxyToClientCallback);
+                proxyLatch.countDown();
+                return handled;
+            }
+        };
+        proxyHandler.setCoalescing(true);
+        startProxy(proxyHandler);
+
+        startClient();
+
+        List<CompletableFuture<ContentResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; ++i)
+        {
+            futures.add(new CompletableResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort())
+                .version(httpVersion)
+                .path("/resource")
+                .timeout(5, TimeUnit.SECONDS), 2 * chunk.length()).send());
+        }
+
+        // The server has not responded yet, so all the requests are coalesced.
+        assertTrue(proxyLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(clients - 1, proxyHandler.getCoalescedRequests());
+        serverLatch.countDown();
+
+        for (CompletableFuture<ContentResponse> future : futures)
+        {
+            ContentResponse response = future.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals(chunk + chunk, response.getContentAsString());
+        }
+        assertEquals(1, serverRequests.get());
+
+        // Requests with different coalescing headers are not coalesced.
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .version(httpVersion)
+            .path("/resource")
+            .headers(headers -> headers.put(HttpHeader.ACCEPT_LANGUAGE, "it"))
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(2, serverRequests.get());
+        assertEquals(clients - 1, proxyHandler.getCoalescedRequests());
+    }
+
+    @ParameterizedTest
+    @MethodSource("httpVersions")
+    public void testCoalescingSkipsRangeAndConditionalRequests(HttpVersion httpVersion) throws Exception
+    {
+        List<HttpField> fields = List.of(
+            new HttpField(HttpHeader.RANGE, "bytes=0-1"),
+            new HttpField(HttpHeader.IF_RANGE, "\"v1\""),
+            new HttpField(HttpHeader.IF_MATCH, "\"v1\""),
+            new HttpField(HttpHeader.IF_NONE_MATCH, "\"v1\""),
+            new HttpField(HttpHeader.IF_MODIFIED_SINCE, "Thu, 01 Jan 1970 00:00:00 GMT"),
+            new HttpField(HttpHeader.IF_UNMODIFIED_SINCE, "Thu, 01 Jan 1970 00:00:00 GMT")
+        );
+        AtomicInteger serverRequests = new AtomicInteger();
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        startServer(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback) throws Exception
+            {
+                serverRequests.incrementAndGet();
+                assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+                Content.Sink.write(response, true, "OK", callback);
+                return true;
+            }
+        });
+
+        ProxyHandler.Reverse proxyHandler = new ProxyHandler.Reverse(clientToProxyRequest ->
+            HttpURI.build(clientToProxyRequest.getHttpURI()).port(serverConnector.getLocalPort()))
+        {
+            @Override
+            protected HttpClient newHttpClient()
+            {
+                return newProxyHttpClient();
+            }
+
+            @Override
+            protected org.eclipse.jetty.client.Request newProxyToServerRequest(Request clientToProxyRequest, HttpURI newHttpURI)
+            {
+                return super.newProxyToServerRequest(clientToProxyRequest, newHttpURI)
+                    .version(httpVersion);
+            }
+        };
+        proxyHandler.setCoalescing(true);
+        startProxy(proxyHandler);
+
+        startClient();
+
+        // A plain request is in flight, and each range or conditional
+        // request for the same resource must reach the server.
+        List<CompletableFuture<ContentResponse>> futures = new ArrayList<>();
+        futures.add(new CompletableResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort())
+            .version(httpVersion)
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)).send());
+        await().atMost(5, TimeUnit.SECONDS).until(serverRequests::get, is(1));
+        for (HttpField field : fields)
+        {
+            futures.add(new CompletableResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort())
+                .version(httpVersion)
+                .path("/resource")
+                .headers(headers -> headers.put(field))
+                .timeout(5, TimeUnit.SECONDS)).send());
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(serverRequests::get, is(1 + fields.size()));
+        assertEquals(0, proxyHandler.getCoalescedRequests());
+        serverLatch.countDown();
+
+        for (CompletableFuture<ContentResponse> future : futures)
+        {
+            ContentResponse response = future.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("httpVersions")
+    public void testCoalescingFailureToSendFailsJoinedRequests(HttpVersion httpVersion) throws Exception
+    {
+        startServer(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback)
+            {
+                Content.Sink.write(response, true, "server", callback);
+                return true;
+            }
+        });
+
+        AtomicBoolean fail = new AtomicBoolean(true);
+        ProxyHandler.Reverse proxyHandler = new ProxyHandler.Reverse(clientToProxyRequest ->
+            HttpURI.build(clientToProxyRequest.getHttpURI()).port(serverConnector.getLocalPort()))
+        {
+            @Override
+            protected HttpClient newHttpClient()
+            {
+                return newProxyHttpClient();
+            }
+
+            @Override
+            protected void addProxyHeaders(Request clientToProxyRequest, org.eclipse.jetty.client.Request proxyToServerRequest)
+            {
+                super.addProxyHeaders(clientToProxyRequest, proxyToServerRequest);
+                if (fail.compareAndSet(true, false))
+                {
+                    // Fail after another request joined.
+                    await().atMost(5, TimeUnit.SECONDS).until(this::getCoalescedRequests, is(1L));
+                    throw new IllegalStateException("explicitly_thrown_by_test");
+                }
+            }
+        };
+        proxyHandler.setCoalescing(true);
+        startProxy(proxyHandler);
+
+        startClient();
+
+        List<CompletableFuture<ContentResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; ++i)
+        {
+            futures.add(new CompletableResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort())
+                .version(httpVersion)
+                .path("/resource")
+                .timeout(5, TimeUnit.SECONDS)).send());
+        }
+        for (CompletableFuture<ContentResponse> future : futures)
+        {
+            // The requests fail, either with an error response or with a closed connection.
+            ContentResponse response = future.exceptionally(x -> null).get(5, TimeUnit.SECONDS);
+            if (response != null)
+                assertEquals(HttpStatus.INTERNAL_SERVER_ERROR_500, response.getStatus());
+        }
+
+        // The failed request must not be joined by later requests.
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .version(httpVersion)
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("server", response.getContentAsString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("httpVersions")
+    public void testCoalescingWithoutSendingHandlesJoinedRequests(HttpVersion httpVersion) throws Exception
+    {
+        startServer(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback)
+            {
+                Content.Sink.write(response, true, "server", callback);
+                return true;
+            }
+        });
+
+        AtomicBoolean local = new AtomicBoolean(true);
+        ProxyHandler.Reverse proxyHandler = new ProxyHandler.Reverse(clientToProxyRequest ->
+            HttpURI.build(clientToProxyRequest.getHttpURI()).port(serverConnector.getLocalPort()))
+        {
+            @Override
+            protected HttpClient newHttpClient()
+            {
+                return newProxyHttpClient();
+            }
+
+            @Override
+            protected void sendProxyToServerRequest(Request clientToProxyRequest, org.eclipse.jetty.client.Request proxyToServerRequest, Response proxyToClientResponse, Callback proxyToClientCallback)
+            {
+                if (local.compareAndSet(true, false))
+                {
+                    // Respond without sending, after another request joined.
+                    await().atMost(5, TimeUnit.SECONDS).until(this::getCoalescedRequests, is(1L));
+                    Content.Sink.write(proxyToClientResponse, true, "proxy", proxyToClientCallback);
+                    return;
+                }
+                super.sendProxyToServerRequest(clientToProxyRequest, proxyToServerRequest, proxyToClientResponse, proxyToClientCallback);
+            }
+        };
+        proxyHandler.setCoalescing(true);
+        startProxy(proxyHandler);
+
+        startClient();
+
+        CompletableFuture<ContentResponse> future1 = new CompletableResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort())
+            .version(httpVersion)
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)).send();
+        CompletableFuture<ContentResponse> future2 = new CompletableResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort())
+            .version(httpVersion)
+            .path("/resource")
+            .timeout(5, TimeUnit.SECONDS)).send();
+
+        ContentResponse response1 = future1.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK_200, response1.getStatus());
+        ContentResponse response2 = future2.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK_200, response2.getStatus());
+        // The joined request is handled again and sent to the server.
+        assertEquals(Set.of("proxy", "server"), Set.of(response1.getContentAsString(), response2.getContentAsString()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("httpVersions")
+    public void testSmallContentChunksAreAggregated(HttpVersion httpVersion) throws Exception
+    {
+        int chunks = 64;
+        String chunk = "0123456789ABCDEF";
+        startServer(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback) throws Exception
+            {
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, chunks * chunk.length());
+                // Write the content in many small chunks.
+                for (int i = 0; i < chunks - 1; ++i)
+                {
+                    try (Blocker.Callback blocker = Blocker.callback())
+                    {
+                        Content.Sink.write(response, false, chunk, blocker);
+                        blocker.block();
+                    }
+                }
+                Content.Sink.write(response, true, chunk, callback);
+                return true;
+            }
+        });
+
+        ProxyHandler.Reverse proxyHandler = new ProxyHandler.Reverse(clientToProxyRequest ->
+            HttpURI.build(clientToProxyRequest.getHttpURI()).port(serverConnector.getLocalPort()))
+        {
+            @Override
+            protected HttpClient newHttpClient()
+            {
+                return newProxyHttpClient();
+            }
+
+            @Override
+            protected org.eclipse.jetty.client.Request newProxyToServerRequest(Request clientToProxyRequest, HttpURI newHttpURI)
+            {
+                // Use the client to proxy protocol also from the proxy to server.
+                return super.newProxyToServerRequest(clientToProxyRequest, newHttpURI)
+                    .version(httpVersion);
+            }
+        };
+        proxyHandler.setContentAggregationThreshold(4096);
+        startProxy(proxyHandler);
+
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+            .version(httpVersion)
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(chunk.repeat(chunks), response.getContentAsString());
+        assertTrue(proxyHandler.getAggregatedChunks() > 0);
+        // The client may receive the last write before its callback is completed.
+        await().atMost(5, TimeUnit.SECONDS).until(proxyHandler::getProxyToClientBytes, is((long)chunks * chunk.length()));
+        // The small chunks are written with fewer writes.
+        assertTrue(proxyHandler.getProxyToClientWrites() < chunks);
+        assertEquals(0, proxyHandler.getProxyToClientBytesInFlight());
+    }
+
+    @Test
+    public void testPrivateResponseCacheIsRejected()
+    {
+        ProxyHandler.Reverse proxyHandler = new ProxyHandler.Reverse(clientToProxyRequest -> clientToProxyRequest.getHttpURI())
+        {
+            @Override
+            protected HttpClient newHttpClient()
+            {
+                HttpClient httpClient = newProxyHttpClient();
+                httpClient.setHttpResponseCache(new HttpResponseCache());
+                return httpClient;
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> startProxy(proxyHandler));
+    }
+
     private static HttpClient newProxyHttpClient()
     {
         ClientConnector proxyClientConnector = new ClientConnector();
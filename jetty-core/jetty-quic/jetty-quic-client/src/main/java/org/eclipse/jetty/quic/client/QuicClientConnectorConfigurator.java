@@ -84,6 +84,7 @@ public class QuicClientConnectorConfigurator extends ClientConnector.Configurato
         quicConfig.setOutputBufferSize(initQuicConfig.getOutputBufferSize());
         quicConfig.setUseInputDirectByteBuffers(initQuicConfig.isUseInputDirectByteBuffers());
         quicConfig.setUseOutputDirectByteBuffers(initQuicConfig.isUseOutputDirectByteBuffers());
+        quicConfig.setMaxDatagramsPerFlush(initQuicConfig.getMaxDatagramsPerFlush());
         quicConfig.setProtocols(initQuicConfig.getProtocols());
         quicConfig.setDisableActiveMigration(initQuicConfig.isDisableActiveMigration());
         quicConfig.setMaxBidirectionalRemoteStreams(initQuicConfig.getMaxBidirectionalRemoteStreams());
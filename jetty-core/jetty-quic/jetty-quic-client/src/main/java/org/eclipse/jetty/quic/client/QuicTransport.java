@@ -59,6 +59,7 @@ public class QuicTransport extends Transport.Wrapper
         connection.setOutputBufferSize(quicConfiguration.getOutputBufferSize());
         connection.setUseInputDirectByteBuffers(quicConfiguration.isUseInputDirectByteBuffers());
         connection.setUseOutputDirectByteBuffers(quicConfiguration.isUseOutputDirectByteBuffers());
+        connection.setMaxDatagramsPerFlush(quicConfiguration.getMaxDatagramsPerFlush());
         quicConfiguration.getEventListeners().forEach(connection::addEventListener);
         return connection;
     }
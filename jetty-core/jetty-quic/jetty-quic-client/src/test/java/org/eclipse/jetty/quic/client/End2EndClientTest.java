@@ -14,6 +14,7 @@
 package org.eclipse.jetty.quic.client;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +30,7 @@ import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.ClientConnector;
 import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.quic.common.QuicConnection;
 import org.eclipse.jetty.quic.server.QuicServerConnector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -48,6 +50,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.core.Is.is;
 
 @ExtendWith(WorkDirExtension.class)
@@ -65,6 +69,7 @@ public class End2EndClientTest
           </body>
         </html>
         """;
+    private final int largeContentLength = 64 * 1024;
 
     @BeforeEach
     public void setUp() throws Exception
@@ -93,7 +98,10 @@ public class End2EndClientTest
             @Override
             public boolean handle(Request request, Response response, Callback callback)
             {
-                Content.Sink.write(response, true, responseContent, callback);
+                if ("/large".equals(Request.getPathInContext(request)))
+                    response.write(true, ByteBuffer.allocate(largeContentLength), callback);
+                else
+                    Content.Sink.write(response, true, responseContent, callback);
                 return true;
             }
         });
@@ -142,6 +150,23 @@ public class End2EndClientTest
         assertThat(contentAsString, is(responseContent));
     }
 
+    @Test
+    public void testManyDatagramsPerFlush() throws Exception
+    {
+        ContentResponse response = client.newRequest("https://localhost:" + connector.getLocalPort() + "/large")
+            .version(HttpVersion.HTTP_2)
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.getContent().length, is(largeContentLength));
+
+        // The large response is sent in bursts of datagrams, each flushed at once.
+        QuicConnection serverConnection = connector.getContainedBeans(QuicConnection.class).iterator().next();
+        assertThat(serverConnection.getWrittenDatagrams(), greaterThan(serverConnection.getFlushes()));
+        assertThat(serverConnection.getDatagramsPerFlush(), greaterThan(1D));
+        assertThat(serverConnection.getDatagramsPerFlush(), lessThanOrEqualTo((double)connector.getMaxDatagramsPerFlush()));
+    }
+
     @Test
     public void testManyHTTP1() throws Exception
     {
@@ -34,6 +34,7 @@ public class QuicConfiguration extends ContainerLifeCycle
     private int outputBufferSize = 2048;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
+    private int maxDatagramsPerFlush = 8;
     private List<String> protocols = List.of();
     private boolean disableActiveMigration;
     private int maxBidirectionalRemoteStreams;
@@ -84,6 +85,28 @@ public class QuicConfiguration extends ContainerLifeCycle
         this.useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    /**
+     * @return the max number of datagrams that a QUIC session drains and flushes at once
+     */
+    public int getMaxDatagramsPerFlush()
+    {
+        return maxDatagramsPerFlush;
+    }
+
+    /**
+     * <p>Sets the max number of datagrams that a QUIC session drains from the QUIC implementation
+     * and flushes at once, so that bursts of packets are written with a single endpoint write,
+     * rather than a write and a completion per packet.</p>
+     * <p>Each datagram is still sent with its own system call, as datagram channels do not
+     * send many datagrams with one system call.</p>
+     *
+     * @param maxDatagramsPerFlush the max number of datagrams per flush
+     */
+    public void setMaxDatagramsPerFlush(int maxDatagramsPerFlush)
+    {
+        this.maxDatagramsPerFlush = maxDatagramsPerFlush;
+    }
+
     public List<String> getProtocols()
     {
         return protocols;
@@ -28,6 +28,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -39,6 +40,9 @@ import org.eclipse.jetty.quic.quiche.QuicheConnectionId;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.thread.ExecutionStrategy;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -53,6 +57,7 @@ import org.slf4j.LoggerFactory;
  * <p>On the receive side, one QuicConnection <em>fans-out</em> to multiple {@link QuicSession}s.</p>
  * <p>On the send side, many {@link QuicSession}s <em>fan-in</em> to one QuicConnection.</p>
  */
+@ManagedObject
 public abstract class QuicConnection extends AbstractConnection
 {
     private static final Logger LOG = LoggerFactory.getLogger(QuicConnection.class);
@@ -65,9 +70,14 @@ public abstract class QuicConnection extends AbstractConnection
     private final AdaptiveExecutionStrategy strategy;
     private final Flusher flusher = new Flusher();
     private final Callback fillableCallback = new FillableCallback();
+    private final LongAdder receives = new LongAdder();
+    private final LongAdder receivedDatagrams = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder writtenDatagrams = new LongAdder();
     private int outputBufferSize = 2048;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
+    private int maxDatagramsPerFlush = 8;
 
     protected QuicConnection(Executor executor, Scheduler scheduler, ByteBufferPool bufferPool, EndPoint endPoint)
     {
@@ -117,6 +127,56 @@ public abstract class QuicConnection extends AbstractConnection
         this.useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    public int getMaxDatagramsPerFlush()
+    {
+        return maxDatagramsPerFlush;
+    }
+
+    public void setMaxDatagramsPerFlush(int maxDatagramsPerFlush)
+    {
+        this.maxDatagramsPerFlush = maxDatagramsPerFlush;
+    }
+
+    @ManagedAttribute(value = "The number of receive calls, including those that found no datagram", readonly = true)
+    public long getReceives()
+    {
+        return receives.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of datagrams received", readonly = true)
+    public long getReceivedDatagrams()
+    {
+        return receivedDatagrams.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of flushes to the endpoint, each of one or more datagrams sent with one system call per datagram", readonly = true)
+    public long getFlushes()
+    {
+        return flushes.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of datagrams written", readonly = true)
+    public long getWrittenDatagrams()
+    {
+        return writtenDatagrams.longValue();
+    }
+
+    @ManagedAttribute(value = "The average number of datagrams per flush to the endpoint", readonly = true)
+    public double getDatagramsPerFlush()
+    {
+        long flushes = getFlushes();
+        return flushes == 0 ? 0 : (double)getWrittenDatagrams() / flushes;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        receives.reset();
+        receivedDatagrams.reset();
+        flushes.reset();
+        writtenDatagrams.reset();
+    }
+
     public Collection<QuicSession> getQuicSessions()
     {
         return List.copyOf(sessions.values());
@@ -227,6 +287,7 @@ public abstract class QuicConnection extends AbstractConnection
             {
                 BufferUtil.clear(cipherBuffer);
                 SocketAddress remoteAddress = getEndPoint().receive(cipherBuffer);
+                receives.increment();
                 int fill = remoteAddress == EndPoint.EOF ? -1 : cipherBuffer.remaining();
                 if (LOG.isDebugEnabled())
                     LOG.debug("filled cipher buffer with {} byte(s)", fill);
@@ -243,6 +304,7 @@ public abstract class QuicConnection extends AbstractConnection
                     return null;
                 }
 
+                receivedDatagrams.increment();
                 if (LOG.isDebugEnabled())
                     LOG.debug("peer IP address: {}, ciphertext packet size: {}", remoteAddress, cipherBuffer.remaining());
 
@@ -360,6 +422,9 @@ public abstract class QuicConnection extends AbstractConnection
             if (entry == null)
                 return Action.IDLE;
 
+            // Each buffer is sent as a separate datagram, with its own system call.
+            flushes.increment();
+            writtenDatagrams.add(entry.buffers.length);
             getEndPoint().write(this, entry.address, entry.buffers);
             return Action.SCHEDULED;
         }
@@ -21,6 +21,7 @@ import java.nio.channels.ClosedChannelException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EventListener;
@@ -474,8 +475,8 @@ public abstract class QuicSession extends ContainerLifeCycle
 
     private class Flusher extends IteratingCallback
     {
+        private final List<RetainableByteBuffer> cipherBuffers = new ArrayList<>();
         private final CyclicTimeout timeout;
-        private RetainableByteBuffer cipherBuffer;
 
         public Flusher(Scheduler scheduler)
         {
@@ -498,12 +499,24 @@ public abstract class QuicSession extends ContainerLifeCycle
         @Override
         protected Action process() throws IOException
         {
-            cipherBuffer = byteBufferPool.acquire(connection.getOutputBufferSize(), connection.isUseOutputDirectByteBuffers());
-            ByteBuffer cipherByteBuffer = cipherBuffer.getByteBuffer();
-            int pos = BufferUtil.flipToFill(cipherByteBuffer);
-            int drained = quicheConnection.drainCipherBytes(cipherByteBuffer);
-            if (LOG.isDebugEnabled())
-                LOG.debug("drained {} byte(s) of cipher bytes from {}", drained, QuicSession.this);
+            // Drain a burst of datagrams, so that they are flushed with one endpoint write.
+            int maxDatagrams = Math.max(1, connection.getMaxDatagramsPerFlush());
+            while (cipherBuffers.size() < maxDatagrams)
+            {
+                RetainableByteBuffer cipherBuffer = byteBufferPool.acquire(connection.getOutputBufferSize(), connection.isUseOutputDirectByteBuffers());
+                cipherBuffers.add(cipherBuffer);
+                ByteBuffer cipherByteBuffer = cipherBuffer.getByteBuffer();
+                int pos = BufferUtil.flipToFill(cipherByteBuffer);
+                int drained = quicheConnection.drainCipherBytes(cipherByteBuffer);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("drained {} byte(s) of cipher bytes from {}", drained, QuicSession.this);
+                if (drained == 0)
+                {
+                    cipherBuffers.remove(cipherBuffers.size() - 1).release();
+                    break;
+                }
+                BufferUtil.flipToFlush(cipherByteBuffer, pos);
+            }
             long nextTimeoutInMs = quicheConnection.nextTimeout();
             if (LOG.isDebugEnabled())
                 LOG.debug("next quiche timeout: {} ms on {}", nextTimeoutInMs, QuicSession.this);
@@ -511,20 +524,22 @@ public abstract class QuicSession extends ContainerLifeCycle
                 timeout.cancel();
             else
                 timeout.schedule(nextTimeoutInMs, TimeUnit.MILLISECONDS);
-            if (drained == 0)
+            if (cipherBuffers.isEmpty())
             {
                 boolean connectionClosed = quicheConnection.isConnectionClosed();
                 Action action = connectionClosed ? Action.SUCCEEDED : Action.IDLE;
                 if (LOG.isDebugEnabled())
                     LOG.debug("connection draining={} closed={}, action={} on {}", quicheConnection.isDraining(), connectionClosed, action, QuicSession.this);
-                if (action == Action.IDLE)
-                    cipherBuffer.release();
                 return action;
             }
-            BufferUtil.flipToFlush(cipherByteBuffer, pos);
+            ByteBuffer[] cipherByteBuffers = new ByteBuffer[cipherBuffers.size()];
+            for (int i = 0; i < cipherByteBuffers.length; ++i)
+            {
+                cipherByteBuffers[i] = cipherBuffers.get(i).getByteBuffer();
+            }
             if (LOG.isDebugEnabled())
-                LOG.debug("writing cipher bytes for {} on {}", remoteAddress, QuicSession.this);
-            connection.write(this, remoteAddress, cipherByteBuffer);
+                LOG.debug("writing {} cipher datagram(s) for {} on {}", cipherByteBuffers.length, remoteAddress, QuicSession.this);
+            connection.write(this, remoteAddress, cipherByteBuffers);
             return Action.SCHEDULED;
         }
 
@@ -533,7 +548,7 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("written cipher bytes on {}", QuicSession.this);
-            cipherBuffer.release();
+            releaseCipherBuffers();
         }
 
         @Override
@@ -558,9 +573,15 @@ public abstract class QuicSession extends ContainerLifeCycle
             finish(failure);
         }
 
+        private void releaseCipherBuffers()
+        {
+            cipherBuffers.forEach(RetainableByteBuffer::release);
+            cipherBuffers.clear();
+        }
+
         private void finish(Throwable failure)
         {
-            cipherBuffer.release();
+            releaseCipherBuffers();
             finishOutwardClose(failure);
             timeout.destroy();
         }
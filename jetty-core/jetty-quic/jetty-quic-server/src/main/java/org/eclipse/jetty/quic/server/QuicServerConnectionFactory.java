@@ -69,6 +69,7 @@ public class QuicServerConnectionFactory extends AbstractConnectionFactory
         connection.setOutputBufferSize(quicConfiguration.getOutputBufferSize());
         connection.setUseInputDirectByteBuffers(quicConfiguration.isUseInputDirectByteBuffers());
         connection.setUseOutputDirectByteBuffers(quicConfiguration.isUseOutputDirectByteBuffers());
+        connection.setMaxDatagramsPerFlush(quicConfiguration.getMaxDatagramsPerFlush());
         return connection;
     }
 }
@@ -127,6 +127,16 @@ public class QuicServerConnector extends AbstractNetworkConnector
         getQuicConfiguration().setOutputBufferSize(outputBufferSize);
     }
 
+    public int getMaxDatagramsPerFlush()
+    {
+        return getQuicConfiguration().getMaxDatagramsPerFlush();
+    }
+
+    public void setMaxDatagramsPerFlush(int maxDatagramsPerFlush)
+    {
+        getQuicConfiguration().setMaxDatagramsPerFlush(maxDatagramsPerFlush);
+    }
+
     public boolean isUseInputDirectByteBuffers()
     {
         return getQuicConfiguration().isUseInputDirectByteBuffers();
@@ -302,11 +312,14 @@ public class QuicServerConnector extends AbstractNetworkConnector
         {
             super.endPointOpened(endpoint);
             onEndPointOpened(endpoint);
+            // Expose the datagram statistics of the connection.
+            addBean(endpoint.getConnection());
         }
 
         @Override
         protected void endPointClosed(EndPoint endpoint)
         {
+            removeBean(endpoint.getConnection());
             onEndPointClosed(endpoint);
             super.endPointClosed(endpoint);
         }
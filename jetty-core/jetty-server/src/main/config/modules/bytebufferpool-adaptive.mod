@@ -0,0 +1,47 @@
+# DO NOT EDIT THIS FILE - See: https://jetty.org/docs/
+
+[description]
+Configures the ByteBufferPool used by ServerConnectors.
+The number of pooled ByteBuffers adapts to the observed demand,
+and the idle ByteBuffers retained after bursts of traffic are removed.
+
+[tags]
+bytebufferpool
+
+[provides]
+bytebufferpool
+
+[xml]
+etc/jetty-bytebufferpool-adaptive.xml
+
+[ini-template]
+## Minimum capacity of a single ByteBuffer.
+#jetty.byteBufferPool.minCapacity=0
+
+## Maximum capacity of a single ByteBuffer.
+## Requests for ByteBuffers larger than this value results
+## in the ByteBuffer being allocated but not pooled.
+#jetty.byteBufferPool.maxCapacity=65536
+
+## Bucket capacity factor.
+## ByteBuffers are allocated out of buckets that have
+## a capacity that is multiple of this factor.
+#jetty.byteBufferPool.factor=4096
+
+## Maximum size for each bucket (-1 for unbounded).
+#jetty.byteBufferPool.maxBucketSize=-1
+
+## Maximum heap memory held idle by the pool (0 for heuristic, -1 for unlimited).
+#jetty.byteBufferPool.maxHeapMemory=0
+
+## Maximum direct memory held idle by the pool (0 for heuristic, -1 for unlimited).
+#jetty.byteBufferPool.maxDirectMemory=0
+
+## Interval in milliseconds between the tunings of the pool.
+#jetty.byteBufferPool.tuneInterval=1000
+
+## Fraction of the learned demand retained at each tuning.
+#jetty.byteBufferPool.decay=0.9
+
+## Whether statistics are enabled.
+#jetty.byteBufferPool.statisticsEnabled=false
@@ -68,6 +68,9 @@ etc/jetty.xml
 ## Whether to use direct ByteBuffers for reading or writing
 # jetty.httpConfig.useInputDirectByteBuffers=true
 # jetty.httpConfig.useOutputDirectByteBuffers=true
+
+## Whether to transfer file content directly to the network (e.g. sendfile) when possible
+# jetty.httpConfig.useFileTransfer=false
 # end::documentation-http-config[]
 
 # tag::documentation-server-compliance[]
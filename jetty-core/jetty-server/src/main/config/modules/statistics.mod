@@ -11,3 +11,10 @@ server
 
 [xml]
 etc/jetty-statistics.xml
+
+[ini-template]
+## Whether the request and handle() execution times are recorded in histograms to report their percentiles.
+# jetty.statistics.histogramsEnabled=false
+
+## The maximum number of stripes of each histogram (about 29 KiB each), or 0 for a default based on the number of processors.
+# jetty.statistics.histogramStripes=0
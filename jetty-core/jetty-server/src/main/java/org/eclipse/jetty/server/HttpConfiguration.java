@@ -75,6 +75,7 @@ public class HttpConfiguration implements Dumpable
     private int _maxErrorDispatches = 10;
     private boolean _useInputDirectByteBuffers = true;
     private boolean _useOutputDirectByteBuffers = true;
+    private boolean _useFileTransfer;
     private long _minRequestDataRate;
     private long _minResponseDataRate;
     private HttpCompliance _httpCompliance = HttpCompliance.RFC7230;
@@ -150,6 +151,7 @@ public class HttpConfiguration implements Dumpable
         _maxErrorDispatches = config._maxErrorDispatches;
         _useInputDirectByteBuffers = config._useInputDirectByteBuffers;
         _useOutputDirectByteBuffers = config._useOutputDirectByteBuffers;
+        _useFileTransfer = config._useFileTransfer;
         _minRequestDataRate = config._minRequestDataRate;
         _minResponseDataRate = config._minResponseDataRate;
         _httpCompliance = config._httpCompliance;
@@ -385,6 +387,25 @@ public class HttpConfiguration implements Dumpable
         return _useOutputDirectByteBuffers;
     }
 
+    /**
+     * <p>Set whether file content may be transferred directly from the file to the network,
+     * without copying it through user space buffers (for example, via {@code sendfile(2)}).</p>
+     * <p>File transfers are only performed when the connection and the response support them,
+     * for example plain text HTTP/1.1 responses that are not transformed by a compressing
+     * handler; otherwise the file content is copied through buffers as usual.</p>
+     * @param useFileTransfer whether to transfer file content directly to the network
+     */
+    public void setUseFileTransfer(boolean useFileTransfer)
+    {
+        _useFileTransfer = useFileTransfer;
+    }
+
+    @ManagedAttribute("Whether to transfer file content directly to the network")
+    public boolean isUseFileTransfer()
+    {
+        return _useFileTransfer;
+    }
+
     /**
      * <p>Sets the {@link Customizer}s that are invoked for every
      * request received.</p>
@@ -852,6 +873,7 @@ public class HttpConfiguration implements Dumpable
             "maxErrorDispatches=" + _maxErrorDispatches,
             "useInputDirectByteBuffers=" + _useInputDirectByteBuffers,
             "useOutputDirectByteBuffers=" + _useOutputDirectByteBuffers,
+            "useFileTransfer=" + _useFileTransfer,
             "minRequestDataRate=" + _minRequestDataRate,
             "minResponseDataRate=" + _minResponseDataRate,
             "httpCompliance=" + _httpCompliance,
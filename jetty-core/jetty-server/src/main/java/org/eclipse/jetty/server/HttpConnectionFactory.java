@@ -16,6 +16,7 @@ package org.eclipse.jetty.server;
 import java.util.Objects;
 
 import org.eclipse.jetty.http.ComplianceViolation;
+import org.eclipse.jetty.http.HttpParser;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
@@ -36,6 +37,7 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
     private final HttpConfiguration _config;
     private boolean _useInputDirectByteBuffers;
     private boolean _useOutputDirectByteBuffers;
+    private HttpParser.SharedFieldCache _sharedFieldCache;
 
     public HttpConnectionFactory()
     {
@@ -98,12 +100,37 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
         _useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    /**
+     * @return the max number of learned header fields shared by the connections, or 0 if not shared
+     */
+    public int getSharedHeaderCacheSize()
+    {
+        HttpParser.SharedFieldCache sharedFieldCache = _sharedFieldCache;
+        return sharedFieldCache == null ? 0 : sharedFieldCache.getCapacity();
+    }
+
+    /**
+     * <p>Sets the max number of header fields learned by the connections, because they were
+     * repeated with the same value, that are shared with the other connections of this factory.</p>
+     * <p>New connections can then parse without allocation the header fields that other
+     * connections have learned, such as authorization, user agent or custom fields repeated
+     * by the clients.</p>
+     *
+     * @param sharedHeaderCacheSize the max number of learned header fields shared by the connections, or 0 to not share them
+     * @see HttpConfiguration#setHeaderCacheSize(int)
+     */
+    public void setSharedHeaderCacheSize(int sharedHeaderCacheSize)
+    {
+        _sharedFieldCache = sharedHeaderCacheSize > 0 ? new HttpParser.SharedFieldCache(sharedHeaderCacheSize) : null;
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
         HttpConnection connection = new HttpConnection(_config, connector, endPoint);
         connection.setUseInputDirectByteBuffers(isUseInputDirectByteBuffers());
         connection.setUseOutputDirectByteBuffers(isUseOutputDirectByteBuffers());
+        connection.getParser().setSharedFieldCache(_sharedFieldCache);
         return configure(connection, connector, endPoint);
     }
 }
@@ -14,6 +14,7 @@
 package org.eclipse.jetty.server;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.MetaData;
@@ -82,6 +83,33 @@ public interface HttpStream extends Callback
      */
     void send(MetaData.Request request, MetaData.Response response, boolean last, ByteBuffer content, Callback callback);
 
+    /**
+     * @return whether this stream supports {@link #transferFrom(FileChannel, long, long, Callback)}
+     */
+    default boolean isFileTransferSupported()
+    {
+        return false;
+    }
+
+    /**
+     * <p>Sends the given region of a file as response content, without copying
+     * its bytes through user space buffers.</p>
+     * <p>This method may only be called after the response has been committed
+     * with a known content length, and must be followed by a last
+     * {@link #send(MetaData.Request, MetaData.Response, boolean, ByteBuffer, Callback) send}
+     * to complete the response.</p>
+     *
+     * @param file the file to transfer bytes from
+     * @param position the position within the file of the first byte to transfer
+     * @param length the number of bytes to transfer
+     * @param callback the callback to notify when the transfer is complete
+     * @see #isFileTransferSupported()
+     */
+    default void transferFrom(FileChannel file, long position, long length, Callback callback)
+    {
+        callback.failed(new UnsupportedOperationException());
+    }
+
     /**
      * <p>Pushes the given {@code resource} to the client.</p>
      *
@@ -185,6 +213,18 @@ public interface HttpStream extends Callback
             getWrapped().send(request, response, last, content, callback);
         }
 
+        @Override
+        public boolean isFileTransferSupported()
+        {
+            return getWrapped().isFileTransferSupported();
+        }
+
+        @Override
+        public void transferFrom(FileChannel file, long position, long length, Callback callback)
+        {
+            getWrapped().transferFrom(file, position, length, callback);
+        }
+
         @Override
         public void push(MetaData.Request resource)
         {
@@ -33,6 +33,21 @@ public interface RequestLog
     interface Writer
     {
         void write(String requestEntry) throws IOException;
+
+        /**
+         * <p>Writes the log entry held by the given characters.</p>
+         * <p>The characters may be modified by the caller after this method returns,
+         * so implementations must not retain a reference to them.
+         * The default implementation converts the characters to a {@code String}
+         * and calls {@link #write(String)}.</p>
+         *
+         * @param requestEntry the characters of the log entry
+         * @throws IOException if the log entry cannot be written
+         */
+        default void write(CharSequence requestEntry) throws IOException
+        {
+            write(requestEntry.toString());
+        }
     }
 
     class Collection implements RequestLog
@@ -17,8 +17,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.TimeZone;
 
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.RolloverFileOutputStream;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -182,6 +184,39 @@ public class RequestLogWriter extends AbstractLifeCycle implements RequestLog.Wr
         }
     }
 
+    /**
+     * <p>Writes request log entries that have already been encoded,
+     * each terminated by a line separator.</p>
+     * <p>When writing to a file, the buffers are written with gathering writes.</p>
+     *
+     * @param entries the buffers holding the encoded log entries
+     * @param offset the index of the first buffer to write
+     * @param length the number of buffers to write
+     * @throws IOException if the entries cannot be written
+     */
+    protected void write(ByteBuffer[] entries, int offset, int length) throws IOException
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            if (_writer == null)
+                return;
+            // Preserve the order with entries written as strings.
+            _writer.flush();
+            if (_fileOut instanceof RolloverFileOutputStream rollover)
+            {
+                rollover.write(entries, offset, length);
+            }
+            else
+            {
+                for (int i = offset; i < offset + length; ++i)
+                {
+                    BufferUtil.writeTo(entries[i], _out);
+                }
+                _out.flush();
+            }
+        }
+    }
+
     @Override
     protected void doStart() throws Exception
     {
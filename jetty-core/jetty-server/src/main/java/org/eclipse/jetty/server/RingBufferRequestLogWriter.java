@@ -0,0 +1,389 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An asynchronously writing {@link RequestLogWriter} that neither converts log entries
+ * to {@code String}s, nor allocates queue nodes for them.</p>
+ * <p>Log entries are encoded as UTF-8 by the request threads directly into a ring of
+ * pre-allocated direct buffers, called slots; entries longer than a slot span several
+ * consecutive slots.
+ * A background thread writes batches of slots to the log file with gathering writes,
+ * so that the request threads never block on file I/O, nor on the file being rolled over.</p>
+ * <p>If the ring is full, the log entry is discarded and counted in {@link #getDroppedEntries()}.</p>
+ */
+@ManagedObject("Asynchronous ring buffer request log writer")
+public class RingBufferRequestLogWriter extends RequestLogWriter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferRequestLogWriter.class);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_BATCH_SLOTS = 1024;
+    // Set in the claimed sequence when stopping, so that no more slots can be claimed.
+    private static final long STOPPED = Long.MIN_VALUE;
+
+    private final AtomicLong _claimed = new AtomicLong();
+    private final AtomicLong _consumed = new AtomicLong();
+    private final LongAdder _dropped = new LongAdder();
+    private int _slotSize = 512;
+    private int _slotCount = 8192;
+    private ByteBuffer[] _slots;
+    private AtomicLongArray _published;
+    private transient WriterThread _thread;
+    private volatile boolean _parked;
+    private volatile boolean _warnedFull;
+
+    public RingBufferRequestLogWriter()
+    {
+        this(null);
+    }
+
+    public RingBufferRequestLogWriter(String filename)
+    {
+        super(filename);
+    }
+
+    /**
+     * @return the size in bytes of each slot of the ring
+     */
+    @ManagedAttribute("The size in bytes of each slot of the ring")
+    public int getSlotSize()
+    {
+        return _slotSize;
+    }
+
+    /**
+     * @param slotSize the size in bytes of each slot of the ring
+     */
+    public void setSlotSize(int slotSize)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        if (slotSize <= LINE_SEPARATOR.length)
+            throw new IllegalArgumentException("Invalid slot size " + slotSize);
+        _slotSize = slotSize;
+    }
+
+    /**
+     * @return the number of slots of the ring
+     */
+    @ManagedAttribute("The number of slots of the ring")
+    public int getSlotCount()
+    {
+        return _slotCount;
+    }
+
+    /**
+     * @param slotCount the number of slots of the ring, rounded up to a power of two
+     */
+    public void setSlotCount(int slotCount)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        if (slotCount <= 0)
+            throw new IllegalArgumentException("Invalid slot count " + slotCount);
+        _slotCount = Integer.highestOneBit(slotCount - 1) << 1;
+        if (slotCount == 1)
+            _slotCount = 1;
+    }
+
+    /**
+     * @return the number of log entries discarded because the ring was full
+     */
+    @ManagedAttribute("The number of log entries discarded because the ring was full")
+    public long getDroppedEntries()
+    {
+        return _dropped.sum();
+    }
+
+    /**
+     * @return the number of slots waiting to be written
+     */
+    @ManagedAttribute("The number of slots waiting to be written")
+    public long getPendingSlots()
+    {
+        return Math.max(0, (_claimed.get() & ~STOPPED) - _consumed.get());
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        ByteBuffer ring = ByteBuffer.allocateDirect(_slotSize * _slotCount);
+        _slots = new ByteBuffer[_slotCount];
+        for (int i = 0; i < _slotCount; ++i)
+        {
+            _slots[i] = ring.slice(i * _slotSize, _slotSize);
+        }
+        _published = new AtomicLongArray(_slotCount);
+        _claimed.set(0);
+        _consumed.set(0);
+        super.doStart();
+        _thread = new WriterThread();
+        _thread.start();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        WriterThread thread = _thread;
+        _thread = null;
+        // No more slots can be claimed, and the thread
+        // writes the claimed entries before exiting.
+        while (true)
+        {
+            long claimed = _claimed.get();
+            if (_claimed.compareAndSet(claimed, claimed | STOPPED))
+                break;
+        }
+        // The thread is not created if the start failed.
+        if (thread != null)
+        {
+            thread.stop = true;
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+        super.doStop();
+    }
+
+    @Override
+    public void write(String requestEntry) throws IOException
+    {
+        write((CharSequence)requestEntry);
+    }
+
+    @Override
+    public void write(CharSequence requestEntry) throws IOException
+    {
+        WriterThread thread = _thread;
+        if (thread == null)
+            return;
+
+        int length = utf8Length(requestEntry) + LINE_SEPARATOR.length;
+        int slots = (length + _slotSize - 1) / _slotSize;
+
+        long sequence;
+        while (true)
+        {
+            sequence = _claimed.get();
+            if ((sequence & STOPPED) != 0)
+                return;
+            if (sequence + slots - _consumed.get() > _slotCount)
+            {
+                _dropped.increment();
+                if (!_warnedFull)
+                {
+                    _warnedFull = true;
+                    LOG.warn("Log ring buffer overflow");
+                }
+                return;
+            }
+            if (_claimed.compareAndSet(sequence, sequence + slots))
+                break;
+        }
+
+        slot(sequence).clear();
+        long last = encode(sequence, requestEntry);
+        for (byte b : LINE_SEPARATOR)
+        {
+            last = put(last, b);
+        }
+        publish(sequence, last);
+
+        if (_parked)
+            LockSupport.unpark(thread);
+    }
+
+    private ByteBuffer slot(long sequence)
+    {
+        return _slots[(int)sequence & (_slotCount - 1)];
+    }
+
+    private static int utf8Length(CharSequence chars)
+    {
+        int length = 0;
+        for (int i = 0; i < chars.length(); ++i)
+        {
+            char c = chars.charAt(i);
+            if (c < 0x80)
+            {
+                length += 1;
+            }
+            else if (c < 0x800)
+            {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1)))
+            {
+                length += 4;
+                ++i;
+            }
+            else
+            {
+                // Unpaired surrogates are encoded as '?'.
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * <p>Puts a byte of a log entry into the slots claimed for it.</p>
+     *
+     * @param sequence the sequence of the slot being filled
+     * @param b the byte to put
+     * @return the sequence of the slot being filled, after the byte has been put
+     */
+    private long put(long sequence, byte b)
+    {
+        ByteBuffer buffer = slot(sequence);
+        if (!buffer.hasRemaining())
+        {
+            buffer.flip();
+            buffer = slot(++sequence);
+            buffer.clear();
+        }
+        buffer.put(b);
+        return sequence;
+    }
+
+    private long encode(long sequence, CharSequence chars)
+    {
+        for (int i = 0; i < chars.length(); ++i)
+        {
+            char c = chars.charAt(i);
+            if (c < 0x80)
+            {
+                sequence = put(sequence, (byte)c);
+            }
+            else if (c < 0x800)
+            {
+                sequence = put(sequence, (byte)(0xC0 | (c >> 6)));
+                sequence = put(sequence, (byte)(0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                sequence = put(sequence, (byte)(0xF0 | (codePoint >> 18)));
+                sequence = put(sequence, (byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+                sequence = put(sequence, (byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+                sequence = put(sequence, (byte)(0x80 | (codePoint & 0x3F)));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                sequence = put(sequence, (byte)'?');
+            }
+            else
+            {
+                sequence = put(sequence, (byte)(0xE0 | (c >> 12)));
+                sequence = put(sequence, (byte)(0x80 | ((c >> 6) & 0x3F)));
+                sequence = put(sequence, (byte)(0x80 | (c & 0x3F)));
+            }
+        }
+        return sequence;
+    }
+
+    private void publish(long first, long last)
+    {
+        slot(last).flip();
+        for (long sequence = first; sequence <= last; ++sequence)
+        {
+            _published.set((int)sequence & (_slotCount - 1), sequence + 1);
+        }
+    }
+
+    private class WriterThread extends Thread
+    {
+        private final ByteBuffer[] _batch = new ByteBuffer[Math.min(_slotCount, MAX_BATCH_SLOTS)];
+        private volatile boolean stop;
+
+        private WriterThread()
+        {
+            setName("RingBufferRequestLogWriter@" + Integer.toString(RingBufferRequestLogWriter.this.hashCode(), 16));
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                try
+                {
+                    boolean stopping = stop;
+                    int written = writeBatch();
+                    if (written > 0)
+                        continue;
+                    if (stopping && isDrained())
+                        break;
+
+                    _parked = true;
+                    if (!isPublished(_consumed.get()))
+                        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+                    _parked = false;
+                }
+                catch (Throwable t)
+                {
+                    LOG.warn("Failed to write log", t);
+                }
+            }
+        }
+
+        private boolean isDrained()
+        {
+            // Claimed slots are always published shortly after.
+            return _consumed.get() == (_claimed.get() & ~STOPPED);
+        }
+
+        private boolean isPublished(long sequence)
+        {
+            return _published.get((int)sequence & (_slotCount - 1)) == sequence + 1;
+        }
+
+        private int writeBatch() throws IOException
+        {
+            long consumed = _consumed.get();
+            int count = 0;
+            while (count < _batch.length && isPublished(consumed + count))
+            {
+                _batch[count] = slot(consumed + count);
+                ++count;
+            }
+            if (count == 0)
+                return 0;
+
+            try
+            {
+                RingBufferRequestLogWriter.this.write(_batch, 0, count);
+            }
+            finally
+            {
+                // Release the slots, even if the write failed, so that logging can resume.
+                _consumed.set(consumed + count);
+            }
+            return count;
+        }
+    }
+}
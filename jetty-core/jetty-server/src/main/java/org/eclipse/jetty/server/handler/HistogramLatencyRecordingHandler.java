@@ -0,0 +1,112 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
+
+/**
+ * <p>A {@link LatencyRecordingHandler} that records the request latencies in a {@link HistogramStatistic},
+ * and reports their percentiles.</p>
+ * <p>Subclasses overriding {@link #onRequestComplete(String, long)} must call the super method
+ * for the latency to be recorded.</p>
+ */
+@ManagedObject("Records the latency distribution of requests")
+public class HistogramLatencyRecordingHandler extends LatencyRecordingHandler
+{
+    private final HistogramStatistic _histogram = new HistogramStatistic();
+
+    public HistogramLatencyRecordingHandler()
+    {
+    }
+
+    public HistogramLatencyRecordingHandler(Handler handler)
+    {
+        super(handler);
+    }
+
+    @Override
+    protected void onRequestComplete(String requestId, long durationInNs)
+    {
+        _histogram.record(durationInNs);
+    }
+
+    /**
+     * @return the histogram of the request latencies, in nanoseconds
+     */
+    public HistogramStatistic getHistogram()
+    {
+        return _histogram;
+    }
+
+    @ManagedAttribute("number of recorded requests")
+    public long getCount()
+    {
+        return _histogram.snapshot().getCount();
+    }
+
+    @ManagedAttribute("50th percentile of request latency (in ns)")
+    public long getLatencyP50()
+    {
+        return _histogram.snapshot().getValueAtPercentile(50);
+    }
+
+    @ManagedAttribute("90th percentile of request latency (in ns)")
+    public long getLatencyP90()
+    {
+        return _histogram.snapshot().getValueAtPercentile(90);
+    }
+
+    @ManagedAttribute("99th percentile of request latency (in ns)")
+    public long getLatencyP99()
+    {
+        return _histogram.snapshot().getValueAtPercentile(99);
+    }
+
+    @ManagedAttribute("99.9th percentile of request latency (in ns)")
+    public long getLatencyP999()
+    {
+        return _histogram.snapshot().getValueAtPercentile(99.9);
+    }
+
+    @ManagedAttribute("maximum request latency (in ns)")
+    public long getLatencyMax()
+    {
+        return _histogram.snapshot().getMax();
+    }
+
+    @ManagedOperation(value = "returns the request latency percentiles (in ns) since the previous interval, and starts a new interval", impact = "ACTION")
+    public String snapshotLatencyPercentiles()
+    {
+        return _histogram.snapshotAndReset().toString();
+    }
+
+    @ManagedOperation(value = "resets the statistics", impact = "ACTION")
+    public void reset()
+    {
+        _histogram.reset();
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        dumpObjects(out, indent, Dumpable.named("histogram", _histogram));
+    }
+}
@@ -16,11 +16,16 @@ package org.eclipse.jetty.server.handler;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
@@ -31,14 +36,26 @@ import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.statistic.CounterStatistic;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
 import org.eclipse.jetty.util.statistic.SampleStatistic;
 
+/**
+ * <p>A {@link Handler} that records statistics about the requests executed by the wrapped handler.</p>
+ * <p>Besides counters, when {@link #setHistogramsEnabled(boolean) enabled}, the request execution times
+ * are recorded in {@link HistogramStatistic histograms}, globally, per response status class and per
+ * {@link Connector}, and the handle() execution times globally, so that their percentiles can be reported.
+ * To obtain statistics per context, a {@code StatisticsHandler} may be wrapped by each context.</p>
+ */
 public class StatisticsHandler extends EventsHandler
 {
     private final CounterStatistic _requestStats = new CounterStatistic(); // how many requests are being handled (full lifecycle)
     private final SampleStatistic _requestTimeStats = new SampleStatistic(); // latencies of requests (full lifecycle)
+    private final ConcurrentMap<Connector, HistogramStatistic> _connectorRequestTimeHistograms = new ConcurrentHashMap<>(); // latency distribution per connector
     private final CounterStatistic _handleStats = new CounterStatistic(); // how many requests are in handle()
     private final SampleStatistic _handleTimeStats = new SampleStatistic(); // latencies of requests in handle()
+    private HistogramStatistic _requestTimeHistogram; // latency distribution of requests (full lifecycle)
+    private HistogramStatistic[] _statusRequestTimeHistograms; // latency distribution per status class
+    private HistogramStatistic _handleTimeHistogram; // latency distribution of requests in handle()
     private final LongAdder _failures = new LongAdder();
     private final LongAdder _handlingFailures = new LongAdder();
     private final LongAdder _responses1xx = new LongAdder();
@@ -49,9 +66,12 @@ public class StatisticsHandler extends EventsHandler
     private final LongAdder _bytesRead = new LongAdder();
     private final LongAdder _bytesWritten = new LongAdder();
     private long _startTime = NanoTime.now();
+    private boolean _histogramsEnabled;
+    private int _histogramStripes;
 
     public StatisticsHandler()
     {
+        this(null);
     }
 
     public StatisticsHandler(Handler handler)
@@ -59,13 +79,79 @@ public class StatisticsHandler extends EventsHandler
         super(handler);
     }
 
+    /**
+     * @return whether the execution times are recorded in histograms to report their percentiles
+     */
+    @ManagedAttribute("whether the execution times are recorded in histograms to report their percentiles")
+    public boolean isHistogramsEnabled()
+    {
+        return _histogramsEnabled;
+    }
+
+    /**
+     * <p>Sets whether the execution times are recorded in histograms to report their percentiles.</p>
+     * <p>Each histogram may use up to {@link #getHistogramStripes() stripes} of about 29 KiB,
+     * so histograms are disabled by default. This setting takes effect when this handler is started.</p>
+     *
+     * @param histogramsEnabled whether the execution times are recorded in histograms
+     */
+    public void setHistogramsEnabled(boolean histogramsEnabled)
+    {
+        _histogramsEnabled = histogramsEnabled;
+    }
+
+    /**
+     * @return the maximum number of stripes of each histogram, or 0 for a default based on the number of processors
+     * @see HistogramStatistic#HistogramStatistic(int, int)
+     */
+    @ManagedAttribute("maximum number of stripes of each histogram")
+    public int getHistogramStripes()
+    {
+        return _histogramStripes;
+    }
+
+    /**
+     * <p>Sets the maximum number of stripes of each histogram, trading memory for less contention
+     * between the threads that record execution times.
+     * This setting takes effect when this handler is started.</p>
+     *
+     * @param histogramStripes the maximum number of stripes of each histogram, or 0 for a default based on the number of processors
+     */
+    public void setHistogramStripes(int histogramStripes)
+    {
+        if (histogramStripes < 0)
+            throw new IllegalArgumentException("Invalid histogram stripes " + histogramStripes);
+        _histogramStripes = histogramStripes;
+    }
+
     @Override
     protected void doStart() throws Exception
     {
+        if (isHistogramsEnabled())
+        {
+            _requestTimeHistogram = newHistogram();
+            _statusRequestTimeHistograms = new HistogramStatistic[5];
+            for (int i = 0; i < _statusRequestTimeHistograms.length; ++i)
+            {
+                _statusRequestTimeHistograms[i] = newHistogram();
+            }
+            _handleTimeHistogram = newHistogram();
+        }
+        else
+        {
+            _requestTimeHistogram = null;
+            _statusRequestTimeHistograms = null;
+            _handleTimeHistogram = null;
+        }
         reset();
         super.doStart();
     }
 
+    private HistogramStatistic newHistogram()
+    {
+        return new HistogramStatistic(HistogramStatistic.DEFAULT_PRECISION, getHistogramStripes());
+    }
+
     @Override
     protected void onBeforeHandling(Request request)
     {
@@ -79,7 +165,11 @@ public class StatisticsHandler extends EventsHandler
         if (failure != null)
             _handlingFailures.increment();
         _handleStats.decrement();
-        _handleTimeStats.record(NanoTime.since(request.getHeadersNanoTime()));
+        long handleTime = NanoTime.since(request.getHeadersNanoTime());
+        _handleTimeStats.record(handleTime);
+        HistogramStatistic handleTimeHistogram = _handleTimeHistogram;
+        if (handleTimeHistogram != null)
+            handleTimeHistogram.record(handleTime);
     }
 
     @Override
@@ -102,9 +192,22 @@ public class StatisticsHandler extends EventsHandler
     {
         if (failure != null)
             _failures.increment();
-        _requestTimeStats.record(NanoTime.since(request.getBeginNanoTime()));
+        long requestTime = NanoTime.since(request.getBeginNanoTime());
+        _requestTimeStats.record(requestTime);
+        int statusClass = status / 100;
+        HistogramStatistic requestTimeHistogram = _requestTimeHistogram;
+        if (requestTimeHistogram != null)
+        {
+            requestTimeHistogram.record(requestTime);
+            HistogramStatistic[] statusRequestTimeHistograms = _statusRequestTimeHistograms;
+            if (statusClass >= 1 && statusClass <= statusRequestTimeHistograms.length)
+                statusRequestTimeHistograms[statusClass - 1].record(requestTime);
+            Connector connector = request.getConnectionMetaData().getConnector();
+            if (connector != null)
+                _connectorRequestTimeHistograms.computeIfAbsent(connector, c -> newHistogram()).record(requestTime);
+        }
         _requestStats.decrement();
-        switch (status / 100)
+        switch (statusClass)
         {
             case 1 -> _responses1xx.increment();
             case 2 -> _responses2xx.increment();
@@ -120,8 +223,10 @@ public class StatisticsHandler extends EventsHandler
         dumpObjects(out, indent,
             Dumpable.named("requestStats", _requestStats),
             Dumpable.named("requestTimeStats", _requestTimeStats),
+            Dumpable.named("requestTimeHistogram", _requestTimeHistogram),
             Dumpable.named("handleStats", _handleStats),
             Dumpable.named("handleTimeStats", _handleTimeStats),
+            Dumpable.named("handleTimeHistogram", _handleTimeHistogram),
             Dumpable.named("failures", _failures),
             Dumpable.named("handlingFailures", _handlingFailures),
             Dumpable.named("1xxResponses", _responses1xx),
@@ -140,8 +245,20 @@ public class StatisticsHandler extends EventsHandler
         _startTime = NanoTime.now();
         _requestStats.reset();
         _requestTimeStats.reset();
+        if (_requestTimeHistogram != null)
+            _requestTimeHistogram.reset();
+        if (_statusRequestTimeHistograms != null)
+        {
+            for (HistogramStatistic histogram : _statusRequestTimeHistograms)
+            {
+                histogram.reset();
+            }
+        }
+        _connectorRequestTimeHistograms.clear();
         _handleStats.reset();
         _handleTimeStats.reset();
+        if (_handleTimeHistogram != null)
+            _handleTimeHistogram.reset();
         _failures.reset();
         _handlingFailures.reset();
         _responses1xx.reset();
@@ -205,6 +322,100 @@ public class StatisticsHandler extends EventsHandler
         return _requestTimeStats.getStdDev();
     }
 
+    @ManagedAttribute("50th percentile of request execution time (in ns)")
+    public long getRequestTimeP50()
+    {
+        return percentile(_requestTimeHistogram, 50);
+    }
+
+    @ManagedAttribute("90th percentile of request execution time (in ns)")
+    public long getRequestTimeP90()
+    {
+        return percentile(_requestTimeHistogram, 90);
+    }
+
+    @ManagedAttribute("99th percentile of request execution time (in ns)")
+    public long getRequestTimeP99()
+    {
+        return percentile(_requestTimeHistogram, 99);
+    }
+
+    @ManagedAttribute("99.9th percentile of request execution time (in ns)")
+    public long getRequestTimeP999()
+    {
+        return percentile(_requestTimeHistogram, 99.9);
+    }
+
+    @ManagedAttribute("request execution time percentiles (in ns) per response status class and per connector")
+    public Map<String, String> getRequestTimePercentiles()
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        getRequestTimeSnapshots(false).forEach((key, snapshot) -> result.put(key, snapshot.toString()));
+        return result;
+    }
+
+    @ManagedOperation(value = "returns the request execution time percentiles (in ns) since the previous interval, and starts a new interval", impact = "ACTION")
+    public Map<String, String> snapshotRequestTimePercentiles()
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        getRequestTimeSnapshots(true).forEach((key, snapshot) -> result.put(key, snapshot.toString()));
+        return result;
+    }
+
+    /**
+     * <p>Get snapshots of the request execution time histograms.</p>
+     * <p>The snapshots are keyed by {@code "all"} for all the requests, by status class
+     * (for example {@code "2xx"}), and by {@code "connector:"} followed by the connector name.
+     * The result is empty if the histograms are not {@link #isHistogramsEnabled() enabled}.</p>
+     *
+     * @param reset whether the histograms are reset, so that the next snapshots only
+     * account for the requests completed after these ones
+     * @return the snapshots of the request execution time histograms
+     */
+    public Map<String, HistogramStatistic.Snapshot> getRequestTimeSnapshots(boolean reset)
+    {
+        Map<String, HistogramStatistic.Snapshot> result = new LinkedHashMap<>();
+        HistogramStatistic requestTimeHistogram = _requestTimeHistogram;
+        if (requestTimeHistogram == null)
+            return result;
+        result.put("all", snapshot(requestTimeHistogram, reset));
+        HistogramStatistic[] statusRequestTimeHistograms = _statusRequestTimeHistograms;
+        for (int i = 0; i < statusRequestTimeHistograms.length; ++i)
+        {
+            result.put((i + 1) + "xx", snapshot(statusRequestTimeHistograms[i], reset));
+        }
+        _connectorRequestTimeHistograms.forEach((connector, histogram) ->
+        {
+            String name = connector.getName();
+            result.put("connector:" + (name == null ? connector.toString() : name), snapshot(histogram, reset));
+        });
+        return result;
+    }
+
+    /**
+     * <p>Get a snapshot of the handle() execution time histogram.</p>
+     *
+     * @param reset whether the histogram is reset, so that the next snapshot only
+     * accounts for the requests handled after this one
+     * @return the snapshot of the handle() execution time histogram,
+     * or null if the histograms are not {@link #isHistogramsEnabled() enabled}
+     */
+    public HistogramStatistic.Snapshot getHandleTimeSnapshot(boolean reset)
+    {
+        HistogramStatistic handleTimeHistogram = _handleTimeHistogram;
+        return handleTimeHistogram == null ? null : snapshot(handleTimeHistogram, reset);
+    }
+
+    private static HistogramStatistic.Snapshot snapshot(HistogramStatistic histogram, boolean reset)
+    {
+        return reset ? histogram.snapshotAndReset() : histogram.snapshot();
+    }
+
+    private static long percentile(HistogramStatistic histogram, double percentile)
+    {
+        return histogram == null ? 0 : histogram.snapshot().getValueAtPercentile(percentile);
+    }
+
     @ManagedAttribute("total number of calls to handle()")
     public int getHandleTotal()
     {
@@ -247,6 +458,30 @@ public class StatisticsHandler extends EventsHandler
         return _handleTimeStats.getStdDev();
     }
 
+    @ManagedAttribute("50th percentile of handle() execution time (in ns)")
+    public long getHandleTimeP50()
+    {
+        return percentile(_handleTimeHistogram, 50);
+    }
+
+    @ManagedAttribute("90th percentile of handle() execution time (in ns)")
+    public long getHandleTimeP90()
+    {
+        return percentile(_handleTimeHistogram, 90);
+    }
+
+    @ManagedAttribute("99th percentile of handle() execution time (in ns)")
+    public long getHandleTimeP99()
+    {
+        return percentile(_handleTimeHistogram, 99);
+    }
+
+    @ManagedAttribute("99.9th percentile of handle() execution time (in ns)")
+    public long getHandleTimeP999()
+    {
+        return percentile(_handleTimeHistogram, 99.9);
+    }
+
     @ManagedAttribute("number of failed requests")
     public int getFailures()
     {
@@ -0,0 +1,532 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.compression;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritePendingException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingNestedCallback;
+import org.eclipse.jetty.util.thread.Invocable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link Response} wrapper, and completion {@link Callback}, that compresses
+ * the response content.</p>
+ * <p>This class decides whether the response is compressed when it is committed,
+ * and drives the compression of the content written by the application;
+ * subclasses provide the content-coding and its encoder.</p>
+ */
+public abstract class AbstractCompressingResponseAndCallback extends Response.Wrapper implements Callback, Invocable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractCompressingResponseAndCallback.class);
+
+    private enum State
+    {
+        // first state, indicating that content might be compressed, pending the state of the response
+        MIGHT_COMPRESS,
+        // the response is not being compressed (this is a final state)
+        NOT_COMPRESSING,
+        // The response is being committed (no changes to compress state can be made at this point)
+        COMMITTING,
+        // The response is compressing its body content
+        COMPRESSING,
+        // The last content has is being compressed and the encoder is being flushed
+        FINISHING,
+        // The content has finished compressing and trailers have been sent (this is a final state)
+        FINISHED
+    }
+
+    private final AtomicReference<State> _state = new AtomicReference<>(State.MIGHT_COMPRESS);
+    private final Callback _callback;
+    private final int _bufferSize;
+    private boolean _encoding;
+    private RetainableByteBuffer _buffer;
+    private boolean _last;
+
+    /**
+     * @param request the request
+     * @param response the response to wrap
+     * @param callback the callback to wrap
+     * @param bufferSize the size of the buffers of compressed content
+     */
+    protected AbstractCompressingResponseAndCallback(Request request, Response response, Callback callback, int bufferSize)
+    {
+        super(request, response);
+        _callback = callback;
+        _bufferSize = bufferSize;
+    }
+
+    @Override
+    public void succeeded()
+    {
+        // We need to write nothing here to intercept the committing of the
+        // response and possibly change headers in case write is never called.
+        if (_last)
+            _callback.succeeded();
+        else
+            write(true, null, _callback);
+    }
+
+    @Override
+    public void failed(Throwable x)
+    {
+        _callback.failed(x);
+    }
+
+    @Override
+    public InvocationType getInvocationType()
+    {
+        return _callback.getInvocationType();
+    }
+
+    /**
+     * @param mimeType the MIME type (without charset or other parameters) of the response
+     * @return whether the response may be compressed
+     */
+    protected abstract boolean isMimeTypeCompressible(String mimeType);
+
+    /**
+     * @return the name of the request attribute holding the original conditional etags, if they had a compression suffix
+     */
+    protected abstract String getEtagsAttributeName();
+
+    /**
+     * @param etag the etag of the uncompressed content
+     * @return the etag of the compressed content
+     */
+    protected abstract String etag(String etag);
+
+    /**
+     * <p>Starts the encoding of the response content, typically acquiring an encoder.</p>
+     *
+     * @param contentLength the length of the uncompressed content, or -1 if unknown
+     * @return the {@code Content-Encoding} header of the compressed response,
+     * or null if the response must not be compressed
+     */
+    protected abstract HttpField startEncoding(long contentLength);
+
+    /**
+     * <p>Sets the uncompressed content to encode.</p>
+     *
+     * @param content the uncompressed content
+     */
+    protected abstract void setInput(ByteBuffer content);
+
+    /**
+     * @return whether the content set with {@link #setInput(ByteBuffer)} has been consumed
+     */
+    protected abstract boolean needsInput();
+
+    /**
+     * <p>Indicates that no more content will be set, so that the encoder ends the compressed stream.</p>
+     */
+    protected abstract void finish();
+
+    /**
+     * @return whether the end of the compressed stream has been produced
+     */
+    protected abstract boolean finished();
+
+    /**
+     * <p>Encodes the content into the given buffer.</p>
+     *
+     * @param output the buffer, in fill mode, to write compressed bytes to
+     * @return the number of bytes written
+     */
+    protected abstract int encode(ByteBuffer output);
+
+    /**
+     * <p>Ends the encoding of the response content, typically releasing the encoder.</p>
+     */
+    protected abstract void endEncoding();
+
+    /**
+     * <p>Writes the header of the compressed stream, if any, to the first buffer.</p>
+     *
+     * @param output the buffer, in fill mode, to write to
+     */
+    protected void writeHeader(ByteBuffer output)
+    {
+    }
+
+    /**
+     * @return the size of the trailer of the compressed stream, if any
+     */
+    protected int getTrailerSize()
+    {
+        return 0;
+    }
+
+    /**
+     * <p>Writes the trailer of the compressed stream, if any, after the compressed content.</p>
+     *
+     * @param output the buffer, in fill mode, to write to
+     */
+    protected void writeTrailer(ByteBuffer output)
+    {
+    }
+
+    @Override
+    public void write(boolean last, ByteBuffer content, Callback callback)
+    {
+        _last = last;
+        switch (_state.get())
+        {
+            case MIGHT_COMPRESS -> commit(last, callback, content);
+            case NOT_COMPRESSING -> super.write(last, content, callback);
+            case COMMITTING -> callback.failed(new WritePendingException());
+            case COMPRESSING -> compress(last, callback, content);
+            default ->
+            {
+                if (BufferUtil.isEmpty(content))
+                    callback.succeeded();
+                else
+                    callback.failed(new IllegalStateException("state=" + _state.get()));
+            }
+        }
+    }
+
+    private void compress(boolean last, Callback callback, ByteBuffer content)
+    {
+        if (content != null || last)
+            new CompressingCB(last, callback, content).iterate();
+        else
+            callback.succeeded();
+    }
+
+    protected void commit(boolean last, Callback callback, ByteBuffer content)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("commit(last={}, callback={}, content={})", last, callback, BufferUtil.toDetailString(content));
+
+        Request request = getRequest();
+        HttpFields.Mutable fields = getHeaders();
+
+        // Are we excluding because of status?
+        int sc = getStatus();
+        if (sc > 0 && (sc < 200 || sc == 204 || sc == 205 || sc >= 300))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} exclude by status {}", this, sc);
+            noCompression();
+
+            if (sc == HttpStatus.NOT_MODIFIED_304)
+            {
+                String requestEtags = (String)request.getAttribute(getEtagsAttributeName());
+                String responseEtag = fields.get(HttpHeader.ETAG);
+                if (requestEtags != null && responseEtag != null)
+                {
+                    String responseEtagCompressed = etag(responseEtag);
+                    if (requestEtags.contains(responseEtagCompressed))
+                        fields.put(HttpHeader.ETAG, responseEtagCompressed);
+                }
+            }
+
+            super.write(last, content, callback);
+            return;
+        }
+
+        // Are we excluding because of mime-type?
+        String ct = fields.get(HttpHeader.CONTENT_TYPE);
+        if (ct != null)
+        {
+            String baseType = HttpField.getValueParameters(ct, null);
+            if (!isMimeTypeCompressible(baseType))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} exclude by mimeType {}", this, ct);
+                noCompression();
+                super.write(last, content, callback);
+                return;
+            }
+        }
+
+        // Has the Content-Encoding header already been set?
+        String ce = fields.get(HttpHeader.CONTENT_ENCODING);
+        if (ce != null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} exclude by content-encoding {}", this, ce);
+            noCompression();
+            super.write(last, content, callback);
+            return;
+        }
+
+        // If there is nothing to write, don't compress.
+        if (last && BufferUtil.isEmpty(content))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} exclude by nothing to write", this);
+            noCompression();
+            super.write(true, content, callback);
+            return;
+        }
+
+        // Are we the thread that commits?
+        if (_state.compareAndSet(State.MIGHT_COMPRESS, State.COMMITTING))
+        {
+            long contentLength = fields.getLongField(HttpHeader.CONTENT_LENGTH);
+            if (contentLength < 0 && last)
+                contentLength = BufferUtil.length(content);
+
+            HttpField contentEncoding = startEncoding(contentLength);
+            if (contentEncoding == null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} exclude no encoding", this);
+                _state.set(State.NOT_COMPRESSING);
+                super.write(last, content, callback);
+                return;
+            }
+            _encoding = true;
+            fields.put(contentEncoding);
+
+            // Adjust headers
+            fields.remove(HttpHeader.CONTENT_LENGTH);
+            String etag = fields.get(HttpHeader.ETAG);
+            if (etag != null)
+                fields.put(HttpHeader.ETAG, etag(etag));
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} compressing {}", this, contentEncoding);
+            _state.set(State.COMPRESSING);
+
+            if (BufferUtil.isEmpty(content))
+            {
+                // We are committing, but have no content to compress, so flush empty buffer to write headers.
+                super.write(last, content, callback);
+            }
+            else
+            {
+                compress(last, callback, content);
+            }
+        }
+        else
+        {
+            callback.failed(new WritePendingException());
+        }
+    }
+
+    public void noCompression()
+    {
+        while (true)
+        {
+            switch (_state.get())
+            {
+                case NOT_COMPRESSING:
+                    return;
+
+                case MIGHT_COMPRESS:
+                    if (_state.compareAndSet(State.MIGHT_COMPRESS, State.NOT_COMPRESSING))
+                        return;
+                    break;
+
+                default:
+                    throw new IllegalStateException(_state.get().toString());
+            }
+        }
+    }
+
+    private class CompressingCB extends IteratingNestedCallback
+    {
+        private final ByteBuffer _content;
+        private final boolean _last;
+
+        public CompressingCB(boolean last, Callback callback, ByteBuffer content)
+        {
+            super(callback);
+            _content = content;
+            _last = last;
+
+            if (_content != null)
+                setInput(_content);
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("CompressingCB(last={}, callback={}, content={})", last, callback, BufferUtil.toDetailString(content));
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable x)
+        {
+            cleanup();
+            super.onCompleteFailure(x);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("CompressingCB.process(): _last={}, _buffer={}, _content={}", _last, _buffer, BufferUtil.toDetailString(_content));
+
+            State state = _state.get();
+
+            // Are we finished?
+            if (state == State.FINISHED)
+            {
+                // then the trailer has been generated and written below.
+                // We have finished compressing the entire content, so
+                // cleanup and succeed.
+                cleanup();
+                return Action.SUCCEEDED;
+            }
+
+            // If we have no buffer
+            if (_buffer == null)
+            {
+                _buffer = getRequest().getComponents().getByteBufferPool().acquire(_bufferSize, false);
+                ByteBuffer byteBuffer = _buffer.getByteBuffer();
+                BufferUtil.flipToFill(byteBuffer);
+                writeHeader(byteBuffer);
+            }
+            else
+            {
+                // otherwise clear the buffer as previous writes will always fully consume.
+                BufferUtil.clearToFill(_buffer.getByteBuffer());
+            }
+
+            return switch (state)
+            {
+                case COMPRESSING -> compressing(_buffer.getByteBuffer());
+                case FINISHING -> finishing(_buffer.getByteBuffer());
+                default -> throw new IllegalStateException("Unexpected state [" + _state.get() + "]");
+            };
+        }
+
+        private void cleanup()
+        {
+            if (_encoding)
+            {
+                _encoding = false;
+                _state.set(State.FINISHED);
+                endEncoding();
+            }
+
+            if (_buffer != null)
+            {
+                _buffer.release();
+                _buffer = null;
+            }
+        }
+
+        /**
+         * This method is called directly from {@link #process()} to perform the compressing of
+         * the content this {@link CompressingCB} represents.
+         */
+        private Action compressing(ByteBuffer outputBuffer)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("compressing() outputBuffer={}", BufferUtil.toDetailString(outputBuffer));
+
+            if (!finished() && !needsInput())
+            {
+                int len = encode(outputBuffer);
+                if (len > 0)
+                {
+                    BufferUtil.flipToFlush(outputBuffer, 0);
+                    write(false, outputBuffer);
+                    return Action.SCHEDULED;
+                }
+            }
+
+            if (_last)
+            {
+                _state.set(State.FINISHING);
+                finish();
+                return finishing(outputBuffer);
+            }
+
+            BufferUtil.flipToFlush(outputBuffer, 0);
+            if (outputBuffer.hasRemaining())
+            {
+                write(false, outputBuffer);
+                return Action.SCHEDULED;
+            }
+
+            // The content is fully consumed as input to the encoder, we are done.
+            if (BufferUtil.isEmpty(_content))
+                return Action.SUCCEEDED;
+
+            // No progress made on encoding, but the _content wasn't consumed, we shouldn't be able to reach this.
+            throw new AssertionError("No progress on encoding made for " + this);
+        }
+
+        /**
+         * This method is called by {@link #compressing(ByteBuffer)}, once the last chunk is compressed;
+         * or directly from {@link #process()} if an earlier call to this method was unable to complete.
+         */
+        private Action finishing(ByteBuffer outputBuffer)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("finishing() outputBuffer={}", BufferUtil.toDetailString(outputBuffer));
+
+            if (!finished())
+            {
+                int len = encode(outputBuffer);
+                // try to preserve single write if possible (header + compressed content + trailer)
+                if (finished() && outputBuffer.remaining() >= getTrailerSize())
+                    return writeLast(outputBuffer);
+
+                if (len > 0)
+                {
+                    BufferUtil.flipToFlush(outputBuffer, 0);
+                    write(false, outputBuffer);
+                    return Action.SCHEDULED;
+                }
+
+                // No progress made on encoding, encoder not finished, we shouldn't be able to reach this.
+                throw new AssertionError("No progress on encoding made for " + this);
+            }
+
+            return writeLast(outputBuffer);
+        }
+
+        private Action writeLast(ByteBuffer outputBuffer)
+        {
+            _state.set(State.FINISHED);
+            writeTrailer(outputBuffer);
+            BufferUtil.flipToFlush(outputBuffer, 0);
+            write(true, outputBuffer);
+            return Action.SCHEDULED;
+        }
+
+        private void write(boolean last, ByteBuffer outputBuffer)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("write() last={}, outputBuffer={}", last, BufferUtil.toDetailString(outputBuffer));
+            AbstractCompressingResponseAndCallback.super.write(last, outputBuffer, this);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[content=%s last=%b buffer=%s %s]",
+                super.toString(),
+                BufferUtil.toDetailString(_content),
+                _last,
+                _buffer,
+                _state.get());
+        }
+    }
+}
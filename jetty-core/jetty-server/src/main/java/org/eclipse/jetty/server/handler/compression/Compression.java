@@ -0,0 +1,305 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.compression;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.compression.CompressionPool;
+
+/**
+ * <p>A content-coding that can be used by {@link CompressionHandler} to compress response content.</p>
+ * <p>Implementations are discovered via {@link java.util.ServiceLoader}, so that codecs such as
+ * {@code br} or {@code zstd} can be plugged in without the server depending on them.
+ * Implementations must provide a public no-argument constructor.</p>
+ * <p>Each {@code Compression} pools its {@link Encoder}s, and records statistics about the
+ * content it has compressed.</p>
+ */
+@ManagedObject("A response content-coding")
+public abstract class Compression extends ContainerLifeCycle
+{
+    private final LongAdder _responses = new LongAdder();
+    private final LongAdder _bytesIn = new LongAdder();
+    private final LongAdder _bytesOut = new LongAdder();
+    private final LongAdder _encodingNanos = new LongAdder();
+    private final CompressedContentFormat _format;
+    private int _compressionLevel;
+    private int _poolCapacity = CompressionPool.DEFAULT_CAPACITY;
+    private EncoderPool _encoderPool;
+
+    /**
+     * @param encoding the content-coding name, as used in the {@code Content-Encoding} header
+     * @param extension the file extension of pre-compressed files of this content-coding
+     * @param compressionLevel the default compression level
+     */
+    protected Compression(String encoding, String extension, int compressionLevel)
+    {
+        _format = new CompressedContentFormat(encoding, extension);
+        _compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return the content-coding name, in lower case
+     */
+    @ManagedAttribute("The content-coding name")
+    public String getEncoding()
+    {
+        return _format.getEncoding();
+    }
+
+    /**
+     * @return the {@code Content-Encoding} header to add to compressed responses
+     */
+    public HttpField getContentEncoding()
+    {
+        return _format.getContentEncoding();
+    }
+
+    /**
+     * @param etag an entity tag
+     * @return the entity tag of the compressed representation
+     */
+    public String etag(String etag)
+    {
+        return _format.etag(etag);
+    }
+
+    /**
+     * @param etags a list of entity tags
+     * @return the list of entity tags, with any suffixes for this content-coding removed
+     */
+    public String stripSuffixes(String etags)
+    {
+        return _format.stripSuffixes(etags);
+    }
+
+    /**
+     * @return the compression level, whose meaning is specific to the content-coding
+     */
+    @ManagedAttribute("The compression level")
+    public int getCompressionLevel()
+    {
+        return _compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel the compression level, whose meaning is specific to the content-coding
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return the maximum number of pooled encoders
+     * @see CompressionPool#getCapacity()
+     */
+    @ManagedAttribute("The maximum number of pooled encoders")
+    public int getPoolCapacity()
+    {
+        return _poolCapacity;
+    }
+
+    /**
+     * @param poolCapacity the maximum number of pooled encoders
+     * @see CompressionPool#CompressionPool(int)
+     */
+    public void setPoolCapacity(int poolCapacity)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        _poolCapacity = poolCapacity;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _encoderPool = new EncoderPool(_poolCapacity);
+        addBean(_encoderPool);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        removeBean(_encoderPool);
+        _encoderPool = null;
+    }
+
+    /**
+     * @return a pooled encoder, that must be released after use
+     */
+    public CompressionPool<Encoder>.Entry acquireEncoder()
+    {
+        EncoderPool encoderPool = _encoderPool;
+        if (encoderPool == null)
+            throw new IllegalStateException(getState());
+        return encoderPool.acquire();
+    }
+
+    /**
+     * @return a new encoder configured with the {@link #getCompressionLevel() compression level}
+     */
+    protected abstract Encoder newEncoder();
+
+    void onCompressed(long bytesIn, long bytesOut, long encodingNanos)
+    {
+        _responses.increment();
+        _bytesIn.add(bytesIn);
+        _bytesOut.add(bytesOut);
+        _encodingNanos.add(encodingNanos);
+    }
+
+    @ManagedAttribute("The number of compressed responses")
+    public long getResponses()
+    {
+        return _responses.sum();
+    }
+
+    @ManagedAttribute("The number of bytes before compression")
+    public long getBytesIn()
+    {
+        return _bytesIn.sum();
+    }
+
+    @ManagedAttribute("The number of bytes after compression")
+    public long getBytesOut()
+    {
+        return _bytesOut.sum();
+    }
+
+    /**
+     * @return the ratio of compressed bytes to uncompressed bytes, or 0 if nothing was compressed
+     */
+    @ManagedAttribute("The ratio of compressed bytes to uncompressed bytes")
+    public double getCompressionRatio()
+    {
+        long bytesIn = getBytesIn();
+        return bytesIn == 0 ? 0.0D : (double)getBytesOut() / bytesIn;
+    }
+
+    /**
+     * <p>Returns the time spent in the encoder.</p>
+     * <p>Encoders never block, so this is the CPU time spent compressing.</p>
+     *
+     * @return the time spent compressing, in milliseconds
+     */
+    @ManagedAttribute("The time spent compressing (in ms)")
+    public long getEncodingTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_encodingNanos.sum());
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _responses.reset();
+        _bytesIn.reset();
+        _bytesOut.reset();
+        _encodingNanos.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,%s,level=%d}", getClass().getSimpleName(), hashCode(), getState(), getEncoding(), getCompressionLevel());
+    }
+
+    /**
+     * <p>A stateful, non-blocking compressor of a single response content,
+     * with semantics similar to {@link java.util.zip.Deflater}.</p>
+     */
+    public interface Encoder
+    {
+        /**
+         * <p>Sets the content to compress.</p>
+         * <p>The buffer position is advanced as the content is consumed,
+         * and the buffer must not be modified until {@link #needsInput()} returns true.</p>
+         *
+         * @param input the content to compress
+         */
+        void setInput(ByteBuffer input);
+
+        /**
+         * @return whether the input has been consumed, and more may be set
+         */
+        boolean needsInput();
+
+        /**
+         * <p>Indicates that no more input will be set, so that
+         * subsequent calls to {@link #encode(ByteBuffer, boolean)} end the compressed stream.</p>
+         */
+        void finish();
+
+        /**
+         * @return whether the end of the compressed stream has been produced
+         */
+        boolean finished();
+
+        /**
+         * <p>Compresses the input into the given buffer.</p>
+         *
+         * @param output the buffer, in fill mode, to write compressed bytes to
+         * @param flush whether all the input consumed so far must be flushed to the output
+         * @return the number of bytes written to the output
+         */
+        int encode(ByteBuffer output, boolean flush);
+
+        /**
+         * <p>Resets this encoder so that it can compress another content.</p>
+         */
+        void reset();
+
+        /**
+         * <p>Releases the resources held by this encoder.</p>
+         */
+        void end();
+    }
+
+    private class EncoderPool extends CompressionPool<Encoder>
+    {
+        private EncoderPool(int capacity)
+        {
+            super(capacity);
+        }
+
+        @Override
+        protected Encoder newPooled()
+        {
+            return newEncoder();
+        }
+
+        @Override
+        protected void end(Encoder encoder)
+        {
+            encoder.end();
+        }
+
+        @Override
+        protected void reset(Encoder encoder)
+        {
+            encoder.reset();
+        }
+    }
+}
@@ -0,0 +1,477 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.compression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jetty.http.EtagUtils;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.http.QuotedQualityCSV;
+import org.eclipse.jetty.http.pathmap.PathSpecSet;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.server.handler.gzip.HeaderWrappingRequest;
+import org.eclipse.jetty.util.AsciiLowerCaseSet;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IncludeExclude;
+import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link Handler} that dynamically compresses response content with one of several
+ * {@link Compression content-codings}, negotiated from the request {@code Accept-Encoding}
+ * header according to its quality values.</p>
+ * <p>When several content-codings are equally acceptable to the client, the one added
+ * first to this handler is preferred.
+ * If no content-codings are explicitly {@link #addCompression(Compression) added},
+ * those discovered via {@link ServiceLoader} are used.</p>
+ * <p>Unlike {@link GzipHandler}, this handler does not decompress request content.</p>
+ */
+@ManagedObject("Dynamic response compression")
+public class CompressionHandler extends Handler.Wrapper
+{
+    public static final String COMPRESSION_HANDLER_ETAGS = "o.e.j.s.h.compression.CompressionHandler.etag";
+    public static final int DEFAULT_MIN_COMPRESS_SIZE = GzipHandler.DEFAULT_MIN_GZIP_SIZE;
+    private static final Logger LOG = LoggerFactory.getLogger(CompressionHandler.class);
+
+    private final List<Compression> _compressions = new CopyOnWriteArrayList<>();
+    private final IncludeExclude<String> _methods = new IncludeExclude<>();
+    private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
+    private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>(AsciiLowerCaseSet.class);
+    private List<String> _encodings = List.of();
+    private int _minCompressSize = DEFAULT_MIN_COMPRESS_SIZE;
+    private boolean _syncFlush;
+    private HttpField _vary = new PreEncodedHttpField(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING.asString());
+
+    public CompressionHandler()
+    {
+        this(null);
+    }
+
+    public CompressionHandler(Handler handler)
+    {
+        super(handler);
+        _methods.include(HttpMethod.GET.asString());
+        _methods.include(HttpMethod.POST.asString());
+        for (String type : MimeTypes.DEFAULTS.getMimeMap().values())
+        {
+            if (type.startsWith("image/") && !"image/svg+xml".equals(type) ||
+                type.startsWith("audio/") ||
+                type.startsWith("video/"))
+                _mimeTypes.exclude(type);
+        }
+        _mimeTypes.exclude(
+            "application/compress",
+            "application/zip",
+            "application/x-gtar",
+            "application/java-archive",
+            "application/gzip",
+            "application/x-bzip2",
+            "application/brotli",
+            "application/x-xz",
+            "application/x-rar-compressed",
+            "application/zstd",
+            // Compression would delay the delivery of events, unless syncFlush is enabled.
+            "text/event-stream");
+        _paths.exclude("*.svgz", "*.z", "*.zip", "*.tgz", "*.jar", "*.gz", "*.gzip", "*.bz2", "*.bzip", "*.bz",
+            "*.br", "*.brotli", "*.xz", "*.rar", "*.zst", "*.zstd");
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_compressions.isEmpty())
+            TypeUtil.serviceStream(ServiceLoader.load(Compression.class)).forEach(this::addCompression);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} compressions {}", this, _compressions);
+        super.doStart();
+    }
+
+    /**
+     * <p>Adds a content-coding, with lower preference than those already added.</p>
+     * <p>A content-coding with the same name as one already added replaces it.</p>
+     *
+     * @param compression the content-coding to add
+     */
+    public void addCompression(Compression compression)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        for (Compression existing : _compressions)
+        {
+            if (existing.getEncoding().equals(compression.getEncoding()))
+                removeCompression(existing);
+        }
+        _compressions.add(compression);
+        addBean(compression);
+        updateEncodings();
+    }
+
+    /**
+     * @param compression the content-coding to remove
+     * @return whether the content-coding was removed
+     */
+    public boolean removeCompression(Compression compression)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+        if (!_compressions.remove(compression))
+            return false;
+        removeBean(compression);
+        updateEncodings();
+        return true;
+    }
+
+    /**
+     * @param compressions the content-codings, in order of preference, replacing any previously set
+     */
+    public void setCompressions(List<Compression> compressions)
+    {
+        for (Compression compression : List.copyOf(_compressions))
+        {
+            removeCompression(compression);
+        }
+        compressions.forEach(this::addCompression);
+    }
+
+    /**
+     * @return the content-codings, in order of preference
+     */
+    public List<Compression> getCompressions()
+    {
+        return List.copyOf(_compressions);
+    }
+
+    /**
+     * @param encoding the content-coding name
+     * @return the content-coding with the given name, or null if there is none
+     */
+    public Compression getCompression(String encoding)
+    {
+        for (Compression compression : _compressions)
+        {
+            if (compression.getEncoding().equalsIgnoreCase(encoding))
+                return compression;
+        }
+        return null;
+    }
+
+    @ManagedAttribute("The content-codings, in order of preference")
+    public List<String> getEncodings()
+    {
+        return _encodings;
+    }
+
+    private void updateEncodings()
+    {
+        List<String> encodings = new ArrayList<>();
+        for (Compression compression : _compressions)
+        {
+            encodings.add(compression.getEncoding());
+        }
+        _encodings = List.copyOf(encodings);
+    }
+
+    /**
+     * @return the minimum content length, in bytes, of a response to compress
+     */
+    @ManagedAttribute("The minimum content length of a response to compress")
+    public int getMinCompressSize()
+    {
+        return _minCompressSize;
+    }
+
+    /**
+     * <p>Sets the minimum content length of a response to compress.</p>
+     * <p>Responses of unknown length are always compressed.</p>
+     *
+     * @param minCompressSize the minimum content length, in bytes, of a response to compress
+     */
+    public void setMinCompressSize(int minCompressSize)
+    {
+        _minCompressSize = minCompressSize;
+    }
+
+    /**
+     * @return whether the compressed content is flushed on every write
+     * @see #setSyncFlush(boolean)
+     */
+    @ManagedAttribute("Whether the compressed content is flushed on every write")
+    public boolean isSyncFlush()
+    {
+        return _syncFlush;
+    }
+
+    /**
+     * <p>Sets whether the compressed content is flushed on every write.</p>
+     * <p>This is required for streamed responses, such as server-sent events,
+     * but reduces the compression ratio.</p>
+     *
+     * @param syncFlush whether the compressed content is flushed on every write
+     */
+    public void setSyncFlush(boolean syncFlush)
+    {
+        _syncFlush = syncFlush;
+    }
+
+    /**
+     * @return the {@code Vary} header added to responses that may be compressed
+     */
+    public HttpField getVary()
+    {
+        return _vary;
+    }
+
+    /**
+     * @param vary the {@code Vary} header added to responses that may be compressed, or null for none
+     */
+    public void setVary(HttpField vary)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+
+        if (vary == null || (vary instanceof PreEncodedHttpField))
+            _vary = vary;
+        else
+            _vary = new PreEncodedHttpField(vary.getHeader(), vary.getName(), vary.getValue());
+    }
+
+    /**
+     * @param methods the HTTP methods whose responses are compressed
+     */
+    public void setIncludedMethods(String... methods)
+    {
+        _methods.getIncluded().clear();
+        _methods.include(methods);
+    }
+
+    public String[] getIncludedMethods()
+    {
+        return _methods.getIncluded().toArray(String[]::new);
+    }
+
+    /**
+     * @param methods the HTTP methods whose responses are not compressed
+     */
+    public void setExcludedMethods(String... methods)
+    {
+        _methods.getExcluded().clear();
+        _methods.exclude(methods);
+    }
+
+    public String[] getExcludedMethods()
+    {
+        return _methods.getExcluded().toArray(String[]::new);
+    }
+
+    /**
+     * @param types the MIME types (without charset or other parameters) of responses that are compressed
+     */
+    public void setIncludedMimeTypes(String... types)
+    {
+        _mimeTypes.getIncluded().clear();
+        _mimeTypes.include(types);
+    }
+
+    public String[] getIncludedMimeTypes()
+    {
+        return _mimeTypes.getIncluded().toArray(String[]::new);
+    }
+
+    /**
+     * @param types the MIME types (without charset or other parameters) of responses that are not compressed
+     */
+    public void setExcludedMimeTypes(String... types)
+    {
+        _mimeTypes.getExcluded().clear();
+        _mimeTypes.exclude(types);
+    }
+
+    public String[] getExcludedMimeTypes()
+    {
+        return _mimeTypes.getExcluded().toArray(String[]::new);
+    }
+
+    /**
+     * @param pathSpecs the path specs (relative to the context) of responses that are compressed
+     */
+    public void setIncludedPaths(String... pathSpecs)
+    {
+        _paths.getIncluded().clear();
+        _paths.include(pathSpecs);
+    }
+
+    public String[] getIncludedPaths()
+    {
+        return _paths.getIncluded().toArray(String[]::new);
+    }
+
+    /**
+     * @param pathSpecs the path specs (relative to the context) of responses that are not compressed
+     */
+    public void setExcludedPaths(String... pathSpecs)
+    {
+        _paths.getExcluded().clear();
+        _paths.exclude(pathSpecs);
+    }
+
+    public String[] getExcludedPaths()
+    {
+        return _paths.getExcluded().toArray(String[]::new);
+    }
+
+    /**
+     * @param mimeType the MIME type (without charset or other parameters) of a response
+     * @return whether the response may be compressed
+     */
+    public boolean isMimeTypeCompressible(String mimeType)
+    {
+        return _mimeTypes.test(mimeType);
+    }
+
+    protected boolean isPathCompressible(MimeTypes mimeTypes, String pathInContext)
+    {
+        if (pathInContext == null)
+            return true;
+        if (!_paths.test(pathInContext))
+            return false;
+
+        // Exclude non-compressible mime-types known from URI extension
+        String mimeType = mimeTypes.getMimeByExtension(pathInContext);
+        return mimeType == null || isMimeTypeCompressible(HttpField.getValueParameters(mimeType, null));
+    }
+
+    /**
+     * <p>Selects the content-coding to use for a response, given the {@code Accept-Encoding}
+     * header values of the request.</p>
+     *
+     * @param acceptEncodings the values of the {@code Accept-Encoding} header
+     * @return the content-coding to use, or null if none is acceptable
+     */
+    protected Compression negotiate(List<String> acceptEncodings)
+    {
+        List<String> encodings = _encodings;
+        // The content-codings listed explicitly, including those refused with q=0.
+        Set<String> listed = new AsciiLowerCaseSet();
+        QuotedQualityCSV values = new QuotedQualityCSV(encodings)
+        {
+            @Override
+            protected void parsedValue(StringBuilder buffer)
+            {
+                super.parsedValue(buffer);
+                listed.add(buffer.toString());
+            }
+        };
+        for (String acceptEncoding : acceptEncodings)
+        {
+            values.addValue(acceptEncoding);
+        }
+        for (String value : values)
+        {
+            if ("*".equals(value))
+            {
+                // The wildcard only matches the content-codings not listed explicitly.
+                for (String encoding : encodings)
+                {
+                    if (!listed.contains(encoding))
+                        return getCompression(encoding);
+                }
+                continue;
+            }
+            Compression compression = getCompression(value);
+            if (compression != null)
+                return compression;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean handle(Request request, Response response, Callback callback) throws Exception
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} handle {}", this, request);
+
+        Handler next = getHandler();
+        if (next == null)
+            return false;
+
+        // Are we already compressing?
+        if (Response.as(response, CompressionResponseAndCallback.class) != null)
+            return next.handle(request, response, callback);
+
+        String pathInContext = Request.getPathInContext(request);
+        boolean tryCompress = _methods.test(request.getMethod()) && isPathCompressible(request.getContext().getMimeTypes(), pathInContext);
+        if (!tryCompress)
+            return next.handle(request, response, callback);
+
+        // The response may vary based on the presence or lack of Accept-Encoding.
+        if (_vary != null)
+            response.getHeaders().ensureField(_vary);
+
+        List<String> acceptEncodings = request.getHeaders().getValuesList(HttpHeader.ACCEPT_ENCODING);
+        Compression compression = acceptEncodings.isEmpty() ? null : negotiate(acceptEncodings);
+        if (compression == null)
+            return next.handle(request, response, callback);
+
+        // Remove the etag suffix of the compressed representation from conditional headers.
+        HttpFields fields = request.getHeaders();
+        if (fields.contains(HttpHeader.IF_MATCH) || fields.contains(HttpHeader.IF_NONE_MATCH))
+        {
+            HttpFields.Mutable newFields = HttpFields.build(fields);
+            boolean stripped = false;
+            for (ListIterator<HttpField> i = newFields.listIterator(); i.hasNext();)
+            {
+                HttpField field = i.next();
+                if (field.getHeader() != HttpHeader.IF_MATCH && field.getHeader() != HttpHeader.IF_NONE_MATCH)
+                    continue;
+                String etags = field.getValue();
+                if (!etags.contains(EtagUtils.ETAG_SEPARATOR))
+                    continue;
+                String etagsNoSuffix = compression.stripSuffixes(etags);
+                if (!etagsNoSuffix.equals(etags))
+                {
+                    i.set(new HttpField(field.getHeader(), etagsNoSuffix));
+                    request.setAttribute(COMPRESSION_HANDLER_ETAGS, etags);
+                    stripped = true;
+                }
+            }
+            if (stripped)
+                request = new HeaderWrappingRequest(request, newFields.asImmutable());
+        }
+
+        CompressionResponseAndCallback compressionResponseAndCallback = new CompressionResponseAndCallback(this, compression, request, response, callback);
+        return next.handle(request, compressionResponseAndCallback, compressionResponseAndCallback);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,%s,min=%d}", getClass().getSimpleName(), hashCode(), getState(), String.join(",", _encodings), _minCompressSize);
+    }
+}
@@ -0,0 +1,124 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.compression;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.NanoTime;
+import org.eclipse.jetty.util.compression.CompressionPool;
+
+/**
+ * <p>A {@link Response} wrapper, and completion {@link Callback}, that compresses
+ * the response content with the {@link Compression} negotiated by {@link CompressionHandler}.</p>
+ */
+public class CompressionResponseAndCallback extends AbstractCompressingResponseAndCallback
+{
+    private final CompressionHandler _handler;
+    private final Compression _compression;
+    private final boolean _syncFlush;
+    private CompressionPool<Compression.Encoder>.Entry _encoderEntry;
+    private long _bytesIn;
+    private long _bytesOut;
+    private long _encodingNanos;
+
+    public CompressionResponseAndCallback(CompressionHandler handler, Compression compression, Request request, Response response, Callback callback)
+    {
+        super(request, response, callback, request.getConnectionMetaData().getHttpConfiguration().getOutputBufferSize());
+        _handler = handler;
+        _compression = compression;
+        _syncFlush = handler.isSyncFlush();
+    }
+
+    /**
+     * @return the compression used for this response
+     */
+    public Compression getCompression()
+    {
+        return _compression;
+    }
+
+    @Override
+    protected boolean isMimeTypeCompressible(String mimeType)
+    {
+        return _handler.isMimeTypeCompressible(mimeType);
+    }
+
+    @Override
+    protected String getEtagsAttributeName()
+    {
+        return CompressionHandler.COMPRESSION_HANDLER_ETAGS;
+    }
+
+    @Override
+    protected String etag(String etag)
+    {
+        return _compression.etag(etag);
+    }
+
+    @Override
+    protected HttpField startEncoding(long contentLength)
+    {
+        if (contentLength >= 0 && contentLength < _handler.getMinCompressSize())
+            return null;
+        _encoderEntry = _compression.acquireEncoder();
+        return _compression.getContentEncoding();
+    }
+
+    @Override
+    protected void setInput(ByteBuffer content)
+    {
+        _bytesIn += content.remaining();
+        _encoderEntry.get().setInput(content);
+    }
+
+    @Override
+    protected boolean needsInput()
+    {
+        return _encoderEntry.get().needsInput();
+    }
+
+    @Override
+    protected void finish()
+    {
+        _encoderEntry.get().finish();
+    }
+
+    @Override
+    protected boolean finished()
+    {
+        return _encoderEntry.get().finished();
+    }
+
+    @Override
+    protected int encode(ByteBuffer output)
+    {
+        long begin = NanoTime.now();
+        int length = _encoderEntry.get().encode(output, _syncFlush);
+        _encodingNanos += NanoTime.since(begin);
+        _bytesOut += length;
+        return length;
+    }
+
+    @Override
+    protected void endEncoding()
+    {
+        _encoderEntry.release();
+        _encoderEntry = null;
+        _compression.onCompressed(_bytesIn, _bytesOut, _encodingNanos);
+    }
+}
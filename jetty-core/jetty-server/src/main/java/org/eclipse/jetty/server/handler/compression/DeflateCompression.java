@@ -0,0 +1,88 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * <p>The {@code deflate} content-coding (the zlib format of RFC 1950), implemented with {@link Deflater}.</p>
+ */
+public class DeflateCompression extends Compression
+{
+    public static final String ENCODING = "deflate";
+
+    public DeflateCompression()
+    {
+        super(ENCODING, ".zz", Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    protected Encoder newEncoder()
+    {
+        return new DeflaterEncoder(new Deflater(getCompressionLevel()));
+    }
+
+    private static class DeflaterEncoder implements Encoder
+    {
+        private final Deflater _deflater;
+
+        private DeflaterEncoder(Deflater deflater)
+        {
+            _deflater = deflater;
+        }
+
+        @Override
+        public void setInput(ByteBuffer input)
+        {
+            _deflater.setInput(input);
+        }
+
+        @Override
+        public boolean needsInput()
+        {
+            return _deflater.needsInput();
+        }
+
+        @Override
+        public void finish()
+        {
+            _deflater.finish();
+        }
+
+        @Override
+        public boolean finished()
+        {
+            return _deflater.finished();
+        }
+
+        @Override
+        public int encode(ByteBuffer output, boolean flush)
+        {
+            return _deflater.deflate(output, flush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+        }
+
+        @Override
+        public void reset()
+        {
+            _deflater.reset();
+        }
+
+        @Override
+        public void end()
+        {
+            _deflater.end();
+        }
+    }
+}
@@ -15,6 +15,7 @@ package org.eclipse.jetty.server.internal;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritePendingException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -1300,6 +1301,80 @@ public class HttpChannelState implements HttpChannel, Components
             stream.send(_request._metaData, responseMetaData, last, content, this);
         }
 
+        /**
+         * <p>Transfers the given file region as the last content of this response,
+         * if the response has a content length that matches the region length
+         * and the {@link HttpStream} {@link HttpStream#isFileTransferSupported() supports}
+         * file transfers.</p>
+         * <p>The response is first committed via {@link #write(boolean, ByteBuffer, Callback)},
+         * then the file region is transferred via
+         * {@link HttpStream#transferFrom(FileChannel, long, long, Callback)},
+         * and finally the response is completed with a last write.</p>
+         */
+        @Override
+        public boolean transferFrom(FileChannel file, long position, long length, Callback callback)
+        {
+            try (AutoLock ignored = _request._lock.lock())
+            {
+                if (length <= 0 || _writeFailure != null || _writeCallback != null)
+                    return false;
+                if (HttpMethod.HEAD.is(_request.getMethod()))
+                    return false;
+                int status = getStatus();
+                if (HttpStatus.isInformational(status) || status == HttpStatus.NO_CONTENT_204 || status == HttpStatus.NOT_MODIFIED_304)
+                    return false;
+
+                HttpChannelState httpChannelState = _request.lockedGetHttpChannelState();
+                long committedContentLength = httpChannelState._committedContentLength;
+                long contentLength = committedContentLength >= 0 ? committedContentLength : getHeaders().getLongField(HttpHeader.CONTENT_LENGTH);
+                if (contentLength < 0 || _contentBytesWritten + length != contentLength)
+                    return false;
+
+                if (!httpChannelState._stream.isFileTransferSupported())
+                    return false;
+            }
+
+            InvocationType invocationType = Invocable.getInvocationType(callback);
+            write(false, null, Callback.from(invocationType, () -> transfer(file, position, length, callback), callback::failed));
+            return true;
+        }
+
+        private void transfer(FileChannel file, long position, long length, Callback callback)
+        {
+            HttpChannelState httpChannelState;
+            HttpStream stream;
+            Throwable writeFailure;
+            try (AutoLock ignored = _request._lock.lock())
+            {
+                httpChannelState = _request.lockedGetHttpChannelState();
+                writeFailure = _writeFailure;
+                if (writeFailure == null && _writeCallback != null)
+                    writeFailure = new WritePendingException();
+                if (writeFailure == null)
+                    writeFailure = httpChannelState.lockedStreamSend(false, length);
+
+                if (writeFailure == null)
+                {
+                    // Complete the response with a last write once the transfer succeeds.
+                    InvocationType invocationType = Invocable.getInvocationType(callback);
+                    _writeCallback = Callback.from(invocationType, () -> write(true, null, callback), callback::failed);
+                    _contentBytesWritten += length;
+                }
+                stream = httpChannelState._stream;
+            }
+
+            if (writeFailure != null)
+            {
+                Throwable failure = writeFailure;
+                httpChannelState._writeInvoker.run(() -> HttpChannelState.failed(callback, failure));
+                return;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("transferring {}@{} {}", length, position, this);
+            stream.transferFrom(file, position, length, this);
+        }
+
         /**
          * Called when the call to
          * {@link HttpStream#send(MetaData.Request, MetaData.Response, boolean, ByteBuffer, Callback)}
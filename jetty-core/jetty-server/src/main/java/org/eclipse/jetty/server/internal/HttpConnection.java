@@ -13,8 +13,10 @@
 
 package org.eclipse.jetty.server.internal;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritePendingException;
 import java.util.List;
 import java.util.Objects;
@@ -101,6 +103,7 @@ public class HttpConnection extends AbstractMetaDataConnection implements Runnab
     private final Lazy _attributes = new Lazy();
     private final DemandContentCallback _demandContentCallback = new DemandContentCallback();
     private final SendCallback _sendCallback = new SendCallback();
+    private final TransferCallback _transferCallback = new TransferCallback();
     private final LongAdder bytesIn = new LongAdder();
     private final LongAdder bytesOut = new LongAdder();
     private final AtomicBoolean _handling = new AtomicBoolean(false);
@@ -929,6 +932,102 @@ public class HttpConnection extends AbstractMetaDataConnection implements Runnab
         }
     }
 
+    private class TransferCallback extends IteratingCallback
+    {
+        private FileChannel _file;
+        private long _position;
+        private long _remaining;
+        private Callback _callback;
+
+        private TransferCallback()
+        {
+            super(true);
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return _callback.getInvocationType();
+        }
+
+        private boolean reset(FileChannel file, long position, long length, Callback callback)
+        {
+            if (reset())
+            {
+                _file = file;
+                _position = position;
+                _remaining = length;
+                _callback = callback;
+                return true;
+            }
+            else
+            {
+                if (isClosed())
+                    callback.failed(new EofException());
+                else
+                    callback.failed(new WritePendingException());
+                return false;
+            }
+        }
+
+        @Override
+        protected Action process() throws Throwable
+        {
+            if (_callback == null)
+                throw new IllegalStateException();
+
+            while (_remaining > 0)
+            {
+                long transferred = getEndPoint().transferFrom(_file, _position, _remaining);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("transferred {}/{} for {}", transferred, _remaining, this);
+
+                if (transferred > 0)
+                {
+                    _position += transferred;
+                    _remaining -= transferred;
+                    HttpConnection.this.bytesOut.add(transferred);
+                    continue;
+                }
+
+                if (_position >= _file.size())
+                    throw new EOFException("Unexpected end of file");
+
+                // The network cannot accept more bytes, wait until it is writable again.
+                getEndPoint().writeInterested(this);
+                return Action.SCHEDULED;
+            }
+
+            return Action.SUCCEEDED;
+        }
+
+        private Callback release()
+        {
+            Callback complete = _callback;
+            _callback = null;
+            _file = null;
+            return complete;
+        }
+
+        @Override
+        protected void onCompleteSuccess()
+        {
+            release().succeeded();
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            failedCallback(release(), x);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[p=%d,r=%d,cb=%s]", super.toString(), _position, _remaining, _callback);
+        }
+    }
+
     protected class RequestHandler implements HttpParser.RequestHandler
     {
         private Throwable _failure;
@@ -1427,6 +1526,25 @@ public class HttpConnection extends AbstractMetaDataConnection implements Runnab
                 _sendCallback.iterate();
         }
 
+        @Override
+        public boolean isFileTransferSupported()
+        {
+            return getHttpConfiguration().isUseFileTransfer() && getEndPoint().isFileTransferSupported();
+        }
+
+        @Override
+        public void transferFrom(FileChannel file, long position, long length, Callback callback)
+        {
+            if (!_generator.isCommitted() || _generator.isChunking())
+            {
+                callback.failed(new IllegalStateException("Not committed with known content length"));
+                return;
+            }
+
+            if (_transferCallback.reset(file, position, length, callback))
+                _transferCallback.iterate();
+        }
+
         @Override
         public long getIdleTimeout()
         {
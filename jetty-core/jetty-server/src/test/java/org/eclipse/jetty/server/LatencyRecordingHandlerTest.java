@@ -21,6 +21,7 @@ import org.awaitility.Awaitility;
 import org.eclipse.jetty.logging.JettyLevel;
 import org.eclipse.jetty.logging.JettyLogger;
 import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.HistogramLatencyRecordingHandler;
 import org.eclipse.jetty.server.handler.LatencyRecordingHandler;
 import org.eclipse.jetty.util.Callback;
 import org.junit.jupiter.api.AfterEach;
@@ -32,6 +33,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
 
 public class LatencyRecordingHandlerTest
 {
@@ -121,4 +124,35 @@ public class LatencyRecordingHandlerTest
             assertThat(latency, greaterThan(0L));
         }
     }
+
+    @Test
+    public void testHistogramLatencyRecording() throws Exception
+    {
+        HistogramLatencyRecordingHandler histogramHandler = new HistogramLatencyRecordingHandler(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback)
+            {
+                callback.succeeded();
+                return true;
+            }
+        });
+        ContextHandler contextHandler = new ContextHandler("/histogram");
+        contextHandler.setHandler(histogramHandler);
+        _server.stop();
+        _server.setHandler(new Handler.Sequence(_server.getHandler(), contextHandler));
+        _server.start();
+
+        for (int i = 0; i < 100; i++)
+        {
+            String response = _local.getResponse("GET /histogram/ HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertThat(response, containsString(" 200 OK"));
+        }
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(histogramHandler::getCount, is(100L));
+        assertThat(histogramHandler.getLatencyP50(), greaterThan(0L));
+        assertThat(histogramHandler.getLatencyP99(), lessThanOrEqualTo(histogramHandler.getLatencyMax()));
+
+        assertThat(histogramHandler.snapshotLatencyPercentiles(), startsWith("count=100,"));
+        assertThat(histogramHandler.getCount(), is(0L));
+    }
 }
@@ -0,0 +1,188 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(WorkDirExtension.class)
+public class RingBufferRequestLogWriterTest
+{
+    public WorkDir workDir;
+
+    @Test
+    public void testWriteEntries() throws Exception
+    {
+        Path logFile = workDir.getEmptyPathDir().resolve("request.log");
+        RingBufferRequestLogWriter writer = new RingBufferRequestLogWriter(logFile.toString());
+        writer.setSlotSize(16);
+        writer.setSlotCount(64);
+        writer.start();
+
+        List<String> entries = List.of(
+            "short",
+            "exactly 14 ch.",
+            "an entry that spans several slots of the ring",
+            "unicode é€😀 entry",
+            "");
+        for (String entry : entries)
+        {
+            writer.write(entry);
+        }
+        writer.write(new StringBuilder("from a StringBuilder"));
+        writer.stop();
+
+        List<String> expected = new ArrayList<>(entries);
+        expected.add("from a StringBuilder");
+        assertEquals(expected, Files.readAllLines(logFile, StandardCharsets.UTF_8));
+        assertEquals(0, writer.getDroppedEntries());
+        assertEquals(0, writer.getPendingSlots());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception
+    {
+        Path logFile = workDir.getEmptyPathDir().resolve("request.log");
+        RingBufferRequestLogWriter writer = new RingBufferRequestLogWriter(logFile.toString());
+        writer.setSlotSize(32);
+        writer.setSlotCount(100_000);
+        assertEquals(131072, writer.getSlotCount());
+        writer.start();
+
+        int threads = 8;
+        int count = 5000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t)
+        {
+            int id = t;
+            Thread worker = new Thread(() ->
+            {
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < count; ++i)
+                {
+                    builder.setLength(0);
+                    builder.append("thread ").append(id).append(" entry ").append(i).append(" padding to span slots");
+                    try
+                    {
+                        writer.write(builder);
+                    }
+                    catch (Exception x)
+                    {
+                        throw new RuntimeException(x);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        writer.stop();
+
+        List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+        assertEquals(threads * count, lines.size());
+        assertEquals(0, writer.getDroppedEntries());
+
+        // Each line is intact and unique, and the entries of each thread are in order.
+        Set<String> unique = new HashSet<>(lines);
+        assertEquals(lines.size(), unique.size());
+        int[] next = new int[threads];
+        for (String line : lines)
+        {
+            String[] parts = line.split(" ");
+            assertTrue(line.endsWith(" padding to span slots"), line);
+            int id = Integer.parseInt(parts[1]);
+            assertEquals(next[id]++, Integer.parseInt(parts[3]), line);
+        }
+    }
+
+    @Test
+    public void testStopWhileWriting() throws Exception
+    {
+        Path logFile = workDir.getEmptyPathDir().resolve("request.log");
+        RingBufferRequestLogWriter writer = new RingBufferRequestLogWriter(logFile.toString());
+        writer.setSlotSize(16);
+        writer.setSlotCount(1024);
+        writer.start();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < 4; ++t)
+        {
+            Thread worker = new Thread(() ->
+            {
+                while (running.get())
+                {
+                    try
+                    {
+                        writer.write("an entry that spans several slots");
+                    }
+                    catch (Exception x)
+                    {
+                        throw new RuntimeException(x);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        Thread.sleep(100);
+        writer.stop();
+        running.set(false);
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        // The entries claimed before the stop are written entirely.
+        assertEquals(0, writer.getPendingSlots());
+        List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+        assertTrue(lines.size() > 0);
+        for (String line : lines)
+        {
+            assertEquals("an entry that spans several slots", line);
+        }
+    }
+
+    @Test
+    public void testStopAfterFailedStart() throws Exception
+    {
+        Path logFile = workDir.getEmptyPathDir().resolve("missing").resolve("request.log");
+        RingBufferRequestLogWriter writer = new RingBufferRequestLogWriter(logFile.toString());
+
+        // The log directory does not exist, so the writer thread is not started.
+        assertThrows(IOException.class, writer::start);
+
+        writer.stop();
+        assertTrue(writer.isStopped());
+    }
+}
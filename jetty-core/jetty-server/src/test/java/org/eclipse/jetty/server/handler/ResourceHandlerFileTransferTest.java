@@ -0,0 +1,212 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.http.content.HttpContent;
+import org.eclipse.jetty.http.content.ResourceHttpContentFactory;
+import org.eclipse.jetty.io.ManagedSelector;
+import org.eclipse.jetty.io.SocketChannelEndPoint;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.toolchain.test.FS;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class ResourceHandlerFileTransferTest
+{
+    private final LongAdder transferred = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private Server server;
+    private ServerConnector connector;
+    private byte[] bytes;
+
+    private void start(boolean useFileTransfer, int length) throws Exception
+    {
+        server = new Server();
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setUseFileTransfer(useFileTransfer);
+        connector = new ServerConnector(server, 1, 1, new HttpConnectionFactory(httpConfig))
+        {
+            @Override
+            protected SocketChannelEndPoint newEndPoint(SocketChannel channel, ManagedSelector selectSet, SelectionKey key)
+            {
+                return new SocketChannelEndPoint(channel, selectSet, key, getScheduler())
+                {
+                    @Override
+                    public long transferFrom(FileChannel file, long position, long count) throws IOException
+                    {
+                        long result = super.transferFrom(file, position, count);
+                        transferred.add(result);
+                        if (result == 0)
+                            stalls.increment();
+                        return result;
+                    }
+                };
+            }
+        };
+        server.addConnector(connector);
+
+        Path dir = MavenTestingUtils.getTargetTestingPath(ResourceHandlerFileTransferTest.class.getSimpleName());
+        FS.ensureEmpty(dir);
+        bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        Files.write(dir.resolve("file.bin"), bytes);
+
+        // Do not cache the file in memory, so that it is served from the file system.
+        ResourceHandler handler = new ResourceHandler()
+        {
+            @Override
+            protected HttpContent.Factory newHttpContentFactory()
+            {
+                return new ResourceHttpContentFactory(getBaseResource(), getMimeTypes());
+            }
+        };
+        handler.setBaseResource(ResourceFactory.of(handler).newResource(dir));
+        server.setHandler(handler);
+        server.start();
+    }
+
+    @AfterEach
+    public void dispose()
+    {
+        LifeCycle.stop(server);
+    }
+
+    @Test
+    public void testFileTransfer() throws Exception
+    {
+        start(true, 1024 * 1024);
+
+        HttpTester.Response response = get("");
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(String.valueOf(bytes.length), response.get(HttpHeader.CONTENT_LENGTH));
+        assertArrayEquals(bytes, response.getContentBytes());
+        assertThat(transferred.sum(), greaterThan(0L));
+    }
+
+    @Test
+    public void testFileTransferSlowClient() throws Exception
+    {
+        start(true, 16 * 1024 * 1024);
+
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", connector.getLocalPort())))
+        {
+            socket.write(BufferUtil.toBuffer("""
+                GET /file.bin HTTP/1.1\r
+                Host: local\r
+                Connection: close\r
+                \r
+                """));
+
+            // Do not read, so that the server cannot transfer the whole file at once.
+            Thread.sleep(500);
+
+            HttpTester.Response response = HttpTester.parseResponse(HttpTester.from(socket));
+            assertNotNull(response);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertArrayEquals(bytes, response.getContentBytes());
+            // The whole file is transferred, waiting for writability when the network is congested.
+            assertEquals(bytes.length, transferred.sum());
+            assertThat(stalls.sum(), greaterThan(0L));
+        }
+    }
+
+    @Test
+    public void testFileTransferRange() throws Exception
+    {
+        start(true, 64 * 1024);
+
+        HttpTester.Response response = get("Range: bytes=1000-40999\r\n");
+        assertNotNull(response);
+        assertEquals(HttpStatus.PARTIAL_CONTENT_206, response.getStatus());
+        assertEquals("40000", response.get(HttpHeader.CONTENT_LENGTH));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 1000, 41000), response.getContentBytes());
+        assertEquals(40000L, transferred.sum());
+    }
+
+    @Test
+    public void testFileTransferHead() throws Exception
+    {
+        start(true, 64 * 1024);
+
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", connector.getLocalPort())))
+        {
+            socket.write(BufferUtil.toBuffer("""
+                HEAD /file.bin HTTP/1.1\r
+                Host: local\r
+                Connection: close\r
+                \r
+                """));
+
+            HttpTester.Response response = HttpTester.parseResponse(HttpTester.from(socket), true);
+            assertNotNull(response);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals(String.valueOf(bytes.length), response.get(HttpHeader.CONTENT_LENGTH));
+            assertEquals(0L, transferred.sum());
+        }
+    }
+
+    @Test
+    public void testFileTransferDisabled() throws Exception
+    {
+        start(false, 64 * 1024);
+
+        HttpTester.Response response = get("");
+        assertNotNull(response);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(bytes, response.getContentBytes());
+        assertEquals(0L, transferred.sum());
+    }
+
+    private HttpTester.Response get(String headers) throws IOException
+    {
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress("localhost", connector.getLocalPort())))
+        {
+            socket.write(BufferUtil.toBuffer("""
+                GET /file.bin HTTP/1.1\r
+                Host: local\r
+                %sConnection: close\r
+                \r
+                """.formatted(headers)));
+            return HttpTester.parseResponse(HttpTester.from(socket));
+        }
+    }
+}
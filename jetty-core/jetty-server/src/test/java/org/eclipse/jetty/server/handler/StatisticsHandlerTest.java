@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +34,7 @@ import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.statistic.HistogramStatistic;
 import org.eclipse.jetty.util.thread.Invocable;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -48,9 +50,12 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class StatisticsHandlerTest
@@ -390,6 +395,81 @@ public class StatisticsHandlerTest
         await().atMost(5, TimeUnit.SECONDS).until(_statsHandler::getResponses2xx, is(1));
     }
 
+    @Test
+    public void testRequestTimePercentiles() throws Exception
+    {
+        _connector.setName("local");
+        _statsHandler.setHistogramsEnabled(true);
+        _statsHandler.setHistogramStripes(2);
+        _statsHandler.setHandler(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback)
+            {
+                if (request.getHttpURI().getPath().endsWith("/missing"))
+                    response.setStatus(404);
+                callback.succeeded();
+                return true;
+            }
+        });
+        _server.start();
+
+        for (int i = 0; i < 10; ++i)
+        {
+            String path = i % 5 == 0 ? "/missing" : "/";
+            String response = _connector.getResponse("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            assertThat(response, startsWith("HTTP/1.1 " + (i % 5 == 0 ? "404" : "200")));
+        }
+        await().atMost(5, TimeUnit.SECONDS).until(_statsHandler::getRequestTotal, is(10));
+        await().atMost(5, TimeUnit.SECONDS).until(_statsHandler::getRequestsActive, is(0));
+
+        assertThat(_statsHandler.getRequestTimeP50(), greaterThan(0L));
+        assertThat(_statsHandler.getRequestTimeP50(), lessThanOrEqualTo(_statsHandler.getRequestTimeP99()));
+        assertThat(_statsHandler.getRequestTimeP999(), lessThanOrEqualTo(_statsHandler.getRequestTimeMax()));
+        assertThat(_statsHandler.getHandleTimeP50(), greaterThan(0L));
+        assertThat(_statsHandler.getHandleTimeP999(), lessThanOrEqualTo(_statsHandler.getHandleTimeMax()));
+        assertEquals(10, _statsHandler.getHandleTimeSnapshot(true).getCount());
+        assertEquals(0, _statsHandler.getHandleTimeSnapshot(false).getCount());
+
+        Map<String, HistogramStatistic.Snapshot> snapshots = _statsHandler.getRequestTimeSnapshots(true);
+        assertEquals(10, snapshots.get("all").getCount());
+        assertEquals(8, snapshots.get("2xx").getCount());
+        assertEquals(2, snapshots.get("4xx").getCount());
+        assertEquals(0, snapshots.get("5xx").getCount());
+        assertEquals(10, snapshots.get("connector:local").getCount());
+
+        // The snapshot started a new interval.
+        assertEquals(0, _statsHandler.getRequestTimeSnapshots(false).get("all").getCount());
+        assertEquals(0, _statsHandler.getRequestTimeP99());
+        assertThat(_statsHandler.getRequestTimePercentiles().get("all"), startsWith("count=0,"));
+    }
+
+    @Test
+    public void testHistogramsDisabledByDefault() throws Exception
+    {
+        _statsHandler.setHandler(new Handler.Abstract()
+        {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback)
+            {
+                callback.succeeded();
+                return true;
+            }
+        });
+        _server.start();
+
+        String response = _connector.getResponse("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 200"));
+        await().atMost(5, TimeUnit.SECONDS).until(_statsHandler::getRequestsActive, is(0));
+
+        assertFalse(_statsHandler.isHistogramsEnabled());
+        assertEquals(1, _statsHandler.getRequestTotal());
+        assertEquals(0, _statsHandler.getRequestTimeP99());
+        assertEquals(0, _statsHandler.getHandleTimeP99());
+        assertTrue(_statsHandler.getRequestTimeSnapshots(false).isEmpty());
+        assertNull(_statsHandler.getHandleTimeSnapshot(false));
+    }
+
     @Test
     public void testTwoRequestsInParallel() throws Exception
     {
@@ -0,0 +1,279 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CompressionHandlerTest
+{
+    private static final byte[] CONTENT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(2000).getBytes(StandardCharsets.UTF_8);
+
+    private Server _server;
+    private LocalConnector _connector;
+    private CompressionHandler _compressionHandler;
+
+    private void start(Handler handler, Compression... compressions) throws Exception
+    {
+        _server = new Server();
+        _connector = new LocalConnector(_server);
+        _server.addConnector(_connector);
+        _compressionHandler = new CompressionHandler(handler);
+        for (Compression compression : compressions)
+        {
+            _compressionHandler.addCompression(compression);
+        }
+        _server.setHandler(_compressionHandler);
+        _server.start();
+    }
+
+    @AfterEach
+    public void dispose()
+    {
+        LifeCycle.stop(_server);
+    }
+
+    private HttpTester.Response get(String acceptEncoding) throws Exception
+    {
+        String request = """
+            GET /content.txt HTTP/1.1\r
+            Host: localhost\r
+            %s\r
+            """.formatted(acceptEncoding == null ? "" : "Accept-Encoding: " + acceptEncoding + "\r\n");
+        return HttpTester.parseResponse(_connector.getResponse(request));
+    }
+
+    private static byte[] inflate(byte[] bytes) throws Exception
+    {
+        try (InputStream input = new InflaterInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return IO.readBytes(input);
+        }
+    }
+
+    @Test
+    public void testServiceLoaderCompressions() throws Exception
+    {
+        start(new ContentHandler(CONTENT, false));
+        assertNotNull(_compressionHandler.getCompression(DeflateCompression.ENCODING));
+
+        HttpTester.Response response = get("deflate");
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(DeflateCompression.ENCODING, response.get(HttpHeader.CONTENT_ENCODING));
+        assertArrayEquals(CONTENT, inflate(response.getContentBytes()));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "deflate                      | deflate",
+        "x-deflate                    | x-deflate",
+        "deflate, x-deflate           | deflate",
+        "x-deflate, deflate           | deflate",
+        "deflate;q=0.5, x-deflate     | x-deflate",
+        "deflate;q=0, x-deflate;q=0.1 | x-deflate",
+        "*                            | deflate",
+        "deflate;q=0, *               | x-deflate",
+        "deflate;q=0.5, *             | x-deflate",
+        "deflate;q=0, x-deflate;q=0, *|",
+        "gzip, br                     |",
+        "deflate;q=0                  |"
+    })
+    public void testNegotiation(String acceptEncoding, String expected) throws Exception
+    {
+        DeflateCompression deflate = new DeflateCompression();
+        TestCompression xDeflate = new TestCompression("x-deflate");
+        start(new ContentHandler(CONTENT, false), deflate, xDeflate);
+        assertThat(_compressionHandler.getEncodings(), contains("deflate", "x-deflate"));
+
+        HttpTester.Response response = get(acceptEncoding);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(HttpHeader.ACCEPT_ENCODING.asString(), response.get(HttpHeader.VARY));
+        assertEquals(expected, response.get(HttpHeader.CONTENT_ENCODING));
+        if (expected == null)
+        {
+            assertEquals(String.valueOf(CONTENT.length), response.get(HttpHeader.CONTENT_LENGTH));
+            assertArrayEquals(CONTENT, response.getContentBytes());
+        }
+        else
+        {
+            assertArrayEquals(CONTENT, inflate(response.getContentBytes()));
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception
+    {
+        DeflateCompression deflate = new DeflateCompression();
+        start(new ContentHandler(CONTENT, false), deflate);
+
+        for (int i = 0; i < 3; ++i)
+        {
+            HttpTester.Response response = get("deflate");
+            assertEquals(DeflateCompression.ENCODING, response.get(HttpHeader.CONTENT_ENCODING));
+        }
+
+        // The statistics are updated when the response completes, which may happen after the client received it.
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+        {
+            assertEquals(3, deflate.getResponses());
+            assertEquals(3L * CONTENT.length, deflate.getBytesIn());
+        });
+        assertThat(deflate.getBytesOut(), greaterThan(0L));
+        assertThat(deflate.getCompressionRatio(), lessThan(0.1D));
+
+        deflate.resetStatistics();
+        assertEquals(0, deflate.getResponses());
+        assertEquals(0, deflate.getBytesIn());
+    }
+
+    @Test
+    public void testStreamedContent() throws Exception
+    {
+        start(new ContentHandler(CONTENT, true), new DeflateCompression());
+
+        HttpTester.Response response = get("deflate");
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(DeflateCompression.ENCODING, response.get(HttpHeader.CONTENT_ENCODING));
+        assertNull(response.get(HttpHeader.CONTENT_LENGTH));
+        assertArrayEquals(CONTENT, inflate(response.getContentBytes()));
+    }
+
+    @Test
+    public void testSmallContentNotCompressed() throws Exception
+    {
+        byte[] small = "small".getBytes(StandardCharsets.UTF_8);
+        start(new ContentHandler(small, false), new DeflateCompression());
+
+        HttpTester.Response response = get("deflate");
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertNull(response.get(HttpHeader.CONTENT_ENCODING));
+        assertArrayEquals(small, response.getContentBytes());
+    }
+
+    @Test
+    public void testEtag() throws Exception
+    {
+        DeflateCompression deflate = new DeflateCompression();
+        start(new ContentHandler(CONTENT, false), deflate);
+
+        HttpTester.Response response = get("deflate");
+        assertEquals(deflate.etag(ContentHandler.ETAG), response.get(HttpHeader.ETAG));
+
+        String request = """
+            GET /content.txt HTTP/1.1\r
+            Host: localhost\r
+            Accept-Encoding: deflate\r
+            If-None-Match: %s\r
+            \r
+            """.formatted(deflate.etag(ContentHandler.ETAG));
+        response = HttpTester.parseResponse(_connector.getResponse(request));
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+        assertEquals(deflate.etag(ContentHandler.ETAG), response.get(HttpHeader.ETAG));
+    }
+
+    private static class ContentHandler extends Handler.Abstract
+    {
+        private static final String ETAG = "W/\"1234\"";
+
+        private final byte[] _content;
+        private final boolean _stream;
+
+        private ContentHandler(byte[] content, boolean stream)
+        {
+            _content = content;
+            _stream = stream;
+        }
+
+        @Override
+        public boolean handle(Request request, Response response, Callback callback) throws Exception
+        {
+            response.getHeaders().put(HttpHeader.CONTENT_TYPE, "text/plain");
+            response.getHeaders().put(HttpHeader.ETAG, ETAG);
+
+            List<String> ifNoneMatch = request.getHeaders().getValuesList(HttpHeader.IF_NONE_MATCH);
+            if (ifNoneMatch.contains(ETAG))
+            {
+                response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                callback.succeeded();
+                return true;
+            }
+
+            if (_stream)
+            {
+                for (int offset = 0; offset < _content.length; offset += 1000)
+                {
+                    FutureCallback future = new FutureCallback();
+                    ByteBuffer chunk = ByteBuffer.wrap(_content, offset, Math.min(1000, _content.length - offset));
+                    response.write(false, chunk, future);
+                    future.get();
+                }
+                response.write(true, BufferUtil.EMPTY_BUFFER, callback);
+            }
+            else
+            {
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, _content.length);
+                response.write(true, ByteBuffer.wrap(_content), callback);
+            }
+            return true;
+        }
+    }
+
+    private static class TestCompression extends Compression
+    {
+        private TestCompression(String encoding)
+        {
+            super(encoding, "." + encoding, Deflater.BEST_SPEED);
+        }
+
+        @Override
+        protected Encoder newEncoder()
+        {
+            return new DeflateCompression().newEncoder();
+        }
+    }
+}
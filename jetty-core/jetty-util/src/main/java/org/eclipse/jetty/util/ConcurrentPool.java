@@ -24,6 +24,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Stream;
 
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
@@ -257,6 +258,68 @@ public class ConcurrentPool<P> implements Pool<P>, Dumpable
         return null;
     }
 
+    /**
+     * <p>Acquires the entry whose pooled object has the lowest score,
+     * rather than searching for an entry according to the {@link StrategyType}.</p>
+     * <p>If the entry with the lowest score cannot be acquired, for example
+     * because it has reached its max multiplex count, the entry with the
+     * next lowest score is tried, and so on.</p>
+     * <p>The scores are computed at every acquisition, so the entries are
+     * scanned multiple times; this method is therefore best suited to pools
+     * with a small {@link #getMaxSize() max size}.</p>
+     *
+     * @param score the function that computes the score of a pooled object
+     * @return an entry from the pool or null if none is available
+     */
+    public Entry<P> acquireLowest(ToLongFunction<P> score)
+    {
+        Objects.requireNonNull(score);
+        if (terminated)
+            return null;
+
+        @SuppressWarnings("unchecked")
+        Holder<P>[] holders = entries.toArray(new Holder[0]);
+        for (int tries = holders.length; tries-- > 0; )
+        {
+            int best = -1;
+            long bestScore = Long.MAX_VALUE;
+            for (int i = 0; i < holders.length; ++i)
+            {
+                Holder<P> holder = holders[i];
+                if (holder == null)
+                    continue;
+                Entry<P> entry = holder.getEntry();
+                P pooled = entry == null || entry.isReserved() || entry.isTerminated() ? null : entry.getPooled();
+                if (pooled == null)
+                {
+                    // Leaked entries are removed by acquire().
+                    holders[i] = null;
+                    continue;
+                }
+                long value = score.applyAsLong(pooled);
+                if (best < 0 || value < bestScore)
+                {
+                    best = i;
+                    bestScore = value;
+                }
+            }
+
+            if (best < 0)
+                return null;
+
+            ConcurrentEntry<P> entry = (ConcurrentEntry<P>)holders[best].getEntry();
+            holders[best] = null;
+            if (entry != null && entry.tryAcquire())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("returning entry {} with score {} for {}", entry, bestScore, this);
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
     private int startIndex(int size)
     {
         return switch (strategyType)
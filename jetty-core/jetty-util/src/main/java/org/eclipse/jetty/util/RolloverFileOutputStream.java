@@ -17,6 +17,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.time.ZonedDateTime;
@@ -265,7 +267,11 @@ public class RolloverFileOutputStream extends OutputStream
 
                 OutputStream oldOut = _out;
                 if (oldOut != null)
+                {
+                    // Do not leave a closed stream if the new one cannot be opened.
+                    _out = null;
                     oldOut.close();
+                }
 
                 if (!_append && file.exists())
                 {
@@ -349,7 +355,7 @@ public class RolloverFileOutputStream extends OutputStream
     {
         try (AutoLock l = _lock.lock())
         {
-            _out.write(b);
+            getOutputStream().write(b);
         }
     }
 
@@ -358,7 +364,7 @@ public class RolloverFileOutputStream extends OutputStream
     {
         try (AutoLock l = _lock.lock())
         {
-            _out.write(buf);
+            getOutputStream().write(buf);
         }
     }
 
@@ -367,7 +373,45 @@ public class RolloverFileOutputStream extends OutputStream
     {
         try (AutoLock l = _lock.lock())
         {
-            _out.write(buf, off, len);
+            getOutputStream().write(buf, off, len);
+        }
+    }
+
+    /**
+     * <p>Writes the remaining bytes of the given buffers to the current file, with gathering writes.</p>
+     *
+     * @param buffers the buffers to write
+     * @param offset the index of the first buffer to write
+     * @param length the number of buffers to write
+     * @throws IOException if the write fails
+     */
+    public void write(ByteBuffer[] buffers, int offset, int length) throws IOException
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            OutputStream out = getOutputStream();
+            int end = offset + length;
+            if (out instanceof FileOutputStream fileOut)
+            {
+                FileChannel channel = fileOut.getChannel();
+                if (!channel.isOpen())
+                    throw new IOException("Closed");
+                while (offset < end)
+                {
+                    channel.write(buffers, offset, end - offset);
+                    while (offset < end && !buffers[offset].hasRemaining())
+                    {
+                        ++offset;
+                    }
+                }
+            }
+            else
+            {
+                for (int i = offset; i < end; ++i)
+                {
+                    BufferUtil.writeTo(buffers[i], out);
+                }
+            }
         }
     }
 
@@ -376,10 +420,19 @@ public class RolloverFileOutputStream extends OutputStream
     {
         try (AutoLock l = _lock.lock())
         {
-            _out.flush();
+            getOutputStream().flush();
         }
     }
 
+    private OutputStream getOutputStream() throws IOException
+    {
+        assert _lock.isHeldByCurrentThread();
+        OutputStream out = _out;
+        if (out == null)
+            throw new IOException("Closed");
+        return out;
+    }
+
     @Override
     public void close() throws IOException
     {
@@ -387,7 +440,8 @@ public class RolloverFileOutputStream extends OutputStream
         {
             try
             {
-                _out.close();
+                if (_out != null)
+                    _out.close();
             }
             finally
             {
@@ -0,0 +1,313 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A lock-free, high dynamic range histogram of non-negative {@code long} samples.</p>
+ * <p>Samples are counted in log-linear buckets: values below {@code 2^precision} have
+ * their own bucket, while larger values share buckets whose width grows with the magnitude
+ * of the value, so that the relative error of any reported value is at most
+ * {@code 2^(1-precision)} (about 1.6% with the default precision).</p>
+ * <p>Recording a sample is a single atomic increment on a stripe of buckets selected
+ * by the recording thread, so that concurrent threads rarely contend.
+ * Stripes are allocated on first use.</p>
+ * <p>Percentiles are computed from a {@link Snapshot}, which can be taken at any time;
+ * {@link #snapshotAndReset()} takes an interval snapshot, where every sample is accounted
+ * in exactly one interval even when recorded concurrently with the snapshot.</p>
+ */
+public class HistogramStatistic
+{
+    /**
+     * The default number of bits of precision of the recorded values.
+     */
+    public static final int DEFAULT_PRECISION = 7;
+    private static final int MAX_STRIPES = 64;
+
+    private final int _precision;
+    private final int _subBuckets;
+    private final int _halfSubBuckets;
+    private final int _bucketCount;
+    private final AtomicReferenceArray<Stripe> _stripes;
+
+    /**
+     * Creates a histogram able to record any non-negative {@code long} value with the default precision.
+     */
+    public HistogramStatistic()
+    {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision the number of bits of precision of the recorded values, between 2 and 16
+     */
+    public HistogramStatistic(int precision)
+    {
+        this(precision, 0);
+    }
+
+    /**
+     * <p>Each stripe holds a counter per bucket, about 29 KiB with the default precision,
+     * so the number of stripes trades memory for less contention between recording threads.</p>
+     *
+     * @param precision the number of bits of precision of the recorded values, between 2 and 16
+     * @param stripes the maximum number of stripes, rounded up to a power of 2 and at most 64,
+     * or 0 for a default based on the number of processors
+     */
+    public HistogramStatistic(int precision, int stripes)
+    {
+        if (precision < 2 || precision > 16)
+            throw new IllegalArgumentException("Invalid precision " + precision);
+        if (stripes < 0)
+            throw new IllegalArgumentException("Invalid stripes " + stripes);
+        _precision = precision;
+        _subBuckets = 1 << precision;
+        _halfSubBuckets = _subBuckets >> 1;
+        // Linear buckets below 2^precision, then half of the sub-buckets for each larger power of 2.
+        _bucketCount = _subBuckets + (Long.SIZE - 1 - precision) * _halfSubBuckets;
+        if (stripes == 0)
+            stripes = Runtime.getRuntime().availableProcessors();
+        _stripes = new AtomicReferenceArray<>(Integer.highestOneBit(Math.min(MAX_STRIPES, stripes) * 2 - 1));
+    }
+
+    /**
+     * Get the number of bits of precision of the recorded values.
+     * @return the number of bits of precision
+     */
+    public int getPrecision()
+    {
+        return _precision;
+    }
+
+    /**
+     * Get the maximum number of stripes of buckets.
+     * @return the maximum number of stripes
+     */
+    public int getStripes()
+    {
+        return _stripes.length();
+    }
+
+    /**
+     * Records a sample, negative samples being recorded as zero.
+     *
+     * @param sample the value to record
+     */
+    public void record(long sample)
+    {
+        long value = Math.max(0, sample);
+        stripe().record(bucketOf(value), value);
+    }
+
+    /**
+     * Resets the histogram, discarding all the recorded samples.
+     */
+    public void reset()
+    {
+        snapshotAndReset();
+    }
+
+    /**
+     * Get a snapshot of the samples recorded since the last reset.
+     * @return a snapshot of the recorded samples
+     */
+    public Snapshot snapshot()
+    {
+        return snapshot(false);
+    }
+
+    /**
+     * Get a snapshot of the samples recorded since the last reset, and resets the histogram,
+     * so that the next snapshot only accounts for the samples recorded after this one.
+     * @return a snapshot of the recorded samples
+     */
+    public Snapshot snapshotAndReset()
+    {
+        return snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean reset)
+    {
+        long[] counts = new long[_bucketCount];
+        long max = 0;
+        long total = 0;
+        for (int s = 0; s < _stripes.length(); ++s)
+        {
+            Stripe stripe = _stripes.get(s);
+            if (stripe == null)
+                continue;
+            for (int b = 0; b < _bucketCount; ++b)
+            {
+                counts[b] += reset ? stripe._counts.getAndSet(b, 0) : stripe._counts.get(b);
+            }
+            max = Math.max(max, reset ? stripe._max.getAndSet(0, 0) : stripe._max.get(0));
+            total += reset ? stripe._max.getAndSet(1, 0) : stripe._max.get(1);
+        }
+        return new Snapshot(counts, max, total);
+    }
+
+    private Stripe stripe()
+    {
+        long id = Thread.currentThread().getId();
+        int index = (int)((id * 0x9E3779B97F4A7C15L) >>> 32) & (_stripes.length() - 1);
+        Stripe stripe = _stripes.get(index);
+        if (stripe == null)
+        {
+            stripe = new Stripe(_bucketCount);
+            if (!_stripes.compareAndSet(index, null, stripe))
+                stripe = _stripes.get(index);
+        }
+        return stripe;
+    }
+
+    private int bucketOf(long value)
+    {
+        if (value < _subBuckets)
+            return (int)value;
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - _precision;
+        int top = (int)(value >>> shift);
+        return _subBuckets + (shift - 1) * _halfSubBuckets + (top - _halfSubBuckets);
+    }
+
+    private long highestValueOf(int bucket)
+    {
+        if (bucket < _subBuckets)
+            return bucket;
+        int shift = (bucket - _subBuckets) / _halfSubBuckets + 1;
+        long top = (bucket - _subBuckets) % _halfSubBuckets + _halfSubBuckets;
+        long highest = ((top + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s}", getClass().getSimpleName(), hashCode(), snapshot());
+    }
+
+    private static class Stripe
+    {
+        private final AtomicLongArray _counts;
+        // Index 0 holds the max, index 1 the total of the samples.
+        private final AtomicLongArray _max = new AtomicLongArray(2);
+
+        private Stripe(int buckets)
+        {
+            _counts = new AtomicLongArray(buckets);
+        }
+
+        private void record(int bucket, long value)
+        {
+            _counts.incrementAndGet(bucket);
+            _max.addAndGet(1, value);
+            long max = _max.get(0);
+            while (value > max && !_max.compareAndSet(0, max, value))
+            {
+                max = _max.get(0);
+            }
+        }
+    }
+
+    /**
+     * <p>An immutable view of the samples of a {@link HistogramStatistic}.</p>
+     */
+    public class Snapshot
+    {
+        private final long[] _counts;
+        private final long _count;
+        private final long _max;
+        private final long _total;
+
+        private Snapshot(long[] counts, long max, long total)
+        {
+            long count = 0;
+            for (long c : counts)
+            {
+                count += c;
+            }
+            _counts = counts;
+            _count = count;
+            _max = max;
+            _total = total;
+        }
+
+        /**
+         * Get the number of samples.
+         * @return the number of samples
+         */
+        public long getCount()
+        {
+            return _count;
+        }
+
+        /**
+         * Get the maximum sample value.
+         * @return the maximum sample value, or 0 if there are no samples
+         */
+        public long getMax()
+        {
+            return _max;
+        }
+
+        /**
+         * Get the average sample value.
+         * @return the average sample value, or 0 if there are no samples
+         */
+        public double getMean()
+        {
+            return _count == 0 ? 0.0D : (double)_total / _count;
+        }
+
+        /**
+         * <p>Get the value at the given percentile, that is the smallest value
+         * such that the given percentage of the samples are less than or equal to it.</p>
+         * <p>The value returned is the highest value of the bucket of the percentile,
+         * capped to the maximum sample value.</p>
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the value at the given percentile, or 0 if there are no samples
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("Invalid percentile " + percentile);
+            if (_count == 0)
+                return 0;
+            long rank = Math.max(1, (long)Math.ceil(_count * percentile / 100.0D));
+            long seen = 0;
+            for (int b = 0; b < _counts.length; ++b)
+            {
+                seen += _counts[b];
+                if (seen >= rank)
+                    return Math.min(highestValueOf(b), _max);
+            }
+            return _max;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("count=%d,mean=%.1f,p50=%d,p90=%d,p99=%d,p999=%d,max=%d",
+                getCount(),
+                getMean(),
+                getValueAtPercentile(50),
+                getValueAtPercentile(90),
+                getValueAtPercentile(99),
+                getValueAtPercentile(99.9),
+                getMax());
+        }
+    }
+}
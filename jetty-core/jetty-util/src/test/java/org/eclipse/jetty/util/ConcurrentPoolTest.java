@@ -614,6 +614,34 @@ public class ConcurrentPoolTest
         assertThat(e4.getPooled().get(), greaterThan(10));
     }
 
+    @Test
+    public void testAcquireWithScore()
+    {
+        ConcurrentPool<AtomicInteger> pool = new ConcurrentPool<>(FIRST, 3, pooled -> 2);
+
+        Pool.Entry<AtomicInteger> e1 = pool.reserve();
+        e1.enable(new AtomicInteger(30), false);
+        Pool.Entry<AtomicInteger> e2 = pool.reserve();
+        e2.enable(new AtomicInteger(10), false);
+        Pool.Entry<AtomicInteger> e3 = pool.reserve();
+        e3.enable(new AtomicInteger(20), false);
+
+        // The entry with the lowest score is acquired until it reaches the max multiplex.
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e2));
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e2));
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e3));
+
+        // Scores are computed at every acquisition.
+        e1.getPooled().set(0);
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e1));
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e1));
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e3));
+        assertNull(pool.acquireLowest(AtomicInteger::get));
+
+        assertThat(e2.release(), is(true));
+        assertThat(pool.acquireLowest(AtomicInteger::get), sameInstance(e2));
+    }
+
     private void waitForGC(ConcurrentPool<String> pool, int size)
     {
         await().atMost(5, TimeUnit.SECONDS).until(() ->
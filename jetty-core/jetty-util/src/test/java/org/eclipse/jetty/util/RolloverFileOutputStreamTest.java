@@ -15,6 +15,7 @@ package org.eclipse.jetty.util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
@@ -40,6 +41,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @ExtendWith(WorkDirExtension.class)
 public class RolloverFileOutputStreamTest
@@ -384,6 +386,23 @@ public class RolloverFileOutputStreamTest
         }
     }
 
+    @Test
+    public void testWriteAfterClose() throws Exception
+    {
+        Path testPath = workDir.getEmptyPathDir();
+        String templateString = testPath.resolve("test-rofos-yyyy_mm_dd.log").toAbsolutePath().toString();
+
+        RolloverFileOutputStream rofos = new RolloverFileOutputStream(templateString);
+        rofos.write("BEFORE".getBytes());
+        rofos.close();
+
+        assertThrows(IOException.class, () -> rofos.write('X'));
+        assertThrows(IOException.class, () -> rofos.write("AFTER".getBytes()));
+        assertThrows(IOException.class, () -> rofos.write("AFTER".getBytes(), 0, 5));
+        assertThrows(IOException.class, () -> rofos.write(new ByteBuffer[]{BufferUtil.toBuffer("AFTER")}, 0, 1));
+        assertThrows(IOException.class, rofos::flush);
+    }
+
     private String readPath(Path path) throws IOException
     {
         try (BufferedReader reader = Files.newBufferedReader(path))
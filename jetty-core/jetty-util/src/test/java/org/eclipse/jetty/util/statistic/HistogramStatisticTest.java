@@ -0,0 +1,157 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.statistic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HistogramStatisticTest
+{
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        for (int i = 1; i <= 100; ++i)
+        {
+            histogram.record(i);
+        }
+
+        HistogramStatistic.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100, snapshot.getMax());
+        assertEquals(50.5D, snapshot.getMean());
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(50, snapshot.getValueAtPercentile(50));
+        assertEquals(90, snapshot.getValueAtPercentile(90));
+        assertEquals(99, snapshot.getValueAtPercentile(99));
+        assertEquals(100, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testRelativeError()
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        long unit = TimeUnit.MICROSECONDS.toNanos(1);
+        for (int i = 1; i <= 10_000; ++i)
+        {
+            histogram.record(i * unit);
+        }
+
+        HistogramStatistic.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(10_000 * unit, snapshot.getMax());
+        double error = 1.0D / 64;
+        for (double percentile : new double[]{50, 90, 99, 99.9})
+        {
+            double expected = percentile * 100 * unit;
+            assertThat((double)snapshot.getValueAtPercentile(percentile), closeTo(expected, expected * error));
+        }
+        assertEquals(10_000 * unit, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testExtremeValues()
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+
+        HistogramStatistic.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testSnapshotAndReset()
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        histogram.record(10);
+        histogram.record(20);
+
+        HistogramStatistic.Snapshot interval = histogram.snapshotAndReset();
+        assertEquals(2, interval.getCount());
+        assertEquals(20, interval.getMax());
+
+        histogram.record(5);
+        interval = histogram.snapshotAndReset();
+        assertEquals(1, interval.getCount());
+        assertEquals(5, interval.getMax());
+
+        interval = histogram.snapshot();
+        assertEquals(0, interval.getCount());
+        assertEquals(0, interval.getMax());
+        assertEquals(0, interval.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testStripes()
+    {
+        assertEquals(1, new HistogramStatistic(HistogramStatistic.DEFAULT_PRECISION, 1).getStripes());
+        assertEquals(4, new HistogramStatistic(HistogramStatistic.DEFAULT_PRECISION, 3).getStripes());
+        assertEquals(64, new HistogramStatistic(HistogramStatistic.DEFAULT_PRECISION, 1000).getStripes());
+
+        HistogramStatistic histogram = new HistogramStatistic(HistogramStatistic.DEFAULT_PRECISION, 1);
+        for (int i = 1; i <= 100; ++i)
+        {
+            histogram.record(i);
+        }
+        HistogramStatistic.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100, snapshot.getMax());
+        assertEquals(50, snapshot.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testConcurrentRecordAndSnapshot() throws Exception
+    {
+        HistogramStatistic histogram = new HistogramStatistic();
+        int threads = 8;
+        int samples = 100_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t)
+        {
+            Thread worker = new Thread(() ->
+            {
+                for (int i = 0; i < samples; ++i)
+                {
+                    histogram.record(i);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        long count = 0;
+        while (workers.stream().anyMatch(Thread::isAlive))
+        {
+            count += histogram.snapshotAndReset().getCount();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        count += histogram.snapshotAndReset().getCount();
+
+        // Every sample is accounted in exactly one interval.
+        assertEquals((long)threads * samples, count);
+    }
+}
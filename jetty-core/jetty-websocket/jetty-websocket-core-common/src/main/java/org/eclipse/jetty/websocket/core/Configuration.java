@@ -72,8 +72,8 @@ public interface Configuration
     /**
      * Get the maximum number of data frames allowed to be waiting to be sent at any one time.
      * The default value is -1, this indicates there is no limit on how many frames can be
-     * queued to be sent by the implementation. If the limit is exceeded, subsequent frames
-     * sent are failed with a {@link java.nio.channels.WritePendingException} but
+     * queued to be sent by the implementation. If the limit is exceeded, the
+     * {@link #getOutgoingOverflowPolicy() outgoing overflow policy} is applied, and
      * the connection is not failed and will remain open.
      *
      * @return the max number of frames.
@@ -83,14 +83,50 @@ public interface Configuration
     /**
      * Set the maximum number of data frames allowed to be waiting to be sent at any one time.
      * The default value is -1, this indicates there is no limit on how many frames can be
-     * queued to be sent by the implementation. If the limit is exceeded, subsequent frames
-     * sent are failed with a {@link java.nio.channels.WritePendingException} but
+     * queued to be sent by the implementation. If the limit is exceeded, the
+     * {@link #getOutgoingOverflowPolicy() outgoing overflow policy} is applied, and
      * the connection is not failed and will remain open.
      *
      * @param maxOutgoingFrames the max number of frames.
      */
     void setMaxOutgoingFrames(int maxOutgoingFrames);
 
+    /**
+     * Get the maximum number of payload bytes of data frames allowed to be waiting to be sent
+     * at any one time. The default value is -1, this indicates there is no limit on how many
+     * bytes can be queued to be sent by the implementation. If the limit is exceeded, the
+     * {@link #getOutgoingOverflowPolicy() outgoing overflow policy} is applied.
+     *
+     * @return the max number of bytes.
+     */
+    long getMaxOutgoingBytes();
+
+    /**
+     * Set the maximum number of payload bytes of data frames allowed to be waiting to be sent
+     * at any one time. The default value is -1, this indicates there is no limit on how many
+     * bytes can be queued to be sent by the implementation.
+     *
+     * @param maxOutgoingBytes the max number of bytes.
+     */
+    void setMaxOutgoingBytes(long maxOutgoingBytes);
+
+    /**
+     * Get the policy applied when the {@link #getMaxOutgoingFrames() max outgoing frames}
+     * or the {@link #getMaxOutgoingBytes() max outgoing bytes} are exceeded.
+     * The default is {@link OverflowPolicy#FAIL}.
+     *
+     * @return the outgoing overflow policy.
+     */
+    OverflowPolicy getOutgoingOverflowPolicy();
+
+    /**
+     * Set the policy applied when the {@link #getMaxOutgoingFrames() max outgoing frames}
+     * or the {@link #getMaxOutgoingBytes() max outgoing bytes} are exceeded.
+     *
+     * @param overflowPolicy the outgoing overflow policy.
+     */
+    void setOutgoingOverflowPolicy(OverflowPolicy overflowPolicy);
+
     interface Customizer
     {
         void customize(Configuration configurable);
@@ -107,6 +143,8 @@ public interface Configuration
         private Long maxBinaryMessageSize;
         private Long maxTextMessageSize;
         private Integer maxOutgoingFrames;
+        private Long maxOutgoingBytes;
+        private OverflowPolicy outgoingOverflowPolicy;
 
         @Override
         public Duration getIdleTimeout()
@@ -216,6 +254,30 @@ public interface Configuration
             this.maxOutgoingFrames = maxOutgoingFrames;
         }
 
+        @Override
+        public long getMaxOutgoingBytes()
+        {
+            return maxOutgoingBytes == null ? WebSocketConstants.DEFAULT_MAX_OUTGOING_BYTES : maxOutgoingBytes;
+        }
+
+        @Override
+        public void setMaxOutgoingBytes(long maxOutgoingBytes)
+        {
+            this.maxOutgoingBytes = maxOutgoingBytes;
+        }
+
+        @Override
+        public OverflowPolicy getOutgoingOverflowPolicy()
+        {
+            return outgoingOverflowPolicy == null ? WebSocketConstants.DEFAULT_OUTGOING_OVERFLOW_POLICY : outgoingOverflowPolicy;
+        }
+
+        @Override
+        public void setOutgoingOverflowPolicy(OverflowPolicy outgoingOverflowPolicy)
+        {
+            this.outgoingOverflowPolicy = outgoingOverflowPolicy;
+        }
+
         @Override
         public void customize(Configuration configurable)
         {
@@ -237,16 +299,21 @@ public interface Configuration
                 configurable.setMaxTextMessageSize(maxTextMessageSize);
             if (maxOutgoingFrames != null)
                 configurable.setMaxOutgoingFrames(maxOutgoingFrames);
+            if (maxOutgoingBytes != null)
+                configurable.setMaxOutgoingBytes(maxOutgoingBytes);
+            if (outgoingOverflowPolicy != null)
+                configurable.setOutgoingOverflowPolicy(outgoingOverflowPolicy);
         }
 
         @Override
         public String toString()
         {
             return String.format("%s@%x{idleTimeout=%s, writeTimeout=%s, autoFragment=%s, maxFrameSize=%s, " +
-                    "inputBufferSize=%s, outputBufferSize=%s, maxBinaryMessageSize=%s, maxTextMessageSize=%s, maxOutgoingFrames=%s}",
+                    "inputBufferSize=%s, outputBufferSize=%s, maxBinaryMessageSize=%s, maxTextMessageSize=%s, maxOutgoingFrames=%s, " +
+                    "maxOutgoingBytes=%s, outgoingOverflowPolicy=%s}",
                 getClass().getSimpleName(), hashCode(),
                 idleTimeout, writeTimeout, autoFragment, maxFrameSize, inputBufferSize, outputBufferSize,
-                maxBinaryMessageSize, maxTextMessageSize, maxOutgoingFrames);
+                maxBinaryMessageSize, maxTextMessageSize, maxOutgoingFrames, maxOutgoingBytes, outgoingOverflowPolicy);
         }
     }
 }
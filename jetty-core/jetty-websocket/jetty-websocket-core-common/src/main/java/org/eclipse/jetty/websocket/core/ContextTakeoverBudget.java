@@ -0,0 +1,127 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A memory budget for the compression contexts that {@code permessage-deflate}
+ * keeps between messages when context takeover is negotiated.</p>
+ * <p>A {@link java.util.zip.Deflater} or {@link java.util.zip.Inflater} that takes over
+ * its context is held by the session for its whole lifetime, which is about 300 KiB
+ * of native zlib memory per connection.</p>
+ * <p>A sender is always allowed to reset its compression context between messages, so
+ * when the budget is exhausted the outgoing context is reset at the end of each message,
+ * as if {@code server_no_context_takeover} was negotiated, until the session can reserve
+ * it again. The incoming context cannot be reset without the agreement of the remote peer,
+ * so it is always reserved, reducing the budget left for the outgoing contexts.</p>
+ */
+@ManagedObject("Memory budget for permessage-deflate context takeover")
+public class ContextTakeoverBudget
+{
+    /**
+     * The estimated native memory of a {@link java.util.zip.Deflater} with the zlib defaults
+     * of 15 window bits and memory level 8.
+     */
+    public static final long DEFLATER_MEMORY = (1 << 17) + (1 << 17) + 6 * 1024;
+
+    /**
+     * The estimated native memory of an {@link java.util.zip.Inflater} with 15 window bits.
+     */
+    public static final long INFLATER_MEMORY = (1 << 15) + 7 * 1024;
+
+    private final AtomicLong usedMemory = new AtomicLong();
+    private final LongAdder resets = new LongAdder();
+    private volatile long maxMemory = -1;
+
+    @ManagedAttribute("The max native memory of the compression contexts taken over, or -1 for no limit")
+    public long getMaxMemory()
+    {
+        return maxMemory;
+    }
+
+    public void setMaxMemory(long maxMemory)
+    {
+        this.maxMemory = maxMemory;
+    }
+
+    @ManagedAttribute(value = "The estimated native memory of the compression contexts taken over", readonly = true)
+    public long getUsedMemory()
+    {
+        return usedMemory.get();
+    }
+
+    @ManagedAttribute(value = "The number of outgoing contexts reset because the budget was exhausted", readonly = true)
+    public long getContextResets()
+    {
+        return resets.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        resets.reset();
+    }
+
+    /**
+     * <p>Reserves the given memory if it fits in the budget.</p>
+     *
+     * @param memory the memory to reserve
+     * @return whether the memory was reserved, otherwise the context must be reset
+     */
+    public boolean tryReserve(long memory)
+    {
+        while (true)
+        {
+            long max = maxMemory;
+            long used = usedMemory.get();
+            if (max >= 0 && used + memory > max)
+            {
+                resets.increment();
+                return false;
+            }
+            if (usedMemory.compareAndSet(used, used + memory))
+                return true;
+        }
+    }
+
+    /**
+     * <p>Reserves the given memory regardless of the budget, for the contexts that cannot be reset.</p>
+     *
+     * @param memory the memory to reserve
+     */
+    public void reserve(long memory)
+    {
+        usedMemory.addAndGet(memory);
+    }
+
+    /**
+     * @param memory the memory previously reserved to release
+     */
+    public void release(long memory)
+    {
+        usedMemory.addAndGet(-memory);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{used=%d,max=%d}", getClass().getSimpleName(), hashCode(), getUsedMemory(), getMaxMemory());
+    }
+}
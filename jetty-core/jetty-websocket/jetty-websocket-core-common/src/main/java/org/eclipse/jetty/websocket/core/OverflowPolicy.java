@@ -0,0 +1,92 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * <p>The policy applied when a data frame is sent while the outgoing queue of a session
+ * already holds the maximum number of frames or bytes allowed by
+ * {@link Configuration#getMaxOutgoingFrames()} and {@link Configuration#getMaxOutgoingBytes()}.</p>
+ * <p>Only whole, uncompressed, {@link OpCode#TEXT TEXT} or {@link OpCode#BINARY BINARY}
+ * frames that are still queued can be dropped, as dropping a fragment or a compressed
+ * frame would corrupt the stream of frames seen by the remote peer.
+ * The callback of a dropped frame is failed with a
+ * {@link org.eclipse.jetty.websocket.core.exception.WebSocketWriteDroppedException}.</p>
+ */
+public class OverflowPolicy
+{
+    /**
+     * The new frame is failed with a {@link java.nio.channels.WritePendingException},
+     * but the connection remains open.
+     */
+    public static final OverflowPolicy FAIL = new OverflowPolicy(Type.FAIL, null);
+
+    /**
+     * The oldest droppable queued frames are dropped to make room for the new frame.
+     * If the new frame would not fit even dropping all the droppable frames, no frame
+     * is dropped and the new frame is failed as with {@link #FAIL}.
+     */
+    public static final OverflowPolicy DROP_OLDEST = new OverflowPolicy(Type.DROP_OLDEST, null);
+
+    /**
+     * <p>Returns a policy that, when the queue limits are exceeded, replaces a queued frame
+     * with the new frame when both have the same non-null key, so that a slow consumer only
+     * receives the latest value for each key, for example the latest quote of a ticker.</p>
+     * <p>If the queue is still over its limits after the replacement, the oldest droppable
+     * queued frames are dropped as with {@link #DROP_OLDEST}.</p>
+     *
+     * @param keyFunction the function computing the conflation key of a frame, may return null
+     * @return the conflating policy
+     */
+    public static OverflowPolicy conflate(Function<Frame, Object> keyFunction)
+    {
+        return new OverflowPolicy(Type.CONFLATE, Objects.requireNonNull(keyFunction));
+    }
+
+    public enum Type
+    {
+        FAIL, DROP_OLDEST, CONFLATE
+    }
+
+    private final Type type;
+    private final Function<Frame, Object> keyFunction;
+
+    private OverflowPolicy(Type type, Function<Frame, Object> keyFunction)
+    {
+        this.type = type;
+        this.keyFunction = keyFunction;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * @param frame the frame to compute the conflation key of
+     * @return the conflation key of the frame, or null if the frame must not be conflated
+     */
+    public Object getKey(Frame frame)
+    {
+        return keyFunction == null ? null : keyFunction.apply(frame);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), type);
+    }
+}
@@ -0,0 +1,42 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A whole message data {@link Frame} whose payload has already been
+ * encoded by the outgoing {@link Extension}s of the sessions it is sent to.</p>
+ * <p>Extensions that transform the payload, such as {@code permessage-deflate},
+ * forward pre-encoded frames without transforming them again, so that the same
+ * encoded payload can be shared by many sessions.
+ * A pre-encoded frame must only be sent to sessions whose extensions produce the
+ * same encoding for every message, for example {@code permessage-deflate} with
+ * {@code server_no_context_takeover}.</p>
+ */
+public class PreEncodedFrame extends Frame
+{
+    /**
+     * @param opCode the opcode of the message, either {@link OpCode#TEXT} or {@link OpCode#BINARY}
+     * @param rsv1 whether the RSV1 bit is set, as it is for compressed messages
+     * @param payload the encoded payload
+     */
+    public PreEncodedFrame(byte opCode, boolean rsv1, ByteBuffer payload)
+    {
+        super(opCode, true, payload);
+        if (!OpCode.isDataFrame(opCode) || opCode == OpCode.CONTINUATION)
+            throw new IllegalArgumentException("Invalid opcode " + OpCode.name(opCode));
+        setRsv1(rsv1);
+    }
+}
@@ -13,12 +13,20 @@
 
 package org.eclipse.jetty.websocket.core;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.zip.Deflater;
 
 import org.eclipse.jetty.io.ArrayByteBufferPool;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.DecoratedObjectFactory;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.compression.CompressionPool;
 import org.eclipse.jetty.util.compression.DeflaterPool;
@@ -29,8 +37,13 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  * A collection of components which are the resources needed for websockets such as
  * {@link ByteBufferPool}, {@link WebSocketExtensionRegistry}, and {@link DecoratedObjectFactory}.
  */
+@ManagedObject("WebSocket components and outgoing queues of the open connections")
 public class WebSocketComponents extends ContainerLifeCycle
 {
+    private final Set<WebSocketConnection> _connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder _closedDroppedFrames = new LongAdder();
+    private final Map<String, byte[]> _deflateDictionaries = new ConcurrentHashMap<>();
+    private final ContextTakeoverBudget _contextTakeoverBudget = new ContextTakeoverBudget();
     private final DecoratedObjectFactory _objectFactory;
     private final WebSocketExtensionRegistry _extensionRegistry;
     private final Executor _executor;
@@ -75,6 +88,7 @@ public class WebSocketComponents extends ContainerLifeCycle
         installBean(_extensionRegistry);
         installBean(_objectFactory);
         installBean(_executor);
+        installBean(_contextTakeoverBudget);
     }
 
     public ByteBufferPool getByteBufferPool()
@@ -106,4 +120,85 @@ public class WebSocketComponents extends ContainerLifeCycle
     {
         return _deflaterPool;
     }
+
+    /**
+     * @return the memory budget of the {@code permessage-deflate} contexts taken over between messages
+     */
+    public ContextTakeoverBudget getContextTakeoverBudget()
+    {
+        return _contextTakeoverBudget;
+    }
+
+    /**
+     * <p>Registers a preset dictionary that {@code permessage-deflate} can negotiate with the
+     * {@code jetty_dictionary} extension parameter.</p>
+     * <p>The dictionary primes the compression context of each message with content common to
+     * the messages of a known schema, such as the JSON field names, so that small messages
+     * compress well without taking over the context between messages. Both peers must register
+     * the same dictionary under the same name.</p>
+     *
+     * @param name the name of the dictionary in the extension parameter
+     * @param dictionary the dictionary bytes, with the most common strings at the end
+     */
+    public void addDeflateDictionary(String name, byte[] dictionary)
+    {
+        _deflateDictionaries.put(Objects.requireNonNull(name), Objects.requireNonNull(dictionary));
+    }
+
+    /**
+     * @param name the name of the dictionary
+     * @return the preset dictionary registered with the given name, or null
+     */
+    public byte[] getDeflateDictionary(String name)
+    {
+        return _deflateDictionaries.get(name);
+    }
+
+    void addConnection(WebSocketConnection connection)
+    {
+        _connections.add(connection);
+    }
+
+    void removeConnection(WebSocketConnection connection)
+    {
+        if (_connections.remove(connection))
+            _closedDroppedFrames.add(connection.getOutgoingDroppedFrames());
+    }
+
+    @ManagedAttribute(value = "The number of open WebSocket connections", readonly = true)
+    public int getConnectionCount()
+    {
+        return _connections.size();
+    }
+
+    @ManagedAttribute(value = "The number of outgoing frames waiting to be written, over all connections", readonly = true)
+    public long getOutgoingQueueSize()
+    {
+        return _connections.stream().mapToLong(WebSocketConnection::getOutgoingQueueSize).sum();
+    }
+
+    @ManagedAttribute(value = "The number of outgoing bytes waiting to be written, over all connections", readonly = true)
+    public long getOutgoingQueueBytes()
+    {
+        return _connections.stream().mapToLong(WebSocketConnection::getOutgoingQueueBytes).sum();
+    }
+
+    @ManagedAttribute(value = "The number of outgoing frames dropped by the overflow policies", readonly = true)
+    public long getOutgoingDroppedFrames()
+    {
+        return _closedDroppedFrames.longValue() + _connections.stream().mapToLong(WebSocketConnection::getOutgoingDroppedFrames).sum();
+    }
+
+    @ManagedAttribute(value = "The outgoing queue of each connection with frames waiting to be written", readonly = true)
+    public List<String> getOutgoingQueues()
+    {
+        return _connections.stream()
+            .filter(connection -> connection.getOutgoingQueueSize() > 0)
+            .map(connection -> String.format("%s{frames=%d,bytes=%d,dropped=%d}",
+                connection.getEndPoint().getRemoteSocketAddress(),
+                connection.getOutgoingQueueSize(),
+                connection.getOutgoingQueueBytes(),
+                connection.getOutgoingDroppedFrames()))
+            .toList();
+    }
 }
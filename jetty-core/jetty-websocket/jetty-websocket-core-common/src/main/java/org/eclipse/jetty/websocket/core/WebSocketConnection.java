@@ -184,6 +184,19 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
         flusher.setIdleTimeout(writeTimeout);
     }
 
+    /**
+     * Set the limits of the outgoing frames waiting to be written and the policy to apply when they are exceeded.
+     *
+     * @param maxFrames the max number of queued data frames, or -1 for no limit
+     * @param maxBytes the max number of payload bytes of the queued data frames, or -1 for no limit
+     * @param overflowPolicy the policy to apply when the limits are exceeded
+     * @see Configuration#getOutgoingOverflowPolicy()
+     */
+    public void setOutgoingLimits(int maxFrames, long maxBytes, OverflowPolicy overflowPolicy)
+    {
+        flusher.setQueueLimits(maxFrames, maxBytes, overflowPolicy);
+    }
+
     public void setUseInputDirectByteBuffers(boolean useInputDirectByteBuffers)
     {
         this.useInputDirectByteBuffers = useInputDirectByteBuffers;
@@ -208,6 +221,7 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
         if (!coreSession.isClosed())
             coreSession.onEof();
         flusher.onClose(cause);
+        coreSession.getWebSocketComponents().removeConnection(this);
 
         try (AutoLock ignored = lock.lock())
         {
@@ -528,6 +542,7 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
 
         // Open Session
         super.onOpen();
+        coreSession.getWebSocketComponents().addConnection(this);
         coreSession.onOpen();
         if (moreDemand())
             fillAndParse();
@@ -606,6 +621,30 @@ public class WebSocketConnection extends AbstractConnection implements Connectio
         return flusher.getBytesOut();
     }
 
+    /**
+     * @return the number of frames waiting to be written
+     */
+    public int getOutgoingQueueSize()
+    {
+        return flusher.getQueueSize();
+    }
+
+    /**
+     * @return the number of payload bytes of the data frames waiting to be written
+     */
+    public long getOutgoingQueueBytes()
+    {
+        return flusher.getQueueBytes();
+    }
+
+    /**
+     * @return the number of outgoing frames dropped by the {@link OverflowPolicy}
+     */
+    public long getOutgoingDroppedFrames()
+    {
+        return flusher.getDroppedFrames();
+    }
+
     /**
      * Enqueue a Frame to be sent.
      *
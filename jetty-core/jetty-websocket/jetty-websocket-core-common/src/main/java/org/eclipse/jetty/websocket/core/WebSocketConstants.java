@@ -52,6 +52,16 @@ public final class WebSocketConstants
      */
     public static final int DEFAULT_MAX_OUTGOING_FRAMES = -1;
 
+    /**
+     * The default maximum number of payload bytes of data frames allowed to be waiting to be sent at any one time.
+     */
+    public static final long DEFAULT_MAX_OUTGOING_BYTES = -1;
+
+    /**
+     * The default policy applied when the outgoing frames or bytes limits are exceeded.
+     */
+    public static final OverflowPolicy DEFAULT_OUTGOING_OVERFLOW_POLICY = OverflowPolicy.FAIL;
+
     /**
      * Whether frames are automatically fragmented to respect the maximum frame size.
      */
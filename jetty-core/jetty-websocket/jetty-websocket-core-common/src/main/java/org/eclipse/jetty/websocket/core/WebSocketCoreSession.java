@@ -22,6 +22,7 @@ import java.nio.channels.WritePendingException;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -58,8 +59,10 @@ public class WebSocketCoreSession implements CoreSession, Dumpable
     private final Flusher flusher = new Flusher(this);
     private final ExtensionStack extensionStack;
 
-    private int maxOutgoingFrames = -1;
+    private int maxOutgoingFrames = WebSocketConstants.DEFAULT_MAX_OUTGOING_FRAMES;
     private final AtomicInteger numOutgoingFrames = new AtomicInteger();
+    private long maxOutgoingBytes = WebSocketConstants.DEFAULT_MAX_OUTGOING_BYTES;
+    private OverflowPolicy outgoingOverflowPolicy = WebSocketConstants.DEFAULT_OUTGOING_OVERFLOW_POLICY;
 
     private WebSocketConnection connection;
     private boolean autoFragment = WebSocketConstants.DEFAULT_AUTO_FRAGMENT;
@@ -190,6 +193,7 @@ public class WebSocketCoreSession implements CoreSession, Dumpable
     {
         connection.getEndPoint().setIdleTimeout(idleTimeout.toMillis());
         connection.setWriteTimeout(writeTimeout.toMillis());
+        connection.setOutgoingLimits(maxOutgoingFrames, maxOutgoingBytes, outgoingOverflowPolicy);
         extensionStack.setLastDemand(connection::demand);
         this.connection = connection;
     }
@@ -466,7 +470,8 @@ public class WebSocketCoreSession implements CoreSession, Dumpable
     @Override
     public void sendFrame(Frame frame, Callback callback, boolean batch)
     {
-        if (maxOutgoingFrames > 0 && frame.isDataFrame())
+        // Other policies are applied by the flusher to the queued frames, which are the only ones that can be dropped.
+        if (maxOutgoingFrames > 0 && frame.isDataFrame() && outgoingOverflowPolicy.getType() == OverflowPolicy.Type.FAIL)
         {
             // Increase the number of outgoing frames, will be decremented when callback is completed.
             callback = Callback.from(callback, numOutgoingFrames::decrementAndGet);
@@ -626,6 +631,36 @@ public class WebSocketCoreSession implements CoreSession, Dumpable
     public void setMaxOutgoingFrames(int maxOutgoingFrames)
     {
         this.maxOutgoingFrames = maxOutgoingFrames;
+        if (connection != null)
+            connection.setOutgoingLimits(maxOutgoingFrames, maxOutgoingBytes, outgoingOverflowPolicy);
+    }
+
+    @Override
+    public long getMaxOutgoingBytes()
+    {
+        return maxOutgoingBytes;
+    }
+
+    @Override
+    public void setMaxOutgoingBytes(long maxOutgoingBytes)
+    {
+        this.maxOutgoingBytes = maxOutgoingBytes;
+        if (connection != null)
+            connection.setOutgoingLimits(maxOutgoingFrames, maxOutgoingBytes, outgoingOverflowPolicy);
+    }
+
+    @Override
+    public OverflowPolicy getOutgoingOverflowPolicy()
+    {
+        return outgoingOverflowPolicy;
+    }
+
+    @Override
+    public void setOutgoingOverflowPolicy(OverflowPolicy outgoingOverflowPolicy)
+    {
+        this.outgoingOverflowPolicy = Objects.requireNonNull(outgoingOverflowPolicy);
+        if (connection != null)
+            connection.setOutgoingLimits(maxOutgoingFrames, maxOutgoingBytes, outgoingOverflowPolicy);
     }
 
     private class IncomingAdaptor implements IncomingFrames
@@ -0,0 +1,28 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.exception;
+
+/**
+ * Exception to indicate that a queued frame was dropped by the
+ * {@link org.eclipse.jetty.websocket.core.OverflowPolicy} of a slow session.
+ */
+public class WebSocketWriteDroppedException extends WebSocketException
+{
+    private static final long serialVersionUID = 4376104577123486316L;
+
+    public WebSocketWriteDroppedException(String message)
+    {
+        super(message);
+    }
+}
@@ -15,6 +15,7 @@ package org.eclipse.jetty.websocket.core.internal;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritePendingException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -37,7 +38,9 @@ import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.websocket.core.CloseStatus;
 import org.eclipse.jetty.websocket.core.Frame;
 import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.OverflowPolicy;
 import org.eclipse.jetty.websocket.core.exception.WebSocketException;
+import org.eclipse.jetty.websocket.core.exception.WebSocketWriteDroppedException;
 import org.eclipse.jetty.websocket.core.exception.WebSocketWriteTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +62,7 @@ public class FrameFlusher extends IteratingCallback
     private final AutoLock lock = new AutoLock();
     private final LongAdder messagesOut = new LongAdder();
     private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
     private final ByteBufferPool bufferPool;
     private final EndPoint endPoint;
     private final int bufferSize;
@@ -78,6 +82,11 @@ public class FrameFlusher extends IteratingCallback
     private Throwable closedCause;
     private long idleTimeout;
     private boolean useDirectByteBuffers;
+    private int queueFrames;
+    private long queueBytes;
+    private int maxQueueFrames = -1;
+    private long maxQueueBytes = -1;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.FAIL;
 
     public FrameFlusher(ByteBufferPool bufferPool, Scheduler scheduler, Generator generator, EndPoint endPoint, int bufferSize, int maxGather)
     {
@@ -103,6 +112,26 @@ public class FrameFlusher extends IteratingCallback
         this.useDirectByteBuffers = useDirectByteBuffers;
     }
 
+    /**
+     * <p>Sets the limits of the data frames waiting in the queue to be written,
+     * and the policy to apply when a new data frame would exceed them.</p>
+     * <p>The bytes limit does not apply to a frame enqueued when there are no data frames
+     * in the queue, so that frames larger than the limit can still be sent.</p>
+     *
+     * @param maxQueueFrames the max number of queued data frames, or -1 for no limit
+     * @param maxQueueBytes the max number of payload bytes of the queued data frames, or -1 for no limit
+     * @param overflowPolicy the policy to apply when the limits are exceeded
+     */
+    public void setQueueLimits(int maxQueueFrames, long maxQueueBytes, OverflowPolicy overflowPolicy)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            this.maxQueueFrames = maxQueueFrames;
+            this.maxQueueBytes = maxQueueBytes;
+            this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        }
+    }
+
     /**
      * Enqueue a Frame to be written to the endpoint.
      *
@@ -110,7 +139,7 @@ public class FrameFlusher extends IteratingCallback
      * @param callback The callback to call once the frame is sent
      * @param batch True if batch mode is to be used
      * @return returns true if the frame was enqueued and iterate needs to be called, returns false if the
-     * FrameFlusher was closed
+     * FrameFlusher was closed or if the frame was rejected because the queue limits were exceeded
      */
     public boolean enqueue(Frame frame, Callback callback, boolean batch)
     {
@@ -119,6 +148,8 @@ public class FrameFlusher extends IteratingCallback
 
         Throwable dead;
         List<Entry> failedEntries = null;
+        List<Entry> droppedEntries = null;
+        OverflowPolicy droppingPolicy = null;
         CloseStatus closeStatus = null;
 
         try (AutoLock l = lock.lock())
@@ -136,7 +167,7 @@ public class FrameFlusher extends IteratingCallback
                             {
                                 //fail all existing entries in the queue, and enqueue the error close
                                 failedEntries = new ArrayList<>(queue);
-                                queue.clear();
+                                clearQueue();
                             }
                             queue.offerLast(entry);
                             this.canEnqueue = false;
@@ -148,7 +179,22 @@ public class FrameFlusher extends IteratingCallback
                             break;
 
                         default:
+                            if (frame.isDataFrame() && (maxQueueFrames > 0 || maxQueueBytes > 0))
+                            {
+                                droppingPolicy = overflowPolicy;
+                                droppedEntries = new ArrayList<>();
+                                if (!makeRoom(entry, droppedEntries))
+                                {
+                                    dead = new WritePendingException();
+                                    break;
+                                }
+                            }
                             queue.offerLast(entry);
+                            if (frame.isDataFrame())
+                            {
+                                ++queueFrames;
+                                queueBytes += frame.getPayloadLength();
+                            }
                             break;
                     }
 
@@ -156,7 +202,7 @@ public class FrameFlusher extends IteratingCallback
                     entry when it expires. When the timeout expires we will go over entries in the queue and
                     entries list to see if any of them have expired, it will then reset the timeout for the frame
                     with the soonest expiry time. */
-                    if ((idleTimeout > 0) && (queue.size() == 1) && entries.isEmpty())
+                    if (dead == null && (idleTimeout > 0) && (queue.size() == 1) && entries.isEmpty())
                         timeoutScheduler.schedule(this::timeoutExpired, idleTimeout, TimeUnit.MILLISECONDS);
                 }
             }
@@ -179,6 +225,17 @@ public class FrameFlusher extends IteratingCallback
             }
         }
 
+        if (droppedEntries != null && !droppedEntries.isEmpty())
+        {
+            droppedFrames.add(droppedEntries.size());
+            for (Entry e : droppedEntries)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Dropped {} by {} from {}", e, droppingPolicy, this);
+                notifyCallbackFailure(e.callback, new WebSocketWriteDroppedException("Frame dropped by " + droppingPolicy));
+            }
+        }
+
         if (dead == null)
         {
             if (LOG.isDebugEnabled())
@@ -191,6 +248,102 @@ public class FrameFlusher extends IteratingCallback
         return false;
     }
 
+    /**
+     * <p>Applies the overflow policy to make room in the queue for the given data frame entry.</p>
+     * <p>The queued entries are dropped only if the entry then fits in the queue limits.</p>
+     *
+     * @param entry the entry to enqueue
+     * @param droppedEntries the list where to add the queued entries that have been dropped
+     * @return whether the entry can be enqueued
+     */
+    private boolean makeRoom(Entry entry, List<Entry> droppedEntries)
+    {
+        assert lock.isHeldByCurrentThread();
+
+        OverflowPolicy.Type type = overflowPolicy.getType();
+        // Queued entries are compared by key on overflow, so all entries need their key.
+        if (type == OverflowPolicy.Type.CONFLATE && entry.isDroppable())
+            entry.key = overflowPolicy.getKey(entry.frame);
+
+        if (!isOverflow(entry, 0, 0))
+            return true;
+        if (type == OverflowPolicy.Type.FAIL)
+            return false;
+
+        int frames = 0;
+        long bytes = 0;
+        Entry conflated = null;
+        if (entry.key != null)
+        {
+            for (Entry queued : queue)
+            {
+                if (entry.key.equals(queued.key))
+                {
+                    conflated = queued;
+                    droppedEntries.add(queued);
+                    ++frames;
+                    bytes += queued.frame.getPayloadLength();
+                    break;
+                }
+            }
+        }
+
+        Iterator<Entry> iterator = queue.iterator();
+        while (isOverflow(entry, frames, bytes))
+        {
+            Entry oldest = null;
+            while (iterator.hasNext())
+            {
+                Entry queued = iterator.next();
+                if (queued != conflated && queued.isDroppable())
+                {
+                    oldest = queued;
+                    break;
+                }
+            }
+            if (oldest == null)
+            {
+                // The entry does not fit even dropping all the droppable entries.
+                droppedEntries.clear();
+                return false;
+            }
+            droppedEntries.add(oldest);
+            ++frames;
+            bytes += oldest.frame.getPayloadLength();
+        }
+
+        for (Entry dropped : droppedEntries)
+        {
+            queue.remove(dropped);
+            dequeued(dropped);
+        }
+        return true;
+    }
+
+    private boolean isOverflow(Entry entry, int droppedFrames, long droppedBytes)
+    {
+        int frames = queueFrames - droppedFrames;
+        if (maxQueueFrames > 0 && frames >= maxQueueFrames)
+            return true;
+        return maxQueueBytes > 0 && frames > 0 && queueBytes - droppedBytes + entry.frame.getPayloadLength() > maxQueueBytes;
+    }
+
+    private void dequeued(Entry entry)
+    {
+        if (entry.frame.isDataFrame())
+        {
+            --queueFrames;
+            queueBytes -= entry.frame.getPayloadLength();
+        }
+    }
+
+    private void clearQueue()
+    {
+        queue.clear();
+        queueFrames = 0;
+        queueBytes = 0;
+    }
+
     public void onClose(Throwable cause)
     {
         try (AutoLock l = lock.lock())
@@ -223,6 +376,7 @@ public class FrameFlusher extends IteratingCallback
             while (!queue.isEmpty() && entries.size() <= maxGather)
             {
                 Entry entry = queue.poll();
+                dequeued(entry);
                 entries.add(entry);
                 if (entry.frame == FLUSH_FRAME)
                 {
@@ -347,7 +501,7 @@ public class FrameFlusher extends IteratingCallback
         return bufferPool.acquire(capacity, isUseDirectByteBuffers());
     }
 
-    private int getQueueSize()
+    public int getQueueSize()
     {
         try (AutoLock l = lock.lock())
         {
@@ -355,6 +509,25 @@ public class FrameFlusher extends IteratingCallback
         }
     }
 
+    /**
+     * @return the number of payload bytes of the data frames waiting in the queue
+     */
+    public long getQueueBytes()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return queueBytes;
+        }
+    }
+
+    /**
+     * @return the number of queued frames dropped by the overflow policy
+     */
+    public long getDroppedFrames()
+    {
+        return droppedFrames.longValue();
+    }
+
     public void timeoutExpired()
     {
         boolean failed = false;
@@ -384,7 +557,7 @@ public class FrameFlusher extends IteratingCallback
                     failedEntries.addAll(entries);
                     failedEntries.addAll(queue);
                     entries.clear();
-                    queue.clear();
+                    clearQueue();
                     break;
                 }
 
@@ -413,7 +586,7 @@ public class FrameFlusher extends IteratingCallback
         try (AutoLock l = lock.lock())
         {
             failedEntries.addAll(queue);
-            queue.clear();
+            clearQueue();
 
             failedEntries.addAll(entries);
             entries.clear();
@@ -500,15 +673,17 @@ public class FrameFlusher extends IteratingCallback
     @Override
     public String toString()
     {
-        return String.format("%s[queueSize=%d,aggregate=%s]",
+        return String.format("%s[queueSize=%d,queueBytes=%d,aggregate=%s]",
             super.toString(),
             getQueueSize(),
+            getQueueBytes(),
             batchBuffer);
     }
 
     private static class Entry extends FrameEntry
     {
         private final long timeOfCreation = System.currentTimeMillis();
+        private Object key;
 
         private Entry(Frame frame, Callback callback, boolean batch)
         {
@@ -520,6 +695,13 @@ public class FrameFlusher extends IteratingCallback
             return timeOfCreation;
         }
 
+        private boolean isDroppable()
+        {
+            // Fragments and compressed frames cannot be dropped without corrupting the stream.
+            byte opCode = frame.getOpCode();
+            return frame.isFin() && !frame.isRsv1() && (opCode == OpCode.TEXT || opCode == OpCode.BINARY);
+        }
+
         @Override
         public String toString()
         {
@@ -25,6 +25,7 @@ import org.eclipse.jetty.websocket.core.OpCode;
 import org.eclipse.jetty.websocket.core.exception.MessageTooLargeException;
 import org.eclipse.jetty.websocket.core.exception.ProtocolException;
 import org.eclipse.jetty.websocket.core.exception.WebSocketException;
+import org.eclipse.jetty.websocket.core.util.MaskUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -294,16 +295,7 @@ public class Parser
     {
         payloadLength -= fragmentSize;
 
-        byte[] nextMask = null;
-        if (mask != null)
-        {
-            int shift = fragmentSize % 4;
-            nextMask = new byte[4];
-            nextMask[0] = mask[(shift) % 4];
-            nextMask[1] = mask[(1 + shift) % 4];
-            nextMask[2] = mask[(2 + shift) % 4];
-            nextMask[3] = mask[(3 + shift) % 4];
-        }
+        byte[] nextMask = mask == null ? null : MaskUtil.rotate(mask, fragmentSize);
 
         ByteBuffer content = buffer.slice();
         content.limit(fragmentSize);
@@ -27,9 +27,11 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.compression.DeflaterPool;
 import org.eclipse.jetty.util.compression.InflaterPool;
 import org.eclipse.jetty.websocket.core.AbstractExtension;
+import org.eclipse.jetty.websocket.core.ContextTakeoverBudget;
 import org.eclipse.jetty.websocket.core.ExtensionConfig;
 import org.eclipse.jetty.websocket.core.Frame;
 import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.PreEncodedFrame;
 import org.eclipse.jetty.websocket.core.WebSocketComponents;
 import org.eclipse.jetty.websocket.core.exception.BadPayloadException;
 import org.eclipse.jetty.websocket.core.exception.MessageTooLargeException;
@@ -64,6 +66,10 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
     private int inflateBufferSize = DEFAULT_BUF_SIZE;
     private boolean incomingContextTakeover = true;
     private boolean outgoingContextTakeover = true;
+    private ContextTakeoverBudget contextTakeoverBudget;
+    private boolean outgoingContextReserved;
+    private boolean incomingContextReserved;
+    private byte[] dictionary;
 
     public PerMessageDeflateExtension()
     {
@@ -100,7 +106,9 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
     public void init(final ExtensionConfig config, WebSocketComponents components)
     {
         configRequested = new ExtensionConfig(config);
+        contextTakeoverBudget = components.getContextTakeoverBudget();
         Map<String, String> paramsNegotiated = new HashMap<>();
+        String dictionaryName = null;
 
         for (String key : config.getParameterKeys())
         {
@@ -126,6 +134,12 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
                     outgoingContextTakeover = false;
                     break;
                 }
+                case "jetty_dictionary":
+                {
+                    // Not part of RFC 7692, only negotiated between peers that registered the same dictionary.
+                    dictionaryName = config.getParameter(key, null);
+                    break;
+                }
                 case "@deflate_buffer_size":
                 {
                     deflateBufferSize = config.getParameter(key, DEFAULT_BUF_SIZE);
@@ -143,6 +157,17 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
             }
         }
 
+        // A preset dictionary is only useful if each message is compressed with a new context.
+        // The server adds server_no_context_takeover, so the client will find it in the response.
+        byte[] presetDictionary = dictionaryName == null ? null : components.getDeflateDictionary(dictionaryName);
+        if (presetDictionary != null && !incomingContextTakeover)
+        {
+            paramsNegotiated.put("jetty_dictionary", dictionaryName);
+            paramsNegotiated.put("server_no_context_takeover", null);
+            outgoingContextTakeover = false;
+            dictionary = presetDictionary;
+        }
+
         configNegotiated = new ExtensionConfig(config.getName(), paramsNegotiated);
         LOG.debug("config: outgoingContextTakover={}, incomingContextTakeover={} : {}", outgoingContextTakeover, incomingContextTakeover, this);
 
@@ -156,6 +181,12 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
         outgoingFlusher.closeFlusher();
         releaseInflater();
         releaseDeflater();
+        if (outgoingContextReserved)
+            contextTakeoverBudget.release(ContextTakeoverBudget.DEFLATER_MEMORY);
+        if (incomingContextReserved)
+            contextTakeoverBudget.release(ContextTakeoverBudget.INFLATER_MEMORY);
+        outgoingContextReserved = false;
+        incomingContextReserved = false;
     }
 
     private static String toDetail(Inflater inflater)
@@ -190,14 +221,28 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
     public Deflater getDeflater()
     {
         if (deflaterHolder == null)
+        {
             deflaterHolder = getDeflaterPool().acquire();
+            if (dictionary != null)
+                deflaterHolder.get().setDictionary(dictionary);
+        }
         return deflaterHolder.get();
     }
 
     public Inflater getInflater()
     {
         if (inflaterHolder == null)
+        {
             inflaterHolder = getInflaterPool().acquire();
+            if (dictionary != null)
+                inflaterHolder.get().setDictionary(dictionary);
+            if (incomingContextTakeover && !incomingContextReserved)
+            {
+                // The remote peer may refer to the previous messages, so the context cannot be reset.
+                contextTakeoverBudget.reserve(ContextTakeoverBudget.INFLATER_MEMORY);
+                incomingContextReserved = true;
+            }
+        }
         return inflaterHolder.get();
     }
 
@@ -242,14 +287,31 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
     @Override
     protected void nextOutgoingFrame(Frame frame, Callback callback, boolean batch)
     {
-        if (frame.isFin() && !outgoingContextTakeover)
+        if (frame.isFin() && !frame.isControlFrame())
         {
-            LOG.debug("Outgoing Context Reset");
-            releaseDeflater();
+            if (!outgoingContextTakeover)
+            {
+                LOG.debug("Outgoing Context Reset");
+                releaseDeflater();
+            }
+            else if (deflaterHolder != null && !reserveOutgoingContext())
+            {
+                // Resetting the context is always allowed, the remote peer just
+                // keeps a window that the next messages do not refer to.
+                LOG.debug("Outgoing Context Reset, over budget {}", contextTakeoverBudget);
+                releaseDeflater();
+            }
         }
         super.nextOutgoingFrame(frame, callback, batch);
     }
 
+    private boolean reserveOutgoingContext()
+    {
+        if (!outgoingContextReserved)
+            outgoingContextReserved = contextTakeoverBudget.tryReserve(ContextTakeoverBudget.DEFLATER_MEMORY);
+        return outgoingContextReserved;
+    }
+
     @Override
     public void setNextDemand(DemandChain nextDemand)
     {
@@ -277,6 +339,16 @@ public class PerMessageDeflateExtension extends AbstractExtension implements Dem
                 return true;
             }
 
+            if (frame instanceof PreEncodedFrame)
+            {
+                // The payload was compressed without a previous context,
+                // so it cannot be sent if the context is taken over.
+                if (outgoingContextTakeover)
+                    throw new IllegalArgumentException("Cannot send pre-encoded frame without server_no_context_takeover");
+                nextOutgoingFrame(frame, callback, batch);
+                return true;
+            }
+
             _first = true;
             _frame = frame;
             _batch = batch;
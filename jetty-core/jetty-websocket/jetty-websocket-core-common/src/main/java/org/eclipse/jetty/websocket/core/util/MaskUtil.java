@@ -0,0 +1,113 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>Utility methods to mask and unmask WebSocket payloads.</p>
+ * <p>As masking is an XOR with the 4 bytes masking key repeated over the payload,
+ * the payload is processed 8 bytes at a time, XORing each {@code long} with the
+ * masking key repeated twice, for both heap and direct {@link ByteBuffer}s.</p>
+ */
+public final class MaskUtil
+{
+    private MaskUtil()
+    {
+    }
+
+    /**
+     * <p>Masks, or unmasks, in place the bytes between the position and the limit
+     * of the given buffer, without changing its position and limit.</p>
+     *
+     * @param buffer the buffer to mask
+     * @param mask the 4 bytes masking key, applied from the position of the buffer
+     */
+    public static void mask(ByteBuffer buffer, byte[] mask)
+    {
+        xor(buffer, buffer.position(), buffer, buffer.position(), buffer.remaining(), mask);
+    }
+
+    /**
+     * <p>Copies the bytes between the position and the limit of the given source
+     * buffer, masked with the given masking key, to the target buffer.</p>
+     * <p>The position of the source buffer is not changed, while the position of
+     * the target buffer is advanced by the number of bytes copied.</p>
+     *
+     * @param source the buffer to copy from
+     * @param mask the 4 bytes masking key, applied from the position of the source buffer
+     * @param target the buffer to copy to
+     * @throws BufferOverflowException if the target buffer has not enough space
+     */
+    public static void mask(ByteBuffer source, byte[] mask, ByteBuffer target)
+    {
+        int length = source.remaining();
+        if (target.remaining() < length)
+            throw new BufferOverflowException();
+        int position = target.position();
+        xor(source, source.position(), target, position, length, mask);
+        target.position(position + length);
+    }
+
+    /**
+     * <p>Returns the masking key to use after {@code offset} bytes have been masked,
+     * so that the masking of a payload can continue in another buffer.</p>
+     *
+     * @param mask the 4 bytes masking key
+     * @param offset the number of bytes already masked
+     * @return the rotated masking key
+     */
+    public static byte[] rotate(byte[] mask, int offset)
+    {
+        int shift = offset & 3;
+        return new byte[]{
+            mask[shift],
+            mask[(shift + 1) & 3],
+            mask[(shift + 2) & 3],
+            mask[(shift + 3) & 3]
+        };
+    }
+
+    private static void xor(ByteBuffer source, int from, ByteBuffer target, int to, int length, byte[] mask)
+    {
+        if (target.order() != source.order())
+            target = target.duplicate().order(source.order());
+
+        int maskInt = ((mask[0] & 0xFF) << 24) | ((mask[1] & 0xFF) << 16) | ((mask[2] & 0xFF) << 8) | (mask[3] & 0xFF);
+        long maskLong = ((long)maskInt << 32) | (maskInt & 0xFFFF_FFFFL);
+        if (source.order() == ByteOrder.LITTLE_ENDIAN)
+        {
+            maskInt = Integer.reverseBytes(maskInt);
+            maskLong = Long.reverseBytes(maskLong);
+        }
+
+        int i = 0;
+        for (int end = length - 7; i < end; i += 8)
+        {
+            target.putLong(to + i, source.getLong(from + i) ^ maskLong);
+        }
+        if (length - i >= 4)
+        {
+            target.putInt(to + i, source.getInt(from + i) ^ maskInt);
+            i += 4;
+        }
+        // The offset in the mask is always 0 here, as 8 and 4 are multiples of 4.
+        for (int m = 0; i < length; ++i, ++m)
+        {
+            target.put(to + i, (byte)(source.get(from + i) ^ mask[m]));
+        }
+    }
+}
@@ -0,0 +1,443 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.server;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.NanoTime;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+import org.eclipse.jetty.websocket.core.Behavior;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.PreEncodedFrame;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Sends the same message to many {@link CoreSession}s, encoding it once
+ * for all the sessions whose negotiated extensions can share the encoding.</p>
+ * <p>Calling {@link CoreSession#sendFrame(Frame, Callback, boolean)} for each
+ * session makes each session encode the message, and compress it if the
+ * {@code permessage-deflate} extension was negotiated.
+ * A broadcast instead encodes the message once for all the sessions with the
+ * same extensions, and sends the same retained buffer to each session, so
+ * that the message is written by each connection without being copied.</p>
+ * <p>The message can be shared by sessions without extensions, and by server
+ * sessions that negotiated {@code permessage-deflate} with
+ * {@code server_no_context_takeover}, because the compressed message does
+ * not depend on the messages previously sent to the session.
+ * Other sessions encode the message as usual.</p>
+ * <p>A session that has {@link #getMaxPendingFrames() too many} broadcast
+ * frames not yet written is considered a slow consumer, and the broadcast
+ * frames are dropped for that session until it catches up.</p>
+ */
+@ManagedObject("Broadcasts WebSocket messages to many sessions")
+public class WebSocketBroadcaster
+{
+    private static final Logger LOG = LoggerFactory.getLogger(WebSocketBroadcaster.class);
+    private static final byte[] TAIL_BYTES = new byte[]{0x00, 0x00, (byte)0xFF, (byte)0xFF};
+
+    private final Map<CoreSession, Integer> pendingFrames = new ConcurrentHashMap<>();
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder encodings = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder unsharedFrames = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder failedFrames = new LongAdder();
+    private final SampleStatistic fanOutLatency = new SampleStatistic();
+    private final ByteBufferPool bufferPool;
+    private final DeflaterPool deflaterPool;
+    private int maxPendingFrames;
+
+    public WebSocketBroadcaster(WebSocketComponents components)
+    {
+        this.bufferPool = components.getByteBufferPool();
+        this.deflaterPool = components.getDeflaterPool();
+    }
+
+    /**
+     * @return the max number of broadcast frames not yet written to a session,
+     * above which the broadcast frames are dropped for that session
+     */
+    @ManagedAttribute("The max number of broadcast frames pending per session, or 0 for unlimited")
+    public int getMaxPendingFrames()
+    {
+        return maxPendingFrames;
+    }
+
+    /**
+     * <p>Sets the max number of broadcast frames not yet written to a session,
+     * above which the broadcast frames are dropped for that session.</p>
+     *
+     * @param maxPendingFrames the max number of pending broadcast frames per session, or 0 for unlimited
+     */
+    public void setMaxPendingFrames(int maxPendingFrames)
+    {
+        this.maxPendingFrames = maxPendingFrames;
+    }
+
+    /**
+     * <p>Sends the given whole message to the given sessions.</p>
+     * <p>The callback is succeeded when the message has been written to, dropped
+     * for, or failed for every session; the failures to send to a session are
+     * reported to that session by its own failure handling, and are recorded in
+     * the statistics of this broadcaster.
+     * The callback is failed if the message cannot be encoded for some sessions,
+     * after the message has been sent to the other sessions.</p>
+     * <p>The payload of the frame must not be modified until the callback is completed.</p>
+     *
+     * @param sessions the sessions to send the message to
+     * @param frame the {@link OpCode#TEXT} or {@link OpCode#BINARY} frame with the whole message
+     * @param callback the callback completed when the message has been sent to all the sessions
+     */
+    public void broadcast(Collection<? extends CoreSession> sessions, Frame frame, Callback callback)
+    {
+        byte opCode = frame.getOpCode();
+        if (!frame.isFin() || (opCode != OpCode.TEXT && opCode != OpCode.BINARY))
+            throw new IllegalArgumentException("Cannot broadcast " + frame);
+
+        broadcasts.increment();
+        Broadcast broadcast = new Broadcast(frame, callback);
+        try
+        {
+            for (CoreSession session : sessions)
+            {
+                broadcast.send(session);
+            }
+        }
+        finally
+        {
+            broadcast.dispatched();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of broadcasts", readonly = true)
+    public long getBroadcasts()
+    {
+        return broadcasts.sum();
+    }
+
+    @ManagedAttribute(value = "The number of messages encoded once and shared by many sessions", readonly = true)
+    public long getEncodings()
+    {
+        return encodings.sum();
+    }
+
+    @ManagedAttribute(value = "The number of frames written to the sessions", readonly = true)
+    public long getSentFrames()
+    {
+        return sentFrames.sum();
+    }
+
+    @ManagedAttribute(value = "The number of frames encoded by sessions whose extensions cannot share the encoding", readonly = true)
+    public long getUnsharedFrames()
+    {
+        return unsharedFrames.sum();
+    }
+
+    @ManagedAttribute(value = "The number of frames dropped for slow sessions", readonly = true)
+    public long getDroppedFrames()
+    {
+        return droppedFrames.sum();
+    }
+
+    @ManagedAttribute(value = "The number of frames that failed to be written to the sessions", readonly = true)
+    public long getFailedFrames()
+    {
+        return failedFrames.sum();
+    }
+
+    @ManagedAttribute(value = "The max time in microseconds to send a broadcast to all the sessions", readonly = true)
+    public long getFanOutLatencyMax()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(fanOutLatency.getMax());
+    }
+
+    @ManagedAttribute(value = "The mean time in microseconds to send a broadcast to all the sessions", readonly = true)
+    public double getFanOutLatencyMean()
+    {
+        return fanOutLatency.getMean() / 1000;
+    }
+
+    @ManagedAttribute(value = "The standard deviation of the time in microseconds to send a broadcast to all the sessions", readonly = true)
+    public double getFanOutLatencyStdDev()
+    {
+        return fanOutLatency.getStdDev() / 1000;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        broadcasts.reset();
+        encodings.reset();
+        sentFrames.reset();
+        unsharedFrames.reset();
+        droppedFrames.reset();
+        failedFrames.reset();
+        fanOutLatency.reset();
+    }
+
+    private boolean acquire(CoreSession session)
+    {
+        int pending = pendingFrames.merge(session, 1, Integer::sum);
+        int maxPending = getMaxPendingFrames();
+        if (maxPending <= 0 || pending <= maxPending)
+            return true;
+        release(session);
+        return false;
+    }
+
+    private void release(CoreSession session)
+    {
+        pendingFrames.computeIfPresent(session, (s, pending) -> pending == 1 ? null : pending - 1);
+    }
+
+    private static boolean isSharedDeflate(CoreSession session, List<ExtensionConfig> extensions)
+    {
+        if (session.getBehavior() != Behavior.SERVER || extensions.size() != 1)
+            return false;
+        ExtensionConfig config = extensions.get(0);
+        return "permessage-deflate".equals(config.getName()) &&
+            config.getParameterKeys().contains("server_no_context_takeover");
+    }
+
+    /**
+     * <p>Compresses the whole payload as the {@code permessage-deflate} extension
+     * does for a message sent without context takeover.</p>
+     */
+    private RetainableByteBuffer deflate(ByteBuffer payload)
+    {
+        int length = payload.remaining();
+        // Same as zlib's deflateBound(), so that the buffer rarely needs to grow.
+        int capacity = length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + TAIL_BYTES.length;
+        RetainableByteBuffer buffer = bufferPool.acquire(capacity, false);
+        BufferUtil.clear(buffer.getByteBuffer());
+        DeflaterPool.Entry entry = deflaterPool.acquire();
+        try
+        {
+            Deflater deflater = entry.get();
+            deflater.setInput(payload.slice());
+            while (true)
+            {
+                ByteBuffer byteBuffer = buffer.getByteBuffer();
+                int space = BufferUtil.space(byteBuffer);
+                int compressed = deflater.deflate(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.limit(), space, Deflater.SYNC_FLUSH);
+                byteBuffer.limit(byteBuffer.limit() + compressed);
+                if (compressed < space)
+                    break;
+                // The output did not fit, grow the buffer.
+                RetainableByteBuffer larger = bufferPool.acquire(2 * byteBuffer.capacity(), false);
+                BufferUtil.clear(larger.getByteBuffer());
+                BufferUtil.append(larger.getByteBuffer(), byteBuffer);
+                buffer.release();
+                buffer = larger;
+            }
+        }
+        catch (Throwable x)
+        {
+            buffer.release();
+            throw x;
+        }
+        finally
+        {
+            entry.release();
+        }
+
+        // Drop the tail bytes generated by SYNC_FLUSH, as the message is whole.
+        ByteBuffer byteBuffer = buffer.getByteBuffer();
+        if (endsWithTail(byteBuffer))
+            byteBuffer.limit(byteBuffer.limit() - TAIL_BYTES.length);
+        if (!byteBuffer.hasRemaining())
+        {
+            // See RFC 7692, 7.2.3.6. Generating an Empty Fragment Manually.
+            BufferUtil.append(byteBuffer, (byte)0x00);
+        }
+        return buffer;
+    }
+
+    private static boolean endsWithTail(ByteBuffer buffer)
+    {
+        int limit = buffer.limit();
+        if (buffer.remaining() < TAIL_BYTES.length)
+            return false;
+        for (int i = 0; i < TAIL_BYTES.length; ++i)
+        {
+            if (buffer.get(limit - TAIL_BYTES.length + i) != TAIL_BYTES[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>The encoding of the message shared by the sessions with the same extensions.</p>
+     *
+     * @param buffer the compressed message, or null to send the message payload
+     * @param shared whether the encoding is shared, or each session encodes the message
+     */
+    private record Encoding(RetainableByteBuffer buffer, boolean shared)
+    {
+        private static final Encoding UNSHARED = new Encoding(null, false);
+        private static final Encoding FAILED = new Encoding(null, false);
+    }
+
+    private class Broadcast
+    {
+        private final long beginNanoTime = NanoTime.now();
+        // The dispatch holds one count, so that the broadcast cannot complete while sending.
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final Frame frame;
+        private final Callback callback;
+        // Only the sessions without extensions, or with a shared
+        // permessage-deflate, can share the encoding of the message.
+        private Encoding plain;
+        private Encoding deflated;
+        private Throwable failure;
+
+        private Broadcast(Frame frame, Callback callback)
+        {
+            this.frame = frame;
+            this.callback = callback;
+        }
+
+        private void send(CoreSession session)
+        {
+            Encoding encoding = encode(session);
+            if (encoding == Encoding.FAILED)
+            {
+                failedFrames.increment();
+                return;
+            }
+
+            if (!acquire(session))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Dropped broadcast {} for slow {}", frame, session);
+                droppedFrames.increment();
+                return;
+            }
+
+            RetainableByteBuffer buffer = encoding.buffer();
+            Frame sessionFrame;
+            long maxFrameSize = session.getMaxFrameSize();
+            if (buffer != null && (maxFrameSize <= 0 || buffer.remaining() <= maxFrameSize))
+            {
+                buffer.retain();
+                sessionFrame = new PreEncodedFrame(frame.getOpCode(), true, buffer.getByteBuffer().slice());
+            }
+            else
+            {
+                // A compressed frame that would be fragmented is compressed by the session.
+                if (!encoding.shared() || buffer != null)
+                    unsharedFrames.increment();
+                buffer = null;
+                sessionFrame = new Frame(frame.getOpCode(), true, frame.getPayload().slice());
+            }
+
+            outstanding.incrementAndGet();
+            RetainableByteBuffer retained = buffer;
+            session.sendFrame(sessionFrame, Callback.from(() ->
+            {
+                sentFrames.increment();
+                completed(session, retained);
+            }, x ->
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Failed broadcast {} to {}", frame, session, x);
+                failedFrames.increment();
+                completed(session, retained);
+            }), false);
+        }
+
+        private Encoding encode(CoreSession session)
+        {
+            List<ExtensionConfig> extensions = session.getNegotiatedExtensions();
+            if (extensions.isEmpty())
+            {
+                if (plain == null)
+                {
+                    WebSocketBroadcaster.this.encodings.increment();
+                    plain = new Encoding(null, true);
+                }
+                return plain;
+            }
+            if (isSharedDeflate(session, extensions))
+            {
+                if (deflated == null)
+                {
+                    try
+                    {
+                        deflated = new Encoding(deflate(frame.getPayload()), true);
+                        WebSocketBroadcaster.this.encodings.increment();
+                    }
+                    catch (Throwable x)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Failed to encode broadcast {}", frame, x);
+                        // Do not retry the encoding for the other sessions.
+                        deflated = Encoding.FAILED;
+                        failure = x;
+                    }
+                }
+                return deflated;
+            }
+            return Encoding.UNSHARED;
+        }
+
+        private void completed(CoreSession session, RetainableByteBuffer buffer)
+        {
+            release(session);
+            if (buffer != null)
+                buffer.release();
+            if (outstanding.decrementAndGet() == 0)
+                complete();
+        }
+
+        private void dispatched()
+        {
+            // Release the reference to the shared buffer held while sending.
+            if (deflated != null && deflated.buffer() != null)
+                deflated.buffer().release();
+            if (outstanding.decrementAndGet() == 0)
+                complete();
+        }
+
+        private void complete()
+        {
+            fanOutLatency.record(NanoTime.since(beginNanoTime));
+            if (failure == null)
+                callback.succeeded();
+            else
+                callback.failed(failure);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.extensions;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.CloseStatus;
+import org.eclipse.jetty.websocket.core.ContextTakeoverBudget;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.FrameHandler;
+import org.eclipse.jetty.websocket.core.TestFrameHandler;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.eclipse.jetty.websocket.core.WebSocketServer;
+import org.eclipse.jetty.websocket.core.client.CoreClientUpgradeRequest;
+import org.eclipse.jetty.websocket.core.client.WebSocketCoreClient;
+import org.eclipse.jetty.websocket.core.server.ServerUpgradeRequest;
+import org.eclipse.jetty.websocket.core.server.ServerUpgradeResponse;
+import org.eclipse.jetty.websocket.core.server.WebSocketNegotiator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.testcontainers.shaded.org.awaitility.Awaitility.await;
+
+public class PerMessageDeflateContextTest
+{
+    private static final byte[] DICTIONARY = "{\"symbol\":\"\",\"bid\":,\"ask\":,\"volume\":}".getBytes(StandardCharsets.UTF_8);
+
+    private final TestFrameHandler serverHandler = new TestFrameHandler();
+    private final WebSocketComponents serverComponents = new WebSocketComponents();
+    private final WebSocketComponents clientComponents = new WebSocketComponents();
+    private WebSocketServer server;
+    private WebSocketCoreClient client;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        WebSocketNegotiator negotiator = new WebSocketNegotiator.AbstractNegotiator()
+        {
+            @Override
+            public FrameHandler negotiate(ServerUpgradeRequest request, ServerUpgradeResponse response, Callback callback)
+            {
+                return serverHandler;
+            }
+        };
+        server = new WebSocketServer(serverComponents, negotiator, false);
+        server.start();
+        client = new WebSocketCoreClient(clientComponents);
+        client.start();
+    }
+
+    @AfterEach
+    public void teardown() throws Exception
+    {
+        client.stop();
+        server.stop();
+    }
+
+    private TestFrameHandler connect(String extensions) throws Exception
+    {
+        TestFrameHandler clientHandler = new TestFrameHandler();
+        URI uri = URI.create("ws://localhost:" + server.getLocalPort());
+        CoreClientUpgradeRequest upgradeRequest = CoreClientUpgradeRequest.from(client, uri, clientHandler);
+        upgradeRequest.addExtensions(extensions);
+        client.connect(upgradeRequest).get(5, TimeUnit.SECONDS);
+        assertTrue(serverHandler.open.await(5, TimeUnit.SECONDS));
+        return clientHandler;
+    }
+
+    private static String message(int i)
+    {
+        return "{\"symbol\":\"ABC\",\"bid\":" + i + ",\"ask\":" + (i + 1) + ",\"volume\":" + (i * 100) + "}";
+    }
+
+    private static void assertReceived(TestFrameHandler handler, String expected) throws Exception
+    {
+        Frame frame = handler.getFrames().poll(5, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertTrue(frame.isFin());
+        assertEquals(expected, frame.getPayloadAsUTF8());
+    }
+
+    @Test
+    public void testOutgoingContextResetOverBudget() throws Exception
+    {
+        ContextTakeoverBudget budget = serverComponents.getContextTakeoverBudget();
+        budget.setMaxMemory(0);
+        TestFrameHandler clientHandler = connect("permessage-deflate");
+
+        for (int i = 0; i < 5; ++i)
+        {
+            clientHandler.sendText(message(i));
+            assertReceived(serverHandler, message(i));
+            // The client still expects the server to take over the context.
+            serverHandler.sendText(message(i));
+            assertReceived(clientHandler, message(i));
+        }
+
+        // The incoming context cannot be reset, while the outgoing one was reset after each message.
+        assertEquals(ContextTakeoverBudget.INFLATER_MEMORY, budget.getUsedMemory());
+        assertEquals(5, budget.getContextResets());
+
+        // When the budget allows, the outgoing context is taken over again.
+        budget.setMaxMemory(ContextTakeoverBudget.INFLATER_MEMORY + ContextTakeoverBudget.DEFLATER_MEMORY);
+        serverHandler.sendText(message(5));
+        assertReceived(clientHandler, message(5));
+        assertEquals(ContextTakeoverBudget.INFLATER_MEMORY + ContextTakeoverBudget.DEFLATER_MEMORY, budget.getUsedMemory());
+
+        // The memory is given back to the budget when the session is closed.
+        clientHandler.getCoreSession().close(CloseStatus.NORMAL, null, Callback.NOOP);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> budget.getUsedMemory() == 0);
+    }
+
+    @Test
+    public void testPresetDictionary() throws Exception
+    {
+        serverComponents.addDeflateDictionary("quotes", DICTIONARY);
+        clientComponents.addDeflateDictionary("quotes", DICTIONARY);
+        TestFrameHandler clientHandler = connect("permessage-deflate; client_no_context_takeover; jetty_dictionary=quotes");
+
+        ExtensionConfig negotiated = clientHandler.getCoreSession().getNegotiatedExtensions().get(0);
+        assertEquals("quotes", negotiated.getParameter("jetty_dictionary", null));
+        assertTrue(negotiated.getParameterKeys().contains("server_no_context_takeover"));
+
+        for (int i = 0; i < 5; ++i)
+        {
+            clientHandler.sendText(message(i));
+            assertReceived(serverHandler, message(i));
+            serverHandler.sendText(message(i));
+            assertReceived(clientHandler, message(i));
+        }
+
+        // No context is taken over.
+        assertEquals(0, serverComponents.getContextTakeoverBudget().getUsedMemory());
+    }
+
+    @Test
+    public void testUnknownPresetDictionaryIsNotNegotiated() throws Exception
+    {
+        clientComponents.addDeflateDictionary("quotes", DICTIONARY);
+        TestFrameHandler clientHandler = connect("permessage-deflate; client_no_context_takeover; jetty_dictionary=quotes");
+
+        ExtensionConfig negotiated = clientHandler.getCoreSession().getNegotiatedExtensions().get(0);
+        assertNull(negotiated.getParameter("jetty_dictionary", null));
+
+        clientHandler.sendText(message(1));
+        assertReceived(serverHandler, message(1));
+        serverHandler.sendText(message(2));
+        assertReceived(clientHandler, message(2));
+    }
+}
@@ -35,7 +35,9 @@ import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.websocket.core.CloseStatus;
 import org.eclipse.jetty.websocket.core.Frame;
 import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.OverflowPolicy;
 import org.eclipse.jetty.websocket.core.WebSocketConstants;
+import org.eclipse.jetty.websocket.core.exception.WebSocketWriteDroppedException;
 import org.eclipse.jetty.websocket.core.exception.WebSocketWriteTimeoutException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -46,6 +48,7 @@ import org.slf4j.LoggerFactory;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -226,6 +229,138 @@ public class FrameFlusherTest
         assertTrue(succeededCloseFrame.await(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testQueueBytesLimitFailsNewFrame() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, 1024, 8);
+        frameFlusher.setQueueLimits(-1, 10, OverflowPolicy.FAIL);
+
+        // A frame larger than the limit is accepted when the queue is empty.
+        FutureCallback large = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "larger than the limit"), large, false));
+        FutureCallback small = new FutureCallback();
+        assertFalse(frameFlusher.enqueue(new Frame(OpCode.TEXT, "small"), small, false));
+        ExecutionException x = assertThrows(ExecutionException.class, () -> small.get(1, TimeUnit.SECONDS));
+        assertThat(x.getCause(), instanceOf(WritePendingException.class));
+        assertEquals(21, frameFlusher.getQueueBytes());
+
+        frameFlusher.iterate();
+        large.get(1, TimeUnit.SECONDS);
+        assertEquals(0, frameFlusher.getQueueBytes());
+        assertEquals("larger than the limit", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+    }
+
+    @Test
+    public void testQueueFramesLimitDropsOldestFrame() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, 1024, 8);
+        frameFlusher.setQueueLimits(2, -1, OverflowPolicy.DROP_OLDEST);
+
+        // Fragments cannot be dropped, so the new frame is failed.
+        FutureCallback fragment = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "frag").setFin(false), fragment, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.CONTINUATION, "ment"), Callback.NOOP, false));
+        FutureCallback rejected = new FutureCallback();
+        assertFalse(frameFlusher.enqueue(new Frame(OpCode.TEXT, "first"), rejected, false));
+        ExecutionException x = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertThat(x.getCause(), instanceOf(WritePendingException.class));
+
+        // The oldest whole frame is dropped to make room for the new frame.
+        frameFlusher.setQueueLimits(3, -1, OverflowPolicy.DROP_OLDEST);
+        FutureCallback dropped = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "first"), dropped, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "second"), Callback.NOOP, false));
+        x = assertThrows(ExecutionException.class, () -> dropped.get(1, TimeUnit.SECONDS));
+        assertThat(x.getCause(), instanceOf(WebSocketWriteDroppedException.class));
+        assertEquals(1, frameFlusher.getDroppedFrames());
+        assertEquals(3, frameFlusher.getQueueSize());
+
+        frameFlusher.iterate();
+        fragment.get(1, TimeUnit.SECONDS);
+        assertEquals("frag", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals("ment", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals("second", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals(0, frameFlusher.getQueueSize());
+    }
+
+    @Test
+    public void testConflateReplacesQueuedFrameWithSameKey() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, 1024, 8);
+        // The key is the ticker before the '=' sign.
+        frameFlusher.setQueueLimits(2, -1, OverflowPolicy.conflate(frame -> frame.getPayloadAsUTF8().split("=")[0]));
+
+        FutureCallback stale = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "ABC=1"), stale, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "XYZ=1"), Callback.NOOP, false));
+        // The queue is full, so the frame with the same key is replaced, rather than the oldest.
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "ABC=2"), Callback.NOOP, false));
+        ExecutionException x = assertThrows(ExecutionException.class, () -> stale.get(1, TimeUnit.SECONDS));
+        assertThat(x.getCause(), instanceOf(WebSocketWriteDroppedException.class));
+        assertEquals(2, frameFlusher.getQueueSize());
+        assertEquals(10, frameFlusher.getQueueBytes());
+
+        frameFlusher.iterate();
+        assertEquals("XYZ=1", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals("ABC=2", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+    }
+
+    @Test
+    public void testConflateKeepsFramesWithSameKeyWithinLimits() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, 1024, 8);
+        frameFlusher.setQueueLimits(10, -1, OverflowPolicy.conflate(frame -> frame.getPayloadAsUTF8().split("=")[0]));
+
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "ABC=1"), Callback.NOOP, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "ABC=2"), Callback.NOOP, false));
+        assertEquals(2, frameFlusher.getQueueSize());
+        assertEquals(0, frameFlusher.getDroppedFrames());
+
+        frameFlusher.iterate();
+        assertEquals("ABC=1", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals("ABC=2", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+    }
+
+    @Test
+    public void testDropOldestDoesNotDropFramesWhenNewFrameDoesNotFit() throws Exception
+    {
+        Generator generator = new Generator();
+        CapturingEndPoint endPoint = new CapturingEndPoint(bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, scheduler, generator, endPoint, 1024, 8);
+        frameFlusher.setQueueLimits(-1, 10, OverflowPolicy.DROP_OLDEST);
+
+        // Fragments cannot be dropped, and only 2 bytes can.
+        FutureCallback fragment = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "frag").setFin(false), fragment, false));
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.CONTINUATION, "ment"), Callback.NOOP, false));
+        FutureCallback droppable = new FutureCallback();
+        assertTrue(frameFlusher.enqueue(new Frame(OpCode.TEXT, "ab"), droppable, false));
+
+        FutureCallback rejected = new FutureCallback();
+        assertFalse(frameFlusher.enqueue(new Frame(OpCode.TEXT, "xyz"), rejected, false));
+        ExecutionException x = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertThat(x.getCause(), instanceOf(WritePendingException.class));
+        // The queued frames are kept.
+        assertFalse(droppable.isDone());
+        assertEquals(0, frameFlusher.getDroppedFrames());
+        assertEquals(3, frameFlusher.getQueueSize());
+        assertEquals(10, frameFlusher.getQueueBytes());
+
+        frameFlusher.iterate();
+        droppable.get(1, TimeUnit.SECONDS);
+        assertEquals("frag", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals("ment", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+        assertEquals("ab", endPoint.incomingFrames.poll(1, TimeUnit.SECONDS).getPayloadAsUTF8());
+    }
+
     public static class CapturingEndPoint extends MockEndpoint
     {
         public Parser parser;
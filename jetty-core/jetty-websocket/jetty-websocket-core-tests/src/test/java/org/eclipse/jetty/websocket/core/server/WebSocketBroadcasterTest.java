@@ -0,0 +1,264 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.server;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.websocket.core.Behavior;
+import org.eclipse.jetty.websocket.core.CoreSession;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.TestFrameHandler;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.eclipse.jetty.websocket.core.client.CoreClientUpgradeRequest;
+import org.eclipse.jetty.websocket.core.client.WebSocketCoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WebSocketBroadcasterTest
+{
+    private final List<TestFrameHandler> serverHandlers = new CopyOnWriteArrayList<>();
+    private Server server;
+    private ServerConnector connector;
+    private WebSocketUpgradeHandler upgradeHandler;
+    private WebSocketCoreClient client;
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        server = new Server();
+        connector = new ServerConnector(server);
+        server.addConnector(connector);
+
+        upgradeHandler = new WebSocketUpgradeHandler();
+        upgradeHandler.addMapping("/", (req, resp, cb) ->
+        {
+            TestFrameHandler handler = new TestFrameHandler();
+            serverHandlers.add(handler);
+            return handler;
+        });
+        server.setHandler(upgradeHandler);
+        server.start();
+
+        client = new WebSocketCoreClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        client.stop();
+        server.stop();
+    }
+
+    private TestFrameHandler connect(String extensions) throws Exception
+    {
+        TestFrameHandler clientHandler = new TestFrameHandler();
+        URI uri = URI.create("ws://localhost:" + connector.getLocalPort());
+        CoreClientUpgradeRequest upgradeRequest = CoreClientUpgradeRequest.from(client, uri, clientHandler);
+        if (extensions != null)
+            upgradeRequest.addExtensions(extensions);
+        client.connect(upgradeRequest).get(5, TimeUnit.SECONDS);
+        return clientHandler;
+    }
+
+    private List<CoreSession> serverSessions() throws Exception
+    {
+        List<CoreSession> sessions = new ArrayList<>();
+        for (TestFrameHandler handler : serverHandlers)
+        {
+            assertTrue(handler.open.await(5, TimeUnit.SECONDS));
+            sessions.add(handler.getCoreSession());
+        }
+        return sessions;
+    }
+
+    private static String receiveMessage(TestFrameHandler handler) throws Exception
+    {
+        // The client may fragment the inflated message.
+        StringBuilder message = new StringBuilder();
+        while (true)
+        {
+            Frame frame = handler.receivedFrames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            message.append(frame.getPayloadAsUTF8());
+            if (frame.isFin())
+                return message.toString();
+        }
+    }
+
+    @Test
+    public void testBroadcastIsEncodedOncePerExtensionConfiguration() throws Exception
+    {
+        List<TestFrameHandler> clients = new ArrayList<>();
+        clients.add(connect(null));
+        clients.add(connect(null));
+        clients.add(connect("permessage-deflate; server_no_context_takeover"));
+        clients.add(connect("permessage-deflate; server_no_context_takeover"));
+        // With context takeover, the session must compress the message itself.
+        clients.add(connect("permessage-deflate"));
+
+        List<CoreSession> sessions = serverSessions();
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(sessions.get(0).getWebSocketComponents());
+        String message = "market data ".repeat(512);
+        for (int i = 0; i < 2; ++i)
+        {
+            FutureCallback callback = new FutureCallback();
+            broadcaster.broadcast(sessions, new Frame(OpCode.TEXT, message), callback);
+            callback.get(5, TimeUnit.SECONDS);
+        }
+
+        for (TestFrameHandler clientHandler : clients)
+        {
+            for (int i = 0; i < 2; ++i)
+            {
+                assertEquals(message, receiveMessage(clientHandler));
+            }
+        }
+
+        assertEquals(2, broadcaster.getBroadcasts());
+        // Once for the sessions without extensions, once for the compressed sessions.
+        assertEquals(4, broadcaster.getEncodings());
+        assertEquals(2, broadcaster.getUnsharedFrames());
+        assertEquals(10, broadcaster.getSentFrames());
+        assertEquals(0, broadcaster.getDroppedFrames());
+        assertEquals(0, broadcaster.getFailedFrames());
+    }
+
+    @Test
+    public void testSlowSessionFramesAreDropped() throws Exception
+    {
+        TestFrameHandler clientHandler = connect(null);
+        CoreSession session = serverSessions().get(0);
+
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(session.getWebSocketComponents());
+        broadcaster.setMaxPendingFrames(1);
+
+        // A session that does not complete the writes, as if it was slow.
+        List<Callback> pending = new CopyOnWriteArrayList<>();
+        CoreSession slowSession = new CoreSession.Empty()
+        {
+            @Override
+            public List<ExtensionConfig> getNegotiatedExtensions()
+            {
+                return List.of();
+            }
+
+            @Override
+            public void sendFrame(Frame frame, Callback callback, boolean batch)
+            {
+                pending.add(callback);
+            }
+        };
+        List<CoreSession> sessions = List.of(session, slowSession);
+
+        FutureCallback first = new FutureCallback();
+        broadcaster.broadcast(sessions, new Frame(OpCode.TEXT, "first"), first);
+        FutureCallback second = new FutureCallback();
+        broadcaster.broadcast(sessions, new Frame(OpCode.TEXT, "second"), second);
+        // Only the broadcast not sent to the slow session completes.
+        second.get(5, TimeUnit.SECONDS);
+        assertFalse(first.isDone());
+        assertEquals(1, pending.size());
+        assertEquals(1, broadcaster.getDroppedFrames());
+
+        pending.get(0).succeeded();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(3, broadcaster.getSentFrames());
+
+        for (String expected : List.of("first", "second"))
+        {
+            Frame frame = clientHandler.receivedFrames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertEquals(expected, frame.getPayloadAsUTF8());
+        }
+
+        // The slow session caught up, so it receives the broadcasts again.
+        broadcaster.broadcast(sessions, new Frame(OpCode.TEXT, "third"), Callback.NOOP);
+        assertEquals(2, pending.size());
+    }
+
+    @Test
+    public void testEncodingFailureFailsCallback() throws Exception
+    {
+        TestFrameHandler clientHandler = connect(null);
+        CoreSession session = serverSessions().get(0);
+
+        // A buffer pool that cannot provide the buffer to compress the message.
+        ByteBufferPool bufferPool = new ByteBufferPool.Wrapper(new ArrayByteBufferPool())
+        {
+            @Override
+            public RetainableByteBuffer acquire(int size, boolean direct)
+            {
+                throw new IllegalStateException("explicitly_thrown_by_test");
+            }
+        };
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(new WebSocketComponents(null, null, bufferPool, null, null));
+        broadcaster.setMaxPendingFrames(1);
+
+        CoreSession deflateSession = new CoreSession.Empty()
+        {
+            @Override
+            public Behavior getBehavior()
+            {
+                return Behavior.SERVER;
+            }
+
+            @Override
+            public List<ExtensionConfig> getNegotiatedExtensions()
+            {
+                return List.of(ExtensionConfig.parse("permessage-deflate; server_no_context_takeover"));
+            }
+        };
+        List<CoreSession> sessions = List.of(deflateSession, session, deflateSession);
+
+        for (String message : List.of("first", "second"))
+        {
+            FutureCallback callback = new FutureCallback();
+            broadcaster.broadcast(sessions, new Frame(OpCode.TEXT, message), callback);
+            // The other sessions receive the message.
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> callback.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+            Frame frame = clientHandler.receivedFrames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            assertEquals(message, frame.getPayloadAsUTF8());
+        }
+
+        assertEquals(4, broadcaster.getFailedFrames());
+        // The failed frames are not pending, so they do not cause drops.
+        assertEquals(0, broadcaster.getDroppedFrames());
+        assertEquals(2, broadcaster.getSentFrames());
+    }
+}
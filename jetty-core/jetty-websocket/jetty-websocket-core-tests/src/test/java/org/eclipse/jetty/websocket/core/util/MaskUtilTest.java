@@ -0,0 +1,124 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.core.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MaskUtilTest
+{
+    private static final byte[] MASK = new byte[]{0x11, (byte)0xA2, 0x5C, (byte)0xF7};
+
+    public static Stream<Arguments> buffers()
+    {
+        return Stream.of(false, true).flatMap(direct ->
+            Stream.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN).flatMap(order ->
+                Stream.of(0, 1, 3, 4, 7, 8, 9, 15, 16, 17, 1023).map(length ->
+                    Arguments.of(direct, order, length))));
+    }
+
+    @ParameterizedTest
+    @MethodSource("buffers")
+    public void testMaskInPlace(boolean direct, ByteOrder order, int length)
+    {
+        byte[] bytes = randomBytes(length);
+        // Offset the payload to test unaligned buffers.
+        ByteBuffer buffer = allocate(direct, length + 3).order(order);
+        buffer.position(3);
+        buffer.put(bytes).flip().position(3);
+
+        MaskUtil.mask(buffer, MASK);
+
+        assertEquals(3, buffer.position());
+        assertArrayEquals(expected(bytes), toArray(buffer));
+
+        // Unmasking restores the original bytes.
+        MaskUtil.mask(buffer, MASK);
+        assertArrayEquals(bytes, toArray(buffer));
+    }
+
+    @ParameterizedTest
+    @MethodSource("buffers")
+    public void testMaskCopy(boolean direct, ByteOrder order, int length)
+    {
+        byte[] bytes = randomBytes(length);
+        ByteBuffer source = allocate(direct, length).order(order);
+        source.put(bytes).flip();
+        ByteBuffer target = allocate(!direct, length + 5);
+        target.position(5);
+
+        MaskUtil.mask(source, MASK, target);
+
+        assertEquals(0, source.position());
+        assertEquals(length + 5, target.position());
+        target.flip().position(5);
+        assertArrayEquals(expected(bytes), toArray(target));
+    }
+
+    @Test
+    public void testRotate()
+    {
+        byte[] bytes = randomBytes(64);
+        for (int offset = 0; offset < 8; ++offset)
+        {
+            ByteBuffer head = ByteBuffer.wrap(bytes, 0, offset).slice();
+            ByteBuffer tail = ByteBuffer.wrap(bytes, offset, bytes.length - offset).slice();
+            byte[] copy = bytes.clone();
+            MaskUtil.mask(head, MASK);
+            MaskUtil.mask(tail, MaskUtil.rotate(MASK, offset));
+            assertArrayEquals(expected(copy), bytes);
+            // Restore the original bytes.
+            System.arraycopy(copy, 0, bytes, 0, bytes.length);
+        }
+    }
+
+    private static byte[] expected(byte[] bytes)
+    {
+        byte[] result = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            result[i] = (byte)(bytes[i] ^ MASK[i & 3]);
+        }
+        return result;
+    }
+
+    private static ByteBuffer allocate(boolean direct, int capacity)
+    {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.slice().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] randomBytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
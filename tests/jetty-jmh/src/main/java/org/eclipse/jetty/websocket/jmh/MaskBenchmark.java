@@ -0,0 +1,132 @@
+//
+// ========================================================================
+// Copyright (c) 1995 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.websocket.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.core.util.MaskUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class MaskBenchmark
+{
+    private static final byte[] MASK = new byte[]{0x11, (byte)0xA2, 0x5C, (byte)0xF7};
+
+    @Param({"16", "1024", "65536"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean direct;
+
+    private ByteBuffer source;
+    private ByteBuffer target;
+
+    @Setup
+    public void setUp()
+    {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        source = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        source.put(bytes).flip();
+        target = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testMaskByteAtATime()
+    {
+        // The masking of the Parser before it was done a word at a time.
+        int start = source.position();
+        int end = source.limit();
+        for (int i = start; i < end; ++i)
+        {
+            source.put(i, (byte)(source.get(i) ^ MASK[(i - start) & 3]));
+        }
+        return source;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testMaskIntAtATime()
+    {
+        // The masking of the Generator before it was done a long at a time.
+        int maskInt = ((MASK[0] & 0xFF) << 24) | ((MASK[1] & 0xFF) << 16) | ((MASK[2] & 0xFF) << 8) | (MASK[3] & 0xFF);
+        target.clear();
+        int start = source.position();
+        int end = source.limit();
+        int maskOffset = 0;
+        int remaining;
+        while ((remaining = end - start) > 0)
+        {
+            if (remaining >= 4)
+            {
+                target.putInt(source.getInt(start) ^ maskInt);
+                start += 4;
+            }
+            else
+            {
+                target.put((byte)(source.get(start) ^ MASK[maskOffset & 3]));
+                ++start;
+                ++maskOffset;
+            }
+        }
+        return target;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testMaskInPlace()
+    {
+        MaskUtil.mask(source, MASK);
+        return source;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testMaskCopy()
+    {
+        target.clear();
+        MaskUtil.mask(source, MASK, target);
+        return target;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(MaskBenchmark.class.getSimpleName())
+            .build();
+
+        new Runner(opt).run();
+    }
+}